@@ -0,0 +1,98 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+* @ClassName: CompareResults
+* @Description: Compare two JMH json result files, written with "-rf json", like the results
+* of two releases. Prints the score of each benchmark and parameters found in both files, and
+* exits with 2 when a score is slower than the baseline by more than the threshold.
+* The scores must be times per operation (Mode.AverageTime), the mode of all the benchmarks.
+*
+* Usage: CompareResults baseline.json current.json [threshold percent, default 10]
+* @version 1.0
+*/
+public class CompareResults {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: CompareResults baseline.json current.json [threshold percent, default 10]");
+            System.exit(1);
+        }
+        double threshold = (args.length == 3) ? Double.parseDouble(args[2]) : 10;
+
+        Map<String, JsonNode> baseline = read(new File(args[0]));
+        Map<String, JsonNode> current = read(new File(args[1]));
+
+        int regressions = 0;
+        System.out.println(String.format("%-72s %12s %12s %8s", "Benchmark", "baseline", "current", "change"));
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode base = baseline.get(entry.getKey());
+            if (null == base) {
+                System.out.println(String.format("%-72s %12s %12.3f %8s", entry.getKey(), "-", getScore(entry.getValue()), "new"));
+                continue;
+            }
+            double baseScore = getScore(base);
+            double score = getScore(entry.getValue());
+            double change = (baseScore > 0) ? (score - baseScore) * 100 / baseScore : 0;
+            String flag = "";
+            if (change > threshold) {
+                flag = " REGRESSION";
+                regressions++;
+            }
+            System.out.println(String.format("%-72s %12.3f %12.3f %+7.1f%%%s", entry.getKey(), baseScore, score, change, flag));
+        }
+        System.out.println("Unit: " + getUnit(current) + ", " + regressions + " regression(s) above " + threshold + "%");
+        System.exit(regressions > 0 ? 2 : 0);
+    }
+
+    /**
+     * @return the results by benchmark name and parameters
+     */
+    private static Map<String, JsonNode> read(File f) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<String, JsonNode>();
+        for (JsonNode result : new ObjectMapper().readTree(f)) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText().replace("com.ibm.spectrum.benchmark.", ""));
+            JsonNode params = result.path("params");
+            for (Iterator<Map.Entry<String, JsonNode>> it = params.fields(); it.hasNext();) {
+                Map.Entry<String, JsonNode> param = it.next();
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+
+    private static double getScore(JsonNode result) {
+        return result.path("primaryMetric").path("score").asDouble();
+    }
+
+    private static String getUnit(Map<String, JsonNode> results) {
+        for (JsonNode result : results.values()) {
+            return result.path("primaryMetric").path("scoreUnit").asText();
+        }
+        return "";
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.util.AwsStateStore;
+
+/**
+* @ClassName: DbBenchmark
+* @Description: Load and save of the provider status DB file in each AWS_DB_FORMAT, as done
+* once by each provider operation.
+* @version 1.0
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DbBenchmark {
+    @Param({"1000", "10000", "50000"})
+    public int machines;
+
+    @Param({"json", "cbor"})
+    public String format;
+
+    private File homeDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        homeDir = SyntheticDb.setUp(null, format);
+        SyntheticDb.writeDb(SyntheticDb.newEntity(machines));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        AwsStateStore.reset();
+        SyntheticDb.delete(homeDir);
+    }
+
+    /**
+     * Read and parse the DB file
+     */
+    @Benchmark
+    public AwsEntity load() {
+        AwsStateStore.reset();
+        return AwsStateStore.getEntity();
+    }
+
+    /**
+     * Write the loaded DB back to the file
+     */
+    @Benchmark
+    public void save() {
+        AwsStateStore.getEntity();
+        AwsStateStore.markDirty();
+        AwsStateStore.flush();
+    }
+}
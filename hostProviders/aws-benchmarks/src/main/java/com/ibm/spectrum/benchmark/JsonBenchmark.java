@@ -0,0 +1,108 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.model.AwsMachine;
+import com.ibm.spectrum.model.AwsRequest;
+import com.ibm.spectrum.util.AwsLog;
+import com.ibm.spectrum.util.AwsUtil;
+
+/**
+* @ClassName: JsonBenchmark
+* @Description: The AwsUtil json helpers on the DB and on the getReturnRequests input, which
+* lists all the hosts of ebrokerd, and the AwsEntity.toString and AwsLog summary used by the
+* log statements.
+* @version 1.0
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+    @Param({"1000", "10000", "50000"})
+    public int machines;
+
+    private AwsEntity db;
+
+    private String dbJson;
+
+    private String returnRequestsJson;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = SyntheticDb.newEntity(machines);
+        dbJson = AwsUtil.toJsonTxt(db);
+
+        List<AwsMachine> hosts = new ArrayList<AwsMachine>(machines);
+        for (AwsRequest req : db.getReqs()) {
+            for (AwsMachine m : req.getMachines()) {
+                AwsMachine host = new AwsMachine();
+                host.setMachineId(m.getMachineId());
+                host.setName(m.getName());
+                hosts.add(host);
+            }
+        }
+        AwsEntity req = new AwsEntity();
+        req.setMachines(hosts);
+        returnRequestsJson = AwsUtil.toJsonTxt(req);
+    }
+
+    @Benchmark
+    public String dbToJson() {
+        return AwsUtil.toJsonTxt(db);
+    }
+
+    @Benchmark
+    public AwsEntity dbFromJson() {
+        return AwsUtil.toObject(dbJson, AwsEntity.class);
+    }
+
+    @Benchmark
+    public AwsEntity returnRequestsInputFromJson() {
+        return AwsUtil.toObject(returnRequestsJson, AwsEntity.class);
+    }
+
+    @Benchmark
+    public String dbToString() {
+        return db.toString();
+    }
+
+    @Benchmark
+    public String dbLogSummary() {
+        return AwsLog.summary(db).toString();
+    }
+}
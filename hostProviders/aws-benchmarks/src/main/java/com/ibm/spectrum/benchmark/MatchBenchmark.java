@@ -0,0 +1,145 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ibm.spectrum.constant.AwsConst;
+import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.model.AwsMachine;
+import com.ibm.spectrum.model.AwsRequest;
+import com.ibm.spectrum.util.AwsMachineIndex;
+import com.ibm.spectrum.util.AwsStateStore;
+import com.ibm.spectrum.util.AwsUtil;
+
+/**
+* @ClassName: MatchBenchmark
+* @Description: Matching the machines of a return request with the machines of the DB, as
+* updateVmStatus does, through AwsMachineIndex and through the AwsUtil.getMatchingMachineInList
+* list scan it replaced. Also the rebuild of the AwsStateStore indexes after the DB is changed.
+* @version 1.0
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchBenchmark {
+    @Param({"1000", "10000", "50000"})
+    public int machines;
+
+    private File homeDir;
+
+    private List<AwsMachine> machinesInDB;
+
+    private List<AwsMachine> returnedMachines;
+
+    private String lastMachineId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        homeDir = SyntheticDb.setUp(null, AwsConst.DB_FORMAT_JSON);
+        AwsEntity ae = SyntheticDb.newEntity(machines);
+        machinesInDB = new ArrayList<AwsMachine>(machines);
+        for (AwsRequest req : ae.getReqs()) {
+            machinesInDB.addAll(req.getMachines());
+        }
+        lastMachineId = machinesInDB.get(machinesInDB.size() - 1).getMachineId();
+
+        // Copies of the machines of the last return request, like AwsUtil.getFromFile(retId) gives
+        String lastRetId = null;
+        for (AwsMachine m : machinesInDB) {
+            if (null != m.getRetId()) {
+                lastRetId = m.getRetId();
+            }
+        }
+        returnedMachines = new ArrayList<AwsMachine>();
+        for (AwsMachine m : machinesInDB) {
+            if (lastRetId.equals(m.getRetId())) {
+                AwsMachine copy = new AwsMachine();
+                copy.setMachineId(m.getMachineId());
+                copy.setName(m.getName());
+                returnedMachines.add(copy);
+            }
+        }
+
+        AwsStateStore.reset();
+        AwsStateStore.setEntity(ae);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        AwsStateStore.reset();
+        SyntheticDb.delete(homeDir);
+    }
+
+    @Benchmark
+    public void matchByIndex(Blackhole bh) {
+        AwsMachineIndex index = new AwsMachineIndex(returnedMachines);
+        for (AwsMachine m : machinesInDB) {
+            AwsMachine matchingMachine = index.get(m);
+            if (null != matchingMachine) {
+                bh.consume(index.remove(matchingMachine));
+                if (index.isEmpty()) {
+                    break;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void matchByListScan(Blackhole bh) {
+        List<AwsMachine> remaining = new ArrayList<AwsMachine>(returnedMachines);
+        for (AwsMachine m : machinesInDB) {
+            AwsMachine matchingMachine = AwsUtil.getMatchingMachineInList(m, remaining);
+            if (null != matchingMachine) {
+                bh.consume(remaining.remove(matchingMachine));
+                if (remaining.isEmpty()) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Lookup of a machine in the DB just changed, which rebuilds the indexes of the store
+     */
+    @Benchmark
+    public AwsRequest stateStoreLookupAfterChange() {
+        AwsStateStore.markDirty();
+        return AwsStateStore.getRequestOfMachine(lastMachineId);
+    }
+}
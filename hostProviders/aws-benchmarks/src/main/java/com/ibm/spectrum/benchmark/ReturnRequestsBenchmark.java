@@ -0,0 +1,106 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.spectrum.AwsMain;
+import com.ibm.spectrum.aws.AwsImpl;
+import com.ibm.spectrum.constant.AwsConst;
+import com.ibm.spectrum.loadtest.Ec2StandIn;
+import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.model.AwsMachine;
+import com.ibm.spectrum.model.AwsRequest;
+import com.ibm.spectrum.util.AwsStateStore;
+
+/**
+* @ClassName: ReturnRequestsBenchmark
+* @Description: A whole getReturnRequests operation, with the DB load and save, against an
+* embedded Ec2StandIn holding the running instances of the DB. The input lists all the
+* machines of the DB, like the hosts of ebrokerd, so that no machine is deleted for the
+* creation timeout. The stand-in answers without latency, the time is spent in the
+* provider and in the EC2 client.
+* @version 1.0
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReturnRequestsBenchmark {
+    @Param({"1000", "10000", "50000"})
+    public int machines;
+
+    private final Ec2StandIn standIn = new Ec2StandIn();
+
+    private File homeDir;
+
+    private AwsEntity req;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        standIn.configure("--preload", String.valueOf(machines));
+        standIn.configure("--region", "us-west-2");
+        standIn.start();
+
+        homeDir = SyntheticDb.setUp(standIn.getEndpointUrl(), AwsConst.DB_FORMAT_JSON);
+        AwsEntity ae = SyntheticDb.newEntity(standIn.getInstanceIds());
+        SyntheticDb.writeDb(ae);
+
+        List<AwsMachine> hosts = new ArrayList<AwsMachine>(machines);
+        for (AwsRequest r : ae.getReqs()) {
+            for (AwsMachine m : r.getMachines()) {
+                AwsMachine host = new AwsMachine();
+                host.setMachineId(m.getMachineId());
+                host.setName(m.getName());
+                hosts.add(host);
+            }
+        }
+        req = new AwsEntity();
+        req.setMachines(hosts);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        standIn.stop();
+        AwsStateStore.reset();
+        SyntheticDb.delete(homeDir);
+    }
+
+    @Benchmark
+    public AwsEntity getReturnRequests() throws Exception {
+        return AwsMain.invoke(new AwsImpl(), req, "getReturnRequests");
+    }
+}
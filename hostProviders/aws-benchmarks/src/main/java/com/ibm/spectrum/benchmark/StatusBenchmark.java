@@ -0,0 +1,147 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.amazonaws.services.ec2.model.Instance;
+import com.ibm.spectrum.aws.AwsImpl;
+import com.ibm.spectrum.aws.client.AwsTagPlanner;
+import com.ibm.spectrum.constant.AwsConst;
+import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.model.AwsMachine;
+import com.ibm.spectrum.model.AwsRequest;
+import com.ibm.spectrum.model.AwsTemplate;
+import com.ibm.spectrum.util.AwsStateStore;
+import com.ibm.spectrum.util.AwsUtil;
+
+/**
+* @ClassName: StatusBenchmark
+* @Description: Status mapping of getRequestStatus, without EC2 calls: AwsImpl.updateStatus of
+* the requests against the described instances, which updates the DB through updateVmStatus.
+* The instances are in the state of the machines in the DB, so the DB is the same after each
+* operation. The DB is kept in AwsStateStore like during a provider operation, it is not
+* written to the file.
+* @version 1.0
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatusBenchmark {
+    @Param({"1000", "10000", "50000"})
+    public int machines;
+
+    private File homeDir;
+
+    private Map<String, Instance> vmMap;
+
+    private AwsTemplate template;
+
+    private List<String> createReqIds;
+
+    private List<String> returnReqIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        homeDir = SyntheticDb.setUp(null, AwsConst.DB_FORMAT_JSON);
+        AwsEntity ae = SyntheticDb.newEntity(machines);
+        vmMap = SyntheticDb.newInstances(ae);
+        template = SyntheticDb.newTemplate();
+
+        createReqIds = new ArrayList<String>();
+        Set<String> retIds = new LinkedHashSet<String>();
+        for (AwsRequest req : ae.getReqs()) {
+            createReqIds.add(req.getReqId());
+            for (AwsMachine m : req.getMachines()) {
+                if (null != m.getRetId()) {
+                    retIds.add(m.getRetId());
+                }
+            }
+        }
+        returnReqIds = new ArrayList<String>(retIds);
+
+        AwsStateStore.reset();
+        AwsStateStore.setEntity(ae);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        AwsStateStore.reset();
+        SyntheticDb.delete(homeDir);
+    }
+
+    /**
+     * Status of all the requests creating machines
+     */
+    @Benchmark
+    public void updateStatusOfCreateRequests(Blackhole bh) {
+        for (String reqId : createReqIds) {
+            bh.consume(updateStatus(reqId));
+        }
+    }
+
+    /**
+     * Status of all the requests returning machines
+     */
+    @Benchmark
+    public void updateStatusOfReturnRequests(Blackhole bh) {
+        for (String retId : returnReqIds) {
+            bh.consume(updateStatus(retId));
+        }
+    }
+
+    /**
+     * DB update of the last return request alone
+     */
+    @Benchmark
+    public void updateVmStatusOfReturnRequest() {
+        AwsImpl.updateVmStatus(AwsUtil.getFromFile(returnReqIds.get(returnReqIds.size() - 1)));
+    }
+
+    private AwsRequest updateStatus(String reqId) {
+        AwsRequest fReq = AwsUtil.getFromFile(reqId);
+        AwsRequest inReq = new AwsRequest();
+        inReq.setReqId(reqId);
+        AwsImpl.updateStatus(fReq, inReq, Collections.<AwsMachine>emptyList(), vmMap, template, new AwsTagPlanner());
+        return inReq;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.ec2.model.CpuOptions;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
+import com.amazonaws.services.ec2.model.Placement;
+import com.ibm.spectrum.constant.AwsConst;
+import com.ibm.spectrum.model.AwsConfig;
+import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.model.AwsMachine;
+import com.ibm.spectrum.model.AwsRequest;
+import com.ibm.spectrum.model.AwsTemplate;
+import com.ibm.spectrum.model.HostAllocationType;
+import com.ibm.spectrum.util.AwsStateStore;
+import com.ibm.spectrum.util.AwsUtil;
+
+/**
+* @ClassName: SyntheticDb
+* @Description: Synthetic provider status DBs and EC2 instances for the benchmarks. A DB
+* has requests of MACHINES_PER_REQUEST running on-demand machines of TEMPLATE_ID, one
+* machine out of RETURNED_EVERY is shutting down, returned by return requests of up to
+* MACHINES_PER_REQUEST machines. The instances described from EC2 match the machines.
+*
+* The content only depends on the number of machines, so that the results of different
+* releases compare.
+* @version 1.0
+*/
+public class SyntheticDb {
+    public static final int MACHINES_PER_REQUEST = 100;
+
+    public static final int RETURNED_EVERY = 10;
+
+    public static final String TEMPLATE_ID = "Template-VM-1";
+
+    private static final long LAUNCH_TIME = 1700000000L;
+
+    /**
+     * @Title: setUp
+     * @Description: Set up AwsUtil like AwsMain does, with a new home directory
+     * @param endpoint AWS_ENDPOINT_URL, null for none
+     * @param dbFormat AWS_DB_FORMAT
+     * @return the home directory
+     * @throws IOException
+     */
+    public static File setUp(String endpoint, String dbFormat) throws IOException {
+        File homeDir = Files.createTempDirectory("aws-benchmarks").toFile();
+        File confDir = new File(homeDir, "conf");
+        File dataDir = new File(homeDir, "data");
+        if (!confDir.mkdirs() || !dataDir.mkdirs()) {
+            throw new IOException("Cannot create the directories of " + homeDir);
+        }
+        File credentials = new File(confDir, "credentials");
+        Files.write(credentials.toPath(), "[default]\naws_access_key_id = AKIABENCHMARK\naws_secret_access_key = benchmark\n"
+                    .getBytes(StandardCharsets.UTF_8));
+
+        AwsConfig config = new AwsConfig();
+        config.setAwsRegion("us-west-2");
+        config.setAwsCredentialFile(credentials.getAbsolutePath());
+        config.setAwsEndpointUrl(endpoint);
+        config.setDbFormat(dbFormat);
+
+        AwsUtil.setHomeDir(homeDir.getAbsolutePath());
+        AwsUtil.setProviderName("aws");
+        AwsUtil.setConfDir(homeDir.getAbsolutePath());
+        AwsUtil.setWorkDir(dataDir.getAbsolutePath());
+        AwsUtil.setProvStatusFile("aws-db.json");
+        AwsUtil.setConfig(config);
+        return homeDir;
+    }
+
+    /**
+     * @Title: writeDb
+     * @Description: Write the DB to the file of the provider status DB, and load it in AwsStateStore
+     * @param ae
+     */
+    public static void writeDb(AwsEntity ae) {
+        AwsStateStore.reset();
+        AwsStateStore.setEntity(ae);
+        if (!AwsStateStore.flush()) {
+            throw new IllegalStateException("Write the provider status DB <" + AwsStateStore.getDbFile().getAbsolutePath() + "> error.");
+        }
+        AwsStateStore.awaitCompaction();
+    }
+
+    /**
+     * @Title: delete
+     * @Description: Delete the home directory made by setUp
+     * @param dir
+     */
+    public static void delete(File dir) {
+        if (null == dir) {
+            return;
+        }
+        File[] files = dir.listFiles();
+        if (null != files) {
+            for (File f : files) {
+                delete(f);
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * @Title: newEntity
+     * @Description: Synthetic DB
+     * @param machines the number of machines
+     * @return
+     */
+    public static AwsEntity newEntity(int machines) {
+        return newEntity(getInstanceIds(machines));
+    }
+
+    /**
+     * @Title: newEntity
+     * @Description: Synthetic DB of the given instances
+     * @param instanceIds
+     * @return
+     */
+    public static AwsEntity newEntity(List<String> instanceIds) {
+        List<AwsRequest> reqs = new ArrayList<AwsRequest>();
+        AwsRequest req = null;
+        int returned = 0;
+        for (int i = 0; i < instanceIds.size(); i++) {
+            if (i % MACHINES_PER_REQUEST == 0) {
+                req = newRequest(String.format("%s%08d", AwsConst.ON_DEMAND_REQUEST_PREFIX, i / MACHINES_PER_REQUEST));
+                reqs.add(req);
+            }
+            AwsMachine m = newMachine(instanceIds.get(i), i, req.getReqId());
+            if (i % RETURNED_EVERY == 0) {
+                m.setStatus("shutting-down");
+                m.setRetId(String.format("%s%08d", AwsConst.RETURN_REQUEST_PREFIX, returned++ / MACHINES_PER_REQUEST));
+            }
+            req.getMachines().add(m);
+        }
+
+        AwsEntity ae = new AwsEntity();
+        ae.setReqs(reqs);
+        return ae;
+    }
+
+    private static AwsRequest newRequest(String reqId) {
+        AwsRequest req = new AwsRequest();
+        req.setReqId(reqId);
+        req.setTemplateId(TEMPLATE_ID);
+        req.setHostAllocationType(HostAllocationType.OnDemand.toString());
+        req.setTagValue("default");
+        req.setTime(LAUNCH_TIME * 1000);
+        req.setTtl(LAUNCH_TIME * 1000 + 1800000);
+        req.setStatus(AwsConst.EBROKERD_STATE_COMPLETE);
+        req.setMachines(new ArrayList<AwsMachine>(MACHINES_PER_REQUEST));
+        return req;
+    }
+
+    private static AwsMachine newMachine(String machineId, int i, String reqId) {
+        AwsMachine m = new AwsMachine();
+        m.setMachineId(machineId);
+        m.setName(getName(i));
+        m.setReqId(reqId);
+        m.setTemplate(TEMPLATE_ID);
+        m.setResult(AwsConst.EBROKERD_MACHINE_RESULT_SUCCEED);
+        m.setStatus("running");
+        m.setPrivateIpAddress(getIp(i));
+        m.setRcAccount("default");
+        m.setLaunchtime(LAUNCH_TIME);
+        m.setNcores(1);
+        m.setNthreads(2);
+        m.setLifeCycleType(HostAllocationType.OnDemand);
+        m.setMsg("");
+        return m;
+    }
+
+    /**
+     * @return the synthetic instance IDs, i-00000000000000001 to i-<machines in hexadecimal>
+     */
+    public static List<String> getInstanceIds(int machines) {
+        List<String> ids = new ArrayList<String>(machines);
+        for (int i = 1; i <= machines; i++) {
+            ids.add(String.format("i-%017x", i));
+        }
+        return ids;
+    }
+
+    /**
+     * @Title: newInstances
+     * @Description: Instances described from EC2 for the machines of the DB, by instance ID.
+     * The returned machines are shutting-down, the others are running, so that mapping the
+     * status leaves the DB as it is.
+     * @param ae
+     * @return
+     */
+    public static Map<String, Instance> newInstances(AwsEntity ae) {
+        Map<String, Instance> instances = new HashMap<String, Instance>();
+        int i = 0;
+        for (AwsRequest req : ae.getReqs()) {
+            for (AwsMachine m : req.getMachines()) {
+                String state = (null == m.getRetId()) ? "running" : "shutting-down";
+                instances.put(m.getMachineId(), newInstance(m.getMachineId(), i++, state));
+            }
+        }
+        return instances;
+    }
+
+    private static Instance newInstance(String instanceId, int i, String state) {
+        int code = "running".equals(state) ? 16 : 32;
+        return new Instance()
+               .withInstanceId(instanceId)
+               .withInstanceType("t3.micro")
+               .withState(new InstanceState().withName(state).withCode(code))
+               .withPrivateDnsName(getName(i))
+               .withPrivateIpAddress(getIp(i))
+               .withLaunchTime(new Date(LAUNCH_TIME * 1000))
+               .withPlacement(new Placement().withAvailabilityZone("us-west-2a"))
+               .withCpuOptions(new CpuOptions().withCoreCount(1).withThreadsPerCore(2));
+    }
+
+    /**
+     * @return the template of the requests of the DB
+     */
+    public static AwsTemplate newTemplate() {
+        AwsTemplate t = new AwsTemplate();
+        t.setTemplateId(TEMPLATE_ID);
+        t.setVmType("t3.micro");
+        t.setImageId("ami-benchmark");
+        return t;
+    }
+
+    private static String getIp(int i) {
+        return "10." + ((i >> 16) & 0xff) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff);
+    }
+
+    private static String getName(int i) {
+        return "ip-" + getIp(i).replace('.', '-') + ".us-west-2.compute.internal";
+    }
+}
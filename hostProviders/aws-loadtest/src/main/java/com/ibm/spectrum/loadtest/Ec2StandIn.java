@@ -0,0 +1,416 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+* @ClassName: Ec2StandIn
+* @Description: Local HTTP server standing in for the EC2 endpoint of a region, to load
+* the provider at fleet scale without AWS. The provider is pointed at it by
+* AWS_ENDPOINT_URL in awsprov_config.json, with any credentials, the requests are not
+* authenticated. The EC2 actions are run by SimulatedEc2. The account starts with the
+* launch template "loadtest" of t3.micro instances, for the EC2 fleet configurations.
+*
+* The server injects the faults of a loaded account:
+*
+*    --latency-ms, --jitter-ms      delay of every call
+*    --describe-rate, --describe-burst, --mutate-rate, --mutate-burst
+*                                   token buckets of the Describe calls and of the other calls,
+*                                   the calls beyond the rate get RequestLimitExceeded
+*    --throttle-rate                probability of any call to get RequestLimitExceeded
+*    --capacity-error-rate          probability of a launch to fail with InsufficientInstanceCapacity
+*    --max-instances                instance limit of the account
+*    --spot-interruption-rate       probability of a spot instance to be interrupted per minute
+*
+* Usage: Ec2StandIn [--port 8080] [--preload 0] [options], the options are listed by usage().
+* @version 1.0
+*/
+public class Ec2StandIn {
+    public static final String LAUNCH_TEMPLATE_NAME = "loadtest";
+
+    /**
+     * ID of the launch template, the plugin refers to the fleet launch templates by ID
+     */
+    public static final String LAUNCH_TEMPLATE_ID = "lt-0000000000loadtest";
+
+    private int port = 0;
+
+    private int threads = 64;
+
+    private String region = "us-west-2";
+
+    private long latencyMs = 0;
+
+    private long jitterMs = 0;
+
+    private double throttleRate = 0;
+
+    private double describeRate = 0;
+
+    private int describeBurst = 100;
+
+    private double mutateRate = 0;
+
+    private int mutateBurst = 50;
+
+    private double capacityErrorRate = 0;
+
+    private int maxInstances = 0;
+
+    private long bootMs = 2000;
+
+    private long transitionMs = 1000;
+
+    private long retentionMs = 300000;
+
+    private double spotInterruptionRate = 0;
+
+    private String spotPrice = "0.010000";
+
+    private int preload = 0;
+
+    private final Random random = new Random();
+
+    private final Map<String, ActionStats> stats = new TreeMap<String, ActionStats>();
+
+    private SimulatedEc2 ec2;
+
+    private TokenBucket describeBucket;
+
+    private TokenBucket mutateBucket;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * @Title: configure
+     * @Description: Set an option of the server, before it is started
+     * @param name the option, like --latency-ms
+     * @param value
+     * @return false if the option is not an option of the server
+     */
+    public boolean configure(String name, String value) {
+        if ("--port".equals(name)) {
+            port = Integer.parseInt(value);
+        } else if ("--threads".equals(name)) {
+            threads = Integer.parseInt(value);
+        } else if ("--region".equals(name)) {
+            region = value;
+        } else if ("--latency-ms".equals(name)) {
+            latencyMs = Long.parseLong(value);
+        } else if ("--jitter-ms".equals(name)) {
+            jitterMs = Long.parseLong(value);
+        } else if ("--throttle-rate".equals(name)) {
+            throttleRate = Double.parseDouble(value);
+        } else if ("--describe-rate".equals(name)) {
+            describeRate = Double.parseDouble(value);
+        } else if ("--describe-burst".equals(name)) {
+            describeBurst = Integer.parseInt(value);
+        } else if ("--mutate-rate".equals(name)) {
+            mutateRate = Double.parseDouble(value);
+        } else if ("--mutate-burst".equals(name)) {
+            mutateBurst = Integer.parseInt(value);
+        } else if ("--capacity-error-rate".equals(name)) {
+            capacityErrorRate = Double.parseDouble(value);
+        } else if ("--max-instances".equals(name)) {
+            maxInstances = Integer.parseInt(value);
+        } else if ("--boot-ms".equals(name)) {
+            bootMs = Long.parseLong(value);
+        } else if ("--transition-ms".equals(name)) {
+            transitionMs = Long.parseLong(value);
+        } else if ("--retention-ms".equals(name)) {
+            retentionMs = Long.parseLong(value);
+        } else if ("--spot-interruption-rate".equals(name)) {
+            spotInterruptionRate = Double.parseDouble(value);
+        } else if ("--spot-price".equals(name)) {
+            spotPrice = value;
+        } else if ("--preload".equals(name)) {
+            preload = Integer.parseInt(value);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the options of the server
+     */
+    public static String usage() {
+        return "  --port N                   listening port, 0 for any free port (default 0)\n"
+               + "  --threads N                threads serving the calls (default 64)\n"
+               + "  --region NAME              region of the availability zones (default us-west-2)\n"
+               + "  --latency-ms N             delay of every call (default 0)\n"
+               + "  --jitter-ms N              random delay added to the latency (default 0)\n"
+               + "  --throttle-rate P          probability of a call to be throttled (default 0)\n"
+               + "  --describe-rate N          Describe calls per second, 0 for no limit (default 0)\n"
+               + "  --describe-burst N         burst of the Describe calls (default 100)\n"
+               + "  --mutate-rate N            other calls per second, 0 for no limit (default 0)\n"
+               + "  --mutate-burst N           burst of the other calls (default 50)\n"
+               + "  --capacity-error-rate P    probability of a launch to fail for capacity (default 0)\n"
+               + "  --max-instances N          instance limit, 0 for no limit (default 0)\n"
+               + "  --boot-ms N                time from pending to running (default 2000)\n"
+               + "  --transition-ms N          time to stop or to terminate (default 1000)\n"
+               + "  --retention-ms N           time the terminated instances are described (default 300000)\n"
+               + "  --spot-interruption-rate P probability of a spot instance interruption per minute (default 0)\n"
+               + "  --spot-price PRICE         spot price of all the VM types (default 0.010000)\n"
+               + "  --preload N                running instances tagged RC_ACCOUNT=preload at start (default 0)\n";
+    }
+
+    /**
+     * @Title: start
+     * @Description: Start the server on the loopback interface
+     * @throws IOException
+     */
+    public void start() throws IOException {
+        ec2 = new SimulatedEc2(region, bootMs, transitionMs, retentionMs, maxInstances, capacityErrorRate, spotInterruptionRate, spotPrice);
+        if (preload > 0) {
+            Map<String, String> tags = new HashMap<String, String>();
+            tags.put("RC_ACCOUNT", "preload");
+            ec2.preload(preload, tags);
+        }
+        ec2.addLaunchTemplate(LAUNCH_TEMPLATE_ID, LAUNCH_TEMPLATE_NAME, "t3.micro");
+        describeBucket = (describeRate > 0) ? new TokenBucket(describeRate, describeBurst) : null;
+        mutateBucket = (mutateRate > 0) ? new TokenBucket(mutateRate, mutateBurst) : null;
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 256);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @Title: stop
+     * @Description: Stop the server
+     */
+    public void stop() {
+        if (null != server) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * @return the URL to set as AWS_ENDPOINT_URL
+     */
+    public String getEndpointUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return the IDs of the instances not terminated, like the preloaded instances
+     */
+    public List<String> getInstanceIds() {
+        return ec2.getInstanceIds();
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String requestId = UUID.randomUUID().toString();
+        String action = "Unknown";
+        int status = 200;
+        String body;
+        try {
+            Map<String, String> params = new HashMap<String, String>();
+            parseForm(exchange.getRequestURI().getRawQuery(), params);
+            parseForm(readBody(exchange.getRequestBody()), params);
+            if (null != params.get("Action")) {
+                action = params.get("Action");
+            }
+
+            long delay = latencyMs + (jitterMs > 0 ? (long) (random.nextDouble() * jitterMs) : 0);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+
+            TokenBucket bucket = action.startsWith("Describe") ? describeBucket : mutateBucket;
+            if ((null != bucket && !bucket.tryAcquire()) || (throttleRate > 0 && random.nextDouble() < throttleRate)) {
+                throw new SimulatedEc2.Ec2Error(503, "RequestLimitExceeded", "Request limit exceeded.");
+            }
+
+            body = ec2.handle(action, params, requestId);
+        } catch (SimulatedEc2.Ec2Error e) {
+            status = e.getStatus();
+            body = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Response><Errors><Error><Code>" + e.getCode()
+                   + "</Code><Message>" + SimulatedEc2.escape(e.getMessage()) + "</Message></Error></Errors><RequestID>"
+                   + requestId + "</RequestID></Response>";
+        } catch (Exception e) {
+            status = 500;
+            body = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Response><Errors><Error><Code>InternalError</Code><Message>"
+                   + SimulatedEc2.escape(String.valueOf(e)) + "</Message></Error></Errors><RequestID>"
+                   + requestId + "</RequestID></Response>";
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/xml;charset=UTF-8");
+        exchange.getResponseHeaders().set("x-amzn-RequestId", requestId);
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        record(action, status, (System.nanoTime() - start) / 1000000);
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void parseForm(String form, Map<String, String> params) throws UnsupportedEncodingException {
+        if (null == form || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = (eq < 0) ? pair : pair.substring(0, eq);
+            String value = (eq < 0) ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+    }
+
+    private synchronized void record(String action, int status, long millis) {
+        ActionStats s = stats.get(action);
+        if (null == s) {
+            s = new ActionStats();
+            stats.put(action, s);
+        }
+        s.calls++;
+        if (status == 503) {
+            s.throttled++;
+        } else if (status != 200) {
+            s.errors++;
+        }
+        s.totalMs += millis;
+    }
+
+    /**
+     * @return one line per EC2 action with its calls, throttled calls, other errors and mean time
+     */
+    public synchronized String getStats() {
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("%-32s %10s %10s %10s %10s%n", "EC2 action", "calls", "throttled", "errors", "mean ms"));
+        for (Map.Entry<String, ActionStats> entry : stats.entrySet()) {
+            ActionStats s = entry.getValue();
+            b.append(String.format("%-32s %10d %10d %10d %10.1f%n", entry.getKey(), s.calls, s.throttled, s.errors,
+                                   s.calls == 0 ? 0.0 : (double) s.totalMs / s.calls));
+        }
+        b.append("Instances not terminated: ").append(ec2.getLiveInstances()).append('\n');
+        return b.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Ec2StandIn standIn = new Ec2StandIn();
+        standIn.port = 8080;
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length || !standIn.configure(args[i], args[i + 1])) {
+                System.err.println("Usage: Ec2StandIn [options]\n" + usage());
+                System.exit(1);
+            }
+            i++;
+        }
+
+        standIn.start();
+        System.out.println("EC2 stand-in listening on " + standIn.getEndpointUrl() + " for region " + standIn.getRegion());
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                System.out.print(standIn.getStats());
+                standIn.stop();
+            }
+        });
+        Thread.currentThread().join();
+    }
+
+    private static class ActionStats {
+        long calls;
+
+        long throttled;
+
+        long errors;
+
+        long totalMs;
+    }
+
+    /**
+     * Token bucket refilled at a constant rate, like the EC2 API request token buckets
+     */
+    private static class TokenBucket {
+        private final double rate;
+
+        private final double burst;
+
+        private double tokens;
+
+        private long last = System.nanoTime();
+
+        TokenBucket(double rate, int burst) {
+            this.rate = rate;
+            this.burst = Math.max(1, burst);
+            this.tokens = this.burst;
+        }
+
+        synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - last) * rate / 1e9);
+            last = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
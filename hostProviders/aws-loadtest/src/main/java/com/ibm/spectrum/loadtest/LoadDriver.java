@@ -0,0 +1,418 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibm.spectrum.AwsMain;
+import com.ibm.spectrum.aws.AwsImpl;
+import com.ibm.spectrum.constant.AwsConst;
+import com.ibm.spectrum.model.AwsConfig;
+import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.model.AwsMachine;
+import com.ibm.spectrum.model.AwsRequest;
+import com.ibm.spectrum.model.AwsTemplate;
+import com.ibm.spectrum.util.AwsUtil;
+
+/**
+* @ClassName: LoadDriver
+* @Description: Replays the calls of ebrokerd through AwsImpl, in the same JVM, against
+* an EC2 stand-in, and reports the latency of each provider operation. A round is:
+*
+*    - getAvailableTemplates
+*    - requestMachines for each request, the templates are used in turn
+*    - getRequestStatus of all the requests not complete, until they are all complete
+*    - getReturnRequests with all the machines
+*    - requestReturnMachines for the machines of each request
+*    - getRequestStatus of all the return requests not complete, until they are all complete
+*
+* The calls are made one at a time, like ebrokerd does. The driver writes the provider
+* configuration, the templates and the DB in its home directory, and starts an embedded
+* Ec2StandIn unless --endpoint is given. The options of the stand-in are accepted too.
+*
+* The templates are LoadTest-OnDemand (RunInstances), LoadTest-Spot (RequestSpotFleet),
+* LoadTest-Fleet (CreateFleet of type request with the launch template of the stand-in) and
+* LoadTest-Pool (RunInstances, with a warm pool the returned instances are stopped into).
+* @version 1.0
+*/
+public class LoadDriver {
+    private static final String TAG_VALUE = "loadtest";
+
+    private String home;
+
+    private String endpoint;
+
+    private String region = "us-west-2";
+
+    private List<String> templateIds = Collections.singletonList("LoadTest-OnDemand");
+
+    private int requests = 10;
+
+    private int vmNumber = 10;
+
+    private int rounds = 1;
+
+    private long pollMs = 1000;
+
+    private long timeoutMs = 600000;
+
+    private final Map<String, Object> extraConfig = new LinkedHashMap<String, Object>();
+
+    private final Ec2StandIn standIn = new Ec2StandIn();
+
+    private boolean embedded = false;
+
+    private final Map<String, List<Long>> latencies = new LinkedHashMap<String, List<Long>>();
+
+    private final Map<String, Integer> errors = new LinkedHashMap<String, Integer>();
+
+    public static void main(String[] args) {
+        LoadDriver driver = new LoadDriver();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length || !driver.configure(args[i], args[i + 1])) {
+                System.err.println(usage());
+                System.exit(1);
+            }
+        }
+
+        int exitCode = 0;
+        try {
+            exitCode = driver.run();
+        } catch (Exception e) {
+            e.printStackTrace();
+            exitCode = 1;
+        } finally {
+            driver.standIn.stop();
+        }
+        System.exit(exitCode);
+    }
+
+    private boolean configure(String name, String value) {
+        if ("--home".equals(name)) {
+            home = value;
+        } else if ("--endpoint".equals(name)) {
+            endpoint = value;
+        } else if ("--templates".equals(name)) {
+            templateIds = Arrays.asList(value.split(","));
+        } else if ("--requests".equals(name)) {
+            requests = Integer.parseInt(value);
+        } else if ("--vm-number".equals(name)) {
+            vmNumber = Integer.parseInt(value);
+        } else if ("--rounds".equals(name)) {
+            rounds = Integer.parseInt(value);
+        } else if ("--poll-ms".equals(name)) {
+            pollMs = Long.parseLong(value);
+        } else if ("--timeout-s".equals(name)) {
+            timeoutMs = Long.parseLong(value) * 1000;
+        } else if ("--config".equals(name)) {
+            for (String entry : value.split(",")) {
+                int eq = entry.indexOf('=');
+                if (eq <= 0) {
+                    return false;
+                }
+                extraConfig.put(entry.substring(0, eq), toConfigValue(entry.substring(eq + 1)));
+            }
+        } else {
+            if ("--region".equals(name)) {
+                region = value;
+            }
+            return standIn.configure(name, value);
+        }
+        return true;
+    }
+
+    private static String usage() {
+        return "Usage: LoadDriver [options]\n"
+               + "  --home DIR                 provider home directory (default a new temporary directory)\n"
+               + "  --endpoint URL             EC2 endpoint, instead of the embedded stand-in\n"
+               + "  --templates ID,...         templates of the requests, used in turn (default LoadTest-OnDemand)\n"
+               + "  --requests N               requestMachines calls per round (default 10)\n"
+               + "  --vm-number N              machines per request (default 10)\n"
+               + "  --rounds N                 rounds (default 1)\n"
+               + "  --poll-ms N                time between the getRequestStatus calls (default 1000)\n"
+               + "  --timeout-s N              time to wait for the requests of a round (default 600)\n"
+               + "  --config NAME=VALUE,...    more awsprov_config.json entries, AWS_EC2_ASYNC_DESCRIBE=true for example\n"
+               + "Options of the embedded stand-in:\n" + Ec2StandIn.usage();
+    }
+
+    private int run() throws Exception {
+        if (null == endpoint) {
+            embedded = true;
+            standIn.start();
+            endpoint = standIn.getEndpointUrl();
+            System.out.println("EC2 stand-in listening on " + endpoint);
+        }
+        setUp();
+
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.currentTimeMillis();
+            call("getAvailableTemplates", new AwsEntity());
+
+            List<String> reqIds = new ArrayList<String>();
+            for (int i = 0; i < requests; i++) {
+                AwsTemplate t = new AwsTemplate();
+                t.setTemplateId(templateIds.get(i % templateIds.size()));
+                t.setVmNumber(vmNumber);
+                AwsEntity req = new AwsEntity();
+                req.setTemplate(t);
+                req.setTagValue(TAG_VALUE);
+                AwsEntity rsp = call("requestMachines", req);
+                if (null != rsp && null != rsp.getReqId()) {
+                    reqIds.add(rsp.getReqId());
+                }
+            }
+            List<List<AwsMachine>> machinesByRequest = waitForRequests(reqIds);
+
+            List<AwsMachine> machines = new ArrayList<AwsMachine>();
+            for (List<AwsMachine> lst : machinesByRequest) {
+                machines.addAll(lst);
+            }
+            AwsEntity returnReq = new AwsEntity();
+            returnReq.setMachines(machines);
+            call("getReturnRequests", returnReq);
+
+            List<String> retIds = new ArrayList<String>();
+            for (List<AwsMachine> lst : machinesByRequest) {
+                if (lst.isEmpty()) {
+                    continue;
+                }
+                AwsEntity req = new AwsEntity();
+                req.setMachines(lst);
+                AwsEntity rsp = call("requestReturnMachines", req);
+                if (null != rsp && null != rsp.getReqId()) {
+                    retIds.add(rsp.getReqId());
+                }
+            }
+            waitForRequests(retIds);
+
+            System.out.println("Round " + round + ": " + reqIds.size() + " requests, " + machines.size()
+                               + " machines created and returned in " + (System.currentTimeMillis() - start) + " ms");
+        }
+
+        System.out.print(getReport());
+        if (embedded) {
+            System.out.print(standIn.getStats());
+        }
+        return 0;
+    }
+
+    /**
+     * Write the provider configuration and the templates, and set up AwsUtil like AwsMain does
+     */
+    private void setUp() throws IOException {
+        File homeDir = (null == home) ? Files.createTempDirectory("aws-loadtest").toFile() : new File(home);
+        File confDir = new File(homeDir, "conf");
+        File dataDir = new File(homeDir, "data");
+        if (!confDir.isDirectory() && !confDir.mkdirs() || !dataDir.isDirectory() && !dataDir.mkdirs()) {
+            throw new IOException("Cannot create the directories of " + homeDir);
+        }
+        System.out.println("Provider home directory: " + homeDir.getAbsolutePath());
+
+        File credentials = new File(confDir, "credentials");
+        write(credentials, "[default]\naws_access_key_id = AKIALOADTEST\naws_secret_access_key = loadtest\n");
+
+        Map<String, Object> config = new LinkedHashMap<String, Object>();
+        config.put("LogLevel", "INFO");
+        config.put("AWS_CREDENTIAL_FILE", credentials.getAbsolutePath());
+        config.put("AWS_REGION", region);
+        config.put("AWS_ENDPOINT_URL", endpoint);
+        config.putAll(extraConfig);
+        File configFile = new File(confDir, "awsprov_config.json");
+        write(configFile, toJson(config));
+
+        Map<String, Object> fleetConfig = new LinkedHashMap<String, Object>();
+        Map<String, Object> launchTemplate = new LinkedHashMap<String, Object>();
+        launchTemplate.put("LaunchTemplateId", Ec2StandIn.LAUNCH_TEMPLATE_ID);
+        launchTemplate.put("Version", "1");
+        Map<String, Object> launchTemplateConfig = new LinkedHashMap<String, Object>();
+        launchTemplateConfig.put("LaunchTemplateSpecification", launchTemplate);
+        fleetConfig.put("LaunchTemplateConfigs", Collections.singletonList(launchTemplateConfig));
+        Map<String, Object> capacity = new LinkedHashMap<String, Object>();
+        capacity.put("TotalTargetCapacity", "$LSF_TOTAL_TARGET_CAPACITY");
+        capacity.put("DefaultTargetCapacityType", "on-demand");
+        fleetConfig.put("TargetCapacitySpecification", capacity);
+        fleetConfig.put("Type", "request");
+        write(new File(confDir, "loadtest-fleet.json"), toJson(fleetConfig).replace("\"$LSF_TOTAL_TARGET_CAPACITY\"", "$LSF_TOTAL_TARGET_CAPACITY"));
+
+        List<Map<String, Object>> templates = new ArrayList<Map<String, Object>>();
+        templates.add(template("LoadTest-OnDemand"));
+        Map<String, Object> spot = template("LoadTest-Spot");
+        spot.put("spotPrice", 0.05);
+        spot.put("allocationStrategy", "lowestPrice");
+        spot.put("fleetRole", "arn:aws:iam::123456789012:role/loadtest-fleet");
+        templates.add(spot);
+        Map<String, Object> fleet = template("LoadTest-Fleet");
+        fleet.put("ec2FleetConfig", "loadtest-fleet.json");
+        fleet.put("onDemandTargetCapacityRatio", 1.0);
+        templates.add(fleet);
+        Map<String, Object> pool = template("LoadTest-Pool");
+        pool.put("warmPoolSize", 100000);
+        templates.add(pool);
+        write(new File(confDir, "awsprov_templates.json"), toJson(Collections.singletonMap("templates", templates)));
+
+        AwsUtil.setHomeDir(homeDir.getAbsolutePath());
+        AwsUtil.setProviderName("aws");
+        AwsUtil.setConfDir(homeDir.getAbsolutePath());
+        AwsUtil.setWorkDir(dataDir.getAbsolutePath());
+        AwsUtil.setProvStatusFile("aws-db.json");
+        AwsUtil.setConfig(AwsUtil.toObject(configFile, AwsConfig.class));
+    }
+
+    /**
+     * The config values are json booleans and numbers when they read as such, strings otherwise
+     */
+    private static Object toConfigValue(String value) {
+        if ("true".equals(value) || "false".equals(value)) {
+            return Boolean.valueOf(value);
+        }
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+
+    private static Map<String, Object> template(String templateId) {
+        Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+        attributes.put("type", Arrays.asList("String", "X86_64"));
+        attributes.put("ncores", Arrays.asList("Numeric", "1"));
+        attributes.put("ncpus", Arrays.asList("Numeric", "2"));
+        attributes.put("mem", Arrays.asList("Numeric", "1024"));
+        attributes.put("awshost", Arrays.asList("Boolean", "1"));
+
+        Map<String, Object> t = new LinkedHashMap<String, Object>();
+        t.put("templateId", templateId);
+        t.put("maxNumber", 100000);
+        t.put("attributes", attributes);
+        t.put("imageId", "ami-loadtest");
+        t.put("subnetId", "subnet-loadtest");
+        t.put("vmType", "t3.micro");
+        t.put("keyName", "loadtest-key");
+        t.put("securityGroupIds", Collections.singletonList("sg-loadtest"));
+        return t;
+    }
+
+    /**
+     * Poll the status of the requests until they are all complete
+     * @return the machines created by each request
+     */
+    private List<List<AwsMachine>> waitForRequests(List<String> reqIds) throws InterruptedException {
+        Map<String, List<AwsMachine>> machines = new LinkedHashMap<String, List<AwsMachine>>();
+        for (String reqId : reqIds) {
+            machines.put(reqId, new ArrayList<AwsMachine>());
+        }
+
+        List<String> pending = new ArrayList<String>(reqIds);
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!pending.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(pollMs);
+            List<AwsRequest> reqs = new ArrayList<AwsRequest>();
+            for (String reqId : pending) {
+                AwsRequest r = new AwsRequest();
+                r.setReqId(reqId);
+                reqs.add(r);
+            }
+            AwsEntity req = new AwsEntity();
+            req.setReqs(reqs);
+            AwsEntity rsp = call("getRequestStatus", req);
+            if (null == rsp || null == rsp.getReqs()) {
+                continue;
+            }
+
+            for (AwsRequest r : rsp.getReqs()) {
+                if (AwsConst.EBROKERD_STATE_RUNNING.equals(r.getStatus())) {
+                    continue;
+                }
+                pending.remove(r.getReqId());
+                List<AwsMachine> lst = machines.get(r.getReqId());
+                if (null == lst || null == r.getMachines()) {
+                    continue;
+                }
+                for (AwsMachine m : r.getMachines()) {
+                    if (AwsConst.EBROKERD_MACHINE_RESULT_SUCCEED.equals(m.getResult())) {
+                        AwsMachine returned = new AwsMachine();
+                        returned.setMachineId(m.getMachineId());
+                        returned.setName(m.getName());
+                        lst.add(returned);
+                    }
+                }
+            }
+        }
+        if (!pending.isEmpty()) {
+            System.out.println(pending.size() + " requests are not complete after " + timeoutMs / 1000 + " seconds: " + pending);
+        }
+        return new ArrayList<List<AwsMachine>>(machines.values());
+    }
+
+    private AwsEntity call(String mName, AwsEntity req) {
+        long start = System.nanoTime();
+        AwsEntity rsp = null;
+        try {
+            rsp = AwsMain.invoke(new AwsImpl(), req, mName);
+        } catch (Exception e) {
+            System.out.println(mName + " failed: " + e);
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        List<Long> lst = latencies.get(mName);
+        if (null == lst) {
+            lst = new ArrayList<Long>();
+            latencies.put(mName, lst);
+            errors.put(mName, 0);
+        }
+        lst.add(millis);
+        if (null == rsp || (null != rsp.getCode() && rsp.getCode() != 0)) {
+            errors.put(mName, errors.get(mName) + 1);
+        }
+        return rsp;
+    }
+
+    private String getReport() {
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("%-24s %8s %8s %8s %8s %8s %8s%n", "Operation", "calls", "errors", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        for (Map.Entry<String, List<Long>> entry : latencies.entrySet()) {
+            List<Long> sorted = new ArrayList<Long>(entry.getValue());
+            Collections.sort(sorted);
+            b.append(String.format("%-24s %8d %8d %8d %8d %8d %8d%n", entry.getKey(), sorted.size(), errors.get(entry.getKey()),
+                                   percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99), sorted.get(sorted.size() - 1)));
+        }
+        return b.toString();
+    }
+
+    private static long percentile(List<Long> sorted, int p) {
+        int index = (int) Math.ceil(p / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    private static String toJson(Object value) throws IOException {
+        return new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(value);
+    }
+
+    private static void write(File f, String content) throws IOException {
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
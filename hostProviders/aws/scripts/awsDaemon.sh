@@ -0,0 +1,69 @@
+#!/bin/sh
+# This script:
+#    - should be called as awsDaemon.sh start|stop|status
+#    - start runs AwsTool.jar in daemon mode in the background, the provider
+#      scripts then send their calls to it instead of starting a new JVM
+#    - the same PROVIDER_NAME, LSF_ENVDIR, PRO_CONF_DIR and PRO_DATA_DIR
+#      environment as ebrokerd must be set
+#    - exit with 0 if calling succeed and 1 otherwise
+#
+action=$1
+scriptDir=`dirname $0`
+homeDir="$(cd "$scriptDir" && cd .. && pwd)"
+
+. "$scriptDir/daemonClient.sh"
+
+case "$action" in
+    start)
+        call_daemon --ping > /dev/null
+        if [ $? -eq 0 ]; then
+            echo "The AWS provider daemon is already running."
+            exit 0
+        fi
+
+        if [[ -n "$JAVA_HOME" ]] && [[ -x "$JAVA_HOME/bin/java" ]];  then
+            _java="$JAVA_HOME/bin/java"
+        elif type -p java >/dev/null 2>&1; then
+            _java=java
+        else
+            echo "Java not installed. AWS provider plugin requires Java version 1.8 or up"
+            exit 1
+        fi
+
+        nohup $_java $SCRIPT_OPTIONS $DAEMON_OPTIONS -Daws-home-dir=$homeDir -jar $homeDir/lib/AwsTool.jar --daemon $homeDir > /dev/null 2>&1 &
+
+        # wait for the daemon to publish its endpoint
+        for i in 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20; do
+            sleep 1
+            call_daemon --ping > /dev/null
+            if [ $? -eq 0 ]; then
+                echo "The AWS provider daemon is started."
+                exit 0
+            fi
+        done
+        echo "The AWS provider daemon did not start, check the provider log file."
+        exit 1
+        ;;
+    stop)
+        call_daemon --stop > /dev/null
+        if [ $? -eq 2 ]; then
+            echo "The AWS provider daemon is not running."
+        else
+            echo "The AWS provider daemon is stopped."
+        fi
+        exit 0
+        ;;
+    status)
+        call_daemon --ping > /dev/null
+        if [ $? -eq 0 ]; then
+            echo "The AWS provider daemon is running."
+            exit 0
+        fi
+        echo "The AWS provider daemon is not running."
+        exit 1
+        ;;
+    *)
+        echo "Usage: awsDaemon.sh start|stop|status"
+        exit 1
+        ;;
+esac
@@ -0,0 +1,84 @@
+#!/bin/sh
+# This script:
+#    - is sourced by the provider scripts, it is not called by ebrokerd
+#    - call_daemon <option> <input.json> sends the call to the AWS provider
+#      daemon started with awsDaemon.sh, if it is running
+#    - returns 2 if the daemon is not running, the caller then runs the
+#      operation in a new JVM
+#    - otherwise returns the exit code of the operation, with its result
+#      in the stdOut
+#    - waits AWS_DAEMON_TIMEOUT seconds (300 by default) for the daemon to
+#      greet the call and again for its result, returns 2 if the greeting
+#      does not come and 1 if the result does not come
+#
+call_daemon() {
+    _opt=$1
+    _inJson=$2
+
+    if [ "$AWS_DAEMON_DISABLE" = "Y" ]; then
+        return 2
+    fi
+
+    _workDir=${PRO_DATA_DIR:-$homeDir/data}
+    _endpoint="$_workDir/${PROVIDER_NAME:-aws}-daemon.port"
+    if [ ! -r "$_endpoint" ]; then
+        return 2
+    fi
+
+    read -r _port _token < "$_endpoint"
+    if [ -z "$_port" ] || [ -z "$_token" ]; then
+        return 2
+    fi
+
+    _timeout=${AWS_DAEMON_TIMEOUT:-300}
+    case "$_timeout" in
+        ''|*[!0-9]*|0) _timeout=300 ;;
+    esac
+
+    _len=0
+    if [ -n "$_inJson" ] && [ -r "$_inJson" ]; then
+        _len=$(wc -c < "$_inJson")
+    fi
+
+    # The daemon greets the client once it is ready to serve the call. Nothing
+    # is sent before that, so the in-process fallback is safe when the
+    # connection cannot be made.
+    _out=$( (
+        exec 3<>"/dev/tcp/127.0.0.1/$_port"
+        read -r -t "$_timeout" _hello <&3
+        if [ "$_hello" != "AWSTOOL READY" ]; then
+            exit 0
+        fi
+        echo "AWSTOOL SENT"
+        printf '%s %s %s\n' "$_token" "$_opt" $_len >&3
+        if [ "$_len" -gt 0 ]; then
+            timeout "$_timeout" cat "$_inJson" >&3 || exit 0
+        fi
+        timeout "$_timeout" cat <&3
+    ) 2>/dev/null )
+
+    case "$_out" in
+        "AWSTOOL SENT"*) ;;
+        *) return 2 ;;
+    esac
+
+    _status=$(printf '%s\n' "$_out" | sed -n 2p)
+    case "$_status" in
+        "AWSTOOL STATUS "*) ;;
+        *)
+            echo "The AWS provider daemon did not complete the $_opt call."
+            return 1
+            ;;
+    esac
+
+    _code=${_status#AWSTOOL STATUS }
+    case "$_code" in
+        ''|*[!0-9]*)
+            echo "The AWS provider daemon returned an invalid status for the $_opt call: $_code"
+            return 1
+            ;;
+    esac
+
+    printf '%s\n' "$_out" | sed 1,2d
+    return $_code
+}
@@ -8,6 +8,14 @@ inJson=$2
 scriptDir=`dirname $0`
 homeDir="$(cd "$scriptDir" && cd .. && pwd)"
 
+# send the call to the AWS provider daemon if it is running
+. "$scriptDir/daemonClient.sh"
+call_daemon --getRequestStatus "$inJson"
+rc=$?
+if [ $rc -ne 2 ]; then
+    exit $rc
+fi
+
 # check if the required Java version is installed
 if [[ -n "$JAVA_HOME" ]] && [[ -x "$JAVA_HOME/bin/java" ]];  then
     #echo found java executable in JAVA_HOME
@@ -0,0 +1,41 @@
+#!/bin/sh
+# This script:
+#    - should be called as runBatch.sh -f batch.json
+#    - batch.json is a json array of the operations to run one after the other
+#      in a single JVM, for example:
+#      [ { "operation": "--getReturnRequests", "input": { ... } },
+#        { "operation": "--getRequestStatus", "input": { ... } } ]
+#    - prints one json line per operation in the stdOut:
+#      { "operation": "getReturnRequests", "code": 0, "output": { ... } }
+#    - exit with 0 if all the operations succeed and 1 otherwise
+#
+inJson=$2
+scriptDir=`dirname $0`
+homeDir="$(cd "$scriptDir" && cd .. && pwd)"
+
+# check if the required Java version is installed
+if [[ -n "$JAVA_HOME" ]] && [[ -x "$JAVA_HOME/bin/java" ]];  then
+    #echo found java executable in JAVA_HOME
+    _java="$JAVA_HOME/bin/java"
+elif type -p java >/dev/null 2>&1; then
+    #echo found java executable in PATH
+    _java=java
+else
+    echo "Java not installed. AWS provider plugin requires Java version 1.8 or up"
+    exit 1
+fi
+
+if ! which bc > /dev/null; then
+   echo -e "Command bc not found! please install \c"
+fi
+ 
+if [[ "$_java" ]]; then
+    version=$("$_java" -version 2>&1 | awk -F '"' '/version/ {print $2}'|cut -f1-2 -d .)
+    #echo version "$version"
+    if (( $(echo "$version < 1.8" |bc -l) )); then
+        echo "Java version error. AWS provider plugin requires Java version 1.8 or up"
+        exit 1
+    fi  
+fi
+
+$_java $SCRIPT_OPTIONS -Daws-home-dir=$homeDir -jar $homeDir/lib/AwsTool.jar --batch $homeDir $inJson
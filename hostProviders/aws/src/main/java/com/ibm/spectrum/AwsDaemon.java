@@ -0,0 +1,320 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazonaws.util.StringUtils;
+import com.ibm.spectrum.aws.AwsImpl;
+import com.ibm.spectrum.aws.IAws;
+import com.ibm.spectrum.aws.client.AWSClient;
+import com.ibm.spectrum.aws.client.AwsMetricsCollector;
+import com.ibm.spectrum.constant.AwsConst;
+import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.util.AwsUtil;
+
+/**
+* @ClassName: AwsDaemon
+* @Description: Long running server mode of the AWS host provider. It keeps the
+* parsed configuration, the EC2 client and AwsImpl loaded and serves the provider
+* operations to the thin script clients (scripts/daemonClient.sh).
+*
+* The daemon listens on the loopback interface only. The port and a random token
+* are published in the work directory, in <providerName>-daemon.port, readable by
+* the owner only. Each connection carries a single operation:
+*
+*    daemon : AWSTOOL READY
+*    client : <token> <option> <input length>
+*    client : <input json>
+*    daemon : AWSTOOL STATUS <exit code>
+*    daemon : <output json>
+*
+* Operations are served one at a time, in the order they are accepted, the same
+* way as the script calls were serialized on the provider db file before.
+* @version 1.0
+*/
+public class AwsDaemon {
+    private static Logger log = LogManager.getLogger(AwsDaemon.class);
+
+    private static final String READY = "AWSTOOL READY";
+
+    private static final String STATUS = "AWSTOOL STATUS ";
+
+    private static final String STOP_OPTION = "--stop";
+
+    private static final String PING_OPTION = "--ping";
+
+    /**
+     * Time to wait for a connected client to send its request
+     */
+    private static final int CLIENT_READ_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * Upper bound of the input json accepted from a client
+     */
+    private static final int MAX_INPUT_SIZE = 64 * 1024 * 1024;
+
+    private final IAws aws = new AwsImpl();
+
+    private final String token = newToken();
+
+    private volatile boolean running = true;
+
+    private File endpointFile;
+
+    /**
+    *
+    * @Title: serve
+    * @Description: Publish the endpoint and serve the operations until a stop request is received
+    * @param @return
+    * @return Integer exit code of the daemon
+    * @throws
+     */
+    public Integer serve() {
+        if (log.isTraceEnabled()) {
+            log.trace("Start in class AwsDaemon in method serve with parameters: ");
+        }
+
+        ServerSocket server = null;
+        try {
+            server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            endpointFile = new File(AwsUtil.getWorkDir(), AwsUtil.getProviderName() + AwsConst.DAEMON_ENDPOINT_FILE_SUFFIX);
+            publishEndpoint(server.getLocalPort());
+
+            final File publishedFile = endpointFile;
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    removeEndpoint(publishedFile);
+                }
+            });
+
+            log.info("AWS provider daemon is listening on " + server.getInetAddress().getHostAddress() + ":" + server.getLocalPort()
+                     + ", endpoint file: " + endpointFile.getAbsolutePath());
+
+            while (running) {
+                Socket client = server.accept();
+                try {
+                    handle(client);
+                } catch(Exception e) {
+                    log.error("Serve client request error.", e);
+                } finally {
+                    try {
+                        client.close();
+                    } catch(IOException e) {
+                        log.debug("Close client socket error: " + e.getMessage());
+                    }
+                }
+            }
+        } catch(Exception e) {
+            log.error("AWS provider daemon error.", e);
+            return 1;
+        } finally {
+            removeEndpoint(endpointFile);
+            if (null != server) {
+                try {
+                    server.close();
+                } catch(IOException e) {
+                    log.debug("Close server socket error: " + e.getMessage());
+                }
+            }
+        }
+
+        log.info("AWS provider daemon stopped.");
+        return 0;
+    }
+
+    /**
+    *
+    * @Title: handle
+    * @Description: Serve a single connection
+    * @param @param client
+    * @return void
+    * @throws IOException
+     */
+    private void handle(Socket client) throws IOException {
+        client.setSoTimeout(CLIENT_READ_TIMEOUT_MILLIS);
+        OutputStream out = client.getOutputStream();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+
+        out.write((READY + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+
+        String header;
+        try {
+            header = readLine(in);
+        } catch(SocketTimeoutException e) {
+            log.warn("Client did not send its request in time, closing the connection.");
+            return;
+        }
+        if (StringUtils.isNullOrEmpty(header)) {
+            // Client closed the connection
+            return;
+        }
+
+        String[] fields = header.trim().split("\\s+");
+        if (fields.length < 2 || !isValidToken(fields[0])) {
+            log.warn("Reject daemon request with an invalid header.");
+            reply(out, 1, "");
+            return;
+        }
+
+        String opt = fields[1];
+        int length = 0;
+        if (fields.length >= 3) {
+            try {
+                length = Integer.parseInt(fields[2]);
+            } catch(NumberFormatException e) {
+                length = -1;
+            }
+        }
+        if (length < 0 || length > MAX_INPUT_SIZE) {
+            log.warn("Reject daemon request with an invalid input length: " + fields[2]);
+            reply(out, 1, "");
+            return;
+        }
+
+        byte[] input = new byte[length];
+        in.readFully(input);
+
+        if (STOP_OPTION.equals(opt)) {
+            log.info("Received stop request.");
+            running = false;
+            reply(out, 0, "{\"message\":\"AWS provider daemon is stopping.\"}");
+            return;
+        }
+
+        if (PING_OPTION.equals(opt)) {
+            reply(out, 0, "{\"message\":\"AWS provider daemon is running.\"}");
+            return;
+        }
+
+        String mName = AwsMain.getMethodName(opt);
+        if (StringUtils.isNullOrEmpty(mName)) {
+            log.warn("Reject daemon request with an unknown operation: " + opt);
+            reply(out, 1, "");
+            return;
+        }
+
+        Integer code = 1;
+        String jsonTxt = "";
+        try {
+            AwsEntity req = null;
+            if (length == 0) {
+                req = new AwsEntity();
+            } else {
+                req = AwsUtil.toObject(new String(input, StandardCharsets.UTF_8), AwsEntity.class);
+            }
+
+            AWSClient.refreshCredentials();
+            AwsEntity rsp = AwsMain.invoke(aws, req, mName);
+            AwsMetricsCollector.save(mName);
+
+            // The client returns the code as the exit code of the operation
+            code = (null == rsp.getCode()) ? Integer.valueOf(1) : rsp.getCode();
+            jsonTxt = AwsUtil.toJsonTxt(rsp);
+        } catch(Throwable e) {
+            log.error("Call service method error: " + mName, e);
+        }
+
+        reply(out, code, jsonTxt);
+    }
+
+    private static void reply(OutputStream out, Integer code, String jsonTxt) throws IOException {
+        StringBuilder b = new StringBuilder();
+        b.append(STATUS).append(code).append("\n").append(jsonTxt).append("\n");
+        out.write(b.toString().getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (line.size() > 1024) {
+                throw new IOException("Daemon request header is too long.");
+            }
+            line.write(c);
+        }
+        if (c == -1 && line.size() == 0) {
+            return null;
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private boolean isValidToken(String candidate) {
+        return MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), candidate.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void publishEndpoint(int port) throws IOException {
+        File tmpFile = new File(endpointFile.getAbsolutePath() + ".tmp");
+        Files.deleteIfExists(tmpFile.toPath());
+        Files.createFile(tmpFile.toPath());
+        try {
+            Files.setPosixFilePermissions(tmpFile.toPath(), PosixFilePermissions.fromString("rw-------"));
+        } catch(UnsupportedOperationException e) {
+            log.warn("Cannot restrict the permissions of the daemon endpoint file: " + e.getMessage());
+        }
+        Files.write(tmpFile.toPath(), (port + " " + token + "\n").getBytes(StandardCharsets.UTF_8));
+        if (!tmpFile.renameTo(endpointFile)) {
+            throw new IOException("Cannot publish the daemon endpoint file " + endpointFile.getAbsolutePath());
+        }
+    }
+
+    private synchronized void removeEndpoint(File f) {
+        if (null == f || !f.exists()) {
+            return;
+        }
+        try {
+            // Another daemon may have been started and published its own endpoint
+            String content = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+            if (content.contains(token)) {
+                f.delete();
+            }
+        } catch(IOException e) {
+            log.debug("Remove daemon endpoint file error: " + e.getMessage());
+        }
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder b = new StringBuilder();
+        for (byte by : bytes) {
+            b.append(String.format("%02x", by));
+        }
+        return b.toString();
+    }
+}
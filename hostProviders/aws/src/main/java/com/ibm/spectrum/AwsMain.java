@@ -33,10 +33,19 @@ import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
 
 import com.amazonaws.util.StringUtils;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.ibm.spectrum.aws.AwsImpl;
 import com.ibm.spectrum.aws.IAws;
+import com.ibm.spectrum.aws.client.AwsMetricsCollector;
+import com.ibm.spectrum.aws.client.AwsRateLimiter;
+import com.ibm.spectrum.constant.AwsConst;
 import com.ibm.spectrum.model.AwsConfig;
 import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.util.AwsLog;
+import com.ibm.spectrum.util.AwsStateStore;
 import com.ibm.spectrum.util.AwsUtil;
 
 /**
@@ -70,7 +79,10 @@ public class AwsMain {
         .append("java -jar AwsTool.jar [-q or --getReturnRequests] [Home Dir] [Json File]").append("\n")
         .append("java -jar AwsTool.jar [-n or --requestMachines] [Home Dir] [Json File]").append("\n")
         .append("java -jar AwsTool.jar [-r or --requestReturnMachines] [Home Dir] [Json File]").append("\n")
-        .append("java -jar AwsTool.jar [-s or --getRequestStatus] [Home Dir] [Json File]");
+        .append("java -jar AwsTool.jar [-s or --getRequestStatus] [Home Dir] [Json File]").append("\n")
+        .append("java -jar AwsTool.jar [--daemon] [Home Dir]").append("\n")
+        .append("java -jar AwsTool.jar [--batch] [Home Dir] [Json File]").append("\n")
+        .append("java -jar AwsTool.jar [--dumpDB] [Home Dir]");
 
         log.info(b.toString());
 
@@ -144,12 +156,7 @@ public class AwsMain {
                 req = AwsUtil.toObject(jf, AwsEntity.class);
             }
 
-            log.info("Call method: [" + mName + "] begin, request: " + req);
-
-            Method m = aws.getClass().getMethod(mName, AwsEntity.class);
-            AwsEntity rsp = (AwsEntity)m.invoke(aws, req);
-
-            log.info("Call method: [" + mName + "] end, response: " + rsp);
+            AwsEntity rsp = invoke(aws, req, mName);
 
             code  = rsp.getCode();
             String jsonTxt = AwsUtil.toJsonTxt(rsp);
@@ -161,6 +168,175 @@ public class AwsMain {
         return code;
     }
 
+    /**
+    *
+    * @Title: invoke
+    * @Description: invoke AWS method on the given implementation, shared by the command line and the daemon.
+    *               The provider status DB changes made by the method are written once when it returns.
+    * @param @param aws
+    * @param @param req
+    * @param @param mName
+    * @param @return
+    * @return AwsEntity
+    * @throws Exception
+     */
+    public static AwsEntity invoke(IAws aws, AwsEntity req, String mName) throws Exception {
+        return invoke(aws, req, mName, true);
+    }
+
+    /**
+    *
+    * @Title: invoke
+    * @Description: invoke AWS method on the given implementation
+    * @param @param aws
+    * @param @param req
+    * @param @param mName
+    * @param @param reload true to read the provider status DB again from the file for the method,
+    *               false to go on with the DB loaded by the previous method of the batch
+    * @param @return
+    * @return AwsEntity
+    * @throws Exception
+     */
+    public static AwsEntity invoke(IAws aws, AwsEntity req, String mName, boolean reload) throws Exception {
+        log.info("Call method: [{}] begin, request: {}", mName, AwsLog.sampled(log, req));
+
+        // Load the provider status DB once for the operation and write it back once at the end
+        if (reload) {
+            AwsStateStore.reset();
+        }
+        AwsEntity rsp = null;
+        boolean saved = false;
+        try {
+            Method m = aws.getClass().getMethod(mName, AwsEntity.class);
+            rsp = (AwsEntity)m.invoke(aws, req);
+        } finally {
+            saved = AwsStateStore.flush();
+        }
+
+        if (!saved && null != rsp) {
+            // The caller must not go on as if the machines of the operation were recorded
+            rsp.setRsp(1, "Failed to save the provider status DB: " + AwsStateStore.getDbFile().getAbsolutePath());
+        }
+
+        log.info("Call method: [{}] end, response: {}", mName, AwsLog.sampled(log, rsp));
+
+        return rsp;
+    }
+
+    /**
+    *
+    * @Title: batch
+    * @Description: Run the operations listed in the batch file one after the other in this process.
+    *               The file is a json array of {"operation": "<option>", "input": {<input json>}},
+    *               the option being any of the single operation options, -q or --getReturnRequests for example.
+    *               The operations share the EC2 client, the parsed templates and the provider status DB,
+    *               which is loaded once for the batch. The changes of each operation are still written
+    *               when it returns, so a later failure of the batch does not lose them.
+    *               One json line is printed per operation, in the order of the file:
+    *               {"operation": "<method>", "code": <exit code>, "output": {<output json>}}
+    * @param @param jf
+    * @param @return
+    * @return Integer 0 if all the operations succeeded, 1 otherwise
+    * @throws
+     */
+    public static Integer batch(File jf) {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode ops = null;
+        try {
+            ops = mapper.readTree(jf);
+        } catch(Exception e) {
+            log.error("Read batch file error: " + jf.getAbsolutePath(), e);
+        }
+        if (null == ops || !ops.isArray()) {
+            System.out.println("The batch file <" + jf.getAbsolutePath() + "> is not a json array of operations.");
+            return 1;
+        }
+
+        log.info("Run batch of " + ops.size() + " operations from " + jf.getAbsolutePath());
+
+        IAws aws = new AwsImpl();
+        Integer code = 0;
+        AwsStateStore.reset();
+        for (JsonNode op : ops) {
+            String opt = op.path("operation").asText();
+            String mName = getMethodName(opt);
+            AwsEntity rsp = null;
+            if (StringUtils.isNullOrEmpty(mName)) {
+                log.error("Unknown operation in the batch: " + opt);
+                rsp = new AwsEntity();
+                rsp.setRsp(1, "Unknown operation: " + opt);
+            } else {
+                try {
+                    JsonNode input = op.get("input");
+                    AwsEntity req = null;
+                    if (null == input || input.isNull()) {
+                        req = new AwsEntity();
+                    } else {
+                        req = mapper.treeToValue(input, AwsEntity.class);
+                    }
+
+                    rsp = invoke(aws, req, mName, false);
+                } catch(Exception e) {
+                    log.error("Call service method error: " + mName, e);
+                }
+                AwsMetricsCollector.save(mName);
+                if (null == rsp) {
+                    rsp = new AwsEntity();
+                    rsp.setRsp(1, "Call service method error: " + mName);
+                }
+            }
+
+            Integer opCode = rsp.getCode();
+            if (null != opCode && opCode != 0) {
+                code = 1;
+            }
+
+            ObjectNode result = mapper.createObjectNode();
+            result.put("operation", StringUtils.isNullOrEmpty(mName) ? opt : mName);
+            result.put("code", opCode);
+            result.set("output", mapper.valueToTree(rsp));
+            try {
+                System.out.println(mapper.writeValueAsString(result));
+            } catch(JsonProcessingException e) {
+                log.error("Change the result of " + mName + " to json text error.", e);
+                code = 1;
+            }
+        }
+
+        return code;
+    }
+
+    /**
+    *
+    * @Title: dumpDB
+    * @Description: Print the provider status DB as json, whatever the format of the DB file
+    * @param @return
+    * @return Integer
+    * @throws
+     */
+    public static Integer dumpDB() {
+        AwsStateStore.reset();
+        File dbFile = AwsStateStore.getDbFile();
+        if (!dbFile.exists()) {
+            System.out.println("The provider status DB <" + dbFile.getAbsolutePath() + "> does not exist.");
+            return 1;
+        }
+
+        AwsEntity ae = AwsStateStore.getEntity();
+        if (null == ae) {
+            System.out.println("The provider status DB <" + dbFile.getAbsolutePath() + "> cannot be parsed, see the provider log file.");
+            return 1;
+        }
+
+        try {
+            System.out.println(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(ae));
+        } catch(JsonProcessingException e) {
+            log.error("Change the provider status DB to json text error.", e);
+            return 1;
+        }
+        return 0;
+    }
+
     /**
     *
     * @Title: main
@@ -270,7 +446,11 @@ public class AwsMain {
             }
 
             String mName = getMethodName(opt);
-            if (StringUtils.isNullOrEmpty(mName)) {
+            boolean daemonMode = AwsConst.DAEMON_OPTION.equals(opt);
+            boolean dumpMode = AwsConst.DUMP_DB_OPTION.equals(opt);
+            boolean batchMode = AwsConst.BATCH_OPTION.equals(opt);
+            if ((StringUtils.isNullOrEmpty(mName) && !daemonMode && !dumpMode && !batchMode)
+                    || (batchMode && null == jf)) {
                 showHelp();
                 System.exit(exitCode);
             }
@@ -308,7 +488,18 @@ public class AwsMain {
             AwsUtil.setConfig(cfg);
             log.debug("Configuration " + cfg.toString());
 
-            exitCode = call(jf, mName);
+            if (daemonMode) {
+                exitCode = new AwsDaemon().serve();
+            } else if (dumpMode) {
+                exitCode = dumpDB();
+            } else if (batchMode) {
+                exitCode = batch(jf);
+            } else {
+                exitCode = call(jf, mName);
+            }
+            AwsMetricsCollector.save(daemonMode ? "daemon" : (batchMode ? "batch" : mName));
+            AwsRateLimiter.logStats();
+            AwsStateStore.awaitCompaction();
             System.exit(exitCode);
         } catch(Throwable e) {
             exitCode = 1;
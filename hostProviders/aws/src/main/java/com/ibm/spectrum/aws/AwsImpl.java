@@ -20,13 +20,22 @@ import java.io.File;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -40,17 +49,24 @@ import com.amazonaws.services.ec2.model.InstanceStateChange;
 import com.amazonaws.services.ec2.model.InstanceStatus;
 import com.amazonaws.services.ec2.model.RequestSpotFleetResult;
 import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.ec2.model.SpotInstanceRequest;
 import com.amazonaws.util.CollectionUtils;
 import com.amazonaws.util.StringUtils;
 import com.ibm.spectrum.aws.client.AWSClient;
+import com.ibm.spectrum.aws.client.AwsTagPlanner;
 import com.ibm.spectrum.constant.AwsConst;
+import com.ibm.spectrum.model.AwsConfig;
 import com.ibm.spectrum.model.AwsEntity;
 import com.ibm.spectrum.model.AwsMachine;
 import com.ibm.spectrum.model.AwsRequest;
 import com.ibm.spectrum.model.AwsTemplate;
 import com.ibm.spectrum.model.AwsUserData;
 import com.ibm.spectrum.model.HostAllocationType;
+import com.ibm.spectrum.util.AwsLog;
+import com.ibm.spectrum.util.AwsMachineIndex;
+import com.ibm.spectrum.util.AwsStateStore;
 import com.ibm.spectrum.util.AwsUtil;
+import com.ibm.spectrum.util.AwsWorkerPool;
 
 /**
  * @ClassName: AwsImpl
@@ -112,12 +128,19 @@ public class AwsImpl implements IAws {
             return rsp;
         }
 
-        log.debug("The templates: " + rsp);
+        log.debug("The templates: {}", AwsLog.sampled(log, rsp));
 
+        List<AwsTemplate> spotTemplates = new ArrayList<AwsTemplate>();
         for (AwsTemplate t : rsp.getTemplates()) {
             if (t.getSpotPrice() != null && t.getSpotPrice() > 0f) {
-                t.setMarketSpotPrice(AWSClient.doCurrentSpotPrice(t));
+                spotTemplates.add(t);
             }
+        }
+        if (!spotTemplates.isEmpty()) {
+            AWSClient.setCurrentSpotPrices(spotTemplates);
+        }
+
+        for (AwsTemplate t : rsp.getTemplates()) {
             if (!StringUtils.isNullOrEmpty(t.getUserData())) {
                 try {
                     userDataStr = t.getUserData().replaceAll(";", "\n");
@@ -130,6 +153,9 @@ public class AwsImpl implements IAws {
 
             }
             //t.hide();
+
+            // Report the VM type and subnets cooling down after a capacity failure
+            t.setCapacityCooldown(AWSClient.getColdCapacity(t));
         }
 
         rsp.setStatus(AwsConst.EBROKERD_STATE_COMPLETE);
@@ -179,7 +205,7 @@ public class AwsImpl implements IAws {
         AwsEntity rsp = new AwsEntity();
         List<AwsRequest> awsRequestList = new ArrayList<AwsRequest>();
         if (log.isDebugEnabled()) {
-            log.debug("Start in class AwsImpl in method getReturnRequests with parameters: req: " + req);
+            log.debug("Start in class AwsImpl in method getReturnRequests with parameters: req: {}", AwsLog.sampled(log, req));
         }
 
         List<AwsMachine> machinesToCheck = req.getMachines();
@@ -203,10 +229,109 @@ public class AwsImpl implements IAws {
 
         // load information from DB and AWS
         AwsEntity provisionStatusDB = AwsUtil.getFromFile();
-        Map<String, Instance> instances = AWSClient.listVM(null, null);
+        Map<String, Instance> instances = null;
+        Set<String> knownInstIds = null;
+        Set<String> liveInstIds = null;
+        if (AWSClient.isListInstancesFiltered()) {
+            // Only the instances in DB and in the caller list are checked
+            knownInstIds = new LinkedHashSet<String>();
+            liveInstIds = new HashSet<String>();
+            if (provisionStatusDB != null && !CollectionUtils.isNullOrEmpty(provisionStatusDB.getReqs())) {
+                for (AwsRequest requestInDB : provisionStatusDB.getReqs()) {
+                    if (CollectionUtils.isNullOrEmpty(requestInDB.getMachines())) {
+                        continue;
+                    }
+                    for (AwsMachine m : requestInDB.getMachines()) {
+                        if (StringUtils.isNullOrEmpty(m.getMachineId())) {
+                            continue;
+                        }
+                        knownInstIds.add(m.getMachineId());
+                        if (AwsConst.LIVE_INSTANCE_STATES.contains(m.getStatus())) {
+                            liveInstIds.add(m.getMachineId());
+                        }
+                    }
+                }
+            }
+            for (String instId : machinesToCheckMap.keySet()) {
+                if (!StringUtils.isNullOrEmpty(instId)) {
+                    knownInstIds.add(instId);
+                }
+            }
+        }
+
+        // The fleets already empty and the spot instance requests of the machines are described
+        // along with the instances, the requests which need them after the status sync are described then
+        Map<String, AWSClient.FleetStatus> describedFleetStatuses = null;
+        Set<String> describedFleetReqIds = new HashSet<String>();
+        Map<String, SpotInstanceRequest> describedSpotInstanceRequests = null;
+        if (AWSClient.isAsyncDescribe() && provisionStatusDB != null && !CollectionUtils.isNullOrEmpty(provisionStatusDB.getReqs())) {
+            final List<AwsRequest> emptyFleetCandidates = new ArrayList<AwsRequest>();
+            List<AwsRequest> spotCandidates = new ArrayList<AwsRequest>();
+            for (AwsRequest requestInDB : provisionStatusDB.getReqs()) {
+                if (StringUtils.isNullOrEmpty(requestInDB.getFleetType())
+                        && !HostAllocationType.Spot.toString().equals(requestInDB.getHostAllocationType())) {
+                    continue;
+                }
+                if (CollectionUtils.isNullOrEmpty(requestInDB.getMachines())) {
+                    if (StringUtils.isNullOrEmpty(requestInDB.getFleetType())
+                            || FleetType.Request.toString().equalsIgnoreCase(requestInDB.getFleetType())) {
+                        emptyFleetCandidates.add(requestInDB);
+                        describedFleetReqIds.add(requestInDB.getReqId());
+                    }
+                } else {
+                    spotCandidates.add(requestInDB);
+                }
+            }
+            final List<String> spotInstanceRequestIds = AWSClient.getSpotInstanceRequestIds(spotCandidates);
+            final Set<String> knownIds = knownInstIds;
+            final Set<String> liveIds = liveInstIds;
+            Callable<Map<String, Instance>> listing = new Callable<Map<String, Instance>>() {
+                @Override
+                public Map<String, Instance> call() {
+                    return listInstances(knownIds, liveIds);
+                }
+            };
+
+            CompletableFuture<Map<String, Instance>> instancesFuture = AwsWorkerPool.supplyAsync(listing);
+            CompletableFuture<Map<String, AWSClient.FleetStatus>> fleetsFuture = AwsWorkerPool.supplyAsync(
+            new Callable<Map<String, AWSClient.FleetStatus>>() {
+                @Override
+                public Map<String, AWSClient.FleetStatus> call() {
+                    return AWSClient.describeFleetStatus(emptyFleetCandidates);
+                }
+            });
+            CompletableFuture<Map<String, SpotInstanceRequest>> spotFuture = AwsWorkerPool.supplyAsync(
+            new Callable<Map<String, SpotInstanceRequest>>() {
+                @Override
+                public Map<String, SpotInstanceRequest> call() {
+                    return AWSClient.describeSpotInstanceRequestsById(spotInstanceRequestIds);
+                }
+            });
+
+            instances = AwsWorkerPool.join(instancesFuture, listing);
+            // Without the results described ahead, the describe calls are made after the status sync
+            describedFleetStatuses = AwsWorkerPool.join(fleetsFuture, new Callable<Map<String, AWSClient.FleetStatus>>() {
+                @Override
+                public Map<String, AWSClient.FleetStatus> call() {
+                    return null;
+                }
+            });
+            if (null == describedFleetStatuses) {
+                describedFleetReqIds.clear();
+            }
+            describedSpotInstanceRequests = AwsWorkerPool.join(spotFuture, new Callable<Map<String, SpotInstanceRequest>>() {
+                @Override
+                public Map<String, SpotInstanceRequest> call() {
+                    return null;
+                }
+            });
+        } else {
+            instances = listInstances(knownInstIds, liveInstIds);
+        }
         List<String> toBeDeletedInstIds = new ArrayList<String>();
 
         List<AwsRequest> requestsToBeChecked = new ArrayList<AwsRequest>();
+        List<AwsRequest> emptyFleetRequests = new ArrayList<AwsRequest>();
         if (provisionStatusDB != null && !CollectionUtils.isNullOrEmpty(provisionStatusDB.getReqs())) {
             List<AwsRequest> reqList = provisionStatusDB.getReqs();
             for (Iterator<AwsRequest> iterReq = reqList.listIterator(); iterReq.hasNext();) {
@@ -301,15 +426,8 @@ public class AwsImpl implements IAws {
                 if (CollectionUtils.isNullOrEmpty(mList)) {
                 	if (!StringUtils.isNullOrEmpty(requestInDB.getFleetType())) {
                 		if (FleetType.Request.toString().equalsIgnoreCase(requestInDB.getFleetType())) {
-                			List<AwsMachine> newlyCreatedMachines = AWSClient.updateEC2FleetStatus(requestInDB, null);
-                			if ((requestInDB.getStatus().equals(AwsConst.EBROKERD_STATE_COMPLETE)
-                					|| requestInDB.getStatus().equals(AwsConst.EBROKERD_STATE_COMPLETE_WITH_ERROR))
-                					&& CollectionUtils.isNullOrEmpty(newlyCreatedMachines)) {
-                				log.debug("EC2 Fleet Request type request <" + requestInDB.getReqId() + "> is empty. Remove it from the DB.");
-                				AWSClient.deleteEC2FleetTemplateForAwsRequest(requestInDB);
-                				iterReq.remove();
-                				requestsToBeChecked.remove(requestInDB);
-                			}
+                			// checked with the other empty fleet requests below
+                			emptyFleetRequests.add(requestInDB);
                 		} else if (FleetType.Instant.toString().equalsIgnoreCase(requestInDB.getFleetType())) {
                 			log.debug("EC2 Fleet Instant type request <" + requestInDB.getReqId() + "> is empty. Remove it from the DB.");
                 			AWSClient.deleteEC2FleetTemplateForAwsRequest(requestInDB);
@@ -317,15 +435,8 @@ public class AwsImpl implements IAws {
                 		}
                 	} else {
                 		if (HostAllocationType.Spot.toString().equals(requestInDB.getHostAllocationType())) {
-                			List<AwsMachine> newlyCreatedMachines = AWSClient.updateSpotFleetStatus(requestInDB);
-                			if ((requestInDB.getStatus().equals(AwsConst.EBROKERD_STATE_COMPLETE)
-                					|| requestInDB.getStatus().equals(AwsConst.EBROKERD_STATE_COMPLETE_WITH_ERROR))
-                					&& CollectionUtils.isNullOrEmpty(newlyCreatedMachines)) {
-                				log.debug("Spot request <" + requestInDB.getReqId() + "> is empty. Remove it from the DB.");
-                				AWSClient.deleteSpotFleetTemplateForAwsRequest(requestInDB);
-                				iterReq.remove();
-                				requestsToBeChecked.remove(requestInDB);
-                			}
+                			// checked with the other empty fleet requests below
+                			emptyFleetRequests.add(requestInDB);
                 		} else {
                 			log.debug(
                 					"On-demand request <" + requestInDB.getReqId() + "> is empty. Remove it from the DB.");
@@ -335,12 +446,54 @@ public class AwsImpl implements IAws {
                 }
             }
 
+            // Remove the empty fleet requests which are complete, their fleets are described at once
+            if (!emptyFleetRequests.isEmpty()) {
+                Map<String, AWSClient.FleetStatus> fleetStatuses = new HashMap<String, AWSClient.FleetStatus>();
+                List<AwsRequest> fleetRequestsToDescribe = new ArrayList<AwsRequest>();
+                for (AwsRequest requestInDB : emptyFleetRequests) {
+                    if (describedFleetReqIds.contains(requestInDB.getReqId())) {
+                        if (describedFleetStatuses.containsKey(requestInDB.getReqId())) {
+                            fleetStatuses.put(requestInDB.getReqId(), describedFleetStatuses.get(requestInDB.getReqId()));
+                        }
+                    } else {
+                        fleetRequestsToDescribe.add(requestInDB);
+                    }
+                }
+                if (!fleetRequestsToDescribe.isEmpty()) {
+                    fleetStatuses.putAll(AWSClient.describeFleetStatus(fleetRequestsToDescribe));
+                }
+                for (AwsRequest requestInDB : emptyFleetRequests) {
+                    List<AwsMachine> newlyCreatedMachines = null;
+                    if (!StringUtils.isNullOrEmpty(requestInDB.getFleetType())) {
+                        newlyCreatedMachines = AWSClient.updateEC2FleetStatus(requestInDB, null, fleetStatuses);
+                    } else {
+                        newlyCreatedMachines = AWSClient.updateSpotFleetStatus(requestInDB, fleetStatuses);
+                    }
+                    if ((AwsConst.EBROKERD_STATE_COMPLETE.equals(requestInDB.getStatus())
+                            || AwsConst.EBROKERD_STATE_COMPLETE_WITH_ERROR.equals(requestInDB.getStatus()))
+                            && CollectionUtils.isNullOrEmpty(newlyCreatedMachines)) {
+                        if (!StringUtils.isNullOrEmpty(requestInDB.getFleetType())) {
+                            log.debug("EC2 Fleet Request type request <" + requestInDB.getReqId() + "> is empty. Remove it from the DB.");
+                            AWSClient.deleteEC2FleetTemplateForAwsRequest(requestInDB);
+                        } else {
+                            log.debug("Spot request <" + requestInDB.getReqId() + "> is empty. Remove it from the DB.");
+                            AWSClient.deleteSpotFleetTemplateForAwsRequest(requestInDB);
+                        }
+                        reqList.remove(requestInDB);
+                        requestsToBeChecked.remove(requestInDB);
+                    }
+                }
+            }
+
+            // Terminate the expired and extra VMs of the warm pools
+            trimWarmPools(reqList, toBeDeletedInstIds);
+
             // Delete the creation timeout VMs
             if (!CollectionUtils.isNullOrEmpty(toBeDeletedInstIds)) {
                 AWSClient.deleteVM(toBeDeletedInstIds, null);
             }
 
-            awsRequestList = AWSClient.retrieveInstancesMarkedForTermination(requestsToBeChecked);
+            awsRequestList = AWSClient.retrieveInstancesMarkedForTermination(requestsToBeChecked, describedSpotInstanceRequests);
 
             // check if any hosts missed in DB
             if (!CollectionUtils.isNullOrEmpty(machinesToCheck)) {
@@ -384,6 +537,20 @@ public class AwsImpl implements IAws {
         return rsp;
     }
 
+    /**
+     * @Title: listInstances
+     * @Description: List the instances checked by getReturnRequests
+     * @param knownInstIds the instances in DB and in the caller list, null to list all the instances
+     * @param liveInstIds the instances not terminated in DB
+     * @return the instances by ID, null if the instances cannot be listed
+     */
+    private static Map<String, Instance> listInstances(Set<String> knownInstIds, Set<String> liveInstIds) {
+        if (null == knownInstIds) {
+            return AWSClient.listVM(null, null);
+        }
+        return AWSClient.listVMFiltered(knownInstIds, liveInstIds, null);
+    }
+
     /**
      * (Non Javadoc)
      * <p>
@@ -461,6 +628,21 @@ public class AwsImpl implements IAws {
             hostAllocationType = HostAllocationType.Spot.toString();
         }       		
 
+        // Start the stopped VMs of the warm pool first, only the missing VMs are launched
+        List<AwsMachine> pooledMachines = new ArrayList<AwsMachine>();
+        if (!fleetRequest && onDemandRequest && getWarmPoolSize(at) > 0) {
+            pooledMachines = startPooledMachines(at, instanceTagVal, vmNum);
+            at.setVmNumber(vmNum - pooledMachines.size());
+        }
+
+        // Skip the subnets where the VM type is cooling down after a capacity failure
+        if (!fleetRequest && at.getVmNumber() > 0 && !AWSClient.excludeColdSubnets(at, rsp)) {
+            if (pooledMachines.isEmpty()) {
+                return rsp;
+            }
+            at.setVmNumber(0);
+        }
+
         String reqId = null;
         List<AwsMachine> mLst = new ArrayList<AwsMachine>();
 
@@ -487,16 +669,31 @@ public class AwsImpl implements IAws {
         	if (onDemandRequest) {
         		Reservation rsv = null;
 
-        		rsv = AWSClient.createVM(at, instanceTagVal, rsp);
+        		if (at.getVmNumber() > 0) {
+        			if (AWSClient.isOnDemandSplit(at)) {
+        				rsv = AWSClient.createVMAcrossSubnets(at, instanceTagVal, rsp);
+        			} else {
+        				rsv = AWSClient.createVM(at, instanceTagVal, rsp);
+        			}
+        		}
 
         		if (null == rsv || CollectionUtils.isNullOrEmpty(rsv.getInstances())) {
-        			return rsp;
+        			if (pooledMachines.isEmpty()) {
+        				return rsp;
+        			}
+        			// Only the VMs of the warm pool are provided
+        			reqId = AwsConst.ON_DEMAND_REQUEST_PREFIX + UUID.randomUUID().toString();
+        		} else {
+        			reqId = rsv.getReservationId();
+        			for (Instance vm : rsv.getInstances()) {
+        				AwsMachine m = AwsUtil.mapAwsInstanceToAwsMachine(
+        						at.getTemplateId(), reqId, vm, instanceTagVal);
+        				mLst.add(m);
+        			}
         		}
 
-        		reqId = rsv.getReservationId();
-        		for (Instance vm : rsv.getInstances()) {
-        			AwsMachine m = AwsUtil.mapAwsInstanceToAwsMachine(
-        					at.getTemplateId(), reqId, vm, instanceTagVal);
+        		for (AwsMachine m : pooledMachines) {
+        			m.setReqId(reqId);
         			mLst.add(m);
         		}
 
@@ -571,13 +768,14 @@ public class AwsImpl implements IAws {
         Map<String, AwsMachine> updatedMachinesMarkedForTerminationMap = new HashMap<String, AwsMachine>();
         Map<String, AwsRequest> requestsMap = new HashMap<String, AwsRequest>();
         String retId = AwsConst.RETURN_REQUEST_PREFIX + UUID.randomUUID().toString();
+        AwsMachineIndex machinesToBeReturnedIndex = new AwsMachineIndex(machinesToBeReturned);
         if (awsEntity == null || CollectionUtils.isNullOrEmpty(awsEntity.getReqs())) {
             log.debug("No requests in local DB.");
         } else {
             for (AwsRequest awsRequest : awsEntity.getReqs()) {
                 if (!CollectionUtils.isNullOrEmpty(awsRequest.getMachines())) {
                     for (AwsMachine awsMachine : awsRequest.getMachines()) {
-                        if (AwsUtil.getMatchingMachineInList(awsMachine, machinesToBeReturned) != null) {
+                        if (machinesToBeReturnedIndex.get(awsMachine) != null) {
                             // Ignore machines that are already being terminated
                             // or have been terminated
                             if (!terminationStates.contains(awsMachine.getStatus())) {
@@ -622,11 +820,12 @@ public class AwsImpl implements IAws {
                             // Removing from the list of machinesToBeReturned
                             // the current machine after being considered for
                             // return.
-                            machinesToBeReturned.remove(awsMachine);
+                            machinesToBeReturnedIndex.remove(awsMachine);
                         }
                     }
                 }
             }
+            machinesToBeReturned = machinesToBeReturnedIndex.values();
         }
 
         // If the machines to be returned list still has values, these machines
@@ -649,9 +848,20 @@ public class AwsImpl implements IAws {
             }
         }
 
+        // Pick the machines kept in the warm pools of their templates instead of terminating them.
+        // The others are terminated first, so that nothing is moved into a pool if the termination fails.
+        Map<String, AwsTemplate> poolTemplates = new HashMap<String, AwsTemplate>();
+        Map<String, List<String>> poolVmIds = selectWarmPoolMachines(machinesMap, requestsMap, poolTemplates);
+        Map<String, AwsMachine> poolCandidatesMap = new HashMap<String, AwsMachine>();
+        for (List<String> vmIds : poolVmIds.values()) {
+            for (String vmId : vmIds) {
+                poolCandidatesMap.put(vmId, machinesMap.remove(vmId));
+            }
+        }
+
         if (!machinesMap.isEmpty()) {
             List<String> vmIdLst = new ArrayList<String>(machinesMap.keySet());
-            log.debug("Deleting the following instances: " + vmIdLst);
+            log.debug("Deleting the following instances: {}", AwsLog.summary(vmIdLst));
             for (String vmID : vmIdLst) {
                 AwsMachine awsMachine = machinesMap.get(vmID);
                 log.debug("[Instance - " + requestsMap.get(vmID).getReqId() + " - " + awsMachine.getReqId() + " - "
@@ -661,25 +871,29 @@ public class AwsImpl implements IAws {
             if (CollectionUtils.isNullOrEmpty(scLst)) {
                 return rsp;
             }
+            markTerminating(scLst, machinesMap, requestsMap, retId);
+        }
 
-            for (InstanceStateChange sc : scLst) {
-                AwsMachine m = machinesMap.get(sc.getInstanceId());
-                AwsRequest matchingRequest = requestsMap.get(sc.getInstanceId());
-                if (m != null) {
-                    m.setRetId(retId);
-                    m.setStatus(sc.getCurrentState().getName());
-                    m.setResult(sc.getCurrentState().getName());
-                    if (AwsConst.markedForTerminationStates.contains(sc.getCurrentState().getName())) {
-                        log.warn("[Instance - " + matchingRequest.getReqId() + " - " + m.getReqId() + " - "
-                                 + m.getMachineId() + "] Machine pending reclaim from AWS side");
-                    } else {
-                        log.debug("[Instance - " + matchingRequest.getReqId() + " - " + m.getReqId() + " - "
-                                  + m.getMachineId() + "] Machine Terminated: " + sc.getCurrentState());
-                    }
+        Map<String, AwsMachine> pooledMachinesMap = stopIntoWarmPool(poolVmIds, poolTemplates, poolCandidatesMap, requestsMap, retId);
+        if (!poolCandidatesMap.isEmpty()) {
+            // The machines which could not be stopped are terminated as the others
+            List<String> vmIdLst = new ArrayList<String>(poolCandidatesMap.keySet());
+            log.debug("Deleting the instances not stopped into the warm pools: {}", AwsLog.summary(vmIdLst));
+            boolean nothingReturned = machinesMap.isEmpty() && pooledMachinesMap.isEmpty();
+            scLst = AWSClient.deleteVM(vmIdLst, nothingReturned ? rsp : null);
+            if (CollectionUtils.isNullOrEmpty(scLst)) {
+                if (nothingReturned) {
+                    return rsp;
                 }
+                log.error("The following instances were neither stopped into the warm pools nor terminated: " + vmIdLst);
+            } else {
+                markTerminating(scLst, poolCandidatesMap, requestsMap, retId);
+                machinesMap.putAll(poolCandidatesMap);
             }
         }
+
         machinesMap.putAll(updatedMachinesMarkedForTerminationMap);
+        machinesMap.putAll(pooledMachinesMap);
         if (machinesMap.size() > 0) {
             // if any machines are terminating
             machinesMap.putAll(terminatedMachinesMap);
@@ -731,27 +945,153 @@ public class AwsImpl implements IAws {
             return rsp;
         }
 
+        // Refresh the fleet requests first, they may add new machines to the requests
+        List<AwsRequest> fReqLst = new ArrayList<AwsRequest>(reqLst.size());
+        Map<String, List<AwsMachine>> newlyCreatedMachinesMap = new HashMap<String, List<AwsMachine>>();
+        Set<String> vmIdSet = new LinkedHashSet<String>();
         for (AwsRequest inReq : reqLst) {
             AwsRequest fReq = AwsUtil.getFromFile(inReq.getReqId());
             if (null == fReq || StringUtils.isNullOrEmpty(fReq.getReqId())) {
                 // mark the request completed as no request in DB
                 inReq.setStatus(AwsConst.EBROKERD_STATE_COMPLETE_WITH_ERROR);
+                fReqLst.add(null);
                 continue;
             }
+            fReqLst.add(fReq);
+        }
 
-            // Update status
-            updateStatus(fReq, inReq, rsp);
-            if (rsp.getStatus() != null && rsp.getStatus().equals(AwsConst.EBROKERD_STATE_ERROR)) {
-                return rsp;
+        // Describe the fleets of all the requests at once
+        List<AwsRequest> fleetReqLst = new ArrayList<AwsRequest>();
+        for (AwsRequest fReq : fReqLst) {
+            if (null != fReq && isFleetStatusRequest(fReq)) {
+                fleetReqLst.add(fReq);
+            }
+        }
+        // The machines already in the requests are listed along with the fleets
+        final List<String> knownVmIds = new ArrayList<String>();
+        final AwsEntity listRsp = new AwsEntity();
+        CompletableFuture<Map<String, Instance>> knownVmsFuture = null;
+        if (AWSClient.isAsyncDescribe() && !fleetReqLst.isEmpty()) {
+            Set<String> knownVmIdSet = new LinkedHashSet<String>();
+            for (AwsRequest fReq : fReqLst) {
+                if (null == fReq || CollectionUtils.isNullOrEmpty(fReq.getMachines())) {
+                    continue;
+                }
+                for (AwsMachine m : fReq.getMachines()) {
+                    if (!StringUtils.isNullOrEmpty(m.getMachineId())) {
+                        knownVmIdSet.add(m.getMachineId());
+                    }
+                }
+            }
+            knownVmIds.addAll(knownVmIdSet);
+            if (!knownVmIds.isEmpty()) {
+                knownVmsFuture = AwsWorkerPool.supplyAsync(new Callable<Map<String, Instance>>() {
+                    @Override
+                    public Map<String, Instance> call() {
+                        return AWSClient.listVM(knownVmIds, listRsp);
+                    }
+                });
+            }
+        }
+        Map<String, AWSClient.FleetStatus> fleetStatuses = AWSClient.describeFleetStatus(fleetReqLst);
+
+        for (int i = 0; i < reqLst.size(); i++) {
+            AwsRequest inReq = reqLst.get(i);
+            AwsRequest fReq = fReqLst.get(i);
+            if (null == fReq) {
+                continue;
+            }
+
+            newlyCreatedMachinesMap.put(fReq.getReqId(), updateFleetStatus(fReq, inReq, rsp, fleetStatuses));
+            for (AwsMachine m : fReq.getMachines()) {
+                if (!StringUtils.isNullOrEmpty(m.getMachineId())) {
+                    vmIdSet.add(m.getMachineId());
+                }
+            }
+        }
+
+        // Describe the machines of all the requests at once
+        Map<String, Instance> vmMap = null;
+        String listError = null;
+        if (vmIdSet.isEmpty()) {
+            vmMap = new HashMap<String, Instance>();
+        } else if (null != knownVmsFuture) {
+            try {
+                Map<String, Instance> knownVms = AwsWorkerPool.join(knownVmsFuture, new Callable<Map<String, Instance>>() {
+                    @Override
+                    public Map<String, Instance> call() {
+                        return AWSClient.listVM(knownVmIds, listRsp);
+                    }
+                });
+                if (null != listRsp.getStatus()) {
+                    rsp.setStatus(listRsp.getStatus());
+                    rsp.setRsp(listRsp.getCode(), listRsp.getMsg());
+                }
+                if (null != knownVms) {
+                    // List the machines the fleets just added
+                    vmMap = new HashMap<String, Instance>(knownVms);
+                    vmIdSet.removeAll(knownVmIds);
+                    if (!vmIdSet.isEmpty()) {
+                        Map<String, Instance> newVms = AWSClient.listVM(new ArrayList<String>(vmIdSet), rsp);
+                        if (null == newVms) {
+                            vmMap = null;
+                        } else {
+                            vmMap.putAll(newVms);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                log.error(e);
+                listError = e.getMessage();
+            }
+        } else {
+            try {
+                vmMap = AWSClient.listVM(new ArrayList<String>(vmIdSet), rsp);
+            } catch (Exception e) {
+                log.error(e);
+                listError = e.getMessage();
+            }
+        }
+        if (rsp.getStatus() != null && rsp.getStatus().equals(AwsConst.EBROKERD_STATE_ERROR)) {
+            return rsp;
+        }
+
+        Map<String, AwsTemplate> templates = null;
+        AwsTagPlanner tagPlanner = new AwsTagPlanner();
+        for (int i = 0; i < reqLst.size(); i++) {
+            AwsRequest inReq = reqLst.get(i);
+            AwsRequest fReq = fReqLst.get(i);
+            if (null == fReq) {
+                continue;
+            }
+
+            if (null != listError) {
+                inReq.setMachines(new ArrayList<AwsMachine>());
+                inReq.setStatus(AwsConst.EBROKERD_STATE_COMPLETE_WITH_ERROR);
+                inReq.setMsg(listError);
+            } else if (null != vmMap) {
+                if (null == templates) {
+                    templates = AwsUtil.getTemplatesFromFile();
+                }
+                // Update status
+                updateStatus(fReq, inReq, newlyCreatedMachinesMap.get(fReq.getReqId()), vmMap, templates.get(fReq.getTemplateId()), tagPlanner);
             }
 
-            // Change to returning format
-            List<AwsMachine> mLst = inReq.getMachines();
-            for (AwsMachine m : mLst) {
-                m.hide();
+            // Change to returning format. The machines are the provider
+            // status DB records, hide the fields on copies of them.
+            List<AwsMachine> mLst = new ArrayList<AwsMachine>();
+            for (AwsMachine m : inReq.getMachines()) {
+                AwsMachine retM = new AwsMachine();
+                retM.update(m);
+                retM.hide();
+                mLst.add(retM);
             }
+            inReq.setMachines(mLst);
         }
 
+        // Tag the machines which just started
+        tagPlanner.apply();
+
         rsp.setStatus(AwsConst.EBROKERD_STATE_COMPLETE);
         if (rsp.getMsg() == null) {
         	rsp.setRsp(0, "");
@@ -764,21 +1104,78 @@ public class AwsImpl implements IAws {
         return rsp;
     }
 
+    /**
+     *
+     * @Title: isFleetStatusRequest
+     * @Description: Whether the status of the request is the status of its EC2 Fleet or Spot Fleet request
+     * @param fReq The request in the DB
+     * @return boolean
+     * @throws
+     */
+    private static boolean isFleetStatusRequest(AwsRequest fReq) {
+        // Request updates for machine termination does not need a spot fleet status update.
+        if (fReq.getReqId().startsWith(AwsConst.RETURN_REQUEST_PREFIX)) {
+            return false;
+        }
+        if (!StringUtils.isNullOrEmpty(fReq.getFleetType())) {
+            return FleetType.Request.toString().equalsIgnoreCase(fReq.getFleetType());
+        }
+        return HostAllocationType.Spot.toString().equals(fReq.getHostAllocationType());
+    }
+
+    /**
+     *
+     * @Title: updateFleetStatus
+     * @Description: Retrieve the latest status of the EC2 Fleet or Spot Fleet request from AWS
+     * and add the machines it created since the last check to the request
+     * @param fReq The request in the DB
+     * @param inReq The request object sent to the service
+     * @param rsp
+     * @param fleetStatuses The fleet statuses described by AWSClient.describeFleetStatus
+     * @return List<AwsMachine> the newly created machines
+     * @throws
+     */
+    public static List<AwsMachine> updateFleetStatus(AwsRequest fReq, AwsRequest inReq, AwsEntity rsp,
+            Map<String, AWSClient.FleetStatus> fleetStatuses) {
+        List<AwsMachine> newlyCreatedMachines = new ArrayList<AwsMachine>();
+        inReq.setReqId(fReq.getReqId());
+        if (!isFleetStatusRequest(fReq)) {
+            return newlyCreatedMachines;
+        }
+
+        // If this is a Spot Fleet Request and the request update is for a create request, call the Spot Fleet APIs to update the status
+        if (!StringUtils.isNullOrEmpty(fReq.getFleetType())) {
+            newlyCreatedMachines = AWSClient.updateEC2FleetStatus(fReq, rsp, fleetStatuses);
+            log.debug("Setting the EC2 Fleet request status: " + fReq.getStatus());
+        } else {
+            // Check the Spot Fleet Request Status
+            newlyCreatedMachines = AWSClient.updateSpotFleetStatus(fReq, fleetStatuses);
+            log.debug("Setting the Spot Fleet request status: " + fReq.getStatus());
+        }
+        log.debug("newlyCreatedMachines: {}", AwsLog.summary(newlyCreatedMachines));
+        return newlyCreatedMachines;
+    }
+
     /**
      *
      * @Title: updateStatus
      * @Description: Performs the following:<br>
-     * 1. Retrieve the latest status from  AWS of the machines attached to the request <br>
+     * 1. Take the latest status from AWS of the machines attached to the request from vmMap <br>
      * 2. Map the status retrieved from AWS to the status used by Ebrokerd <br>
      * 3.Update the status file(AwsUtil.provStatusFile) with the new status
      * @param fReq The current machines request information available in
      *        the system
      * @param inReq The request object sent to the service that needs to
      *        be updated
+     * @param newlyCreatedMachines The machines added by updateFleetStatus
+     * @param vmMap The instances described from AWS, for the machines of all the requests
+     * @param usedTemplate The template of the request
+     * @param tagPlanner The planner of the tags of the machines which just started
      * @return void
      * @throws
      */
-    public static void updateStatus(AwsRequest fReq, AwsRequest inReq, AwsEntity rsp) {
+    public static void updateStatus(AwsRequest fReq, AwsRequest inReq, List<AwsMachine> newlyCreatedMachines,
+                                    Map<String, Instance> vmMap, AwsTemplate usedTemplate, AwsTagPlanner tagPlanner) {
         if (log.isTraceEnabled()) {
             log.trace("Start in class AwsImpl in method updateStatus with parameters: fReq: "
                       + fReq + ", inReq: " + inReq);
@@ -786,54 +1183,16 @@ public class AwsImpl implements IAws {
         boolean statusUpdateForReturnMachine = (inReq.getReqId().startsWith(AwsConst.RETURN_REQUEST_PREFIX));
         boolean statusUpdateForCreateMachine = !statusUpdateForReturnMachine;
 
-        Map<String, Instance> vmMap = null;
-        AwsTemplate usedTemplate = AwsUtil.getTemplateFromFile(fReq.getTemplateId());
-        List<String> vmIdLst = new ArrayList<String>();
-        List<AwsMachine> newlyCreatedMachines = new ArrayList<AwsMachine>();
-        List<Instance> postCreationInstList = new ArrayList<Instance>();
-
-        inReq.setReqId(fReq.getReqId());
         String latestRequestStatus = AwsConst.EBROKERD_STATE_COMPLETE;
-        // If this is a Spot Fleet Request and the request update is for a create request, call the Spot Fleet APIs to update the status
-        //Request updates for machine termination does not need a spot fleet status update.
-        if (statusUpdateForCreateMachine) {
-        	if (!StringUtils.isNullOrEmpty(fReq.getFleetType())) {
-        		if (FleetType.Request.toString().equalsIgnoreCase(fReq.getFleetType())) {
-            		newlyCreatedMachines = AWSClient.updateEC2FleetStatus(fReq, rsp);
-            		latestRequestStatus = fReq.getStatus();
-            		log.debug("Setting the EC2 Fleet request status: " + latestRequestStatus);
-            		log.debug("newlyCreatedMachines: " + newlyCreatedMachines);
-        		}
-        	} else if (HostAllocationType.Spot.toString().equals(fReq.getHostAllocationType())) {
-        		// Check the Spot Fleet Request Status
-        		newlyCreatedMachines = AWSClient.updateSpotFleetStatus(fReq);
-        		latestRequestStatus = fReq.getStatus();
-        		log.debug("Setting the Spot Fleet request status: " + latestRequestStatus);
-        		log.debug("newlyCreatedMachines: " + newlyCreatedMachines);
-        	}
+        if (isFleetStatusRequest(fReq)) {
+            latestRequestStatus = fReq.getStatus();
         }
         List<AwsMachine> machinesListInDB = fReq.getMachines();
-        for (AwsMachine tempMachineInDB : machinesListInDB) {
-            vmIdLst.add(tempMachineInDB.getMachineId());
-        }
-
-        try {
-            vmMap = AWSClient.listVM(vmIdLst, rsp);
-        } catch (Exception e) {
-            log.error(e);
-            inReq.setMachines(new ArrayList<AwsMachine>());
-            inReq.setStatus(AwsConst.EBROKERD_STATE_COMPLETE_WITH_ERROR);
-            inReq.setMsg(e.getMessage());
-            return;
-        }
-
-        if (vmMap == null) {
-            return;
-        }
+        AwsMachineIndex newlyCreatedMachinesIndex = new AwsMachineIndex(newlyCreatedMachines);
 
         String latestMachineStatus = AwsConst.EBROKERD_MACHINE_RESULT_FAIL;
         for (AwsMachine tempMachineInDB : machinesListInDB) {
-            log.debug("Updating the state of the machine: " + tempMachineInDB);
+            log.debug("Updating the state of the machine: {}", tempMachineInDB);
             String tempMachineOldStatus = tempMachineInDB.getStatus();
             Instance correspondingInstanceForTempMachineInDB = vmMap.get(tempMachineInDB.getMachineId());
             //If the machine is not in AWS, set the result depending on the request type
@@ -847,7 +1206,7 @@ public class AwsImpl implements IAws {
                     // a success
                     tempMachineInDB.setResult(AwsConst.EBROKERD_MACHINE_RESULT_SUCCEED);
                 }
-                log.debug("[Instance is null for tempMachineInDB " + tempMachineInDB);
+                log.debug("[Instance is null for tempMachineInDB {}", tempMachineInDB);
                 continue;
             }
 
@@ -871,18 +1230,20 @@ public class AwsImpl implements IAws {
             }
             //If this is a machine newly created during the status check map the
             // parameters retrieved from AWS
-            if(newlyCreatedMachines.contains(tempMachineInDB)
+            if(newlyCreatedMachinesIndex.contains(tempMachineInDB)
                     // Defect#197080, host name and priviate ip may be null when first get the instance.
                     || ( ((!StringUtils.isNullOrEmpty(fReq.getFleetType()) ||
                     		HostAllocationType.Spot.toString().equals(fReq.getHostAllocationType())) && statusUpdateForCreateMachine)
                          && (StringUtils.isNullOrEmpty(tempMachineInDB.getName()) || StringUtils.isNullOrEmpty(tempMachineInDB.getPrivateIpAddress())) )
               ) {
                 tempMachineInDB = AwsUtil.mapAwsInstanceToAwsMachine(usedTemplate.getTemplateId(), fReq.getReqId(),correspondingInstanceForTempMachineInDB, usedTemplate.getInstanceTags(), tempMachineInDB);
-                log.debug("[Instance - " + fReq.getReqId() + "] Machine Created: " + tempMachineInDB);
+                log.debug("[Instance - {}] Machine Created: {}", fReq.getReqId(), tempMachineInDB);
             }
             /*
              * Status from AWS: pending, running, shutting-down, terminated,
              * stopping, stopped Status from LSF: executing, fail, succeed
+             * A machine returned into a warm pool is returned once stopped,
+             * a machine started from a warm pool goes from pending to running.
              */
             if ("pending".equals(latestMachineStatus) || "shutting-down".equals(latestMachineStatus)
                     || "stopping".equals(latestMachineStatus)) {
@@ -912,20 +1273,15 @@ public class AwsImpl implements IAws {
                 latestRequestStatus = AwsConst.EBROKERD_STATE_COMPLETE_WITH_ERROR;
             }
 
-            log.debug("Machine old status: " + tempMachineOldStatus);
-            log.debug("Machine new status: " + latestMachineStatus);
+            log.debug("Machine old status: {}", tempMachineOldStatus);
+            log.debug("Machine new status: {}", latestMachineStatus);
 
             //If the machine's status changed to running, apply the post creation behavior
             if("running".equalsIgnoreCase(latestMachineStatus) && !latestMachineStatus.equalsIgnoreCase(tempMachineOldStatus)) {
-                log.debug("[Instance - " + inReq.getReqId() + " - " + tempMachineInDB.getReqId() + " - " + tempMachineInDB.getMachineId()
-                           +"] Machine is successfully initiated. Ready for post creation behavior..");
-                if (! AwsUtil.getConfig().getTagInstanceID().booleanValue()) {
-                     // Do not need tag "InstanceID", then we can do batch tagging in later applyPostCreationBehaviorForInstanceList
-                     postCreationInstList.add(correspondingInstanceForTempMachineInDB);
-                } else {
-                     // Need tag "InstanceID", tag instance one by one now.
-                     AWSClient.applyPostCreationBehaviorForInstance(fReq, correspondingInstanceForTempMachineInDB, usedTemplate);
-                }
+                log.debug("[Instance - {} - {} - {}] Machine is successfully initiated. Ready for post creation behavior..",
+                          inReq.getReqId(), tempMachineInDB.getReqId(), tempMachineInDB.getMachineId());
+                // The tags of all the machines are created at once by the caller
+                AWSClient.addPostCreationTags(tagPlanner, fReq, correspondingInstanceForTempMachineInDB, usedTemplate);
             }
             tempMachineInDB.setStatus(latestMachineStatus);
             tempMachineInDB.setPublicIpAddress(correspondingInstanceForTempMachineInDB.getPublicIpAddress());
@@ -934,22 +1290,17 @@ public class AwsImpl implements IAws {
             }
 
             tempMachineInDB.setMsg("");
-            log.debug("[Instance - " + fReq.getReqId() + " - " + tempMachineInDB.getReqId() + " - " + tempMachineInDB.getMachineId() +"] Machine Status in AWS: " + tempMachineInDB.getStatus());
-            log.debug("[Instance - " + fReq.getReqId() + " - " + tempMachineInDB.getReqId() + " - " + tempMachineInDB.getMachineId() +"] Machine Result in Ebrokerd: " + tempMachineInDB.getResult());
+            log.debug("[Instance - {} - {} - {}] Machine Status in AWS: {}", fReq.getReqId(), tempMachineInDB.getReqId(), tempMachineInDB.getMachineId(), tempMachineInDB.getStatus());
+            log.debug("[Instance - {} - {} - {}] Machine Result in Ebrokerd: {}", fReq.getReqId(), tempMachineInDB.getReqId(), tempMachineInDB.getMachineId(), tempMachineInDB.getResult());
 
         }
 
-        if ((! AwsUtil.getConfig().getTagInstanceID().booleanValue()) &&
-            (! CollectionUtils.isNullOrEmpty(postCreationInstList))) {
-            AWSClient.applyPostCreationBehaviorForInstanceList(fReq, postCreationInstList, usedTemplate);
-            log.debug("[ Running the post creation flow for instances:" + postCreationInstList.toString());
-        }
         // 'running','complete','complete_with_error'
-        log.debug("Setting the machine list to the response: " + machinesListInDB);
+        log.debug("Setting the machine list to the response: {}", AwsLog.summary(machinesListInDB));
         inReq.setMachines(machinesListInDB);
         inReq.setStatus(latestRequestStatus);
         inReq.setMsg("");
-        log.debug("[Instance - " + fReq.getReqId() + "] Request Status in AWS: " + latestRequestStatus);
+        log.debug("[Instance - {}] Request Status in AWS: {}", fReq.getReqId(), latestRequestStatus);
 
         // update VM record
         updateVmStatus(fReq);
@@ -982,11 +1333,12 @@ public class AwsImpl implements IAws {
         if (null == requestWithNewValues
                 || CollectionUtils.isNullOrEmpty(requestWithNewValues
                         .getMachines())) {
-            log.debug("Request " + requestWithNewValues + " does not have any machines allocated yet.");
+            log.debug("Request {} does not have any machines allocated yet.", requestWithNewValues);
             return;
         }
 
         updatedMachinesList.addAll(requestWithNewValues.getMachines());
+        AwsMachineIndex updatedMachinesIndex = new AwsMachineIndex(updatedMachinesList);
         Map<String, AwsMachine> machinesInDBMap = null;
 
         AwsEntity provisionStatusDB = AwsUtil.getFromFile();
@@ -996,7 +1348,7 @@ public class AwsImpl implements IAws {
             return;
         }
         List<AwsRequest> requestListInDB = provisionStatusDB.getReqs();
-        log.trace("The requests in DB before update: " + requestListInDB);
+        log.trace("The requests in DB before update: {}", requestListInDB);
         for (AwsRequest requestInDB : requestListInDB) {
 
             if(statusUpdateForCreateMachine) {
@@ -1016,12 +1368,10 @@ public class AwsImpl implements IAws {
                             AwsMachine machineToBeUpdated = machinesInDBMap
                                                             .get(machineWithNewValues.getMachineId());
                             machineToBeUpdated.copyValues(machineWithNewValues);
-                            log.debug("Value of machine in updateVm after updating attributes: "
-                                      + machineToBeUpdated);
+                            log.debug("Value of machine in updateVm after updating attributes: {}", machineToBeUpdated);
                         } else {
                             requestInDB.getMachines().add(machineWithNewValues);
-                            log.debug("Value of machine in updateVm after adding new machine: "
-                                      + machineWithNewValues);
+                            log.debug("Value of machine in updateVm after adding new machine: {}", machineWithNewValues);
                         }
 
                     }
@@ -1032,15 +1382,15 @@ public class AwsImpl implements IAws {
                     //Ignore this machine if it is terminated
                     if(!alreadyTerminatedStates.contains(machineInDB.getStatus())) {
                         //Find matching non-terminated machine
-                        AwsMachine matchingMachine = AwsUtil.getMatchingMachineInList(machineInDB,updatedMachinesList);
+                        AwsMachine matchingMachine = updatedMachinesIndex.get(machineInDB);
                         if(matchingMachine!= null) {
-                            log.trace("Value of machine in updateVm before updating attributes: " + machineInDB);
+                            log.trace("Value of machine in updateVm before updating attributes: {}", machineInDB);
                             machineInDB.copyValues(matchingMachine);
-                            log.trace("Value of machine in updateVm after updating attributes: " + machineInDB);
+                            log.trace("Value of machine in updateVm after updating attributes: {}", machineInDB);
                             //Remove the current machine from the update machine list since its values are copied to the DB object
-                            updatedMachinesList.remove(matchingMachine);
+                            updatedMachinesIndex.remove(matchingMachine);
                         }
-                        if(updatedMachinesList.isEmpty()) {
+                        if(updatedMachinesIndex.isEmpty()) {
                             log.trace("All machines have been save to the DB object");
                             break;
                         }
@@ -1060,4 +1410,311 @@ public class AwsImpl implements IAws {
             log.trace("End in class AwsImpl in method updateVmStatus with return: void: ");
         }
     }
+
+    /**
+     * @Title: markTerminating
+     * @Description: Record the return ID and the state of the VMs whose termination was requested
+     * @param scLst state changes of the terminated VMs
+     * @param machinesMap VMs terminated
+     * @param requestsMap requests of the VMs terminated
+     * @param retId
+     */
+    private static void markTerminating(List<InstanceStateChange> scLst, Map<String, AwsMachine> machinesMap,
+                                        Map<String, AwsRequest> requestsMap, String retId) {
+        for (InstanceStateChange sc : scLst) {
+            AwsMachine m = machinesMap.get(sc.getInstanceId());
+            AwsRequest matchingRequest = requestsMap.get(sc.getInstanceId());
+            if (m != null) {
+                m.setRetId(retId);
+                m.setStatus(sc.getCurrentState().getName());
+                m.setResult(sc.getCurrentState().getName());
+                if (AwsConst.markedForTerminationStates.contains(sc.getCurrentState().getName())) {
+                    log.warn("[Instance - " + matchingRequest.getReqId() + " - " + m.getReqId() + " - "
+                             + m.getMachineId() + "] Machine pending reclaim from AWS side");
+                } else {
+                    log.debug("[Instance - " + matchingRequest.getReqId() + " - " + m.getReqId() + " - "
+                              + m.getMachineId() + "] Machine Terminated: " + sc.getCurrentState());
+                }
+            }
+        }
+    }
+
+    /**
+     * @Title: getWarmPoolSize
+     * @Description: Maximum number of stopped VMs kept in the warm pool of a template
+     * @param t
+     * @return 0 if the template has no warm pool
+     */
+    private static int getWarmPoolSize(AwsTemplate t) {
+        if (null == t || null == t.getWarmPoolSize() || t.getWarmPoolSize().intValue() < 0) {
+            return 0;
+        }
+        return t.getWarmPoolSize().intValue();
+    }
+
+    /**
+     * @return number of seconds a VM is kept stopped in a warm pool
+     */
+    private static long getWarmPoolTtl() {
+        AwsConfig config = AwsUtil.getConfig();
+        if (null != config && null != config.getWarmPoolTtl() && config.getWarmPoolTtl().intValue() >= 0) {
+            return config.getWarmPoolTtl().intValue();
+        }
+        return AwsConst.WARM_POOL_TTL_SECONDS;
+    }
+
+    private static boolean isWarmPoolRequest(AwsRequest awsRequest) {
+        return null != awsRequest.getReqId() && awsRequest.getReqId().startsWith(AwsConst.WARM_POOL_REQUEST_PREFIX);
+    }
+
+    /**
+     * @Title: selectWarmPoolMachines
+     * @Description: Select the returned on-demand VMs whose template has a warm pool with room left, to be stopped
+     *               instead of terminated. Nothing is changed until stopIntoWarmPool is called.
+     * @param machinesMap VMs to be terminated
+     * @param requestsMap requests of the VMs to be terminated
+     * @param poolTemplates set to the templates of the selected VMs by template ID
+     * @return the IDs of the VMs to stop by template ID
+     */
+    private Map<String, List<String>> selectWarmPoolMachines(Map<String, AwsMachine> machinesMap, Map<String, AwsRequest> requestsMap,
+            Map<String, AwsTemplate> poolTemplates) {
+        Map<String, List<String>> vmIdsByTemplate = new LinkedHashMap<String, List<String>>();
+        if (machinesMap.isEmpty()) {
+            return vmIdsByTemplate;
+        }
+
+        Map<String, AwsTemplate> templates = AwsUtil.getTemplatesFromFile();
+        Map<String, Integer> poolRooms = new HashMap<String, Integer>();
+        for (Map.Entry<String, AwsMachine> entry : machinesMap.entrySet()) {
+            AwsMachine m = entry.getValue();
+            AwsRequest awsRequest = requestsMap.get(entry.getKey());
+            if (null == awsRequest || isWarmPoolRequest(awsRequest)
+                    || !StringUtils.isNullOrEmpty(awsRequest.getFleetType())
+                    || HostAllocationType.Spot.toString().equals(awsRequest.getHostAllocationType())
+                    || HostAllocationType.Spot.equals(m.getLifeCycleType())
+                    || !"running".equals(m.getStatus())) {
+                continue;
+            }
+
+            String templateId = StringUtils.isNullOrEmpty(awsRequest.getTemplateId()) ? m.getTemplate() : awsRequest.getTemplateId();
+            AwsTemplate t = (null == templates) ? null : templates.get(templateId);
+            int poolSize = getWarmPoolSize(t);
+            if (poolSize <= 0) {
+                continue;
+            }
+
+            List<String> vmIds = vmIdsByTemplate.get(templateId);
+            if (null == vmIds) {
+                vmIds = new ArrayList<String>();
+                vmIdsByTemplate.put(templateId, vmIds);
+                poolTemplates.put(templateId, t);
+            }
+
+            // Count the VMs already in the pool once per template
+            Integer room = poolRooms.get(templateId);
+            if (null == room) {
+                int pooled = 0;
+                AwsRequest pool = AwsUtil.getFromFile(AwsConst.WARM_POOL_REQUEST_PREFIX + templateId);
+                if (null != pool && null != pool.getMachines()) {
+                    for (AwsMachine pm : pool.getMachines()) {
+                        if ("stopped".equals(pm.getStatus()) || "stopping".equals(pm.getStatus())) {
+                            pooled++;
+                        }
+                    }
+                }
+                room = Integer.valueOf(poolSize - pooled);
+                poolRooms.put(templateId, room);
+            }
+            if (vmIds.size() < room.intValue()) {
+                vmIds.add(entry.getKey());
+            }
+        }
+        return vmIdsByTemplate;
+    }
+
+    /**
+     * @Title: stopIntoWarmPool
+     * @Description: Stop the VMs selected for the warm pools of their templates. The VMs stopping are moved from
+     *               their request to the pool request of their template, pool-<templateId>, and removed from the
+     *               selected VMs, the VMs left there could not be stopped.
+     * @param vmIdsByTemplate IDs of the VMs to stop by template ID
+     * @param poolTemplates templates of the VMs to stop by template ID, as selected
+     * @param machinesMap VMs to stop
+     * @param requestsMap requests of the VMs to stop
+     * @param retId
+     * @return the VMs stopping into the warm pools
+     */
+    private Map<String, AwsMachine> stopIntoWarmPool(Map<String, List<String>> vmIdsByTemplate, Map<String, AwsTemplate> poolTemplates,
+            Map<String, AwsMachine> machinesMap, Map<String, AwsRequest> requestsMap, String retId) {
+        Map<String, AwsMachine> pooledMachinesMap = new HashMap<String, AwsMachine>();
+        if (machinesMap.isEmpty()) {
+            return pooledMachinesMap;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, List<String>> entry : vmIdsByTemplate.entrySet()) {
+            String templateId = entry.getKey();
+            AwsTemplate t = poolTemplates.get(templateId);
+            if (entry.getValue().isEmpty() || null == t) {
+                // The VMs left in machinesMap are terminated by the caller
+                continue;
+            }
+
+            boolean hibernate = Boolean.TRUE.equals(t.getWarmPoolHibernate());
+            log.debug("Stopping the following instances into the warm pool of template <" + templateId + ">: " + entry.getValue());
+            List<InstanceStateChange> scLst = AWSClient.stopVM(entry.getValue(), hibernate);
+            if (scLst.isEmpty()) {
+                continue;
+            }
+
+            String poolId = AwsConst.WARM_POOL_REQUEST_PREFIX + templateId;
+            AwsRequest pool = AwsUtil.getFromFile(poolId);
+            if (null == pool) {
+                pool = new AwsRequest();
+                pool.setReqId(poolId);
+                pool.setTemplateId(templateId);
+                pool.setHostAllocationType(HostAllocationType.OnDemand.toString());
+                pool.setMachines(new ArrayList<AwsMachine>());
+                pool.setTime(now);
+            }
+
+            // The VMs leaving each request, removed from its machine list at once
+            Map<AwsRequest, Set<AwsMachine>> movedMachines = new IdentityHashMap<AwsRequest, Set<AwsMachine>>();
+            for (InstanceStateChange sc : scLst) {
+                AwsMachine m = machinesMap.remove(sc.getInstanceId());
+                if (null == m) {
+                    continue;
+                }
+                AwsRequest awsRequest = requestsMap.get(sc.getInstanceId());
+                Set<AwsMachine> moved = movedMachines.get(awsRequest);
+                if (null == moved) {
+                    moved = Collections.newSetFromMap(new IdentityHashMap<AwsMachine, Boolean>());
+                    movedMachines.put(awsRequest, moved);
+                }
+                moved.add(m);
+                m.setRetId(retId);
+                m.setStatus(sc.getCurrentState().getName());
+                m.setResult(sc.getCurrentState().getName());
+                m.setPooledTime(now);
+                pooledMachinesMap.put(m.getMachineId(), m);
+                log.debug("[Instance - " + awsRequest.getReqId() + " - " + m.getReqId() + " - "
+                          + m.getMachineId() + "] Machine stopped into the warm pool: " + sc.getCurrentState());
+            }
+
+            for (Map.Entry<AwsRequest, Set<AwsMachine>> moved : movedMachines.entrySet()) {
+                AwsStateStore.removeMachines(moved.getKey(), moved.getValue());
+                pool.getMachines().addAll(moved.getValue());
+            }
+            AwsUtil.saveToFile(pool);
+        }
+
+        return pooledMachinesMap;
+    }
+
+    /**
+     * @Title: startPooledMachines
+     * @Description: Start up to vmNum stopped VMs of the warm pool of the template, kept for the same account.
+     *               The VMs starting are removed from the pool request, the caller adds them to its request.
+     * @param at
+     * @param instanceTagVal
+     * @param vmNum
+     * @return the VMs starting
+     */
+    private List<AwsMachine> startPooledMachines(AwsTemplate at, String instanceTagVal, int vmNum) {
+        List<AwsMachine> startedMachines = new ArrayList<AwsMachine>();
+        AwsRequest pool = AwsUtil.getFromFile(AwsConst.WARM_POOL_REQUEST_PREFIX + at.getTemplateId());
+        if (null == pool || CollectionUtils.isNullOrEmpty(pool.getMachines())) {
+            return startedMachines;
+        }
+
+        String account = (null == instanceTagVal) ? "" : instanceTagVal;
+        Map<String, AwsMachine> candidates = new LinkedHashMap<String, AwsMachine>();
+        for (AwsMachine m : pool.getMachines()) {
+            if (candidates.size() >= vmNum) {
+                break;
+            }
+            if ("stopped".equals(m.getStatus()) && account.equals(null == m.getRcAccount() ? "" : m.getRcAccount())) {
+                candidates.put(m.getMachineId(), m);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return startedMachines;
+        }
+
+        log.debug("Starting the following instances of the warm pool of template <" + at.getTemplateId() + ">: " + candidates.keySet());
+        List<InstanceStateChange> scLst = AWSClient.startVM(new ArrayList<String>(candidates.keySet()));
+        long launchtime = System.currentTimeMillis() / 1000;
+        for (InstanceStateChange sc : scLst) {
+            AwsMachine m = candidates.get(sc.getInstanceId());
+            if (null == m) {
+                continue;
+            }
+            pool.getMachines().remove(m);
+            m.setRetId(null);
+            m.setPooledTime(null);
+            m.setMsg("");
+            m.setStatus(sc.getCurrentState().getName());
+            m.setResult(sc.getCurrentState().getName());
+            m.setLaunchtime(launchtime);
+            startedMachines.add(m);
+        }
+
+        if (!startedMachines.isEmpty()) {
+            AwsUtil.saveToFile(AwsUtil.getFromFile());
+        }
+        log.info("Started " + startedMachines.size() + " of " + vmNum + " instances from the warm pool of template <" + at.getTemplateId() + ">");
+        return startedMachines;
+    }
+
+    /**
+     * @Title: trimWarmPools
+     * @Description: Select the VMs to be terminated in the warm pools: the VMs stopped for longer than
+     *               AWS_WARM_POOL_TTL, the oldest VMs above the pool size of the template, and the VMs
+     *               started out of the provider. The terminated VMs are removed from the pools by the
+     *               next status sync, an empty pool request is removed as an empty on-demand request.
+     * @param reqList
+     * @param toBeDeletedInstIds
+     */
+    private void trimWarmPools(List<AwsRequest> reqList, List<String> toBeDeletedInstIds) {
+        Map<String, AwsTemplate> templates = null;
+        long now = System.currentTimeMillis();
+        long ttlMillis = getWarmPoolTtl() * 1000;
+        for (AwsRequest requestInDB : reqList) {
+            if (!isWarmPoolRequest(requestInDB) || CollectionUtils.isNullOrEmpty(requestInDB.getMachines())) {
+                continue;
+            }
+            if (null == templates) {
+                templates = AwsUtil.getTemplatesFromFile();
+            }
+            int poolSize = getWarmPoolSize(null == templates ? null : templates.get(requestInDB.getTemplateId()));
+
+            List<AwsMachine> pooledMachines = new ArrayList<AwsMachine>();
+            for (AwsMachine m : requestInDB.getMachines()) {
+                if ("stopped".equals(m.getStatus()) || "stopping".equals(m.getStatus())) {
+                    if (null == m.getPooledTime() || m.getPooledTime().longValue() + ttlMillis <= now) {
+                        log.debug("Host <" + m.getMachineId() + "> expired in the warm pool <" + requestInDB.getReqId() + ">. Deleting it on AWS...");
+                        toBeDeletedInstIds.add(m.getMachineId());
+                    } else {
+                        pooledMachines.add(m);
+                    }
+                } else if ("pending".equals(m.getStatus()) || "running".equals(m.getStatus())) {
+                    log.warn("Host <" + m.getMachineId() + "> of the warm pool <" + requestInDB.getReqId() + "> is <" + m.getStatus() + ">. Deleting it on AWS...");
+                    toBeDeletedInstIds.add(m.getMachineId());
+                }
+            }
+
+            if (pooledMachines.size() > poolSize) {
+                Collections.sort(pooledMachines, new Comparator<AwsMachine>() {
+                    @Override
+                    public int compare(AwsMachine m1, AwsMachine m2) {
+                        return m1.getPooledTime().compareTo(m2.getPooledTime());
+                    }
+                });
+                for (AwsMachine m : pooledMachines.subList(0, pooledMachines.size() - poolSize)) {
+                    log.debug("Host <" + m.getMachineId() + "> exceeds the size " + poolSize + " of the warm pool <" + requestInDB.getReqId() + ">. Deleting it on AWS...");
+                    toBeDeletedInstIds.add(m.getMachineId());
+                }
+            }
+        }
+    }
 }
@@ -25,8 +25,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.TimeZone;
 import java.util.Collection;
 import java.util.Collections;
@@ -48,10 +53,11 @@ import com.amazonaws.services.ec2.model.ActivityStatus;
 import com.amazonaws.services.ec2.model.BatchState;
 import com.amazonaws.services.ec2.model.CreateFleetRequest;
 import com.amazonaws.services.ec2.model.CreateFleetResult;
+import com.amazonaws.services.ec2.model.FleetLaunchTemplateOverridesRequest;
+import com.amazonaws.services.ec2.model.FleetLaunchTemplateOverrides;
+import com.amazonaws.services.ec2.model.CreateFleetError;
 import com.amazonaws.services.ec2.model.CreateKeyPairRequest;
 import com.amazonaws.services.ec2.model.CreateKeyPairResult;
-import com.amazonaws.services.ec2.model.CreateTagsRequest;
-import com.amazonaws.services.ec2.model.CreateTagsResult;
 import com.amazonaws.services.ec2.model.DescribeInstanceStatusRequest;
 import com.amazonaws.services.ec2.model.DescribeInstanceStatusResult;
 import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
@@ -65,6 +71,7 @@ import com.amazonaws.services.ec2.model.DescribeSpotFleetRequestsResult;
 import com.amazonaws.services.ec2.model.DescribeSpotInstanceRequestsRequest;
 import com.amazonaws.services.ec2.model.DescribeSpotInstanceRequestsResult;
 import com.amazonaws.services.ec2.model.EbsInstanceBlockDevice;
+import com.amazonaws.services.ec2.model.Filter;
 import com.amazonaws.services.ec2.model.FleetActivityStatus;
 import com.amazonaws.services.ec2.model.FleetData;
 import com.amazonaws.services.ec2.model.FleetLaunchTemplateConfig;
@@ -90,6 +97,10 @@ import com.amazonaws.services.ec2.model.SpotFleetRequestConfigData;
 import com.amazonaws.services.ec2.model.SpotInstanceRequest;
 import com.amazonaws.services.ec2.model.SpotInstanceState;
 import com.amazonaws.services.ec2.model.SpotInstanceStatus;
+import com.amazonaws.services.ec2.model.StartInstancesRequest;
+import com.amazonaws.services.ec2.model.StartInstancesResult;
+import com.amazonaws.services.ec2.model.StopInstancesRequest;
+import com.amazonaws.services.ec2.model.StopInstancesResult;
 import com.amazonaws.services.ec2.model.TagSpecification;
 import com.amazonaws.services.ec2.model.TargetCapacitySpecificationRequest;
 import com.amazonaws.services.ec2.model.Tag;
@@ -119,6 +130,7 @@ import com.amazonaws.services.ec2.model.DescribeFleetInstancesRequest;
 import com.amazonaws.services.ec2.model.DescribeFleetInstancesResult;
 import com.amazonaws.services.ec2.model.DescribeFleetsRequest;
 import com.amazonaws.services.ec2.model.DescribeFleetsResult;
+import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.util.CollectionUtils;
 import com.amazonaws.util.StringUtils;
 import com.ibm.spectrum.constant.AwsConst;
@@ -126,8 +138,14 @@ import com.ibm.spectrum.model.AwsMachine;
 import com.ibm.spectrum.model.AwsRequest;
 import com.ibm.spectrum.model.AwsTemplate;
 import com.ibm.spectrum.model.HostAllocationType;
+import com.ibm.spectrum.util.AwsLaunchCache;
+import com.ibm.spectrum.util.AwsLog;
+import com.ibm.spectrum.util.AwsMachineIndex;
+import com.ibm.spectrum.util.AwsTtlCache;
 import com.ibm.spectrum.util.AwsUtil;
+import com.ibm.spectrum.util.AwsWorkerPool;
 import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.model.AwsConfig;
 import com.amazonaws.services.ec2.model.DescribeSpotPriceHistoryRequest;
 import com.amazonaws.services.ec2.model.DescribeSpotPriceHistoryResult;
 import com.amazonaws.services.ec2.model.AllocationStrategy;
@@ -155,6 +173,37 @@ public class AWSClient {
 
     private final static String AWS_TEMP_FILE = "aws_federatedUser_credentials";
 
+    /**
+     * Current spot prices by VM type, availability zone and product
+     */
+    private static AwsTtlCache spotPriceCache = null;
+
+    /**
+     * Availability zone by subnet ID
+     */
+    private static AwsTtlCache subnetZoneCache = null;
+
+    /**
+     * State of the key pairs on cloud by key name, KEY_PAIR_EXISTS or KEY_PAIR_UNAVAILABLE
+     */
+    private static AwsTtlCache keyPairCache = null;
+
+    /**
+     * Capacity failures by VM type and subnet or availability zone, see getCapacityKey
+     */
+    private static AwsTtlCache capacityCache = null;
+
+    /**
+     * Spot instance requests in a final state or not found by ID, see describeSpotInstanceRequests
+     */
+    private static AwsTtlCache spotRequestCache = null;
+
+    private final static String SPOT_REQUEST_NOT_FOUND = "not-found";
+
+    private final static String KEY_PAIR_EXISTS = "exists";
+
+    private final static String KEY_PAIR_UNAVAILABLE = "unavailable";
+
     /**
      *
      * @Title: getEC2Client
@@ -206,52 +255,8 @@ public class AWSClient {
         }
         if (scriptFile != "" && scriptFile != null) {  	// If script file is specified, use STS federated user credentials
             log.info(String.format("Obtaining temporary credentials from script %s", scriptFile));
-            boolean isfileCreatedNow = false;
-
-            try {
-                File file = new File(AwsUtil.getWorkDir()+ "/" + AWS_TEMP_FILE);
-                //If temporary credentials file exists, if not set isFileCreatedNow to true.
-                if (!file.exists()) {
-                    if (file.createNewFile()) {
-                        isfileCreatedNow = true;
-                        log.info("Credential file for federated user is created in " + AwsUtil.getWorkDir());
-                    } else {
-                        log.error("Cannot create credential file for federated user in work directory.");
-                        return null;
-                    }
-                }
-                if (isfileCreatedNow == true || (System.currentTimeMillis() > (file.lastModified() + marginInSeconds * 1000))) {
-                    String s = null;
-                    Process p = Runtime.getRuntime().exec(scriptFile);
-
-                    // read output from the script file
-                    BufferedReader stdInput = new BufferedReader(new InputStreamReader(p.getInputStream()));
-                    BufferedReader stdError = new BufferedReader(new InputStreamReader(p.getErrorStream()));
-
-                    // read the output from the command
-                    BufferedWriter bw = null;
-                    FileWriter fw = null;
-                    fw = new FileWriter(AwsUtil.getWorkDir()+ "/" + AWS_TEMP_FILE);
-                    bw = new BufferedWriter(fw);
-                    while ((s = stdInput.readLine()) != null) {
-                        bw.write(s + "\n");
-                    }
-                    if (bw != null) {
-                        bw.close();
-                    }
-                    if (fw != null) {
-                        fw.close();
-                    }
-
-                    // read the error from the command
-                    while ((s = stdError.readLine()) != null) {
-                        log.debug(s);
-                    }
-
-                }
-            } catch(Exception e) {
-                log.error("Failed to create temporary "+AwsUtil.getProviderName()+" credentials file.", e);
-                throw new AmazonClientException( e);
+            if (!renewTemporaryCredentials(scriptFile, marginInSeconds)) {
+                return null;
             }
 
             try {
@@ -322,6 +327,8 @@ public class AWSClient {
             ec2 = AmazonEC2ClientBuilder.standard()
                     .withCredentials(credsProvider)
                     .withEndpointConfiguration(endPointConfig)
+                    .withClientConfiguration(AwsRateLimiter.getClientConfiguration())
+                    .withMetricsCollector(AwsMetricsCollector.getCollector())
 				    .build();
             log.info("Create client to endpoint: " + endpointURL + ", signing region: " + regionName);
         }
@@ -329,9 +336,12 @@ public class AWSClient {
             ec2 = AmazonEC2ClientBuilder.standard()
                     .withCredentials(credsProvider)
                     .withRegion(regionName)
+                    .withClientConfiguration(AwsRateLimiter.getClientConfiguration())
+                    .withMetricsCollector(AwsMetricsCollector.getCollector())
 				    .build();
             log.info("Create client to region: " + regionName);
         }
+        ec2 = AwsRateLimiter.wrap(ec2);
 
         if (log.isTraceEnabled()) {
             log.trace("End in class AWSClient in method getEC2Client with return: AmazonEC2: " + ec2);
@@ -340,6 +350,99 @@ public class AWSClient {
     }
     
     
+    /**
+     *
+     * @Title: refreshCredentials
+     * @Description: Renew the temporary credentials generated by AWS_CREDENTIAL_SCRIPT when they reach the renew margin.
+     *               The EC2 client is built once, so a long running daemon calls this before each operation.
+     * @param
+     * @return void
+     * @throws
+     */
+    public static synchronized void refreshCredentials() throws AmazonClientException {
+        if (log.isTraceEnabled()) {
+            log.trace("Start in class AWSClient in method refreshCredentials with parameters ");
+        }
+
+        String scriptFile = AwsUtil.getConfig().getAwsCredentialScript();
+        if (StringUtils.isNullOrEmpty(scriptFile) || !new File(scriptFile).exists()) {
+            return;
+        }
+
+        long marginInSeconds = 1770;
+        String margin = AwsUtil.getConfig().getAwsCredentialMargin();
+        if (!StringUtils.isNullOrEmpty(margin)) {
+            marginInSeconds = Integer.parseInt(margin);
+            if (marginInSeconds < 0) {
+                return;
+            }
+        }
+
+        renewTemporaryCredentials(scriptFile, marginInSeconds);
+    }
+
+    /**
+     *
+     * @Title: renewTemporaryCredentials
+     * @Description: Run the credential script when the temporary credentials file is missing or older than the margin
+     * @param scriptFile
+     * @param marginInSeconds
+     * @return boolean false if the temporary credentials file cannot be created
+     * @throws
+     */
+    private static boolean renewTemporaryCredentials(String scriptFile, long marginInSeconds) throws AmazonClientException {
+        boolean isfileCreatedNow = false;
+
+        try {
+            File file = new File(AwsUtil.getWorkDir()+ "/" + AWS_TEMP_FILE);
+            //If temporary credentials file exists, if not set isFileCreatedNow to true.
+            if (!file.exists()) {
+                if (file.createNewFile()) {
+                    isfileCreatedNow = true;
+                    log.info("Credential file for federated user is created in " + AwsUtil.getWorkDir());
+                } else {
+                    log.error("Cannot create credential file for federated user in work directory.");
+                    return false;
+                }
+            }
+            if (isfileCreatedNow == true || (System.currentTimeMillis() > (file.lastModified() + marginInSeconds * 1000))) {
+                String s = null;
+                Process p = Runtime.getRuntime().exec(scriptFile);
+
+                // read output from the script file
+                BufferedReader stdInput = new BufferedReader(new InputStreamReader(p.getInputStream()));
+                BufferedReader stdError = new BufferedReader(new InputStreamReader(p.getErrorStream()));
+
+                // read the output from the command
+                BufferedWriter bw = null;
+                FileWriter fw = null;
+                fw = new FileWriter(AwsUtil.getWorkDir()+ "/" + AWS_TEMP_FILE);
+                bw = new BufferedWriter(fw);
+                while ((s = stdInput.readLine()) != null) {
+                    bw.write(s + "\n");
+                }
+                if (bw != null) {
+                    bw.close();
+                }
+                if (fw != null) {
+                    fw.close();
+                }
+
+                // read the error from the command
+                while ((s = stdError.readLine()) != null) {
+                    log.debug(s);
+                }
+
+            }
+        } catch(Exception e) {
+            log.error("Failed to create temporary "+AwsUtil.getProviderName()+" credentials file.", e);
+            throw new AmazonClientException( e);
+        }
+
+        return true;
+    }
+
+
     /**
      * 
      * @Title: updateFleetLaunchTemplateConfig
@@ -467,12 +570,8 @@ public class AWSClient {
         	//Get request expire time period by parsing requestValidity 
         	AwsUtil.applyDefaultValuesForSpotInstanceTemplate(t);
         	
-        	CreateFleetRequest fleetRequest = new CreateFleetRequest();
-        	//Generate request according to EC2 Fleet configuration file
-        	
-        	//Replace fixed pattern in target capacity specification
-        	String fileContent = AwsUtil.replaceTargetCapacitySpecification(t);
-        	fleetRequest = AwsUtil.toObjectCaseInsensitive(fileContent, CreateFleetRequest.class);
+        	//Generate request according to EC2 Fleet configuration file, with fixed pattern in target capacity specification replaced
+        	CreateFleetRequest fleetRequest = AwsLaunchCache.getFleetRequest(t);
         	
         	//Update target capacity if fixed pattern not specified
         	updateTargetCapacitySpecification(t, fleetRequest);
@@ -497,6 +596,9 @@ public class AWSClient {
         					.withTerminateInstancesWithExpiration(false);
         	}
 
+        	// Leave out the VM types and subnets cooling down after a capacity failure
+        	excludeColdOverrides(fleetRequest);
+
         	// Set user tag string
         	String userTagString = "RC_ACCOUNT=" + tagValue + ";" + t.getInstanceTags();
         	List<TagSpecification> tagSpecifications = createUserTagSpecification(userTagString);
@@ -509,6 +611,7 @@ public class AWSClient {
                 log.trace("Start to call EC2 Fleet API createFleet with request: " + fleetRequest);
             }
         	CreateFleetResult fleetResult = ec2.createFleet(fleetRequest);
+        	recordCapacityFailures(fleetResult);
         	
             if (log.isTraceEnabled()) {
                 log.trace("End in class AWSClient in method createVMByEC2Fleet with return: fleetResult: " + fleetResult);
@@ -526,6 +629,7 @@ public class AWSClient {
             }
             log.error("Create instances error." + ase.getMessage(), ase);
             deleteEC2FleetLaunchTemplate(templateConfigRequestList);
+            invalidateMetadataCache(ase, t);
         } catch (AmazonClientException ace) {
             if (rsp != null) {
                 rsp.setStatus(AwsConst.EBROKERD_STATE_WARNING);
@@ -558,6 +662,19 @@ public class AWSClient {
      * @throws
      */
     public static Reservation createVM(AwsTemplate t, String tagValue, AwsEntity rsp) {
+        return createVM(t, tagValue, rsp, true);
+    }
+
+    /**
+     * @Title: createVM
+     * @Description: create EC2 VM
+     * @param t
+     * @param tagValue
+     * @param rsp
+     * @param withKeyPairCreation false if the key pair of the template was already created by the caller
+     * @return the reservation, null if no instance was created
+     */
+    private static Reservation createVM(AwsTemplate t, String tagValue, AwsEntity rsp, boolean withKeyPairCreation) {
         log.info("Start in class AWSClient in method createVM with parameters: t: " + t + ", tagValue: "
                  + tagValue );
         try {
@@ -620,7 +737,7 @@ public class AWSClient {
             }
 
             // Initialize a default key pair name
-            if (createKeyPair(t.getKeyName(), rsp) == 0) {
+            if (!withKeyPairCreation || createKeyPair(t.getKeyName(), rsp) == 0) {
                 if (!StringUtils.isNullOrEmpty(t.getKeyName())) {
                     req.setKeyName(t.getKeyName());
                 }
@@ -664,7 +781,7 @@ public class AWSClient {
             RunInstancesResult rs = ec2.runInstances(req);
             Reservation rsv = rs.getReservation();
             List<Instance> vmLst = rsv.getInstances();
-            log.debug("The created instances: " + vmLst);
+            log.debug("The created instances: {}", AwsLog.summary(vmLst));
             if (log.isTraceEnabled()) {
                 log.trace("End in class AWSClient in method createVM with return: Reservation: " + rsv);
             }
@@ -680,6 +797,10 @@ public class AWSClient {
                 rsp.setRsp(1, "Request Instance on " + AwsUtil.getProviderName() + " EC2 failed. " + ase.getMessage());
             }
             log.error("Create instances error: " + ase.getErrorType() + " " + ase.getMessage(), ase);
+            invalidateMetadataCache(ase, t);
+            if (getSubnetIds(t).size() == 1) {
+                recordCapacityFailure(ase.getErrorCode(), t.getVmType(), getSubnetIds(t).get(0));
+            }
         } catch (AmazonClientException ace) {
             if (rsp != null) {
                 rsp.setStatus(AwsConst.EBROKERD_STATE_WARNING);
@@ -698,6 +819,160 @@ public class AWSClient {
         return null;
     }
 
+    /**
+     * @Title: isOnDemandSplit
+     * @Description: Whether the on-demand request of the template is split across its subnets, see AWS_ONDEMAND_SPLIT_THRESHOLD
+     * @param t the template, with the requested number of instances
+     * @return
+     */
+    public static boolean isOnDemandSplit(AwsTemplate t) {
+        AwsConfig config = AwsUtil.getConfig();
+        if (null == config || null == config.getOnDemandSplitThreshold() || config.getOnDemandSplitThreshold().intValue() <= 0
+                || null == t.getVmNumber() || t.getVmNumber().intValue() < config.getOnDemandSplitThreshold().intValue()) {
+            return false;
+        }
+        return getSubnetIds(t).size() > 1;
+    }
+
+    private static List<String> getSubnetIds(AwsTemplate t) {
+        List<String> subnetIds = new ArrayList<String>();
+        if (!StringUtils.isNullOrEmpty(t.getSubnetId())) {
+            for (String subnetId : t.getSubnetId().split(",")) {
+                if (!StringUtils.isNullOrEmpty(subnetId.trim()) && !subnetIds.contains(subnetId.trim())) {
+                    subnetIds.add(subnetId.trim());
+                }
+            }
+        }
+        return subnetIds;
+    }
+
+    /**
+     * @Title: createVMAcrossSubnets
+     * @Description: create EC2 VM in all the subnets of the template. The instances are split evenly
+     *               across the subnets and the slices are launched concurrently by createVM. The instances
+     *               a subnet could not provide are asked once more from the subnets which provided all
+     *               of their slice. The instances of all the slices are returned in one reservation,
+     *               with the ID of the first reservation.
+     * @param t
+     * @param tagValue
+     * @param rsp
+     * @return the merged reservation, null if no instance was created
+     */
+    public static Reservation createVMAcrossSubnets(AwsTemplate t, final String tagValue, AwsEntity rsp) {
+        log.info("Start in class AWSClient in method createVMAcrossSubnets with parameters: t: " + t + ", tagValue: "
+                 + tagValue );
+        List<String> subnetIds = getSubnetIds(t);
+        int vmNumber = t.getVmNumber();
+
+        // Create the key pair once, before the slices use it
+        AwsEntity keyPairRsp = new AwsEntity();
+        if (createKeyPair(t.getKeyName(), keyPairRsp) != 0) {
+            if (rsp != null) {
+                rsp.setStatus(AwsConst.EBROKERD_STATE_WARNING);
+                rsp.setRsp(1, "Request Instance on " + AwsUtil.getProviderName() + " EC2 failed. Key pair <" + t.getKeyName()
+                           + "> is not available. " + keyPairRsp.getMsg());
+            }
+            log.error("Key pair <" + t.getKeyName() + "> is not available, no instance is created in the subnets " + subnetIds);
+            return null;
+        }
+
+        List<AwsTemplate> slices = new ArrayList<AwsTemplate>();
+        for (int i = 0; i < subnetIds.size(); i++) {
+            int sliceNumber = vmNumber / subnetIds.size() + (i < vmNumber % subnetIds.size() ? 1 : 0);
+            if (sliceNumber > 0) {
+                slices.add(createSlice(t, subnetIds.get(i), sliceNumber));
+            }
+        }
+
+        List<Reservation> reservations = new ArrayList<Reservation>();
+        List<AwsEntity> sliceRsps = new ArrayList<AwsEntity>();
+        List<Reservation> sliceReservations = createSlices(slices, tagValue, sliceRsps);
+
+        // Ask the missing instances once more from the subnets which provided all of their slice
+        int missing = 0;
+        List<String> fulfilledSubnetIds = new ArrayList<String>();
+        for (int i = 0; i < slices.size(); i++) {
+            Reservation rsv = sliceReservations.get(i);
+            int created = (null == rsv || null == rsv.getInstances()) ? 0 : rsv.getInstances().size();
+            if (created > 0) {
+                reservations.add(rsv);
+            }
+            if (created >= slices.get(i).getVmNumber()) {
+                fulfilledSubnetIds.add(slices.get(i).getSubnetId());
+            } else {
+                missing += slices.get(i).getVmNumber() - created;
+                log.warn("Subnet <" + slices.get(i).getSubnetId() + "> provided " + created + " of " + slices.get(i).getVmNumber() + " instances.");
+            }
+        }
+        if (missing > 0 && !fulfilledSubnetIds.isEmpty()) {
+            log.info("Asking the " + missing + " missing instances from the subnets " + fulfilledSubnetIds);
+            List<AwsTemplate> retrySlices = new ArrayList<AwsTemplate>();
+            for (int i = 0; i < fulfilledSubnetIds.size(); i++) {
+                int sliceNumber = missing / fulfilledSubnetIds.size() + (i < missing % fulfilledSubnetIds.size() ? 1 : 0);
+                if (sliceNumber > 0) {
+                    retrySlices.add(createSlice(t, fulfilledSubnetIds.get(i), sliceNumber));
+                }
+            }
+            for (Reservation rsv : createSlices(retrySlices, tagValue, sliceRsps)) {
+                if (null != rsv && !CollectionUtils.isNullOrEmpty(rsv.getInstances())) {
+                    reservations.add(rsv);
+                }
+            }
+        }
+
+        if (reservations.isEmpty()) {
+            // Report the error of the first slice
+            for (AwsEntity sliceRsp : sliceRsps) {
+                if (null != rsp && null != sliceRsp.getStatus()) {
+                    rsp.setStatus(sliceRsp.getStatus());
+                    rsp.setRsp(sliceRsp.getCode(), sliceRsp.getMsg());
+                    break;
+                }
+            }
+            return null;
+        }
+
+        Reservation first = reservations.get(0);
+        List<Instance> vmLst = new ArrayList<Instance>();
+        for (Reservation rsv : reservations) {
+            vmLst.addAll(rsv.getInstances());
+        }
+        Reservation merged = new Reservation()
+        .withReservationId(first.getReservationId())
+        .withOwnerId(first.getOwnerId())
+        .withRequesterId(first.getRequesterId())
+        .withGroups(first.getGroups())
+        .withInstances(vmLst);
+        log.info("Created " + vmLst.size() + " of " + vmNumber + " instances in " + reservations.size() + " reservations, merged into <"
+                 + merged.getReservationId() + ">");
+        if (log.isTraceEnabled()) {
+            log.trace("End in class AWSClient in method createVMAcrossSubnets with return: Reservation: " + merged);
+        }
+        return merged;
+    }
+
+    private static AwsTemplate createSlice(AwsTemplate t, String subnetId, int vmNumber) {
+        AwsTemplate slice = new AwsTemplate(t);
+        slice.setSubnetId(subnetId);
+        slice.setVmNumber(vmNumber);
+        return slice;
+    }
+
+    private static List<Reservation> createSlices(List<AwsTemplate> slices, final String tagValue, List<AwsEntity> sliceRsps) {
+        List<Callable<Reservation>> launches = new ArrayList<Callable<Reservation>>();
+        for (final AwsTemplate slice : slices) {
+            final AwsEntity sliceRsp = new AwsEntity();
+            sliceRsps.add(sliceRsp);
+            launches.add(new Callable<Reservation>() {
+                @Override
+                public Reservation call() {
+                    return createVM(slice, tagValue, sliceRsp, false);
+                }
+            });
+        }
+        return AwsWorkerPool.invokeAll(launches);
+    }
+
     private static List<Tag> createInstanceTags(String userTagString) {
     	List<Tag> tagsList = new ArrayList<Tag>();
     	
@@ -859,7 +1134,9 @@ public class AWSClient {
 
     /**
      * @Title: deleteCloudVM
-     * @Description: delete instances from cloud in batches to avoid API limits
+     * @Description: delete instances from cloud in batches to avoid API limits. The batches are
+     *               terminated concurrently through the worker pool, a batch failing with
+     *               InvalidInstanceID is bisected to find the instances which do not exist anymore.
      * @param instIdsToDelete
      * @return
      */
@@ -875,42 +1152,31 @@ public class AWSClient {
             return stateChanges;
         }
 
-        AmazonEC2 ec2 = getEC2Client();
+        final AmazonEC2 ec2 = getEC2Client();
 
         // lsf-L3-tracker/issues/1490 - to avoid ResourceCountExceeded error
         // API has a limit on the max instances termination in a single call, process in batches
-        int batchSize = 500; // Conservative batch size to stay well under AWS limits of 1000
-        List<List<String>> batches = new ArrayList<>();
-        
-        for (int i = 0; i < instIdsToDelete.size(); i += batchSize) {
-            batches.add(instIdsToDelete.subList(i, Math.min(i + batchSize, instIdsToDelete.size())));
-        }
-
-        // delete eligible instances in batches
-        for (List<String> batch : batches) {
-            try {
-                TerminateInstancesRequest req = new TerminateInstancesRequest(batch);
-                TerminateInstancesResult rs = ec2.terminateInstances(req);
-                if (rs.getTerminatingInstances() != null) {
-                    log.debug("Add terminated instances to stateChanges: " + rs.getTerminatingInstances());
-                    stateChanges.addAll(rs.getTerminatingInstances());
-                }
-                
-                // Small delay between batches to avoid rate limiting
-                if (batches.size() > 1) {
+        List<Callable<List<InstanceStateChange>>> batches = new ArrayList<Callable<List<InstanceStateChange>>>();
+        for (int i = 0; i < instIdsToDelete.size(); i += AwsConst.TERMINATE_INSTANCES_MAX_IDS) {
+            final List<String> batch = instIdsToDelete.subList(i, Math.min(i + AwsConst.TERMINATE_INSTANCES_MAX_IDS, instIdsToDelete.size()));
+            batches.add(new Callable<List<InstanceStateChange>>() {
+                @Override
+                public List<InstanceStateChange> call() {
+                    List<InstanceStateChange> batchStateChanges = new ArrayList<InstanceStateChange>();
                     try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        log.warn("Batch deletion interrupted between batches");
-                        break;
+                        terminateBatch(ec2, batch, batchStateChanges);
+                    } catch (AmazonServiceException ase) {
+                        log.error("Failed to delete batch of instances: " + batch + ". Error: " + ase.getMessage(), ase);
+                        // Continue with next batch even if one batch fails
                     }
+                    return batchStateChanges;
                 }
-                
-            } catch (AmazonServiceException ase) {
-                log.error("Failed to delete batch of instances: " + batch + ". Error: " + ase.getMessage(), ase);
-                // Continue with next batch even if one batch fails
-            }
+            });
+        }
+
+        // delete eligible instances in batches
+        for (List<InstanceStateChange> batchStateChanges : AwsWorkerPool.invokeAll(batches)) {
+            stateChanges.addAll(batchStateChanges);
         }
 
         if (log.isTraceEnabled()) {
@@ -948,31 +1214,162 @@ public class AWSClient {
 
 
     /**
-     * @Title: deleteVMOneByOne
-     * @Description: delete VM one by one
-     * @param instIdsToDelete
-     * @param
-     * @return List<InstanceStateChange>
-     * @throws
+     * @Title: terminateBatch
+     * @Description: Terminate a batch of instances. If the batch fails with InvalidInstanceID, its two
+     *               halves are terminated separately, down to the single instances not found on cloud,
+     *               which are marked as deleted.
+     * @param ec2
+     * @param batch
+     * @param stateChanges
+     * @throws AmazonServiceException
      */
-    public static List<InstanceStateChange> deleteVMOneByOne(List<String> instIdsToDelete) {
+    private static void terminateBatch(AmazonEC2 ec2, List<String> batch, List<InstanceStateChange> stateChanges) throws AmazonServiceException {
+        try {
+            TerminateInstancesResult rs = ec2.terminateInstances(new TerminateInstancesRequest(batch));
+            if (rs.getTerminatingInstances() != null) {
+                log.debug("Add terminated instances to stateChanges: " + rs.getTerminatingInstances());
+                stateChanges.addAll(rs.getTerminatingInstances());
+            }
+        } catch (AmazonServiceException ase) {
+            if (ase.getErrorCode() == null || !ase.getErrorCode().contains("InvalidInstanceID")) {
+                throw ase;
+            }
+            if (batch.size() == 1) {
+                //Manually mark this instance as deleted
+                addVM2StateChange(batch.get(0), "DELETED", stateChanges);
+                return;
+            }
+            log.warn("Delete instance error, retrying to delete the " + batch.size() + " instances in two halves. " + ase.getMessage());
+            int half = batch.size() / 2;
+            terminateBatch(ec2, batch.subList(0, half), stateChanges);
+            terminateBatch(ec2, batch.subList(half, batch.size()), stateChanges);
+        }
+    }
+
+    /**
+     * @Title: stopVM
+     * @Description: Stop instances to keep them in a warm pool, in batches run concurrently through the
+     *               worker pool. The instances not found on cloud or not in a state to be stopped are
+     *               skipped, and so are the batches failing for another reason.
+     * @param instIds
+     * @param hibernate hibernate the instances, the ones not supporting it are stopped
+     * @return the state changes of the instances stopping
+     */
+    public static List<InstanceStateChange> stopVM(List<String> instIds, final boolean hibernate) {
         List<InstanceStateChange> stateChanges = new ArrayList<InstanceStateChange>();
-        for (String id : instIdsToDelete) {
-            try {
-                List<InstanceStateChange> instaceStateChanges = deleteCloudVM(Collections.singletonList(id));
-                stateChanges.addAll(instaceStateChanges);
-            } catch (AmazonServiceException ase) {
-                if (ase.getErrorCode().contains("InvalidInstanceID")) {
-                    //Manually mark this instance as deleted
-                    addVM2StateChange(id, "DELETED", stateChanges);
-                } else {
-                    log.error("Failed to delete VM [" + id + "]." + ase.getErrorMessage());
+        if (CollectionUtils.isNullOrEmpty(instIds)) {
+            return stateChanges;
+        }
+
+        final AmazonEC2 ec2 = getEC2Client();
+        List<Callable<List<InstanceStateChange>>> batches = new ArrayList<Callable<List<InstanceStateChange>>>();
+        for (int i = 0; i < instIds.size(); i += AwsConst.TERMINATE_INSTANCES_MAX_IDS) {
+            final List<String> batch = instIds.subList(i, Math.min(i + AwsConst.TERMINATE_INSTANCES_MAX_IDS, instIds.size()));
+            batches.add(new Callable<List<InstanceStateChange>>() {
+                @Override
+                public List<InstanceStateChange> call() {
+                    List<InstanceStateChange> batchStateChanges = new ArrayList<InstanceStateChange>();
+                    try {
+                        stopBatch(ec2, batch, hibernate, batchStateChanges);
+                    } catch (AmazonServiceException ase) {
+                        log.error("Failed to stop batch of instances: " + batch + ". Error: " + ase.getMessage(), ase);
+                    }
+                    return batchStateChanges;
                 }
+            });
+        }
+
+        for (List<InstanceStateChange> batchStateChanges : AwsWorkerPool.invokeAll(batches)) {
+            stateChanges.addAll(batchStateChanges);
+        }
+        log.debug("Stopped " + stateChanges.size() + " of " + instIds.size() + " instances, hibernate: " + hibernate);
+        return stateChanges;
+    }
+
+    private static void stopBatch(AmazonEC2 ec2, List<String> batch, boolean hibernate, List<InstanceStateChange> stateChanges) throws AmazonServiceException {
+        try {
+            StopInstancesResult rs = ec2.stopInstances(new StopInstancesRequest(batch).withHibernate(hibernate));
+            if (rs.getStoppingInstances() != null) {
+                stateChanges.addAll(rs.getStoppingInstances());
+            }
+        } catch (AmazonServiceException ase) {
+            String errorCode = ase.getErrorCode();
+            if (hibernate && errorCode != null && errorCode.startsWith("Unsupported")) {
+                log.warn("Cannot hibernate the instances, stopping them. " + ase.getMessage());
+                stopBatch(ec2, batch, false, stateChanges);
+                return;
+            }
+            if (errorCode == null || !(errorCode.contains("InvalidInstanceID") || errorCode.equals("IncorrectInstanceState"))) {
+                throw ase;
             }
-            log.debug("Instance [" + id + "] is being deleted");
+            if (batch.size() == 1) {
+                log.warn("Cannot stop instance <" + batch.get(0) + ">. " + ase.getMessage());
+                return;
+            }
+            int half = batch.size() / 2;
+            stopBatch(ec2, batch.subList(0, half), hibernate, stateChanges);
+            stopBatch(ec2, batch.subList(half, batch.size()), hibernate, stateChanges);
+        }
+    }
+
+    /**
+     * @Title: startVM
+     * @Description: Start stopped instances, in batches run concurrently through the worker pool. The
+     *               instances not found on cloud or not stopped are skipped, and so are the batches failing
+     *               for another reason, like a lack of capacity.
+     * @param instIds
+     * @return the state changes of the instances starting
+     */
+    public static List<InstanceStateChange> startVM(List<String> instIds) {
+        List<InstanceStateChange> stateChanges = new ArrayList<InstanceStateChange>();
+        if (CollectionUtils.isNullOrEmpty(instIds)) {
+            return stateChanges;
+        }
+
+        final AmazonEC2 ec2 = getEC2Client();
+        List<Callable<List<InstanceStateChange>>> batches = new ArrayList<Callable<List<InstanceStateChange>>>();
+        for (int i = 0; i < instIds.size(); i += AwsConst.TERMINATE_INSTANCES_MAX_IDS) {
+            final List<String> batch = instIds.subList(i, Math.min(i + AwsConst.TERMINATE_INSTANCES_MAX_IDS, instIds.size()));
+            batches.add(new Callable<List<InstanceStateChange>>() {
+                @Override
+                public List<InstanceStateChange> call() {
+                    List<InstanceStateChange> batchStateChanges = new ArrayList<InstanceStateChange>();
+                    try {
+                        startBatch(ec2, batch, batchStateChanges);
+                    } catch (AmazonServiceException ase) {
+                        log.error("Failed to start batch of instances: " + batch + ". Error: " + ase.getMessage(), ase);
+                    }
+                    return batchStateChanges;
+                }
+            });
+        }
+
+        for (List<InstanceStateChange> batchStateChanges : AwsWorkerPool.invokeAll(batches)) {
+            stateChanges.addAll(batchStateChanges);
         }
+        log.debug("Started " + stateChanges.size() + " of " + instIds.size() + " instances");
         return stateChanges;
+    }
 
+    private static void startBatch(AmazonEC2 ec2, List<String> batch, List<InstanceStateChange> stateChanges) throws AmazonServiceException {
+        try {
+            StartInstancesResult rs = ec2.startInstances(new StartInstancesRequest(batch));
+            if (rs.getStartingInstances() != null) {
+                stateChanges.addAll(rs.getStartingInstances());
+            }
+        } catch (AmazonServiceException ase) {
+            String errorCode = ase.getErrorCode();
+            if (errorCode == null || !(errorCode.contains("InvalidInstanceID") || errorCode.equals("IncorrectInstanceState"))) {
+                throw ase;
+            }
+            if (batch.size() == 1) {
+                log.warn("Cannot start instance <" + batch.get(0) + ">. " + ase.getMessage());
+                return;
+            }
+            int half = batch.size() / 2;
+            startBatch(ec2, batch.subList(0, half), stateChanges);
+            startBatch(ec2, batch.subList(half, batch.size()), stateChanges);
+        }
     }
 
     /**
@@ -994,21 +1391,7 @@ public class AWSClient {
             log.error("Invalid instance Ids: " + instIdsToDelete);
             return stateChanges;
         }
-        try {
-            stateChanges = deleteCloudVM(instIdsToDelete);
-        } catch (AmazonServiceException ase) {
-            if (ase.getErrorCode().contains("InvalidInstanceID")) {
-                if (instIdsToDelete.size() > 1) {
-                    log.warn("Delete instance error, retrying to delete them one by one. " + ase.getMessage());
-                    stateChanges = deleteVMOneByOne(instIdsToDelete);
-                } else {
-                    //Manually mark this instance as deleted
-                    addVM2StateChange(instIdsToDelete.get(0), "DELETED", stateChanges);
-                }
-            } else {
-                throw new AmazonServiceException(ase.getErrorMessage(), ase);
-            }
-        }
+        stateChanges = deleteCloudVM(instIdsToDelete);
 
         if (log.isTraceEnabled()) {
             log.trace("End in class AWSClient in method deleteVMWithRetry with return: stateChanges: " + stateChanges);
@@ -1273,43 +1656,235 @@ public class AWSClient {
 
 
     /**
-     *
-     * @Title: retrieveSpecificVMFromAllVM
-     * @Description: List all VMs first, then retrieve specific instances listed in instanceIds
+     * @Title: getCloudVMByFilter
+     * @Description: Get VM info from cloud with instance-id filters instead of instance IDs, so that
+     *               unknown IDs are left out of the result instead of failing the call with InvalidInstanceID.
+     *               The IDs are filtered in chunks of AwsConst.DESCRIBE_INSTANCES_FILTER_MAX_VALUES.
      * @param instanceIds
+     * @param states instance states to list, all states if null
      * @return
      */
-    public static Map<String, Instance> retrieveSpecificVMFromAllVM(List<String> instanceIds) {
-
-        Map<String, Instance> tempVmMap = getCloudVM(null);
+    public static Map<String, Instance> getCloudVMByFilter(Collection<String> instanceIds, List<String> states) {
         Map<String, Instance> vmMap = new HashMap<String, Instance>();
+        if (CollectionUtils.isNullOrEmpty(instanceIds)) {
+            return vmMap;
+        }
 
-        for (String id : instanceIds) {
-            Instance inst = tempVmMap.get(id);
-            if (inst != null ) {
-                vmMap.put(id, inst);
-            } else {
-                log.warn("Not get instance info from cloud for [" + id + "], ignoring it");
+        AmazonEC2 ec2 = getEC2Client();
+        List<String> ids = new ArrayList<String>(instanceIds);
+        for (int i = 0; i < ids.size(); i += AwsConst.DESCRIBE_INSTANCES_FILTER_MAX_VALUES) {
+            List<Filter> filters = new ArrayList<Filter>();
+            filters.add(new Filter().withName("instance-id")
+                        .withValues(ids.subList(i, Math.min(i + AwsConst.DESCRIBE_INSTANCES_FILTER_MAX_VALUES, ids.size()))));
+            if (states != null) {
+                filters.add(new Filter().withName("instance-state-name").withValues(states));
             }
+            describeVM(ec2, filters, vmMap);
         }
 
-        log.debug("instanceIds.size: " + instanceIds.size() + ", vmMap.size: " + vmMap.size());
-
         return vmMap;
     }
 
+    /**
+     * @Title: describeVM
+     * @Description: Describe the instances matching the filters page by page, and add them to vmMap
+     * @param ec2
+     * @param filters
+     * @param vmMap
+     */
+    private static void describeVM(AmazonEC2 ec2, List<Filter> filters, Map<String, Instance> vmMap) {
+        DescribeInstancesRequest req = new DescribeInstancesRequest()
+        .withFilters(filters)
+        .withMaxResults(AwsConst.DESCRIBE_INSTANCES_MAX_RESULTS);
+        DescribeInstancesResult rs = null;
+
+        do {
+            rs = ec2.describeInstances(req);
+            if (!CollectionUtils.isNullOrEmpty(rs.getReservations())) {
+                for (Reservation rsv : rs.getReservations()) {
+                    if (CollectionUtils.isNullOrEmpty(rsv.getInstances())) {
+                        continue;
+                    }
+                    for (Instance i : rsv.getInstances()) {
+                        vmMap.put(i.getInstanceId(), i);
+                    }
+                }
+            }
+            req.setNextToken(rs.getNextToken());
+        } while (!StringUtils.isNullOrEmpty(rs.getNextToken()));
+    }
 
     /**
      *
-     * @Title: listVMWithRetry
-     * @Description: List VM by ID with retry logic
-     * @param instanceIds
-     * @return List<Reservation>
-     * @throws AmazonServiceException
+     * @Title: listVMFiltered
+     * @Description: List the instances known by the provider with server side filters instead of
+     *               all instances of the account and region. The live instances among instanceIds are
+     *               listed by instance-id filters, or by sweeping the instances tagged with the provider
+     *               tag key once there are more than AwsConst.DESCRIBE_INSTANCES_TAG_SWEEP_MIN_IDS IDs.
+     *               The expected IDs (live in the provider status DB) which are not listed are described
+     *               again in any state, so that their terminated state is still reported. If more than
+     *               AWS_LIST_INSTANCES_CONSISTENCY_THRESHOLD percent of them are still missing, the
+     *               filtered listing is not trusted and all instances are listed.
+     * @param instanceIds IDs of the instances to list
+     * @param expectedIds IDs of the instances expected to exist on the cloud
+     * @param rsp
+     * @return null if failed
      */
-    public static Map<String, Instance> listVMWithRetry(List<String> instanceIds) throws AmazonServiceException {
+    public static Map<String, Instance> listVMFiltered(Collection<String> instanceIds, Collection<String> expectedIds, AwsEntity rsp) {
 
-        Map<String, Instance> vmMap = null;
+        if (log.isTraceEnabled()) {
+            log.trace("Start in class AWSClient in method listVMFiltered with parameters: instanceIds: "
+                      + instanceIds + ", expectedIds: " + expectedIds);
+        }
+
+        Map<String, Instance> vmMap = new HashMap<String, Instance>();
+        try {
+            Set<String> ids = new LinkedHashSet<String>(instanceIds);
+            if (ids.size() > AwsConst.DESCRIBE_INSTANCES_TAG_SWEEP_MIN_IDS) {
+                List<Filter> filters = new ArrayList<Filter>();
+                filters.add(new Filter().withName("tag-key").withValues(AwsConst.INSTANCE_TAG_ACCOUNT));
+                filters.add(new Filter().withName("instance-state-name").withValues(AwsConst.LIVE_INSTANCE_STATES));
+                describeVM(getEC2Client(), filters, vmMap);
+                // Instances created by EC2 fleets may not be tagged yet, list the rest by ID
+                ids.removeAll(vmMap.keySet());
+                log.debug("Listed " + vmMap.size() + " tagged instances, " + ids.size() + " known instances left to list by ID");
+            }
+            vmMap.putAll(getCloudVMByFilter(ids, AwsConst.LIVE_INSTANCE_STATES));
+
+            Set<String> missingIds = new HashSet<String>();
+            if (expectedIds != null) {
+                for (String id : expectedIds) {
+                    if (!vmMap.containsKey(id)) {
+                        missingIds.add(id);
+                    }
+                }
+            }
+            if (!missingIds.isEmpty()) {
+                vmMap.putAll(getCloudVMByFilter(missingIds, null));
+                missingIds.removeAll(vmMap.keySet());
+                int threshold = getListInstancesConsistencyThreshold();
+                if ((long) missingIds.size() * 100 > (long) expectedIds.size() * threshold) {
+                    log.warn("{} of {} instances in the provider status DB are missing from the filtered listing, listing all instances: {}",
+                             missingIds.size(), expectedIds.size(), AwsLog.summary(missingIds));
+                    vmMap = getCloudVM(null);
+                } else if (!missingIds.isEmpty()) {
+                    log.debug("Instances in the provider status DB not found on the cloud: {}", AwsLog.summary(missingIds));
+                }
+            }
+        } catch (AmazonServiceException ase) {
+            if (rsp != null) {
+                if (isFatalError(ase.getErrorCode())) {
+                    rsp.setStatus(AwsConst.EBROKERD_STATE_ERROR);
+                } else {
+                    rsp.setStatus(AwsConst.EBROKERD_STATE_WARNING);
+                }
+                rsp.setRsp(1, "Failed to list instances: " + ase.getMessage());
+            }
+            log.error("Failed to list instances: " + ase.getErrorMessage(), ase);
+            return null;
+
+        } catch (AmazonClientException ace) {
+            log.error("Failed to list instances: " + ace.getMessage(), ace);
+            return null;
+        }
+
+        if (log.isTraceEnabled()) {
+            log.trace("End in class AWSClient in method listVMFiltered with return: vmMap.size: "
+                      + vmMap.size() + ", vmMap: " + vmMap);
+        }
+
+        return vmMap;
+    }
+
+    /**
+     * @Title: isListInstancesFiltered
+     * @Description: Whether the instances are listed with server side filters, see AWS_LIST_INSTANCES_FILTERED
+     * @return
+     */
+    public static boolean isListInstancesFiltered() {
+        AwsConfig config = AwsUtil.getConfig();
+        return null != config && null != config.isListInstancesFiltered() && config.isListInstancesFiltered().booleanValue();
+    }
+
+    /**
+     * @Title: isAsyncDescribe
+     * @Description: Whether the independent describe calls of an operation are issued concurrently, see AWS_EC2_ASYNC_DESCRIBE
+     * @return
+     */
+    public static boolean isAsyncDescribe() {
+        AwsConfig config = AwsUtil.getConfig();
+        return null != config && null != config.isEc2AsyncDescribe() && config.isEc2AsyncDescribe().booleanValue();
+    }
+
+    private static int getListInstancesConsistencyThreshold() {
+        AwsConfig config = AwsUtil.getConfig();
+        if (null == config || null == config.getListInstancesConsistencyThreshold()
+                || config.getListInstancesConsistencyThreshold().intValue() < 0) {
+            return AwsConst.LIST_INSTANCES_CONSISTENCY_THRESHOLD;
+        }
+        return config.getListInstancesConsistencyThreshold().intValue();
+    }
+
+    /**
+     *
+     * @Title: retrieveSpecificVMFromAllVM
+     * @Description: List all VMs first, then retrieve specific instances listed in instanceIds
+     * @param instanceIds
+     * @return
+     */
+    public static Map<String, Instance> retrieveSpecificVMFromAllVM(List<String> instanceIds) {
+
+        Map<String, Instance> tempVmMap = null;
+        if (isListInstancesFiltered()) {
+            tempVmMap = getCloudVMByFilter(instanceIds, null);
+        } else {
+            tempVmMap = getCloudVM(null);
+        }
+        Map<String, Instance> vmMap = new HashMap<String, Instance>();
+
+        for (String id : instanceIds) {
+            Instance inst = tempVmMap.get(id);
+            if (inst != null ) {
+                vmMap.put(id, inst);
+            } else {
+                log.warn("Not get instance info from cloud for [" + id + "], ignoring it");
+            }
+        }
+
+        log.debug("instanceIds.size: " + instanceIds.size() + ", vmMap.size: " + vmMap.size());
+
+        return vmMap;
+    }
+
+
+    /**
+     *
+     * @Title: listVMWithRetry
+     * @Description: List VM by ID with retry logic. The IDs are described in chunks of
+     *               AwsConst.DESCRIBE_INSTANCES_MAX_IDS, a single request per chunk.
+     * @param instanceIds
+     * @return List<Reservation>
+     * @throws AmazonServiceException
+     */
+    public static Map<String, Instance> listVMWithRetry(List<String> instanceIds) throws AmazonServiceException {
+
+        if (CollectionUtils.isNullOrEmpty(instanceIds) || instanceIds.size() <= AwsConst.DESCRIBE_INSTANCES_MAX_IDS) {
+            return listVMChunkWithRetry(instanceIds);
+        }
+
+        Map<String, Instance> vmMap = new HashMap<String, Instance>();
+        for (int i = 0; i < instanceIds.size(); i += AwsConst.DESCRIBE_INSTANCES_MAX_IDS) {
+            List<String> chunk = instanceIds.subList(i, Math.min(i + AwsConst.DESCRIBE_INSTANCES_MAX_IDS, instanceIds.size()));
+            vmMap.putAll(listVMChunkWithRetry(chunk));
+        }
+        log.debug("Listed " + instanceIds.size() + " instances in chunks, vmMap.size: " + vmMap.size());
+
+        return vmMap;
+    }
+
+    private static Map<String, Instance> listVMChunkWithRetry(List<String> instanceIds) throws AmazonServiceException {
+
+        Map<String, Instance> vmMap = null;
 
         try {
             vmMap = getCloudVM(instanceIds);
@@ -1318,15 +1893,6 @@ public class AWSClient {
                 log.error("Failed to list instances due to InvalidInstanceID error, will retry later: " + ase.getMessage());
                 //Retrieve specified VM info from all VM info
                 vmMap = retrieveSpecificVMFromAllVM(instanceIds);
-            } else if (ase.getErrorCode().contains("RequestLimitExceeded")) {
-                //Retry after 5 seconds
-                log.error("Failed to list instances due to RequestLimitExceeded error, will retry later after 5 seconds: " + ase.getMessage());
-                try {
-                    Thread.sleep(5000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-                vmMap = getCloudVM(instanceIds);
             } else {
                 throw new AmazonServiceException(ase.getErrorMessage(), ase);
             }
@@ -1433,6 +1999,18 @@ public class AWSClient {
 
             // check if the key pair exists
             if (!StringUtils.isNullOrEmpty(keyName)) {
+                String cachedState = getKeyPairCache().get(keyName);
+                if (KEY_PAIR_EXISTS.equals(cachedState)) {
+                    log.debug("The key pair <" + keyName + "> exists on " + AwsUtil.getProviderName() + " (cached).");
+                    return 0;
+                } else if (KEY_PAIR_UNAVAILABLE.equals(cachedState)) {
+                    if (rsp != null) {
+                        rsp.setMsg("createKeyPair() failed recently for key pair <" + keyName + ">, not retried yet.");
+                    }
+                    log.debug("The key pair <" + keyName + "> failed to be created recently, not retried yet (cached).");
+                    return -1;
+                }
+
                 List<String> keyNames = new ArrayList<String>();
                 keyNames.add(keyName);
 
@@ -1440,23 +2018,30 @@ public class AWSClient {
                 if (!CollectionUtils.isNullOrEmpty(keyLst)) {
                     log.debug("The key pair exists on " + AwsUtil.getProviderName()
                               + ": " + keyLst);
+                    putKeyPairCache(keyName, KEY_PAIR_EXISTS, AwsConst.METADATA_CACHE_TTL_SECONDS);
                     return 0;
                 }
 
                 // create a key pair
                 CreateKeyPairRequest req = new CreateKeyPairRequest(keyName);
-                CreateKeyPairResult rs = ec2.createKeyPair(req);
+                CreateKeyPairResult rs = getEC2Client().createKeyPair(req);
                 KeyPair key = rs.getKeyPair();
 
                 log.info("The new key pair <" + key + "> is created and stored at " + keyFile + ".");
 
                 AwsUtil.writeToFile(kf, key.getKeyMaterial());
+                putKeyPairCache(keyName, KEY_PAIR_EXISTS, AwsConst.METADATA_CACHE_TTL_SECONDS);
             }
         } catch (AmazonServiceException ase) {
             if (rsp != null) {
                 rsp.setMsg("createKeyPair() AmazonServiceException: " + ase.getMessage());
             }
             log.error("Key pair create error:" + ase.getMessage());
+            // Do not retry on each request an error which does not go away by itself
+            if (!StringUtils.isNullOrEmpty(keyName)
+                    && !RetryUtils.isRetryableServiceException(ase) && !RetryUtils.isThrottlingException(ase)) {
+                putKeyPairCache(keyName, KEY_PAIR_UNAVAILABLE, AwsConst.METADATA_CACHE_NEGATIVE_TTL_SECONDS);
+            }
             return -1;
         } catch (AmazonClientException ace) {
             if (rsp != null) {
@@ -1475,100 +2060,227 @@ public class AWSClient {
     }
 
 
-    /**
-    *
-    * @Title: tagResources
-    * @Description: tag a list of resourceIds.
-    *         If resources number exceed 500, it will break into several request each with 500 resources.
-    * @param @param resourceIds,tagValue
-    * @param @return
-    * @return void
-    * @throws
-    */
-    public static void tagResources(List<String> resourceIdList,  List<Tag> tagsToBeCreated) {
-        if (log.isTraceEnabled()) {
-            log.trace("Start in class AWSClient in method tagEbsVolumes with parameters: resourceIdList: " + resourceIdList + ", tagsToBeCreated: "
-                      + tagsToBeCreated);
+    private static void putKeyPairCache(String keyName, String state, int ttl) {
+        AwsTtlCache cache = getKeyPairCache();
+        cache.put(keyName, state, ttl);
+        cache.save();
+    }
+
+    private static synchronized AwsTtlCache getKeyPairCache() {
+        if (null == keyPairCache) {
+            int ttl = AwsConst.METADATA_CACHE_TTL_SECONDS;
+            AwsConfig config = AwsUtil.getConfig();
+            if (null != config && null != config.getMetadataCacheTtl() && config.getMetadataCacheTtl().intValue() >= 0) {
+                ttl = config.getMetadataCacheTtl().intValue();
+            }
+            keyPairCache = new AwsTtlCache(AwsConst.KEY_PAIR_CACHE, ttl);
         }
+        return keyPairCache;
+    }
+
+    private static synchronized AwsTtlCache getCapacityCache() {
+        if (null == capacityCache) {
+            int ttl = AwsConst.CAPACITY_COOLDOWN_SECONDS;
+            AwsConfig config = AwsUtil.getConfig();
+            if (null != config && null != config.getCapacityCooldown() && config.getCapacityCooldown().intValue() >= 0) {
+                ttl = config.getCapacityCooldown().intValue();
+            }
+            capacityCache = new AwsTtlCache(AwsConst.CAPACITY_CACHE, ttl);
+        }
+        return capacityCache;
+    }
+
+    /**
+     * @param vmType
+     * @param location subnet ID or availability zone
+     * @return the key of the VM type and location in the capacity cache
+     */
+    private static String getCapacityKey(String vmType, String location) {
+        return vmType + "@" + location;
+    }
 
-        if (CollectionUtils.isNullOrEmpty(resourceIdList)) {
+    /**
+     * @Title: recordCapacityFailure
+     * @Description: Keep the VM type and location cooling down if the error code is a capacity failure, see AWS_CAPACITY_COOLDOWN.
+     *               The capacity failures of RunInstances and of the instant EC2 Fleets are recorded. Those of the Spot
+     *               Fleets are not, see updateSpotFleetStatus.
+     * @param errorCode
+     * @param vmType
+     * @param location subnet ID or availability zone
+     */
+    private static void recordCapacityFailure(String errorCode, String vmType, String location) {
+        if (!AwsConst.CAPACITY_ERROR_CODES.contains(errorCode)
+                || StringUtils.isNullOrEmpty(vmType) || StringUtils.isNullOrEmpty(location)) {
             return;
         }
+        AwsTtlCache cache = getCapacityCache();
+        if (!cache.isEnabled()) {
+            return;
+        }
+        log.warn("VM type <" + vmType + "> has no capacity in <" + location + ">: " + errorCode + ". It is not launched there again for a while.");
+        cache.put(getCapacityKey(vmType, location), errorCode);
+        cache.save();
+    }
 
-        try {
-            /* Refer: https://docs.aws.amazon.com/AWSJavaSDK/latest/javadoc/com/amazonaws/services/ec2/model/CreateTagsRequest.html
-             * CreateTagsRequest:
-             * Constraints: Up to 1000 resource IDs. We recommend breaking up this request into smaller batches.
-            */
-            int MX_RESOURCES_NUM = 500;
-
-            log.trace("Creating tags with resource IDs: " + resourceIdList.toString());
-            log.trace("Creating the following tags: " + tagsToBeCreated);
-
-            List<String> resourceIdsInLoop = new ArrayList<String>();
-            for (String resourceId: resourceIdList) {
-                resourceIdsInLoop.add(resourceId);
-                if (resourceIdsInLoop.size() >= MX_RESOURCES_NUM) {
-                    tagResourcesOneBatch(resourceIdsInLoop, tagsToBeCreated);
-                    resourceIdsInLoop.clear();
-                }
+    private static void recordCapacityFailures(CreateFleetResult fleetResult) {
+        if (null == fleetResult || CollectionUtils.isNullOrEmpty(fleetResult.getErrors())) {
+            return;
+        }
+        for (CreateFleetError error : fleetResult.getErrors()) {
+            if (null == error.getLaunchTemplateAndOverrides() || null == error.getLaunchTemplateAndOverrides().getOverrides()) {
+                continue;
             }
+            FleetLaunchTemplateOverrides overrides = error.getLaunchTemplateAndOverrides().getOverrides();
+            String location = StringUtils.isNullOrEmpty(overrides.getSubnetId()) ? overrides.getAvailabilityZone() : overrides.getSubnetId();
+            recordCapacityFailure(error.getErrorCode(), overrides.getInstanceType(), location);
+        }
+    }
+
+    private static String getCapacityFailure(String vmType, String location) {
+        if (StringUtils.isNullOrEmpty(vmType) || StringUtils.isNullOrEmpty(location)) {
+            return null;
+        }
+        return getCapacityCache().get(getCapacityKey(vmType, location));
+    }
 
-            if (! CollectionUtils.isNullOrEmpty(resourceIdsInLoop)) {
-                tagResourcesOneBatch(resourceIdsInLoop, tagsToBeCreated);
+    /**
+     * @Title: excludeColdSubnets
+     * @Description: Remove from the subnets of the template the subnets where its VM type is cooling down after a
+     *               capacity failure. When all of them are cooling down, the request fails without calling EC2,
+     *               with the InsufficientInstanceCapacity error code, so that ebrokerd tries another template.
+     * @param t
+     * @param rsp
+     * @return false if the VM type is cooling down in all the subnets of the template
+     */
+    public static boolean excludeColdSubnets(AwsTemplate t, AwsEntity rsp) {
+        List<String> subnetIds = getSubnetIds(t);
+        if (subnetIds.isEmpty() || StringUtils.isNullOrEmpty(t.getVmType()) || !getCapacityCache().isEnabled()) {
+            return true;
+        }
+
+        List<String> warmSubnetIds = new ArrayList<String>();
+        for (String subnetId : subnetIds) {
+            if (null == getCapacityFailure(t.getVmType(), subnetId)) {
+                warmSubnetIds.add(subnetId);
             }
+        }
+        if (warmSubnetIds.isEmpty()) {
+            String msg = "VM type <" + t.getVmType() + "> is cooling down after a capacity failure in the subnets <" + t.getSubnetId()
+                         + ">. Error Code: InsufficientInstanceCapacity";
+            log.warn(msg);
+            if (rsp != null) {
+                rsp.setStatus(AwsConst.EBROKERD_STATE_WARNING);
+                rsp.setRsp(1, "Request Instance on " + AwsUtil.getProviderName() + " EC2 failed. " + msg);
+            }
+            return false;
+        }
+        if (warmSubnetIds.size() < subnetIds.size()) {
+            log.info("VM type <" + t.getVmType() + "> is cooling down after a capacity failure in some of the subnets <" + t.getSubnetId()
+                     + ">, using the subnets " + warmSubnetIds);
+            t.setSubnetId(StringUtils.join(",", warmSubnetIds.toArray(new String[0])));
+        }
+        return true;
+    }
 
-            if (log.isTraceEnabled()) {
-                log.trace("End in class AWSClient in method tagResources with return: void: ");
+    /**
+     * Remove from the launch template configurations the overrides whose VM type is cooling down after a capacity
+     * failure in their subnet or availability zone, as long as the configuration keeps other overrides
+     */
+    private static void excludeColdOverrides(CreateFleetRequest fleetRequest) {
+        if (null == fleetRequest.getLaunchTemplateConfigs() || !getCapacityCache().isEnabled()) {
+            return;
+        }
+        for (FleetLaunchTemplateConfigRequest config : fleetRequest.getLaunchTemplateConfigs()) {
+            if (CollectionUtils.isNullOrEmpty(config.getOverrides())) {
+                continue;
             }
+            List<FleetLaunchTemplateOverridesRequest> warmOverrides = new ArrayList<FleetLaunchTemplateOverridesRequest>();
+            for (FleetLaunchTemplateOverridesRequest overrides : config.getOverrides()) {
+                String location = StringUtils.isNullOrEmpty(overrides.getSubnetId()) ? overrides.getAvailabilityZone() : overrides.getSubnetId();
+                if (null == getCapacityFailure(overrides.getInstanceType(), location)) {
+                    warmOverrides.add(overrides);
+                }
+            }
+            if (!warmOverrides.isEmpty() && warmOverrides.size() < config.getOverrides().size()) {
+                log.info("Leaving out " + (config.getOverrides().size() - warmOverrides.size())
+                         + " overrides cooling down after a capacity failure from the EC2 Fleet request");
+                config.setOverrides(warmOverrides);
+            }
+        }
+    }
 
-        } catch (AmazonServiceException ase) {
-            log.error("Tag resources list error." + ase.getMessage(),ase);
-        } catch (AmazonClientException ace) {
-            log.error("Tag  resources list error." + ace.getMessage(),ace);
-        } catch(Exception e) {
-            log.error("Tag  resources list error.", e);
+    /**
+     * @Title: getColdCapacity
+     * @Description: The VM type and subnets of the template cooling down after a capacity failure
+     * @param t
+     * @return <vmType>@<subnetId>:<errorCode> for each subnet cooling down, null if none
+     */
+    public static List<String> getColdCapacity(AwsTemplate t) {
+        if (StringUtils.isNullOrEmpty(t.getVmType()) || !getCapacityCache().isEnabled()) {
+            return null;
+        }
+        List<String> cold = null;
+        for (String subnetId : getSubnetIds(t)) {
+            String errorCode = getCapacityFailure(t.getVmType(), subnetId);
+            if (null != errorCode) {
+                if (null == cold) {
+                    cold = new ArrayList<String>();
+                }
+                cold.add(getCapacityKey(t.getVmType(), subnetId) + ":" + errorCode);
+            }
         }
+        return cold;
     }
 
+    /**
+     * @Title: invalidateMetadataCache
+     * @Description: Drop the cached metadata of the template which EC2 reports stale in the error
+     * @param ase
+     * @param t
+     */
+    private static void invalidateMetadataCache(AmazonServiceException ase, AwsTemplate t) {
+        String errorCode = ase.getErrorCode();
+        if (null == errorCode || null == t) {
+            return;
+        }
+
+        if (errorCode.startsWith("InvalidKeyPair") && !StringUtils.isNullOrEmpty(t.getKeyName())) {
+            log.debug("Key pair <" + t.getKeyName() + "> is stale, removing it from the cache: " + errorCode);
+            AwsTtlCache cache = getKeyPairCache();
+            cache.remove(t.getKeyName());
+            cache.save();
+        } else if (errorCode.startsWith("InvalidSubnetID") && !StringUtils.isNullOrEmpty(t.getSubnetId())) {
+            log.debug("Subnets <" + t.getSubnetId() + "> are stale, removing them from the cache: " + errorCode);
+            AwsTtlCache cache = getSubnetZoneCache();
+            for (String subnetId : t.getSubnetId().split(",")) {
+                cache.remove(subnetId.trim());
+            }
+            cache.save();
+        }
+    }
 
     /**
     *
-    * @Title: tagResourcesOneBatch
-    * @Description: tag a list of resourceIds less than 500.
+    * @Title: tagResources
+    * @Description: tag a list of resourceIds.
+    *         The resources are tagged by batches of up to AwsConst.CREATE_TAGS_MAX_RESOURCES resources.
     * @param @param resourceIds,tagValue
     * @param @return
     * @return void
     * @throws
     */
-    private static void tagResourcesOneBatch(List<String> resourceIds, List<Tag> tagsToBeCreated) {
+    public static void tagResources(List<String> resourceIdList,  List<Tag> tagsToBeCreated) {
         if (log.isTraceEnabled()) {
-            log.trace("Start in class AWSClient in method tagEbsVolumes with parameters: resourceIds: " + resourceIds + ", tagsToBeCreated: "
+            log.trace("Start in class AWSClient in method tagResources with parameters: resourceIdList: " + resourceIdList + ", tagsToBeCreated: "
                       + tagsToBeCreated);
         }
-        AmazonEC2 ec2 = getEC2Client();
 
+        AwsTagPlanner tagPlanner = new AwsTagPlanner();
+        tagPlanner.addResources(resourceIdList, tagsToBeCreated);
+        tagPlanner.apply();
 
-        try {
-            CreateTagsRequest createTagsRequest = new CreateTagsRequest();
-
-            log.trace("Creating tags with resource IDs: " + resourceIds);
-            log.trace("Creating the following tags: " + tagsToBeCreated);
-
-            createTagsRequest.withResources(resourceIds)
-                             .withTags(tagsToBeCreated);
-            CreateTagsResult createTagsResult = ec2.createTags(createTagsRequest);
-            log.trace("Result tag: " + createTagsResult);
-            if (log.isTraceEnabled()) {
-                log.trace("End in class AWSClient in method tagResourcesOneBatch with return: void: ");
-            }
-
-        } catch (AmazonServiceException ase) {
-            log.error("Tag volume error." + ase.getMessage(),ase);
-        } catch (AmazonClientException ace) {
-            log.error("Tag volume error." + ace.getMessage(),ace);
-        } catch(Exception e) {
-            log.error("Tag volume error.", e);
+        if (log.isTraceEnabled()) {
+            log.trace("End in class AWSClient in method tagResources with return: void: ");
         }
     }
 
@@ -1586,44 +2298,23 @@ public class AWSClient {
             log.trace("Start in class AWSClient in method tagEbsVolumes with parameters: instance: " + instance + ", tagsToBeCreated: "
                       + tagsToBeCreated);
         }
-        AmazonEC2 ec2 = getEC2Client();
         List<String> resourceIds = new ArrayList<String>();
-
-
-        try {
-            CreateTagsRequest createTagsRequest = new CreateTagsRequest();
-
-
-            List<InstanceBlockDeviceMapping> mappingList = instance.getBlockDeviceMappings();
-            for(InstanceBlockDeviceMapping mapping: mappingList) {
-                if(mapping != null)	 {
-                    EbsInstanceBlockDevice ebs = mapping.getEbs();
-                    log.trace(mapping);
-                    if (ebs != null) {
-                        if (!StringUtils.isNullOrEmpty(ebs.getVolumeId())) {
-                            resourceIds.add(ebs.getVolumeId());
-                        }
+        List<InstanceBlockDeviceMapping> mappingList = instance.getBlockDeviceMappings();
+        for(InstanceBlockDeviceMapping mapping: mappingList) {
+            if(mapping != null)	 {
+                EbsInstanceBlockDevice ebs = mapping.getEbs();
+                log.trace(mapping);
+                if (ebs != null) {
+                    if (!StringUtils.isNullOrEmpty(ebs.getVolumeId())) {
+                        resourceIds.add(ebs.getVolumeId());
                     }
                 }
             }
+        }
 
-            log.trace("Creating tags with resource IDs: " + resourceIds);
-            log.trace("Creating the following tags: " + tagsToBeCreated);
-
-            createTagsRequest.withResources(resourceIds)
-            .withTags(tagsToBeCreated);
-            CreateTagsResult createTagsResult = ec2.createTags(createTagsRequest);
-            log.trace("Result tag: " + createTagsResult);
-            if (log.isTraceEnabled()) {
-                log.trace("End in class AWSClient in method tagEbsVolumes with return: void: ");
-            }
-
-        } catch (AmazonServiceException ase) {
-            log.error("Tag volume error." + ase.getMessage(),ase);
-        } catch (AmazonClientException ace) {
-            log.error("Tag volume error." + ace.getMessage(),ace);
-        } catch(Exception e) {
-            log.error("Tag volume error.", e);
+        tagResources(resourceIds, tagsToBeCreated);
+        if (log.isTraceEnabled()) {
+            log.trace("End in class AWSClient in method tagEbsVolumes with return: void: ");
         }
     }
 
@@ -1712,6 +2403,7 @@ public class AWSClient {
             if (launchTemplateConfigs != null && !launchTemplateConfigs.isEmpty()) {
                 deleteLaunchTemplate(launchTemplateConfigs, t);
             }
+            invalidateMetadataCache(ase, t);
         } catch (AmazonClientException ace) {
             if (rsp != null) {
                 rsp.setStatus(AwsConst.EBROKERD_STATE_WARNING);
@@ -1891,6 +2583,224 @@ public class AWSClient {
     }
 
     
+    /**
+     * Status of an EC2 Fleet or Spot Fleet request, as described by describeFleetStatus
+     */
+    public static class FleetStatus {
+        private boolean invalid = false;
+
+        private FleetData fleetData = null;
+
+        private SpotFleetRequestConfig spotFleetRequestConfig = null;
+
+        private List<ActiveInstance> activeInstances = null;
+    }
+
+    /**
+     * @Title: describeFleetStatus
+     * @Description: Describe the EC2 Fleet and Spot Fleet requests at once. The fleets are described
+     *               by DescribeFleets and DescribeSpotFleetRequests calls of up to DESCRIBE_FLEETS_MAX_IDS
+     *               fleets, a call failing for an invalid fleet ID is bisected to find the invalid fleets.
+     *               The active instances of the fleets are then listed concurrently through the worker pool.
+     * @param awsRequests the requests of the fleets, with their fleet type set for the EC2 Fleet requests
+     * @return the status of the fleets by request ID, without the fleets which could not be described
+     */
+    public static Map<String, FleetStatus> describeFleetStatus(Collection<AwsRequest> awsRequests) {
+        if (log.isTraceEnabled()) {
+            log.trace("Start in class AWSClient in method describeFleetStatus with parameters: awsRequests: "
+                      + awsRequests);
+        }
+        Map<String, FleetStatus> fleetStatuses = new HashMap<String, FleetStatus>();
+        List<String> fleetIds = new ArrayList<String>();
+        List<String> spotFleetIds = new ArrayList<String>();
+        for (AwsRequest awsRequest : awsRequests) {
+            if (null == awsRequest || StringUtils.isNullOrEmpty(awsRequest.getReqId())) {
+                continue;
+            }
+            if (!StringUtils.isNullOrEmpty(awsRequest.getFleetType())) {
+                fleetIds.add(awsRequest.getReqId());
+            } else {
+                spotFleetIds.add(awsRequest.getReqId());
+            }
+        }
+        if (fleetIds.isEmpty() && spotFleetIds.isEmpty()) {
+            return fleetStatuses;
+        }
+
+        final AmazonEC2 ec2 = getEC2Client();
+
+        List<Callable<Map<String, FleetStatus>>> describes = new ArrayList<Callable<Map<String, FleetStatus>>>();
+        for (int i = 0; i < fleetIds.size(); i += AwsConst.DESCRIBE_FLEETS_MAX_IDS) {
+            final List<String> batch = fleetIds.subList(i, Math.min(i + AwsConst.DESCRIBE_FLEETS_MAX_IDS, fleetIds.size()));
+            describes.add(new Callable<Map<String, FleetStatus>>() {
+                @Override
+                public Map<String, FleetStatus> call() {
+                    Map<String, FleetStatus> batchStatuses = new HashMap<String, FleetStatus>();
+                    try {
+                        describeFleetBatch(ec2, batch, batchStatuses);
+                    } catch (Exception e) {
+                        log.error("Cannot update EC2 Fleet requests " + batch + ". " + e.getMessage(), e);
+                    }
+                    return batchStatuses;
+                }
+            });
+        }
+        for (int i = 0; i < spotFleetIds.size(); i += AwsConst.DESCRIBE_FLEETS_MAX_IDS) {
+            final List<String> batch = spotFleetIds.subList(i, Math.min(i + AwsConst.DESCRIBE_FLEETS_MAX_IDS, spotFleetIds.size()));
+            describes.add(new Callable<Map<String, FleetStatus>>() {
+                @Override
+                public Map<String, FleetStatus> call() {
+                    Map<String, FleetStatus> batchStatuses = new HashMap<String, FleetStatus>();
+                    try {
+                        describeSpotFleetBatch(ec2, batch, batchStatuses);
+                    } catch (Exception e) {
+                        log.error("Cannot update Spot fleet requests " + batch + ". " + e.getMessage(), e);
+                    }
+                    return batchStatuses;
+                }
+            });
+        }
+        for (Map<String, FleetStatus> batchStatuses : AwsWorkerPool.invokeAll(describes)) {
+            fleetStatuses.putAll(batchStatuses);
+        }
+
+        // List the instances of the valid fleets
+        final List<FleetStatus> listedStatuses = new ArrayList<FleetStatus>();
+        List<Callable<List<ActiveInstance>>> listings = new ArrayList<Callable<List<ActiveInstance>>>();
+        for (final Map.Entry<String, FleetStatus> entry : fleetStatuses.entrySet()) {
+            final FleetStatus fleetStatus = entry.getValue();
+            if (fleetStatus.invalid) {
+                continue;
+            }
+            listedStatuses.add(fleetStatus);
+            listings.add(new Callable<List<ActiveInstance>>() {
+                @Override
+                public List<ActiveInstance> call() {
+                    try {
+                        if (null != fleetStatus.fleetData) {
+                            return describeFleetInstances(ec2, entry.getKey());
+                        }
+                        return describeSpotFleetInstances(ec2, entry.getKey());
+                    } catch (Exception e) {
+                        log.error("Cannot list the instances of fleet request <" + entry.getKey() + ">. " + e.getMessage(), e);
+                        return null;
+                    }
+                }
+            });
+        }
+        List<List<ActiveInstance>> activeInstancesList = AwsWorkerPool.invokeAll(listings);
+        for (int i = 0; i < listedStatuses.size(); i++) {
+            listedStatuses.get(i).activeInstances = activeInstancesList.get(i);
+        }
+
+        if (log.isTraceEnabled()) {
+            log.trace("End in class AWSClient in method describeFleetStatus with return: " + fleetStatuses.size() + " fleets");
+        }
+        return fleetStatuses;
+    }
+
+    private static void describeFleetBatch(AmazonEC2 ec2, List<String> batch, Map<String, FleetStatus> fleetStatuses) throws AmazonServiceException {
+        try {
+            DescribeFleetsRequest describeFleetsRequest = new DescribeFleetsRequest().withFleetIds(batch);
+            do {
+                DescribeFleetsResult describeFleetsResult = ec2.describeFleets(describeFleetsRequest);
+                for (FleetData fleetData : describeFleetsResult.getFleets()) {
+                    FleetStatus fleetStatus = new FleetStatus();
+                    fleetStatus.fleetData = fleetData;
+                    fleetStatuses.put(fleetData.getFleetId(), fleetStatus);
+                }
+                describeFleetsRequest.setNextToken(describeFleetsResult.getNextToken());
+            } while (!StringUtils.isNullOrEmpty(describeFleetsRequest.getNextToken()));
+        } catch (AmazonServiceException ase) {
+            if (ase.getErrorCode() == null || !ase.getErrorCode().contains("InvalidFleetId")) {
+                throw ase;
+            }
+            if (batch.size() == 1) {
+                log.error("Cannot update EC2 Fleet request <" + batch.get(0) + ">. " +  ase.getMessage(), ase);
+                FleetStatus fleetStatus = new FleetStatus();
+                fleetStatus.invalid = true;
+                fleetStatuses.put(batch.get(0), fleetStatus);
+                return;
+            }
+            log.warn("Describe EC2 Fleet requests error, retrying to describe the " + batch.size() + " fleets in two halves. " + ase.getMessage());
+            int half = batch.size() / 2;
+            describeFleetBatch(ec2, batch.subList(0, half), fleetStatuses);
+            describeFleetBatch(ec2, batch.subList(half, batch.size()), fleetStatuses);
+            return;
+        }
+
+        // A fleet left out of the result of several fleets is described alone to get its own error
+        if (batch.size() > 1) {
+            for (String fleetId : batch) {
+                if (!fleetStatuses.containsKey(fleetId)) {
+                    describeFleetBatch(ec2, Collections.singletonList(fleetId), fleetStatuses);
+                }
+            }
+        }
+    }
+
+    private static void describeSpotFleetBatch(AmazonEC2 ec2, List<String> batch, Map<String, FleetStatus> fleetStatuses) throws AmazonServiceException {
+        try {
+            DescribeSpotFleetRequestsRequest describeSpotFleetRequestsRequest = new DescribeSpotFleetRequestsRequest().withSpotFleetRequestIds(batch);
+            do {
+                DescribeSpotFleetRequestsResult describeSpotFleetRequestsResult = ec2.describeSpotFleetRequests(describeSpotFleetRequestsRequest);
+                for (SpotFleetRequestConfig spotFleetRequestConfig : describeSpotFleetRequestsResult.getSpotFleetRequestConfigs()) {
+                    FleetStatus fleetStatus = new FleetStatus();
+                    fleetStatus.spotFleetRequestConfig = spotFleetRequestConfig;
+                    fleetStatuses.put(spotFleetRequestConfig.getSpotFleetRequestId(), fleetStatus);
+                }
+                describeSpotFleetRequestsRequest.setNextToken(describeSpotFleetRequestsResult.getNextToken());
+            } while (!StringUtils.isNullOrEmpty(describeSpotFleetRequestsRequest.getNextToken()));
+        } catch (AmazonServiceException ase) {
+            if (ase.getErrorCode() == null || !ase.getErrorCode().contains("InvalidSpotFleetRequestId")) {
+                throw ase;
+            }
+            if (batch.size() == 1) {
+                log.error("Cannot update Spot fleet request <" + batch.get(0) + ">. " +  ase.getMessage(), ase);
+                FleetStatus fleetStatus = new FleetStatus();
+                fleetStatus.invalid = true;
+                fleetStatuses.put(batch.get(0), fleetStatus);
+                return;
+            }
+            log.warn("Describe Spot fleet requests error, retrying to describe the " + batch.size() + " fleets in two halves. " + ase.getMessage());
+            int half = batch.size() / 2;
+            describeSpotFleetBatch(ec2, batch.subList(0, half), fleetStatuses);
+            describeSpotFleetBatch(ec2, batch.subList(half, batch.size()), fleetStatuses);
+            return;
+        }
+
+        // A fleet left out of the result of several fleets is described alone to get its own error
+        if (batch.size() > 1) {
+            for (String spotFleetRequestId : batch) {
+                if (!fleetStatuses.containsKey(spotFleetRequestId)) {
+                    describeSpotFleetBatch(ec2, Collections.singletonList(spotFleetRequestId), fleetStatuses);
+                }
+            }
+        }
+    }
+
+    private static List<ActiveInstance> describeFleetInstances(AmazonEC2 ec2, String fleetId) {
+        List<ActiveInstance> activeInstances = new ArrayList<ActiveInstance>();
+        DescribeFleetInstancesRequest describeFleetInstancesRequest = new DescribeFleetInstancesRequest().withFleetId(fleetId);
+        do {
+            DescribeFleetInstancesResult describeFleetInstancesResult = ec2.describeFleetInstances(describeFleetInstancesRequest);
+            activeInstances.addAll(describeFleetInstancesResult.getActiveInstances());
+            describeFleetInstancesRequest.setNextToken(describeFleetInstancesResult.getNextToken());
+        } while (!StringUtils.isNullOrEmpty(describeFleetInstancesRequest.getNextToken()));
+        return activeInstances;
+    }
+
+    private static List<ActiveInstance> describeSpotFleetInstances(AmazonEC2 ec2, String spotFleetRequestId) {
+        List<ActiveInstance> activeInstances = new ArrayList<ActiveInstance>();
+        DescribeSpotFleetInstancesRequest describeSpotFleetInstancesRequest = new DescribeSpotFleetInstancesRequest().withSpotFleetRequestId(spotFleetRequestId);
+        do {
+            DescribeSpotFleetInstancesResult describeSpotFleetInstancesResult = ec2.describeSpotFleetInstances(describeSpotFleetInstancesRequest);
+            activeInstances.addAll(describeSpotFleetInstancesResult.getActiveInstances());
+            describeSpotFleetInstancesRequest.setNextToken(describeSpotFleetInstancesResult.getNextToken());
+        } while (!StringUtils.isNullOrEmpty(describeSpotFleetInstancesRequest.getNextToken()));
+        return activeInstances;
+    }
+
     /**
      * 1. Updates the status of the machine request by checking the EC2 Fleet status<br>
      * 2. Return the machines newly created since the last request check
@@ -1898,6 +2808,18 @@ public class AWSClient {
      * @return The list of machines newly created since the last request
      */
     public static List<AwsMachine> updateEC2FleetStatus(AwsRequest awsRequest, AwsEntity rsp) {
+        return updateEC2FleetStatus(awsRequest, rsp, describeFleetStatus(Collections.singletonList(awsRequest)));
+    }
+
+    /**
+     * 1. Updates the status of the machine request from the EC2 Fleet status described by describeFleetStatus<br>
+     * 2. Return the machines newly created since the last request check
+     * @param awsRequest
+     * @param rsp
+     * @param fleetStatuses
+     * @return The list of machines newly created since the last request
+     */
+    public static List<AwsMachine> updateEC2FleetStatus(AwsRequest awsRequest, AwsEntity rsp, Map<String, FleetStatus> fleetStatuses) {
 
         if (log.isDebugEnabled()) {
             log.debug("Start in class AWSClient in method updateEC2FleetStatus with parameters: awsRequest: "
@@ -1905,29 +2827,24 @@ public class AWSClient {
         }
         List<AwsMachine> newMachinesList = new ArrayList<AwsMachine>();
         String fleetRequestId = awsRequest.getReqId();
-        
-        DescribeFleetsRequest describeFleetsRequest = new DescribeFleetsRequest();
-        describeFleetsRequest.setFleetIds(Arrays
-                .asList(new String[] { fleetRequestId }));
         String ebrokerdRequestStatus = null;
-        DescribeFleetsResult describeFleetsResult = null;
 
-        try {
-        	describeFleetsResult = ec2.describeFleets(describeFleetsRequest);
-        } catch (AmazonServiceException ase) {
-            if (ase.getErrorCode().contains("InvalidFleetId")) {
-                ebrokerdRequestStatus = AwsConst.EBROKERD_STATE_COMPLETE_WITH_ERROR;
-                awsRequest.setStatus(ebrokerdRequestStatus);
-            }
-            log.error("Cannot update EC2 Fleet request <" + fleetRequestId + ">. " +  ase.getMessage(), ase);
+        FleetStatus fleetStatus = fleetStatuses.get(fleetRequestId);
+        if (null == fleetStatus) {
+            log.error("Cannot update EC2 Fleet request <" + fleetRequestId + ">. The request is not described.");
             return null;
-        } catch (Exception e) {
-            log.error("Cannot update EC2 Fleet request <" + fleetRequestId + ">. " +  e.getMessage(), e);
+        }
+        if (fleetStatus.invalid) {
+            awsRequest.setStatus(AwsConst.EBROKERD_STATE_COMPLETE_WITH_ERROR);
+            return null;
+        }
+        if (null == fleetStatus.activeInstances) {
+            log.error("Cannot update EC2 Fleet request <" + fleetRequestId + ">. The instances of the request are not listed.");
             return null;
         }
         
         //Get EC2 fleet request status
-        FleetData fleetData = describeFleetsResult.getFleets().get(0);
+        FleetData fleetData = fleetStatus.fleetData;
         String fleetState = fleetData.getFleetState();
         String fleetActivityStatus = fleetData.getActivityStatus();
         log.debug("[EC2 Fleet request - " + fleetRequestId + "] State: " + fleetState);
@@ -1969,19 +2886,17 @@ public class AWSClient {
         awsRequest.setStatus(ebrokerdRequestStatus);
         
         //Get instances created by this fleet request, checking if there are new instances created 
-        DescribeFleetInstancesRequest describeFleetInstancesRequest = new DescribeFleetInstancesRequest ();
-        describeFleetInstancesRequest.setFleetId(fleetRequestId);
-        DescribeFleetInstancesResult describeFleetInstancesResult = ec2.describeFleetInstances(describeFleetInstancesRequest);
-        List<ActiveInstance> activeInstances = describeFleetInstancesResult.getActiveInstances();
+        List<ActiveInstance> activeInstances = fleetStatus.activeInstances;
         log.debug("Active Instances for EC2 Fleet request "
-                + describeFleetInstancesResult.getFleetId() + " : " + activeInstances);
+                + fleetRequestId + " : " + activeInstances);
         
+        AwsMachineIndex machinesIndex = new AwsMachineIndex(awsRequest.getMachines());
         for (ActiveInstance activeInstance: activeInstances) {
             // If the system does not have this activeInstance, add it to the
             // newMachines list
         	AwsMachine tempAwsMachine = new AwsMachine();
         	tempAwsMachine.setMachineId(activeInstance.getInstanceId());
-        	if (!awsRequest.getMachines().contains(tempAwsMachine)) {
+        	if (!machinesIndex.contains(tempAwsMachine)) {
         		// This instance is not exist in input awsRequest.
         		log.debug("This is an active machine not in awsRequest: " + activeInstance);
         		newMachinesList.add(tempAwsMachine);
@@ -2013,6 +2928,17 @@ public class AWSClient {
      * @return The list of machines newly created since the last request
      */
     public static List<AwsMachine> updateSpotFleetStatus(AwsRequest awsRequest) {
+        return updateSpotFleetStatus(awsRequest, describeFleetStatus(Collections.singletonList(awsRequest)));
+    }
+
+    /**
+     * 1. Updates the status of the machine request from the Spot Fleet status described by describeFleetStatus<br>
+     * 2. Return the machines newly created since the last request check
+     * @param awsRequest
+     * @param fleetStatuses
+     * @return The list of machines newly created since the last request
+     */
+    public static List<AwsMachine> updateSpotFleetStatus(AwsRequest awsRequest, Map<String, FleetStatus> fleetStatuses) {
 
         if (log.isDebugEnabled()) {
             log.debug("Start in class AWSClient in method updateSpotFleetStatus with parameters: awsRequest: "
@@ -2020,30 +2946,23 @@ public class AWSClient {
         }
         List<AwsMachine> newMachinesList = new ArrayList<AwsMachine>();
         String spotFleetRequestId = awsRequest.getReqId();
-        DescribeSpotFleetRequestsRequest describeSpotFleetRequestsRequest = new DescribeSpotFleetRequestsRequest();
-        describeSpotFleetRequestsRequest.setSpotFleetRequestIds(Arrays
-                .asList(new String[] { spotFleetRequestId }));
         String ebrokerdRequestStatus = null;
-        DescribeSpotFleetRequestsResult describeSpotFleetRequestsResult = null;
 
-        try {
-            describeSpotFleetRequestsResult = ec2.describeSpotFleetRequests(describeSpotFleetRequestsRequest);
-        } catch (AmazonServiceException ase) {
-            if (ase.getErrorCode().contains("InvalidSpotFleetRequestId")) {
-                ebrokerdRequestStatus = AwsConst.EBROKERD_STATE_COMPLETE_WITH_ERROR;
-                awsRequest.setStatus(ebrokerdRequestStatus);
-            }
-            log.error("Cannot update Spot fleet request <" + spotFleetRequestId + ">. " +  ase.getMessage(), ase);
+        FleetStatus fleetStatus = fleetStatuses.get(spotFleetRequestId);
+        if (null == fleetStatus) {
+            log.error("Cannot update Spot fleet request <" + spotFleetRequestId + ">. The request is not described.");
             return null;
-        } catch (Exception e) {
-            log.error("Cannot update Spot fleet request <" + spotFleetRequestId + ">. " +  e.getMessage(), e);
+        }
+        if (fleetStatus.invalid) {
+            awsRequest.setStatus(AwsConst.EBROKERD_STATE_COMPLETE_WITH_ERROR);
+            return null;
+        }
+        if (null == fleetStatus.activeInstances) {
+            log.error("Cannot update Spot fleet request <" + spotFleetRequestId + ">. The instances of the request are not listed.");
             return null;
         }
 
-        List<SpotFleetRequestConfig> spotFleetRequestConfigList = describeSpotFleetRequestsResult
-                .getSpotFleetRequestConfigs();
-        SpotFleetRequestConfig spotFleetRequestConfig = spotFleetRequestConfigList
-                .get(0);
+        SpotFleetRequestConfig spotFleetRequestConfig = fleetStatus.spotFleetRequestConfig;
         String spotFleetState = spotFleetRequestConfig
                                 .getSpotFleetRequestState();
         String spotFleetActivityStatus = spotFleetRequestConfig
@@ -2055,6 +2974,8 @@ public class AWSClient {
             ebrokerdRequestStatus = AwsConst.EBROKERD_STATE_RUNNING;
         } else if (BatchState.Active.toString().equals(spotFleetState)) {
             //One of the main reasons causing the Error status: When the price in the request is lower than the current market price
+            // The capacity failures behind the Error status are not recorded for AWS_CAPACITY_COOLDOWN: the Spot Fleet
+            // status has no VM type and location, they are only in the free text of DescribeSpotFleetRequestHistory
             if (ActivityStatus.Error.toString().equals(spotFleetActivityStatus)) {
                 ebrokerdRequestStatus = AwsConst.EBROKERD_STATE_RUNNING;
             } else if (ActivityStatus.Pending_fulfillment.toString().equals(
@@ -2081,23 +3002,18 @@ public class AWSClient {
         awsRequest.setStatus(ebrokerdRequestStatus);
 
         // Checking if there are new spot instances created
-        DescribeSpotFleetInstancesRequest describeSpotFleetInstancesRequest = new DescribeSpotFleetInstancesRequest();
-        describeSpotFleetInstancesRequest
-        .setSpotFleetRequestId(spotFleetRequestId);
-        DescribeSpotFleetInstancesResult describeSpotFleetInstancesResult = ec2
-                .describeSpotFleetInstances(describeSpotFleetInstancesRequest);
-        List<ActiveInstance> activeInstances = describeSpotFleetInstancesResult
-                                               .getActiveInstances();
+        List<ActiveInstance> activeInstances = fleetStatus.activeInstances;
         log.debug("Active Instances for spot fleet request "
-                  + describeSpotFleetInstancesResult.getSpotFleetRequestId()
+                  + spotFleetRequestId
                   + " : " + activeInstances);
 
+        AwsMachineIndex machinesIndex = new AwsMachineIndex(awsRequest.getMachines());
         for (ActiveInstance activeInstance : activeInstances) {
             // If the system does not have this activeInstance, add it to the
             // newMachines list
             AwsMachine tempAwsMachine = new AwsMachine();
             tempAwsMachine.setMachineId(activeInstance.getInstanceId());
-            if (!awsRequest.getMachines().contains(tempAwsMachine)) {
+            if (!machinesIndex.contains(tempAwsMachine)) {
                 log.debug("This is an active machine not in awsRequest: " + activeInstance);
                 newMachinesList.add(tempAwsMachine);
             }
@@ -2271,35 +3187,11 @@ public class AWSClient {
             return;
         }
 
-        List<Tag> tagsToBeCreated = createTagsForInstanceCreation(
-                usedTemplate.getInstanceTags(),
-                awsRequest.getTagValue());
-        log.trace("Creating the following tags: " + tagsToBeCreated);
-
-        List<String> resourceIdList = new ArrayList<String>();
+        AwsTagPlanner tagPlanner = new AwsTagPlanner();
         for (Instance instance : newInstances) {
-            String instanceId = instance.getInstanceId();
-            List<String> ebsIds = new ArrayList<String>();
-
-            List<InstanceBlockDeviceMapping> mappingList = instance.getBlockDeviceMappings();
-            for (InstanceBlockDeviceMapping mapping: mappingList) {
-                 if (mapping != null)	 {
-                     EbsInstanceBlockDevice ebs = mapping.getEbs();
-                     log.trace(mapping);
-                     if (ebs != null) {
-                        if (!StringUtils.isNullOrEmpty(ebs.getVolumeId())) {
-                            ebsIds.add(ebs.getVolumeId());
-                        }
-                    }
-                }
-            }
-
-            resourceIdList.add(instanceId);
-            resourceIdList.addAll(ebsIds);
-            log.trace("Add to resourceIdList of instance" + instanceId +" Ebs Volumes: " + ebsIds);
+            addPostCreationTags(tagPlanner, awsRequest, instance, usedTemplate);
         }
-
-        tagResources(resourceIdList, tagsToBeCreated);
+        tagPlanner.apply();
 
         if (log.isTraceEnabled()) {
             log.trace("End in class AWSClient in method applyPostCreationBehaviorForInstanceList with return: void: ");
@@ -2322,6 +3214,27 @@ public class AWSClient {
                       + newInstance);
         }
 
+        AwsTagPlanner tagPlanner = new AwsTagPlanner();
+        addPostCreationTags(tagPlanner, awsRequest, newInstance, usedTemplate);
+        tagPlanner.apply();
+
+        if (log.isTraceEnabled()) {
+            log.trace("End in class AWSClient in method applyPostCreationBehaviorForInstance with return: void: ");
+        }
+    }
+
+    /**
+     * Plans the tags of an instance which just started and of its EBS volumes: the RC_ACCOUNT tag,
+     * the instance tags of the template, and the InstanceID tag when AWS_TAG_InstanceID is enabled.
+     * The tags are created by tagPlanner.apply(), with the tags of the other instances.
+     *
+     * @param tagPlanner
+     * @param awsRequest
+     * @param newInstance
+     * @param usedTemplate
+     */
+    public static void addPostCreationTags(AwsTagPlanner tagPlanner, AwsRequest awsRequest,
+            Instance newInstance, AwsTemplate usedTemplate) {
         // lsf-L3-tracker/issues/1490 - to avoid NullPointerException
         if (newInstance == null) {
             log.warn("Cannot apply post-creation behavior: newInstance is null");
@@ -2339,112 +3252,144 @@ public class AWSClient {
             return;
         }
 
-        List<Tag> tagsToBeCreated = createTagsForInstanceCreation(newInstance,
-                                    usedTemplate.getInstanceTags(),
-                                    awsRequest.getTagValue());
-        AWSClient.tagInstance(newInstance,tagsToBeCreated);
-        AWSClient.tagEbsVolumes(newInstance, tagsToBeCreated);
-
-        if (log.isTraceEnabled()) {
-            log.trace("End in class AWSClient in method applyPostCreationBehaviorForInstance with return: void: ");
+        List<Tag> tagsToBeCreated = null;
+        if (AwsUtil.getConfig().getTagInstanceID() != null && AwsUtil.getConfig().getTagInstanceID().booleanValue()) {
+            tagsToBeCreated = createTagsForInstanceCreation(newInstance,
+                              usedTemplate.getInstanceTags(),
+                              awsRequest.getTagValue());
+        } else {
+            tagsToBeCreated = createTagsForInstanceCreation(
+                                  usedTemplate.getInstanceTags(),
+                                  awsRequest.getTagValue());
         }
+        log.trace("Planning the following tags for instance " + newInstance.getInstanceId() + ": " + tagsToBeCreated);
+        tagPlanner.addInstance(newInstance, tagsToBeCreated);
     }
 
-    private static void tagInstance(Instance instance, List<Tag> tagsToBeCreated) {
-        if (log.isTraceEnabled()) {
-            log.trace("Start in class AWSClient in method tagInstance with parameters:  instance: " + instance + ", tagsToBeCreated: "
-                      + tagsToBeCreated);
-        }
+    /**
+     * @param requestsToBeChecked
+     */
+    public static List<AwsRequest> retrieveInstancesMarkedForTermination(List<AwsRequest> requestsList) {
+        return retrieveInstancesMarkedForTermination(requestsList, null);
+    }
 
-        String instanceId = instance.getInstanceId();
-        try {
-            CreateTagsRequest createTagsRequest = new CreateTagsRequest();
-            createTagsRequest.withResources(instanceId).withTags(tagsToBeCreated);
-            ec2.createTags(createTagsRequest);
+    /**
+     * @Title: getSpotInstanceRequestIds
+     * @Description: The spot instance requests retrieveInstancesMarkedForTermination checks, to describe them ahead
+     * @param requestsList
+     * @return the spot instance request IDs
+     */
+    public static List<String> getSpotInstanceRequestIds(List<AwsRequest> requestsList) {
+        return getSpotInstanceRequestIds(requestsList, new HashMap<String, AwsMachine>(), new HashMap<String, AwsRequest>());
+    }
 
-        } catch (AmazonServiceException ase) {
-            log.error("Create tag failed for [instanceId: "
-                      + instanceId
-                      + ", with the tags: "
-                      + tagsToBeCreated
-                      + " ] with the following error: " + ase.getMessage(), ase);
-        } catch (AmazonClientException ace) {
-            log.error("Create tag failed for [instanceId: "
-                      + instanceId
-                      + ", with the tags: "
-                      + tagsToBeCreated
-                      + " ] with the following error: " + ace.getMessage(), ace);
-        } catch (Exception e) {
-            log.error("Create tag failed for [instanceId: "
-                      + instanceId
-                      + ", with the tags: "
-                      + tagsToBeCreated
-                      + " ] with the following error: " + e.getMessage(), e);
+    /**
+     * @Title: describeSpotInstanceRequestsById
+     * @Description: Describe spot instance requests ahead of retrieveInstancesMarkedForTermination
+     * @param spotInstanceRequestIds
+     * @return the spot instance requests by ID, null for the requests not found
+     */
+    public static Map<String, SpotInstanceRequest> describeSpotInstanceRequestsById(Collection<String> spotInstanceRequestIds) {
+        Map<String, SpotInstanceRequest> described = new HashMap<String, SpotInstanceRequest>();
+        for (String spotInstanceRequestId : spotInstanceRequestIds) {
+            described.put(spotInstanceRequestId, null);
         }
-        if (log.isTraceEnabled()) {
-            log.trace("End in class AWSClient in method tagInstance with return: void: ");
+        if (!described.isEmpty()) {
+            for (SpotInstanceRequest spotInstanceRequest : describeSpotInstanceRequests(spotInstanceRequestIds)) {
+                described.put(spotInstanceRequest.getSpotInstanceRequestId(), spotInstanceRequest);
+            }
         }
+        return described;
+    }
 
+    /**
+     * @Title: getSpotInstanceRequestIds
+     * @Description: The spot instance requests of the machines not terminated of the spot requests
+     * @param requestsList
+     * @param machinesMap the machines by spot instance request ID, filled
+     * @param requestsMap the requests by spot instance request ID, filled
+     * @return the spot instance request IDs
+     */
+    private static List<String> getSpotInstanceRequestIds(List<AwsRequest> requestsList,
+            Map<String,AwsMachine> machinesMap, Map<String,AwsRequest> requestsMap) {
+        List<String> terminatedStates = Arrays.asList(new String[] {"stopped","shutting-down","terminated","stopping",AwsConst.SPOT_INSTANTCE_STATUS_MARKED_FOR_TERMINATION});
+        List<String> spotInstanceRequestIdList = new ArrayList<String>();
+        if (CollectionUtils.isNullOrEmpty(requestsList)) {
+            return spotInstanceRequestIdList;
+        }
+        for(AwsRequest awsRequest : requestsList) {
+
+            if(!CollectionUtils.isNullOrEmpty(awsRequest.getMachines())) {
+                //Handle only Spot Instances for now
+            	if (awsRequest.getFleetType() != null) {
+            		for(AwsMachine awsMachine : awsRequest.getMachines()) {
+                        //Only query running machines. Terminated machines have been already handled
+                        if(!terminatedStates.contains(awsMachine.getStatus())) {
+                        	if (HostAllocationType.Spot.equals(awsMachine.getLifeCycleType())) { 
+                        		spotInstanceRequestIdList.add(awsMachine.getReqId());
+                        		machinesMap.put(awsMachine.getReqId(),awsMachine);
+                        		requestsMap.put(awsMachine.getReqId(), awsRequest);
+                        	}
+                        }
+            		} 
+            	} else if (HostAllocationType.Spot.toString().equals(awsRequest.getHostAllocationType())) {
+                	//Old spot fleet request may have no lifeCycleType
+            		for(AwsMachine awsMachine : awsRequest.getMachines()) {
+            			//Only query running machines. Terminated machines have been already handled
+            			if(!terminatedStates.contains(awsMachine.getStatus())) {
+            				spotInstanceRequestIdList.add(awsMachine.getReqId());
+            				machinesMap.put(awsMachine.getReqId(),awsMachine);
+            				requestsMap.put(awsMachine.getReqId(), awsRequest);
+            			}
+            		}
+            	}	
+                //TODO To be discussed, if handling is needed for on-demand instances that are notified from AWS side but their status is still shown as running in host factory side
+            }
+        }
+        return spotInstanceRequestIdList;
     }
 
     /**
-     * @param requestsToBeChecked
+     * @Title: retrieveInstancesMarkedForTermination
+     * @Description: The spot machines reclaimed by AWS, marked for termination or terminated
+     * @param requestsList
+     * @param described the spot instance requests described ahead by describeSpotInstanceRequestsById,
+     *        the other ones are described now. null to describe all of them now.
+     * @return
      */
-    public static List<AwsRequest> retrieveInstancesMarkedForTermination(List<AwsRequest> requestsList) {
+    public static List<AwsRequest> retrieveInstancesMarkedForTermination(List<AwsRequest> requestsList,
+            Map<String, SpotInstanceRequest> described) {
         if (log.isTraceEnabled()) {
             log.trace("[getReturnRequest]Start in class AWSClient in method retrieveInstancesMarkedForTermination with parameters: requestsList: "
                       +  requestsList );
         }
-        List<String> terminatedStates = Arrays.asList(new String[] {"stopped","shutting-down","terminated","stopping",AwsConst.SPOT_INSTANTCE_STATUS_MARKED_FOR_TERMINATION});
         List<AwsRequest> instancesMarkedForTermination = new ArrayList<AwsRequest>();
         if(!CollectionUtils.isNullOrEmpty(requestsList)) {
-            List<String> spotInstanceRequestIdList = new ArrayList<String>();
             Map<String,AwsMachine> machinesMap = new HashMap<String,AwsMachine>();
             Map<String,AwsMachine> updatedMachinesMap = new HashMap<String,AwsMachine>();
             Map<String,AwsRequest> requestsMap = new HashMap<String,AwsRequest>();
-            for(AwsRequest awsRequest : requestsList) {
-
-                if(!CollectionUtils.isNullOrEmpty(awsRequest.getMachines())) {
-                    //Handle only Spot Instances for now
-                	if (awsRequest.getFleetType() != null) {
-                		for(AwsMachine awsMachine : awsRequest.getMachines()) {
-                            //Only query running machines. Terminated machines have been already handled
-                            if(!terminatedStates.contains(awsMachine.getStatus())) {
-                            	if (HostAllocationType.Spot.equals(awsMachine.getLifeCycleType())) { 
-                            		spotInstanceRequestIdList.add(awsMachine.getReqId());
-                            		machinesMap.put(awsMachine.getReqId(),awsMachine);
-                            		requestsMap.put(awsMachine.getReqId(), awsRequest);
-                            	}
-                            }
-                		} 
-                	} else if (HostAllocationType.Spot.toString().equals(awsRequest.getHostAllocationType())) {
-                    	//Old spot fleet request may have no lifeCycleType
-                		for(AwsMachine awsMachine : awsRequest.getMachines()) {
-                			//Only query running machines. Terminated machines have been already handled
-                			if(!terminatedStates.contains(awsMachine.getStatus())) {
-                				spotInstanceRequestIdList.add(awsMachine.getReqId());
-                				machinesMap.put(awsMachine.getReqId(),awsMachine);
-                				requestsMap.put(awsMachine.getReqId(), awsRequest);
-                			}
-                		}
-                	}	
-                    //TODO To be discussed, if handling is needed for on-demand instances that are notified from AWS side but their status is still shown as running in host factory side
-                }
-            }
+            List<String> spotInstanceRequestIdList = getSpotInstanceRequestIds(requestsList, machinesMap, requestsMap);
             //If there are machines in the local DB that are not terminated, check if AWS is requesting to reclaim them
             if(!spotInstanceRequestIdList.isEmpty()) {
-                DescribeSpotInstanceRequestsRequest describeSpotInstanceRequestsRequest = new DescribeSpotInstanceRequestsRequest();
-                describeSpotInstanceRequestsRequest.withSpotInstanceRequestIds(spotInstanceRequestIdList);
                 boolean addMachineToReclaimed;
-                DescribeSpotInstanceRequestsResult describeSpotInstanceRequestsResult = null;
-                try {
-                    describeSpotInstanceRequestsResult = ec2.describeSpotInstanceRequests(describeSpotInstanceRequestsRequest);
-                } catch (Exception e) {
-                    log.error("Failed to get spot instance request status" + e.getMessage(), e);
-                    return instancesMarkedForTermination;
+                List<SpotInstanceRequest> updatedSpotInstancesRequests = null;
+                if (null == described) {
+                    updatedSpotInstancesRequests = describeSpotInstanceRequests(spotInstanceRequestIdList);
+                } else {
+                    updatedSpotInstancesRequests = new ArrayList<SpotInstanceRequest>();
+                    List<String> idsToDescribe = new ArrayList<String>();
+                    for (String spotInstanceRequestId : new LinkedHashSet<String>(spotInstanceRequestIdList)) {
+                        if (!described.containsKey(spotInstanceRequestId)) {
+                            idsToDescribe.add(spotInstanceRequestId);
+                        } else if (null != described.get(spotInstanceRequestId)) {
+                            updatedSpotInstancesRequests.add(described.get(spotInstanceRequestId));
+                        }
+                    }
+                    if (!idsToDescribe.isEmpty()) {
+                        updatedSpotInstancesRequests.addAll(describeSpotInstanceRequests(idsToDescribe));
+                    }
                 }
-                List<SpotInstanceRequest> updatedSpotInstancesRequests = describeSpotInstanceRequestsResult.getSpotInstanceRequests();
-                log.debug("[getReturnRequest]Spot Instances Requests: " + updatedSpotInstancesRequests);
+                log.debug("[getReturnRequest]Spot Instances Requests: {}", AwsLog.summary(updatedSpotInstancesRequests));
                 long gracePeriod;
                 for(SpotInstanceRequest spotInstanceRequest : updatedSpotInstancesRequests) {
                     if(!StringUtils.isNullOrEmpty(spotInstanceRequest.getState()) && spotInstanceRequest.getStatus() != null) {
@@ -2521,6 +3466,133 @@ public class AWSClient {
         return instancesMarkedForTermination;
     }
 
+    /**
+     * @Title: describeSpotInstanceRequests
+     * @Description: Describe spot instance requests, by batches of AwsConst.DESCRIBE_SPOT_REQUESTS_MAX_IDS
+     *               IDs run concurrently through the worker pool. A batch failing with
+     *               InvalidSpotInstanceRequestID is bisected to skip the requests not found. The requests
+     *               in a final state (closed, cancelled, failed) and the requests not found are kept in the
+     *               spot request cache, and are taken from it instead of EC2 until their entry expires.
+     * @param spotInstanceRequestIds
+     * @return the spot instance requests found, a failed batch is left out
+     */
+    private static List<SpotInstanceRequest> describeSpotInstanceRequests(Collection<String> spotInstanceRequestIds) {
+        final AwsTtlCache cache = getSpotRequestCache();
+        List<SpotInstanceRequest> spotInstanceRequests = new ArrayList<SpotInstanceRequest>();
+        List<String> idsToDescribe = new ArrayList<String>();
+        for (String spotInstanceRequestId : new LinkedHashSet<String>(spotInstanceRequestIds)) {
+            if (StringUtils.isNullOrEmpty(spotInstanceRequestId)) {
+                continue;
+            }
+            String cached = cache.get(spotInstanceRequestId);
+            if (null == cached) {
+                idsToDescribe.add(spotInstanceRequestId);
+            } else if (!SPOT_REQUEST_NOT_FOUND.equals(cached)) {
+                spotInstanceRequests.add(fromSpotRequestCacheValue(spotInstanceRequestId, cached));
+            }
+        }
+        log.debug("[getReturnRequest]Describing " + idsToDescribe.size() + " spot instance requests, "
+                  + spotInstanceRequests.size() + " taken from the cache");
+
+        final AmazonEC2 ec2 = getEC2Client();
+        List<Callable<List<SpotInstanceRequest>>> batches = new ArrayList<Callable<List<SpotInstanceRequest>>>();
+        for (int i = 0; i < idsToDescribe.size(); i += AwsConst.DESCRIBE_SPOT_REQUESTS_MAX_IDS) {
+            final List<String> batch = idsToDescribe.subList(i, Math.min(i + AwsConst.DESCRIBE_SPOT_REQUESTS_MAX_IDS, idsToDescribe.size()));
+            batches.add(new Callable<List<SpotInstanceRequest>>() {
+                @Override
+                public List<SpotInstanceRequest> call() {
+                    List<SpotInstanceRequest> batchSpotInstanceRequests = new ArrayList<SpotInstanceRequest>();
+                    try {
+                        describeSpotInstanceRequestBatch(ec2, batch, batchSpotInstanceRequests, cache);
+                    } catch (Exception e) {
+                        log.error("Failed to get spot instance request status of " + batch.size() + " requests. " + e.getMessage(), e);
+                    }
+                    return batchSpotInstanceRequests;
+                }
+            });
+        }
+
+        for (List<SpotInstanceRequest> batchSpotInstanceRequests : AwsWorkerPool.invokeAll(batches)) {
+            for (SpotInstanceRequest spotInstanceRequest : batchSpotInstanceRequests) {
+                spotInstanceRequests.add(spotInstanceRequest);
+                if (AwsConst.SPOT_REQUEST_FINAL_STATES.contains(spotInstanceRequest.getState())) {
+                    cache.put(spotInstanceRequest.getSpotInstanceRequestId(), toSpotRequestCacheValue(spotInstanceRequest));
+                }
+            }
+        }
+        cache.save();
+        return spotInstanceRequests;
+    }
+
+    private static void describeSpotInstanceRequestBatch(AmazonEC2 ec2, List<String> batch, List<SpotInstanceRequest> spotInstanceRequests,
+            AwsTtlCache cache) throws AmazonServiceException {
+        Set<String> found = new HashSet<String>();
+        try {
+            DescribeSpotInstanceRequestsResult describeSpotInstanceRequestsResult = ec2.describeSpotInstanceRequests(
+                        new DescribeSpotInstanceRequestsRequest().withSpotInstanceRequestIds(batch));
+            for (SpotInstanceRequest spotInstanceRequest : describeSpotInstanceRequestsResult.getSpotInstanceRequests()) {
+                spotInstanceRequests.add(spotInstanceRequest);
+                found.add(spotInstanceRequest.getSpotInstanceRequestId());
+            }
+        } catch (AmazonServiceException ase) {
+            if (ase.getErrorCode() == null || !ase.getErrorCode().contains("InvalidSpotInstanceRequestID")) {
+                throw ase;
+            }
+            if (batch.size() == 1) {
+                log.warn("Spot instance request <" + batch.get(0) + "> not found. " + ase.getMessage());
+                cache.put(batch.get(0), SPOT_REQUEST_NOT_FOUND);
+                return;
+            }
+            log.warn("Describe spot instance requests error, retrying to describe the " + batch.size() + " requests in two halves. " + ase.getMessage());
+            int half = batch.size() / 2;
+            describeSpotInstanceRequestBatch(ec2, batch.subList(0, half), spotInstanceRequests, cache);
+            describeSpotInstanceRequestBatch(ec2, batch.subList(half, batch.size()), spotInstanceRequests, cache);
+            return;
+        }
+
+        // A request left out of the result of several requests is described alone to get its own error
+        if (batch.size() > 1) {
+            for (String spotInstanceRequestId : batch) {
+                if (!found.contains(spotInstanceRequestId)) {
+                    describeSpotInstanceRequestBatch(ec2, Collections.singletonList(spotInstanceRequestId), spotInstanceRequests, cache);
+                }
+            }
+        }
+    }
+
+    private static synchronized AwsTtlCache getSpotRequestCache() {
+        if (null == spotRequestCache) {
+            spotRequestCache = new AwsTtlCache(AwsConst.SPOT_REQUEST_CACHE, AwsConst.SPOT_REQUEST_CACHE_TTL_SECONDS);
+        }
+        return spotRequestCache;
+    }
+
+    /**
+     * @param spotInstanceRequest
+     * @return the state, status code and status update time of the spot instance request, as kept in the spot request cache
+     */
+    private static String toSpotRequestCacheValue(SpotInstanceRequest spotInstanceRequest) {
+        SpotInstanceStatus status = spotInstanceRequest.getStatus();
+        String code = (null == status || null == status.getCode()) ? "" : status.getCode();
+        long updateTime = (null == status || null == status.getUpdateTime()) ? 0 : status.getUpdateTime().getTime();
+        return spotInstanceRequest.getState() + "|" + code + "|" + updateTime;
+    }
+
+    private static SpotInstanceRequest fromSpotRequestCacheValue(String spotInstanceRequestId, String value) {
+        String[] fields = value.split("\\|", -1);
+        SpotInstanceStatus status = new SpotInstanceStatus().withCode(fields.length > 1 ? fields[1] : "");
+        if (fields.length > 2) {
+            try {
+                status.setUpdateTime(new Date(Long.parseLong(fields[2])));
+            } catch (NumberFormatException e) {
+                status.setUpdateTime(new Date(0));
+            }
+        } else {
+            status.setUpdateTime(new Date(0));
+        }
+        return new SpotInstanceRequest().withSpotInstanceRequestId(spotInstanceRequestId).withState(fields[0]).withStatus(status);
+    }
+
     static boolean isFatalError(String errorCode) {
         List<String> fatal = Arrays.asList(new String[] {"AuthFailure","Blocked","UnauthorizedOperation", "InvalidAction","UnsupportedInstanceAttribute","Unsupported", "InvalidParameterCombination", "InvalidSpotFleetRequestConfig", "InvalidSubnetID.NotFound"});
         if(fatal.contains(errorCode)) {
@@ -2529,63 +3601,196 @@ public class AWSClient {
         return false;
     }
 
-    public static Double doCurrentSpotPrice(AwsTemplate t) {
+    /**
+     * @Title: setCurrentSpotPrices
+     * @Description: Set the market spot price of the templates to the lowest current spot price of their
+     *               VM type in the availability zones of their subnets. The zones of the subnets and the
+     *               prices are cached, see AWS_SPOT_PRICE_CACHE_TTL, and the prices not cached are looked
+     *               up concurrently.
+     * @param templates
+     */
+    public static void setCurrentSpotPrices(List<AwsTemplate> templates) {
         if (log.isTraceEnabled()) {
-            log.trace("Start in class AWSClient in method getCurrentSpotPrice with parameters: ");
+            log.trace("Start in class AWSClient in method setCurrentSpotPrices with parameters: templates: " + templates);
         }
-        if (StringUtils.isNullOrEmpty(t.getVmType()) ||
-            StringUtils.isNullOrEmpty(t.getSubnetId())) {
-                return 0.0;
-        }
-        if (!t.getAllocationStrategy().equalsIgnoreCase(AllocationStrategy.LowestPrice.toString())) {
-            log.debug("market spot price is only supported for lowestPrice allocation strategy");
-            return 0.0;
+
+        Map<AwsTemplate, String> vmTypes = new LinkedHashMap<AwsTemplate, String>();
+        Set<String> subnetIds = new LinkedHashSet<String>();
+        for (AwsTemplate t : templates) {
+            t.setMarketSpotPrice(0.0);
+            if (StringUtils.isNullOrEmpty(t.getVmType()) ||
+                StringUtils.isNullOrEmpty(t.getSubnetId())) {
+                continue;
+            }
+            if (!t.getAllocationStrategy().equalsIgnoreCase(AllocationStrategy.LowestPrice.toString())) {
+                log.debug("market spot price is only supported for lowestPrice allocation strategy");
+                continue;
+            }
+            String[] instanceTypesArray = t.getVmType().split(",");
+            if (instanceTypesArray.length > 1) {
+                log.debug("market spot price is not supported for multiple vm types");
+                continue;
+            }
+            vmTypes.put(t, instanceTypesArray[0].trim());
+            for (String subnetId : t.getSubnetId().split(",")) {
+                subnetIds.add(subnetId.trim());
+            }
         }
-        String[] instanceTypesArray = t.getVmType().split(",");
-        if (instanceTypesArray.length > 1) {
-            log.debug("market spot price is not supported for multiple vm types");
-            return 0.0;
+        if (vmTypes.isEmpty()) {
+            return;
         }
+
         try {
-            DescribeSpotPriceHistoryRequest request = new DescribeSpotPriceHistoryRequest();
-            String[] subnetArray = t.getSubnetId().split(",");
-            Collection<String> subnetList = new ArrayList<String>();
-            for (String s : subnetArray) {
-                 subnetList.add(s);
-            }    
-            DescribeSubnetsRequest subnetRequest = new DescribeSubnetsRequest();
-            subnetRequest.setSubnetIds(subnetList);
-            DescribeSubnetsResult subnetResult = ec2.describeSubnets(subnetRequest); 
-            List<Subnet> subnets = subnetResult.getSubnets();
-            Double minPrice = Double.MAX_VALUE;
-            for (Subnet subnet : subnets) {
-             
-                 Collection<String> instanceType = new ArrayList<String>();
-                 instanceType.add(instanceTypesArray[0].trim());
-                 request.setInstanceTypes(instanceType);
-                 Collection<String> productDescriptions = new ArrayList<String>(); 
-                 productDescriptions.add("Linux/UNIX");
-                 request.setProductDescriptions(productDescriptions);
-                 request.setStartTime(new Date());
-                 request.setAvailabilityZone(subnet.getAvailabilityZone());
-                 DescribeSpotPriceHistoryResult result = ec2.describeSpotPriceHistory(request);
-                 if (!result.getSpotPriceHistory().isEmpty()) {
-                     Double currentPrice = Double.parseDouble(result.getSpotPriceHistory().get(0).getSpotPrice());
-                     if (currentPrice < minPrice) {
-                         minPrice = currentPrice;
-                     }
-                 }
-            }
-            if (minPrice != Double.MAX_VALUE) {
-                log.debug("minimum price for template " + t.getTemplateId() + " vm type " + t.getVmType() + " in zone is " + minPrice);
-                return minPrice;
-            } else {
-                log.error("Could not retrieve current spot price");
-                return 0.0;
+            Map<String, String> subnetZones = getSubnetZones(subnetIds);
+
+            Map<String, String[]> priceKeys = new LinkedHashMap<String, String[]>();
+            for (Map.Entry<AwsTemplate, String> e : vmTypes.entrySet()) {
+                for (String subnetId : e.getKey().getSubnetId().split(",")) {
+                    String zone = subnetZones.get(subnetId.trim());
+                    if (zone != null) {
+                        priceKeys.put(getSpotPriceKey(e.getValue(), zone), new String[] {e.getValue(), zone});
+                    }
+                }
+            }
+            Map<String, Double> prices = getSpotPrices(priceKeys);
+
+            for (Map.Entry<AwsTemplate, String> e : vmTypes.entrySet()) {
+                AwsTemplate t = e.getKey();
+                Double minPrice = Double.MAX_VALUE;
+                for (String subnetId : t.getSubnetId().split(",")) {
+                    String zone = subnetZones.get(subnetId.trim());
+                    Double currentPrice = (zone == null) ? null : prices.get(getSpotPriceKey(e.getValue(), zone));
+                    if (currentPrice != null && currentPrice < minPrice) {
+                        minPrice = currentPrice;
+                    }
+                }
+                if (minPrice != Double.MAX_VALUE) {
+                    log.debug("minimum price for template " + t.getTemplateId() + " vm type " + t.getVmType() + " in zone is " + minPrice);
+                    t.setMarketSpotPrice(minPrice);
+                } else {
+                    log.error("Could not retrieve current spot price for template " + t.getTemplateId());
+                }
             }
         } catch (AmazonServiceException e) {
-            log.error("Exception in doCurrentSpotPrice " + e.getMessage());
-            return 0.0;
+            log.error("Exception in setCurrentSpotPrices " + e.getMessage());
+        } finally {
+            getSubnetZoneCache().save();
+            getSpotPriceCache().save();
+        }
+    }
+
+    /**
+     * @Title: getSubnetZones
+     * @Description: Get the availability zones of the subnets, from the cache or from cloud. Subnets
+     *               which do not exist are left out.
+     * @param subnetIds
+     * @return availability zone by subnet ID
+     * @throws AmazonServiceException
+     */
+    private static Map<String, String> getSubnetZones(Collection<String> subnetIds) throws AmazonServiceException {
+        AwsTtlCache cache = getSubnetZoneCache();
+        Map<String, String> subnetZones = new HashMap<String, String>();
+        List<String> missingIds = new ArrayList<String>();
+        for (String subnetId : subnetIds) {
+            String zone = cache.get(subnetId);
+            if (zone != null) {
+                subnetZones.put(subnetId, zone);
+            } else {
+                missingIds.add(subnetId);
+            }
+        }
+
+        AmazonEC2 ec2 = getEC2Client();
+        for (int i = 0; i < missingIds.size(); i += AwsConst.DESCRIBE_INSTANCES_FILTER_MAX_VALUES) {
+            // subnet-id filter instead of SubnetIds, an unknown subnet does not fail the whole call
+            DescribeSubnetsRequest subnetRequest = new DescribeSubnetsRequest().withFilters(new Filter().withName("subnet-id")
+                    .withValues(missingIds.subList(i, Math.min(i + AwsConst.DESCRIBE_INSTANCES_FILTER_MAX_VALUES, missingIds.size()))));
+            DescribeSubnetsResult subnetResult = ec2.describeSubnets(subnetRequest);
+            for (Subnet subnet : subnetResult.getSubnets()) {
+                subnetZones.put(subnet.getSubnetId(), subnet.getAvailabilityZone());
+                cache.put(subnet.getSubnetId(), subnet.getAvailabilityZone());
+            }
+        }
+
+        return subnetZones;
+    }
+
+    /**
+     * @Title: getSpotPrices
+     * @Description: Get the current spot prices, from the cache or from cloud. The prices not cached
+     *               are looked up concurrently, one DescribeSpotPriceHistory call per VM type and zone.
+     * @param priceKeys VM type and availability zone by cache key
+     * @return price by cache key, no price if it cannot be found
+     */
+    private static Map<String, Double> getSpotPrices(Map<String, String[]> priceKeys) {
+        final AwsTtlCache cache = getSpotPriceCache();
+        Map<String, Double> prices = new HashMap<String, Double>();
+        final List<String> missingKeys = new ArrayList<String>();
+        List<Callable<String>> lookups = new ArrayList<Callable<String>>();
+        for (Map.Entry<String, String[]> e : priceKeys.entrySet()) {
+            String price = cache.get(e.getKey());
+            if (price != null) {
+                prices.put(e.getKey(), Double.parseDouble(price));
+                continue;
+            }
+
+            final String vmType = e.getValue()[0];
+            final String zone = e.getValue()[1];
+            missingKeys.add(e.getKey());
+            lookups.add(new Callable<String>() {
+                @Override
+                public String call() {
+                    DescribeSpotPriceHistoryRequest request = new DescribeSpotPriceHistoryRequest()
+                    .withInstanceTypes(vmType)
+                    .withProductDescriptions(AwsConst.SPOT_PRICE_PRODUCT_DESCRIPTION)
+                    .withStartTime(new Date())
+                    .withAvailabilityZone(zone);
+                    try {
+                        DescribeSpotPriceHistoryResult result = getEC2Client().describeSpotPriceHistory(request);
+                        if (!result.getSpotPriceHistory().isEmpty()) {
+                            return result.getSpotPriceHistory().get(0).getSpotPrice();
+                        }
+                    } catch (AmazonServiceException e) {
+                        log.error("Failed to get the spot price of " + vmType + " in " + zone + ": " + e.getMessage());
+                    }
+                    return null;
+                }
+            });
+        }
+
+        List<String> results = AwsWorkerPool.invokeAll(lookups);
+        for (int i = 0; i < missingKeys.size(); i++) {
+            String price = results.get(i);
+            if (price != null) {
+                prices.put(missingKeys.get(i), Double.parseDouble(price));
+                cache.put(missingKeys.get(i), price);
+            }
+        }
+
+        log.debug("Spot prices: " + prices.size() + " of " + priceKeys.size() + " found, " + missingKeys.size() + " looked up on cloud");
+        return prices;
+    }
+
+    private static String getSpotPriceKey(String vmType, String zone) {
+        return vmType + "|" + zone + "|" + AwsConst.SPOT_PRICE_PRODUCT_DESCRIPTION;
+    }
+
+    private static synchronized AwsTtlCache getSpotPriceCache() {
+        if (null == spotPriceCache) {
+            int ttl = AwsConst.SPOT_PRICE_CACHE_TTL_SECONDS;
+            AwsConfig config = AwsUtil.getConfig();
+            if (null != config && null != config.getSpotPriceCacheTtl() && config.getSpotPriceCacheTtl().intValue() >= 0) {
+                ttl = config.getSpotPriceCacheTtl().intValue();
+            }
+            spotPriceCache = new AwsTtlCache(AwsConst.SPOT_PRICE_CACHE, ttl);
+        }
+        return spotPriceCache;
+    }
+
+    private static synchronized AwsTtlCache getSubnetZoneCache() {
+        if (null == subnetZoneCache) {
+            subnetZoneCache = new AwsTtlCache(AwsConst.SUBNET_ZONE_CACHE, AwsConst.SUBNET_ZONE_CACHE_TTL_SECONDS);
         }
+        return subnetZoneCache;
     }
 }
@@ -0,0 +1,286 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.aws.client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.AWSRequestMetrics.Field;
+import com.amazonaws.util.SdkHttpUtils;
+import com.amazonaws.util.TimingInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibm.spectrum.constant.AwsConst;
+import com.ibm.spectrum.model.AwsConfig;
+import com.ibm.spectrum.util.AwsUtil;
+
+/**
+* @ClassName: AwsMetricsCollector
+* @Description: Collector of the metrics of the EC2 API calls made by the SDK client. For
+* each operation, like DescribeInstances, it counts the calls, the failed calls, the
+* throttled HTTP requests, the SDK retries and the bytes sent and received, and keeps a
+* histogram of the call latencies in milliseconds, with the upper bounds of
+* AwsConst.METRICS_LATENCY_BUCKETS_MILLISECONDS. The bytes received are the Content-Length
+* of the successful responses, a response sent without it is not counted.
+*
+* save() appends the metrics collected since the last save as one JSON line to
+* <providerName>-metrics.log in the work directory, and starts over:
+*
+*    {"time":<epoch milliseconds>,"command":"getRequestStatus","durationMs":1200,
+*     "ops":{"DescribeInstances":{"calls":3,"errors":0,"throttles":1,"retries":1,
+*     "bytesSent":310,"bytesReceived":48211,"totalMs":905,"maxMs":512,
+*     "latencyMs":{"250":1,"1000":2}}}}
+*
+* The histogram only lists the buckets which are not empty, "inf" is the bucket of the
+* calls slower than the last bound. The file is renamed to <providerName>-metrics.log.1
+* when it reaches AWS_METRICS_FILE_SIZE_KB. The daemon saves the metrics after each call
+* it serves, the calls it serves at the same time share their line.
+* @version 1.0
+*/
+public class AwsMetricsCollector extends RequestMetricCollector {
+    private static Logger log = LogManager.getLogger(AwsMetricsCollector.class);
+
+    private static final AwsMetricsCollector instance = new AwsMetricsCollector();
+
+    private Map<String, OperationMetrics> operations = new TreeMap<String, OperationMetrics>();
+
+    private long startTime = System.currentTimeMillis();
+
+    /**
+     * @Title: getCollector
+     * @Description: Collector to plug into the EC2 client
+     * @return RequestMetricCollector.NONE when the metrics are disabled
+     */
+    public static RequestMetricCollector getCollector() {
+        if (getFileSizeKB() <= 0) {
+            return RequestMetricCollector.NONE;
+        }
+        return instance;
+    }
+
+    @Override
+    public void collectMetrics(Request<?> request, Response<?> response) {
+        try {
+            AWSRequestMetrics metrics = request.getAWSRequestMetrics();
+            if (null == metrics || null == metrics.getTimingInfo()) {
+                return;
+            }
+            TimingInfo timingInfo = metrics.getTimingInfo();
+
+            Double millis = timingInfo.getTimeTakenMillisIfKnown();
+            if (null == millis) {
+                TimingInfo executeTime = timingInfo.getSubMeasurement(Field.ClientExecuteTime.name());
+                millis = (null == executeTime) ? null : executeTime.getTimeTakenMillisIfKnown();
+            }
+
+            long bytesSent = 0;
+            if (null != request.getContent()) {
+                bytesSent = parseLength(request.getHeaders().get("Content-Length"));
+            } else {
+                String parameters = SdkHttpUtils.encodeParameters(request);
+                bytesSent = (null == parameters) ? 0 : parameters.length();
+            }
+
+            // The SDK does not count the bytes of the EC2 query responses it unmarshals
+            long bytesReceived = 0;
+            if (null != response && null != response.getHttpResponse()) {
+                bytesReceived = parseLength(response.getHttpResponse().getHeader("Content-Length"));
+            }
+
+            long attempts = getCounter(timingInfo, Field.RequestCount);
+            record(getOperationName(request),
+                   null == millis ? 0 : millis.longValue(),
+                   null == response,
+                   getCounter(timingInfo, Field.ThrottleException),
+                   Math.max(attempts - 1, getCounter(timingInfo, Field.HttpClientRetryCount)),
+                   bytesSent,
+                   bytesReceived);
+        } catch (RuntimeException e) {
+            log.debug("Cannot collect the metrics of an EC2 API call: " + e.getMessage());
+        }
+    }
+
+    private static String getOperationName(Request<?> request) {
+        String name = (null == request.getOriginalRequest()) ? null : request.getOriginalRequest().getClass().getSimpleName();
+        if (null == name) {
+            return "Unknown";
+        }
+        if (name.endsWith("Request") && name.length() > "Request".length()) {
+            name = name.substring(0, name.length() - "Request".length());
+        }
+        return name;
+    }
+
+    private static long parseLength(String contentLength) {
+        if (null == contentLength) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long getCounter(TimingInfo timingInfo, Field field) {
+        Number counter = timingInfo.getCounter(field.name());
+        return (null == counter) ? 0 : counter.longValue();
+    }
+
+    private synchronized void record(String operation, long millis, boolean failed, long throttles, long retries, long bytesSent, long bytesReceived) {
+        OperationMetrics metrics = operations.get(operation);
+        if (null == metrics) {
+            metrics = new OperationMetrics();
+            operations.put(operation, metrics);
+        }
+        metrics.calls++;
+        if (failed) {
+            metrics.errors++;
+        }
+        metrics.throttles += throttles;
+        metrics.retries += retries;
+        metrics.bytesSent += bytesSent;
+        metrics.bytesReceived += bytesReceived;
+        metrics.totalMs += millis;
+        metrics.maxMs = Math.max(metrics.maxMs, millis);
+        metrics.latency[getBucket(millis)]++;
+    }
+
+    private static int getBucket(long millis) {
+        List<Long> bounds = AwsConst.METRICS_LATENCY_BUCKETS_MILLISECONDS;
+        for (int i = 0; i < bounds.size(); i++) {
+            if (millis <= bounds.get(i)) {
+                return i;
+            }
+        }
+        return bounds.size();
+    }
+
+    /**
+     * @Title: save
+     * @Description: Append the metrics collected since the last save to the metrics file, if there were EC2 API calls
+     * @param command the provider command which made the calls
+     */
+    public static void save(String command) {
+        Map<String, OperationMetrics> collected;
+        long since;
+        synchronized (instance) {
+            if (instance.operations.isEmpty()) {
+                return;
+            }
+            collected = instance.operations;
+            since = instance.startTime;
+            instance.operations = new TreeMap<String, OperationMetrics>();
+            instance.startTime = System.currentTimeMillis();
+        }
+
+        long now = System.currentTimeMillis();
+        Map<String, Object> line = new LinkedHashMap<String, Object>();
+        line.put("time", now);
+        line.put("command", command);
+        line.put("durationMs", now - since);
+        Map<String, Object> ops = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, OperationMetrics> entry : collected.entrySet()) {
+            ops.put(entry.getKey(), entry.getValue().toMap());
+        }
+        line.put("ops", ops);
+
+        File metricsFile = new File(AwsUtil.getWorkDir(), AwsUtil.getProviderName() + AwsConst.METRICS_FILE_SUFFIX);
+        try {
+            byte[] bytes = (new ObjectMapper().writeValueAsString(line) + "\n").getBytes(StandardCharsets.UTF_8);
+            if (metricsFile.length() + bytes.length > getFileSizeKB() * 1024L) {
+                File rotated = new File(metricsFile.getPath() + ".1");
+                if (metricsFile.exists() && (!rotated.exists() || rotated.delete()) && !metricsFile.renameTo(rotated)) {
+                    log.warn("Cannot rotate the metrics file " + metricsFile);
+                }
+            }
+            OutputStream out = new FileOutputStream(metricsFile, true);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write the EC2 API metrics to " + metricsFile + ": " + e.getMessage());
+        }
+    }
+
+    private static int getFileSizeKB() {
+        AwsConfig config = AwsUtil.getConfig();
+        if (null == config || null == config.getMetricsFileSizeKB() || config.getMetricsFileSizeKB().intValue() < 0) {
+            return AwsConst.METRICS_FILE_SIZE_KB;
+        }
+        return config.getMetricsFileSizeKB().intValue();
+    }
+
+    /**
+     * Metrics of the calls of one EC2 API operation
+     */
+    private static class OperationMetrics {
+        long calls;
+
+        long errors;
+
+        long throttles;
+
+        long retries;
+
+        long bytesSent;
+
+        long bytesReceived;
+
+        long totalMs;
+
+        long maxMs;
+
+        final long[] latency = new long[AwsConst.METRICS_LATENCY_BUCKETS_MILLISECONDS.size() + 1];
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("calls", calls);
+            map.put("errors", errors);
+            map.put("throttles", throttles);
+            map.put("retries", retries);
+            map.put("bytesSent", bytesSent);
+            map.put("bytesReceived", bytesReceived);
+            map.put("totalMs", totalMs);
+            map.put("maxMs", maxMs);
+            Map<String, Long> histogram = new LinkedHashMap<String, Long>();
+            List<Long> bounds = AwsConst.METRICS_LATENCY_BUCKETS_MILLISECONDS;
+            for (int i = 0; i < latency.length; i++) {
+                if (latency[i] > 0) {
+                    histogram.put(i < bounds.size() ? bounds.get(i).toString() : "inf", latency[i]);
+                }
+            }
+            map.put("latencyMs", histogram);
+            return map;
+        }
+    }
+}
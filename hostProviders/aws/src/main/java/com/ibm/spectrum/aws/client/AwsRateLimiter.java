@@ -0,0 +1,316 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.aws.client;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.ibm.spectrum.constant.AwsConst;
+import com.ibm.spectrum.model.AwsConfig;
+import com.ibm.spectrum.util.AwsUtil;
+
+/**
+* @ClassName: AwsRateLimiter
+* @Description: Client side rate limiter of the EC2 API calls. The EC2 client is
+* wrapped in a proxy which takes a token from the describe bucket (describe and get
+* calls) or the mutating bucket (all other calls) before each call, waiting for
+* the bucket to refill when it is empty.
+*
+* A call throttled by EC2 is retried after an exponential backoff with full
+* jitter, and halves the refill rate of its bucket. Each successful call raises
+* the rate back by a small step, up to the configured rate. The calls, the
+* throttles and the time spent waiting are logged every
+* AwsConst.EC2_RATE_STATS_INTERVAL_SECONDS and when the provider exits.
+* The EC2 client is built with getClientConfiguration(), so that the SDK does not
+* retry the throttled calls on its own as well.
+* @version 1.0
+*/
+public class AwsRateLimiter {
+    private static Logger log = LogManager.getLogger(AwsRateLimiter.class);
+
+    /**
+     * Client methods which do not call the EC2 API
+     */
+    private static final List<String> LOCAL_METHODS = Arrays.asList(new String[] {
+                "setEndpoint", "setRegion", "shutdown", "getCachedResponseMetadata", "waiters"
+            });
+
+    private static final TokenBucket describeBucket = new TokenBucket("describe");
+
+    private static final TokenBucket mutatingBucket = new TokenBucket("mutating");
+
+    private static long lastStatsTime = System.nanoTime();
+
+    /**
+     * @Title: wrap
+     * @Description: Wrap the EC2 client so that all its API calls go through the rate limiter
+     * @param ec2
+     * @return the rate limited EC2 client
+     */
+    public static AmazonEC2 wrap(final AmazonEC2 ec2) {
+        AwsConfig config = AwsUtil.getConfig();
+        describeBucket.configure(getRate(null == config ? null : config.getEc2DescribeRate(), AwsConst.EC2_DESCRIBE_RATE),
+                                 AwsConst.EC2_DESCRIBE_BURST);
+        mutatingBucket.configure(getRate(null == config ? null : config.getEc2MutatingRate(), AwsConst.EC2_MUTATING_RATE),
+                                 AwsConst.EC2_MUTATING_BURST);
+        final int retries = getRate(null == config ? null : config.getEc2ThrottleRetries(), AwsConst.EC2_THROTTLE_RETRIES);
+        log.debug("EC2 API rate limits: " + describeBucket + ", " + mutatingBucket + ", throttle retries: " + retries);
+
+        return (AmazonEC2) Proxy.newProxyInstance(AmazonEC2.class.getClassLoader(), new Class<?>[] { AmazonEC2.class },
+        new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getDeclaringClass() == Object.class || LOCAL_METHODS.contains(method.getName())) {
+                    return invokeTarget(ec2, method, args);
+                }
+                return call(getBucket(method.getName()), retries, ec2, method, args);
+            }
+        });
+    }
+
+    /**
+     * @Title: getClientConfiguration
+     * @Description: Configuration of the wrapped EC2 client. The SDK retries the transient errors as by default,
+     *               except the throttles, which are left to the rate limiter.
+     * @return the EC2 client configuration
+     */
+    public static ClientConfiguration getClientConfiguration() {
+        RetryPolicy.RetryCondition condition = new RetryPolicy.RetryCondition() {
+            @Override
+            public boolean shouldRetry(AmazonWebServiceRequest originalRequest, AmazonClientException exception,
+                                       int retriesAttempted) {
+                if (exception instanceof AmazonServiceException
+                        && RetryUtils.isThrottlingException((AmazonServiceException) exception)) {
+                    return false;
+                }
+                return PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION.shouldRetry(originalRequest, exception, retriesAttempted);
+            }
+        };
+        RetryPolicy policy = new RetryPolicy(condition, PredefinedRetryPolicies.DEFAULT_BACKOFF_STRATEGY,
+                                             PredefinedRetryPolicies.DEFAULT_MAX_ERROR_RETRY, true);
+        return new ClientConfiguration().withRetryPolicy(policy);
+    }
+
+    /**
+     * @Title: logStats
+     * @Description: Log the calls, throttles and wait time of each bucket since the last time they were logged
+     */
+    public static void logStats() {
+        synchronized (AwsRateLimiter.class) {
+            lastStatsTime = System.nanoTime();
+        }
+        describeBucket.logStats();
+        mutatingBucket.logStats();
+    }
+
+    private static Object call(TokenBucket bucket, int retries, AmazonEC2 ec2, Method method, Object[] args) throws Throwable {
+        for (int attempt = 0; ; attempt++) {
+            bucket.acquire();
+            try {
+                Object result = invokeTarget(ec2, method, args);
+                bucket.onSuccess();
+                return result;
+            } catch (AmazonServiceException ase) {
+                if (!RetryUtils.isThrottlingException(ase)) {
+                    throw ase;
+                }
+                bucket.onThrottle();
+                if (attempt >= retries) {
+                    log.warn("EC2 API call " + method.getName() + " is still throttled after " + attempt + " retries: " + ase.getErrorCode());
+                    throw ase;
+                }
+                long backoff = getBackoffMillis(attempt);
+                log.warn("EC2 API call " + method.getName() + " is throttled: " + ase.getErrorCode() + ". Retry in "
+                         + backoff + " ms, " + bucket);
+                bucket.sleep(TimeUnit.MILLISECONDS.toNanos(backoff));
+            } finally {
+                checkStats();
+            }
+        }
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static TokenBucket getBucket(String methodName) {
+        if (methodName.startsWith("describe") || methodName.startsWith("get")) {
+            return describeBucket;
+        }
+        return mutatingBucket;
+    }
+
+    /**
+     * Exponential backoff with full jitter: a random time between 0 and base * 2^attempt, capped
+     */
+    private static long getBackoffMillis(int attempt) {
+        long ceiling = AwsConst.EC2_BACKOFF_BASE_MILLISECONDS << Math.min(attempt, 16);
+        ceiling = Math.min(ceiling, AwsConst.EC2_BACKOFF_MAX_MILLISECONDS);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static void checkStats() {
+        synchronized (AwsRateLimiter.class) {
+            if (System.nanoTime() - lastStatsTime < TimeUnit.SECONDS.toNanos(AwsConst.EC2_RATE_STATS_INTERVAL_SECONDS)) {
+                return;
+            }
+        }
+        logStats();
+    }
+
+    private static int getRate(Integer configured, int defaultRate) {
+        if (null == configured || configured.intValue() < 0) {
+            return defaultRate;
+        }
+        return configured.intValue();
+    }
+
+    /**
+     * Token bucket of one category of EC2 API calls. A call takes a token even
+     * when the bucket is empty, and waits for the tokens it is short of.
+     */
+    private static class TokenBucket {
+        private final String name;
+
+        private double maxRate;
+
+        private double rate;
+
+        private double capacity;
+
+        private double tokens;
+
+        private long lastRefill = System.nanoTime();
+
+        private long calls;
+
+        private long throttles;
+
+        private long waitNanos;
+
+        private long statsTime = System.nanoTime();
+
+        TokenBucket(String name) {
+            this.name = name;
+        }
+
+        synchronized void configure(int rate, int burst) {
+            this.maxRate = rate;
+            this.rate = rate;
+            this.capacity = Math.max(rate, burst);
+            this.tokens = this.capacity;
+        }
+
+        void acquire() throws AmazonClientException {
+            long wait = 0;
+            synchronized (this) {
+                calls++;
+                if (maxRate <= 0) {
+                    return;
+                }
+                refill();
+                tokens -= 1;
+                if (tokens < 0) {
+                    wait = (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+                }
+            }
+            sleep(wait);
+        }
+
+        void sleep(long nanos) throws AmazonClientException {
+            if (nanos <= 0) {
+                return;
+            }
+            synchronized (this) {
+                waitNanos += nanos;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmazonClientException("Interrupted while waiting for the EC2 " + name + " API rate limit", e);
+            }
+        }
+
+        synchronized void onSuccess() {
+            if (maxRate > 0 && rate < maxRate) {
+                refill();
+                rate = Math.min(maxRate, rate + maxRate / 50);
+            }
+        }
+
+        synchronized void onThrottle() {
+            throttles++;
+            if (maxRate > 0) {
+                refill();
+                rate = Math.max(maxRate / 10, rate / 2);
+                // Drop the burst, EC2 has no tokens left either
+                tokens = Math.min(tokens, 0);
+            }
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + rate * (now - lastRefill) / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+        }
+
+        void logStats() {
+            long now = System.nanoTime();
+            synchronized (this) {
+                if (calls > 0) {
+                    double seconds = Math.max(1.0, (double) (now - statsTime) / TimeUnit.SECONDS.toNanos(1));
+                    log.info(String.format("EC2 %s API calls: %d (%.1f/s), throttled: %d, waited: %d ms, rate limit: %.1f/s",
+                                           name, calls, calls / seconds, throttles, TimeUnit.NANOSECONDS.toMillis(waitNanos), rate));
+                }
+                calls = 0;
+                throttles = 0;
+                waitNanos = 0;
+                statsTime = now;
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (maxRate <= 0) {
+                return name + ": no limit";
+            }
+            return String.format("%s: %.1f/s (max %.1f/s, burst %.0f)", name, rate, maxRate, capacity);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.aws.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.CreateTagsRequest;
+import com.amazonaws.services.ec2.model.EbsInstanceBlockDevice;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceBlockDeviceMapping;
+import com.amazonaws.services.ec2.model.Tag;
+import com.amazonaws.util.CollectionUtils;
+import com.amazonaws.util.StringUtils;
+import com.ibm.spectrum.constant.AwsConst;
+import com.ibm.spectrum.util.AwsWorkerPool;
+
+/**
+* @ClassName: AwsTagPlanner
+* @Description: Collects the tags to create on EC2 resources and creates them with as
+* few CreateTags calls as possible. The resources getting the same tag are grouped, and
+* the tags of the same group of resources are created together, by batches of up to
+* AwsConst.CREATE_TAGS_MAX_RESOURCES resources. The tags an instance already has, like
+* the ones set at launch, are not created again.
+*
+* For instance, the RC_ACCOUNT and template tags of 1000 new instances and of their
+* volumes are created by a few calls, and only the InstanceID tags, which differ per
+* instance, need one call per instance and its volumes.
+* @version 1.0
+*/
+public class AwsTagPlanner {
+    private static Logger log = LogManager.getLogger(AwsTagPlanner.class);
+
+    /**
+     * Resources to tag by tag, in the order the tags were added
+     */
+    private final Map<Tag, Set<String>> resourcesByTag = new LinkedHashMap<Tag, Set<String>>();
+
+    /**
+     * @Title: addInstance
+     * @Description: Plan the tags of an instance and of its EBS volumes
+     * @param instance
+     * @param tags
+     */
+    public void addInstance(Instance instance, List<Tag> tags) {
+        if (null == instance || CollectionUtils.isNullOrEmpty(tags)) {
+            return;
+        }
+
+        for (Tag tag : tags) {
+            if (null == instance.getTags() || !instance.getTags().contains(tag)) {
+                addResource(instance.getInstanceId(), tag);
+            }
+        }
+
+        if (null != instance.getBlockDeviceMappings()) {
+            for (InstanceBlockDeviceMapping mapping : instance.getBlockDeviceMappings()) {
+                EbsInstanceBlockDevice ebs = (null == mapping) ? null : mapping.getEbs();
+                if (null != ebs && !StringUtils.isNullOrEmpty(ebs.getVolumeId())) {
+                    addResources(Collections.singletonList(ebs.getVolumeId()), tags);
+                }
+            }
+        }
+    }
+
+    /**
+     * @Title: addResources
+     * @Description: Plan the tags of resources
+     * @param resourceIds
+     * @param tags
+     */
+    public void addResources(List<String> resourceIds, List<Tag> tags) {
+        if (CollectionUtils.isNullOrEmpty(resourceIds) || CollectionUtils.isNullOrEmpty(tags)) {
+            return;
+        }
+        for (Tag tag : tags) {
+            for (String resourceId : resourceIds) {
+                addResource(resourceId, tag);
+            }
+        }
+    }
+
+    private void addResource(String resourceId, Tag tag) {
+        if (StringUtils.isNullOrEmpty(resourceId)) {
+            return;
+        }
+        Set<String> resourceIds = resourcesByTag.get(tag);
+        if (null == resourceIds) {
+            resourceIds = new TreeSet<String>();
+            resourcesByTag.put(tag, resourceIds);
+        }
+        resourceIds.add(resourceId);
+    }
+
+    /**
+     * @return whether there are no tags to create
+     */
+    public boolean isEmpty() {
+        return resourcesByTag.isEmpty();
+    }
+
+    /**
+     * @Title: apply
+     * @Description: Create the planned tags. The CreateTags calls run concurrently through the worker
+     *               pool, a call failing because a resource does not exist anymore is bisected to
+     *               tag the other resources. The errors are logged.
+     */
+    public void apply() {
+        if (isEmpty()) {
+            return;
+        }
+
+        // Merge the tags of the same resources
+        Map<List<String>, List<Tag>> tagsByResources = new LinkedHashMap<List<String>, List<Tag>>();
+        for (Map.Entry<Tag, Set<String>> entry : resourcesByTag.entrySet()) {
+            List<String> resourceIds = new ArrayList<String>(entry.getValue());
+            List<Tag> tags = tagsByResources.get(resourceIds);
+            if (null == tags) {
+                tags = new ArrayList<Tag>();
+                tagsByResources.put(resourceIds, tags);
+            }
+            tags.add(entry.getKey());
+        }
+        resourcesByTag.clear();
+
+        final AmazonEC2 ec2 = AWSClient.getEC2Client();
+        List<Callable<Object>> batches = new ArrayList<Callable<Object>>();
+        for (Map.Entry<List<String>, List<Tag>> entry : tagsByResources.entrySet()) {
+            List<String> resourceIds = entry.getKey();
+            final List<Tag> tags = entry.getValue();
+            for (int i = 0; i < resourceIds.size(); i += AwsConst.CREATE_TAGS_MAX_RESOURCES) {
+                final List<String> batch = resourceIds.subList(i, Math.min(i + AwsConst.CREATE_TAGS_MAX_RESOURCES, resourceIds.size()));
+                batches.add(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        try {
+                            tagBatch(ec2, batch, tags);
+                        } catch (Exception e) {
+                            log.error("Create tags " + tags + " failed for " + batch.size() + " resources: " + batch + ". " + e.getMessage(), e);
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+
+        log.debug("Creating tags on " + tagsByResources.size() + " groups of resources with " + batches.size() + " CreateTags calls");
+        AwsWorkerPool.invokeAll(batches);
+    }
+
+    private static void tagBatch(AmazonEC2 ec2, List<String> batch, List<Tag> tags) throws AmazonServiceException {
+        try {
+            if (log.isTraceEnabled()) {
+                log.trace("Creating the tags " + tags + " on the resources: " + batch);
+            }
+            ec2.createTags(new CreateTagsRequest().withResources(batch).withTags(tags));
+        } catch (AmazonServiceException ase) {
+            if (ase.getErrorCode() == null || !ase.getErrorCode().endsWith(".NotFound")) {
+                throw ase;
+            }
+            if (batch.size() == 1) {
+                log.warn("Cannot create tags on resource <" + batch.get(0) + ">. " + ase.getMessage());
+                return;
+            }
+            log.warn("Create tags error, retrying to tag the " + batch.size() + " resources in two halves. " + ase.getMessage());
+            int half = batch.size() / 2;
+            tagBatch(ec2, batch.subList(0, half), tags);
+            tagBatch(ec2, batch.subList(half, batch.size()), tags);
+        }
+    }
+}
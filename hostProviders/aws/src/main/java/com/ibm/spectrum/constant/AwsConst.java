@@ -63,6 +63,173 @@ public class AwsConst {
 
     public static final String RETURN_REQUEST_PREFIX = "ret-";
 
+    /**
+     * Prefix of the requests holding the stopped instances of the warm pool of a template
+     */
+    public static final String WARM_POOL_REQUEST_PREFIX = "pool-";
+
+    public static final int WARM_POOL_TTL_SECONDS = 3600;
+
+
+    /**
+     * Maximum number of instance IDs described by a single DescribeInstances call
+     */
+    public static final int DESCRIBE_INSTANCES_MAX_IDS = 1000;
+
+    /**
+     * Maximum number of values of a single DescribeInstances filter
+     */
+    public static final int DESCRIBE_INSTANCES_FILTER_MAX_VALUES = 200;
+
+    /**
+     * Page size of the filtered DescribeInstances listings
+     */
+    public static final int DESCRIBE_INSTANCES_MAX_RESULTS = 1000;
+
+    /**
+     * Number of known instance IDs above which the filtered listing sweeps the
+     * instances tagged by the provider instead of filtering on every ID
+     */
+    public static final int DESCRIBE_INSTANCES_TAG_SWEEP_MIN_IDS = 2000;
+
+    /**
+     * Maximum number of fleet IDs described by a single DescribeFleets or DescribeSpotFleetRequests call
+     */
+    public static final int DESCRIBE_FLEETS_MAX_IDS = 100;
+
+    /**
+     * Maximum number of spot instance request IDs described by a single DescribeSpotInstanceRequests call
+     */
+    public static final int DESCRIBE_SPOT_REQUESTS_MAX_IDS = 100;
+
+    public static final int LIST_INSTANCES_CONSISTENCY_THRESHOLD = 10;
+
+    public static final String INSTANCE_TAG_ACCOUNT = "RC_ACCOUNT";
+
+    public static final List<String> LIVE_INSTANCE_STATES = Arrays.asList(
+                "pending", "running", "shutting-down", "stopping", "stopped");
+
+    /**
+     * Default EC2 API rates (calls per second) and bursts of the client side rate limiter,
+     * in line with the EC2 API request token buckets
+     */
+    public static final int EC2_DESCRIBE_RATE = 20;
+
+    public static final int EC2_DESCRIBE_BURST = 100;
+
+    public static final int EC2_MUTATING_RATE = 5;
+
+    public static final int EC2_MUTATING_BURST = 50;
+
+    public static final int EC2_THROTTLE_RETRIES = 3;
+
+    public static final long EC2_BACKOFF_BASE_MILLISECONDS = 200;
+
+    public static final long EC2_BACKOFF_MAX_MILLISECONDS = 20000;
+
+    public static final int EC2_RATE_STATS_INTERVAL_SECONDS = 60;
+
+    public static final int EC2_API_PARALLELISM = 4;
+
+    /**
+     * Maximum number of threads of the shared worker pool
+     */
+    public static final int WORKER_POOL_MAX_THREADS = 32;
+
+    /**
+     * Maximum number of instances terminated, stopped or started by a single TerminateInstances,
+     * StopInstances or StartInstances call
+     */
+    public static final int TERMINATE_INSTANCES_MAX_IDS = 500;
+
+    /**
+     * Maximum number of resources tagged by a single CreateTags call
+     */
+    public static final int CREATE_TAGS_MAX_RESOURCES = 1000;
+
+    public static final String CACHE_FILE_SUFFIX = "-cache.json";
+
+    public static final String SPOT_PRICE_CACHE = "spot-price";
+
+    public static final int SPOT_PRICE_CACHE_TTL_SECONDS = 300;
+
+    public static final String SUBNET_ZONE_CACHE = "subnet-zone";
+
+    public static final int SUBNET_ZONE_CACHE_TTL_SECONDS = 86400;
+
+    public static final String SPOT_PRICE_PRODUCT_DESCRIPTION = "Linux/UNIX";
+
+    public static final String KEY_PAIR_CACHE = "key-pair";
+
+    public static final int METADATA_CACHE_TTL_SECONDS = 3600;
+
+    /**
+     * Time to live of the negative entries of the metadata cache, like a key pair which cannot be created
+     */
+    public static final int METADATA_CACHE_NEGATIVE_TTL_SECONDS = 300;
+
+    public static final String SPOT_REQUEST_CACHE = "spot-request";
+
+    /**
+     * Time to live of the spot instance requests in a final state, or not found, in the spot request cache
+     */
+    public static final int SPOT_REQUEST_CACHE_TTL_SECONDS = 86400;
+
+    /**
+     * States of the spot instance requests which do not change anymore
+     */
+    public static final List<String> SPOT_REQUEST_FINAL_STATES = Arrays.asList("closed", "cancelled", "failed");
+
+    public static final String CAPACITY_CACHE = "capacity";
+
+    public static final int CAPACITY_COOLDOWN_SECONDS = 300;
+
+    /**
+     * Error codes of the launches failing for lack of capacity of the VM type in the subnet or availability zone
+     */
+    public static final List<String> CAPACITY_ERROR_CODES = Arrays.asList(
+                "InsufficientInstanceCapacity", "InsufficientHostCapacity", "InsufficientReservedInstanceCapacity",
+                "InsufficientCapacity", "InsufficientCapacityOnHost");
+
+    public static final String METRICS_FILE_SUFFIX = "-metrics.log";
+
+    public static final int METRICS_FILE_SIZE_KB = 1024;
+
+    /**
+     * Upper bounds of the buckets of the EC2 API call latency histograms
+     */
+    public static final List<Long> METRICS_LATENCY_BUCKETS_MILLISECONDS = Arrays.asList(
+                10L, 25L, 50L, 100L, 250L, 500L, 1000L, 2500L, 5000L, 10000L, 30000L);
+
+    public static final int LOG_SUMMARY_SIZE = 10;
+
+    public static final int LOG_DUMP_SAMPLING = 100;
+
+    public static final String DAEMON_OPTION = "--daemon";
+
+    public static final String DAEMON_ENDPOINT_FILE_SUFFIX = "-daemon.port";
+
+    public static final String DB_JOURNAL_FILE_SUFFIX = ".journal";
+
+    public static final int DB_JOURNAL_COMPACT_SIZE_KB = 1024;
+
+    public static final int DB_JOURNAL_COMPACT_WAIT_SECONDS = 60;
+
+    public static final String DB_LOCK_FILE_SUFFIX = ".lock";
+
+    public static final int DB_READ_ATTEMPTS = 3;
+
+    public static final String DB_FORMAT_JSON = "json";
+
+    public static final String DB_FORMAT_CBOR = "cbor";
+
+    public static final String DB_JSON_FILE_EXTENSION = ".json";
+
+    public static final String DB_CBOR_FILE_EXTENSION = ".cbor";
+
+    public static final String DUMP_DB_OPTION = "--dumpDB";
+
+    public static final String BATCH_OPTION = "--batch";
 
     public static final String EBROKERD_MACHINE_RESULT_SUCCEED = "succeed";
 
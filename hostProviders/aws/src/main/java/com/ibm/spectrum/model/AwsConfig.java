@@ -112,6 +112,174 @@ public class AwsConfig {
     private String awsEndpointUrl;
 
 
+    /**
+     * Optional and type is Boolean (true/false). Default: false.
+     * if true, changes to the provider status DB are appended as small records to a journal
+     * file next to it (<providerName>-db.json.journal) instead of rewriting the whole DB.
+     * The DB file stays the snapshot, the journal is folded into it once it passes
+     * AWS_DB_JOURNAL_COMPACT_SIZE.
+     */
+    @JsonProperty("AWS_DB_JOURNAL")
+    @JsonInclude(Include.NON_NULL)
+    private Boolean dbJournal = new Boolean(false);
+
+    /**
+     * Optional and type is integer. Size in KB of the provider status DB journal
+     * above which it is compacted into a new snapshot. Default: 1024 KB.
+     */
+    @JsonProperty("AWS_DB_JOURNAL_COMPACT_SIZE")
+    @JsonInclude(Include.NON_NULL)
+    private Integer dbJournalCompactSize;
+
+    /**
+     * Optional and type is string. Encoding of the provider status DB file, json (default)
+     * or cbor for a binary <providerName>-db.cbor. An existing DB file in the
+     * other encoding is converted by the next operation.
+     */
+    @JsonProperty("AWS_DB_FORMAT")
+    @JsonInclude(Include.NON_NULL)
+    private String dbFormat;
+
+    /**
+     * Optional and type is Boolean (true/false). Default: false.
+     * if true, the instances checked by getReturnRequests are listed with server side filters
+     * (the provider tag key, the instance IDs known in the provider status DB and the
+     * non-terminated states) instead of describing every instance of the account and region.
+     */
+    @JsonProperty("AWS_LIST_INSTANCES_FILTERED")
+    @JsonInclude(Include.NON_NULL)
+    private Boolean listInstancesFiltered = new Boolean(false);
+
+    /**
+     * Optional and type is integer. Used with AWS_LIST_INSTANCES_FILTERED. Percentage of the
+     * live instances in the provider status DB that may be missing from the filtered listing
+     * before it is distrusted and all instances are listed instead. Default: 10.
+     */
+    @JsonProperty("AWS_LIST_INSTANCES_CONSISTENCY_THRESHOLD")
+    @JsonInclude(Include.NON_NULL)
+    private Integer listInstancesConsistencyThreshold;
+
+    /**
+     * Optional and type is integer. Number of describe (read only) EC2 API calls per second
+     * the provider sends at most. The rate is lowered when EC2 throttles the calls and
+     * raised back while they succeed. 0 means no limit. Default: 20.
+     */
+    @JsonProperty("AWS_EC2_DESCRIBE_RATE")
+    @JsonInclude(Include.NON_NULL)
+    private Integer ec2DescribeRate;
+
+    /**
+     * Optional and type is integer. Number of mutating EC2 API calls (run, create, request,
+     * terminate, cancel, delete...) per second the provider sends at most. 0 means no limit. Default: 5.
+     */
+    @JsonProperty("AWS_EC2_MUTATING_RATE")
+    @JsonInclude(Include.NON_NULL)
+    private Integer ec2MutatingRate;
+
+    /**
+     * Optional and type is integer. Number of times an EC2 API call throttled by EC2
+     * (RequestLimitExceeded, Throttling) is retried after a jittered exponential backoff. Default: 3.
+     */
+    @JsonProperty("AWS_EC2_THROTTLE_RETRIES")
+    @JsonInclude(Include.NON_NULL)
+    private Integer ec2ThrottleRetries;
+
+    /**
+     * Optional and type is integer. Maximum number of EC2 API calls of one operation sent
+     * concurrently, for example the batches of instances terminated together. The calls are
+     * still paced by AWS_EC2_DESCRIBE_RATE and AWS_EC2_MUTATING_RATE. 1 sends them one after
+     * another. Default: 4.
+     */
+    @JsonProperty("AWS_EC2_API_PARALLELISM")
+    @JsonInclude(Include.NON_NULL)
+    private Integer ec2ApiParallelism;
+
+    /**
+     * Optional and type is integer. Number of seconds a spot price looked up for the templates
+     * is reused before it is looked up again. The prices are kept in the work directory, in
+     * <providerName>-spot-price-cache.json. 0 disables the cache. Default: 300.
+     */
+    @JsonProperty("AWS_SPOT_PRICE_CACHE_TTL")
+    @JsonInclude(Include.NON_NULL)
+    private Integer spotPriceCacheTtl;
+
+    /**
+     * Optional and type is integer. Number of seconds the EC2 account metadata looked up
+     * by the provider (the key pairs found or created) is reused before it is checked again.
+     * The cache is kept in the work directory, in <providerName>-key-pair-cache.json, and an
+     * entry is dropped when EC2 reports it stale (InvalidKeyPair.NotFound). 0 disables the cache.
+     * Default: 3600.
+     */
+    @JsonProperty("AWS_METADATA_CACHE_TTL")
+    @JsonInclude(Include.NON_NULL)
+    private Integer metadataCacheTtl;
+
+    /**
+     * Optional and type is integer. Number of on-demand instances from which a request of a template
+     * listing several subnets in subnetId is split across the subnets: the slices are launched
+     * concurrently by one RunInstances call per subnet, and the instances a subnet cannot provide
+     * are asked once more from the subnets which provided all of their slice. 0 disables the split.
+     * Default: 0.
+     */
+    @JsonProperty("AWS_ONDEMAND_SPLIT_THRESHOLD")
+    @JsonInclude(Include.NON_NULL)
+    private Integer onDemandSplitThreshold;
+
+    /**
+     * Optional and type is integer. Number of seconds a VM type is not launched again in a subnet or
+     * availability zone where EC2 reported it has no capacity (InsufficientInstanceCapacity and similar).
+     * The failures are kept in the work directory, in <providerName>-capacity-cache.json.
+     * 0 disables the cool-down. Default: 300.
+     */
+    @JsonProperty("AWS_CAPACITY_COOLDOWN")
+    @JsonInclude(Include.NON_NULL)
+    private Integer capacityCooldown;
+
+    /**
+     * Optional and type is integer. Number of seconds an instance stopped into the warm pool of its
+     * template is kept before it is terminated. 0 terminates the pooled instances on the next
+     * getReturnRequests. Default: 3600.
+     */
+    @JsonProperty("AWS_WARM_POOL_TTL")
+    @JsonInclude(Include.NON_NULL)
+    private Integer warmPoolTtl;
+
+    /**
+     * Optional and type is integer. Size in KB from which the EC2 API metrics file,
+     * <providerName>-metrics.log in the work directory, is renamed to <providerName>-metrics.log.1
+     * and started over. 0 disables the collection of the metrics. Default: 1024.
+     */
+    @JsonProperty("AWS_METRICS_FILE_SIZE_KB")
+    @JsonInclude(Include.NON_NULL)
+    private Integer metricsFileSizeKB;
+
+    /**
+     * Optional and type is integer. Number of elements of the lists, like the machines of a
+     * request, written in the log messages which summarize them. Default: 10.
+     */
+    @JsonProperty("AWS_LOG_SUMMARY_SIZE")
+    @JsonInclude(Include.NON_NULL)
+    private Integer logSummarySize;
+
+    /**
+     * Optional and type is integer. One out of AWS_LOG_DUMP_SAMPLING log messages summarizing
+     * a request, a response or a list writes it in full, 0 never does. The full text is always
+     * written at TRACE log level. Default: 100.
+     */
+    @JsonProperty("AWS_LOG_DUMP_SAMPLING")
+    @JsonInclude(Include.NON_NULL)
+    private Integer logDumpSampling;
+
+    /**
+     * Optional and type is Boolean (true/false). Default: false.
+     * if true, getReturnRequests and getRequestStatus issue their independent EC2 describe
+     * calls (instances, fleets, spot instance requests) concurrently through the worker pool,
+     * and run a failed one again synchronously.
+     */
+    @JsonProperty("AWS_EC2_ASYNC_DESCRIBE")
+    @JsonInclude(Include.NON_NULL)
+    private Boolean ec2AsyncDescribe = new Boolean(false);
+
 	/**
     * <p>Title: </p>
     * <p>Description: </p>
@@ -271,6 +439,258 @@ public class AwsConfig {
         this.awsEndpointUrl = awsEndpointUrl;
     }
 
+    /**
+     * @return dbJournal
+     */
+    public Boolean isDbJournal() {
+        return dbJournal;
+    }
+
+    /**
+     * @param dbJournal the dbJournal to set
+     */
+    public void setDbJournal(Boolean dbJournal) {
+        this.dbJournal = dbJournal;
+    }
+
+    /**
+     * @return dbJournalCompactSize
+     */
+    public Integer getDbJournalCompactSize() {
+        return dbJournalCompactSize;
+    }
+
+    /**
+     * @param dbJournalCompactSize the dbJournalCompactSize to set
+     */
+    public void setDbJournalCompactSize(Integer dbJournalCompactSize) {
+        this.dbJournalCompactSize = dbJournalCompactSize;
+    }
+
+    /**
+     * @return dbFormat
+     */
+    public String getDbFormat() {
+        return dbFormat;
+    }
+
+    /**
+     * @param dbFormat the dbFormat to set
+     */
+    public void setDbFormat(String dbFormat) {
+        this.dbFormat = dbFormat;
+    }
+
+    /**
+     * @return listInstancesFiltered
+     */
+    public Boolean isListInstancesFiltered() {
+        return listInstancesFiltered;
+    }
+
+    /**
+     * @param listInstancesFiltered the listInstancesFiltered to set
+     */
+    public void setListInstancesFiltered(Boolean listInstancesFiltered) {
+        this.listInstancesFiltered = listInstancesFiltered;
+    }
+
+    /**
+     * @return listInstancesConsistencyThreshold
+     */
+    public Integer getListInstancesConsistencyThreshold() {
+        return listInstancesConsistencyThreshold;
+    }
+
+    /**
+     * @param listInstancesConsistencyThreshold the listInstancesConsistencyThreshold to set
+     */
+    public void setListInstancesConsistencyThreshold(Integer listInstancesConsistencyThreshold) {
+        this.listInstancesConsistencyThreshold = listInstancesConsistencyThreshold;
+    }
+
+    /**
+     * @return ec2DescribeRate
+     */
+    public Integer getEc2DescribeRate() {
+        return ec2DescribeRate;
+    }
+
+    /**
+     * @param ec2DescribeRate the ec2DescribeRate to set
+     */
+    public void setEc2DescribeRate(Integer ec2DescribeRate) {
+        this.ec2DescribeRate = ec2DescribeRate;
+    }
+
+    /**
+     * @return ec2MutatingRate
+     */
+    public Integer getEc2MutatingRate() {
+        return ec2MutatingRate;
+    }
+
+    /**
+     * @param ec2MutatingRate the ec2MutatingRate to set
+     */
+    public void setEc2MutatingRate(Integer ec2MutatingRate) {
+        this.ec2MutatingRate = ec2MutatingRate;
+    }
+
+    /**
+     * @return ec2ThrottleRetries
+     */
+    public Integer getEc2ThrottleRetries() {
+        return ec2ThrottleRetries;
+    }
+
+    /**
+     * @param ec2ThrottleRetries the ec2ThrottleRetries to set
+     */
+    public void setEc2ThrottleRetries(Integer ec2ThrottleRetries) {
+        this.ec2ThrottleRetries = ec2ThrottleRetries;
+    }
+
+    /**
+     * @return ec2ApiParallelism
+     */
+    public Integer getEc2ApiParallelism() {
+        return ec2ApiParallelism;
+    }
+
+    /**
+     * @param ec2ApiParallelism the ec2ApiParallelism to set
+     */
+    public void setEc2ApiParallelism(Integer ec2ApiParallelism) {
+        this.ec2ApiParallelism = ec2ApiParallelism;
+    }
+
+    /**
+     * @return spotPriceCacheTtl
+     */
+    public Integer getSpotPriceCacheTtl() {
+        return spotPriceCacheTtl;
+    }
+
+    /**
+     * @param spotPriceCacheTtl the spotPriceCacheTtl to set
+     */
+    public void setSpotPriceCacheTtl(Integer spotPriceCacheTtl) {
+        this.spotPriceCacheTtl = spotPriceCacheTtl;
+    }
+
+    /**
+     * @return metadataCacheTtl
+     */
+    public Integer getMetadataCacheTtl() {
+        return metadataCacheTtl;
+    }
+
+    /**
+     * @param metadataCacheTtl the metadataCacheTtl to set
+     */
+    public void setMetadataCacheTtl(Integer metadataCacheTtl) {
+        this.metadataCacheTtl = metadataCacheTtl;
+    }
+
+    /**
+     * @return onDemandSplitThreshold
+     */
+    public Integer getOnDemandSplitThreshold() {
+        return onDemandSplitThreshold;
+    }
+
+    /**
+     * @param onDemandSplitThreshold the onDemandSplitThreshold to set
+     */
+    public void setOnDemandSplitThreshold(Integer onDemandSplitThreshold) {
+        this.onDemandSplitThreshold = onDemandSplitThreshold;
+    }
+
+    /**
+     * @return capacityCooldown
+     */
+    public Integer getCapacityCooldown() {
+        return capacityCooldown;
+    }
+
+    /**
+     * @param capacityCooldown the capacityCooldown to set
+     */
+    public void setCapacityCooldown(Integer capacityCooldown) {
+        this.capacityCooldown = capacityCooldown;
+    }
+
+    /**
+     * @return warmPoolTtl
+     */
+    public Integer getWarmPoolTtl() {
+        return warmPoolTtl;
+    }
+
+    /**
+     * @param warmPoolTtl the warmPoolTtl to set
+     */
+    public void setWarmPoolTtl(Integer warmPoolTtl) {
+        this.warmPoolTtl = warmPoolTtl;
+    }
+
+    /**
+     * @return metricsFileSizeKB
+     */
+    public Integer getMetricsFileSizeKB() {
+        return metricsFileSizeKB;
+    }
+
+    /**
+     * @param metricsFileSizeKB the metricsFileSizeKB to set
+     */
+    public void setMetricsFileSizeKB(Integer metricsFileSizeKB) {
+        this.metricsFileSizeKB = metricsFileSizeKB;
+    }
+
+    /**
+     * @return logSummarySize
+     */
+    public Integer getLogSummarySize() {
+        return logSummarySize;
+    }
+
+    /**
+     * @param logSummarySize the logSummarySize to set
+     */
+    public void setLogSummarySize(Integer logSummarySize) {
+        this.logSummarySize = logSummarySize;
+    }
+
+    /**
+     * @return logDumpSampling
+     */
+    public Integer getLogDumpSampling() {
+        return logDumpSampling;
+    }
+
+    /**
+     * @param logDumpSampling the logDumpSampling to set
+     */
+    public void setLogDumpSampling(Integer logDumpSampling) {
+        this.logDumpSampling = logDumpSampling;
+    }
+
+    /**
+     * @return ec2AsyncDescribe
+     */
+    public Boolean isEc2AsyncDescribe() {
+        return ec2AsyncDescribe;
+    }
+
+    /**
+     * @param ec2AsyncDescribe the ec2AsyncDescribe to set
+     */
+    public void setEc2AsyncDescribe(Boolean ec2AsyncDescribe) {
+        this.ec2AsyncDescribe = ec2AsyncDescribe;
+    }
+
     /** (Non Javadoc)
     * <p>Title: toString</p>
     * <p>Description: </p>
@@ -300,6 +720,42 @@ public class AwsConfig {
         builder.append(instanceCreationTimeout);
         builder.append(", tagInstanceID=");
         builder.append(tagInstanceID);
+        builder.append(", dbJournal=");
+        builder.append(dbJournal);
+        builder.append(", dbJournalCompactSize=");
+        builder.append(dbJournalCompactSize);
+        builder.append(", dbFormat=");
+        builder.append(dbFormat);
+        builder.append(", listInstancesFiltered=");
+        builder.append(listInstancesFiltered);
+        builder.append(", listInstancesConsistencyThreshold=");
+        builder.append(listInstancesConsistencyThreshold);
+        builder.append(", ec2DescribeRate=");
+        builder.append(ec2DescribeRate);
+        builder.append(", ec2MutatingRate=");
+        builder.append(ec2MutatingRate);
+        builder.append(", ec2ThrottleRetries=");
+        builder.append(ec2ThrottleRetries);
+        builder.append(", ec2ApiParallelism=");
+        builder.append(ec2ApiParallelism);
+        builder.append(", spotPriceCacheTtl=");
+        builder.append(spotPriceCacheTtl);
+        builder.append(", metadataCacheTtl=");
+        builder.append(metadataCacheTtl);
+        builder.append(", onDemandSplitThreshold=");
+        builder.append(onDemandSplitThreshold);
+        builder.append(", capacityCooldown=");
+        builder.append(capacityCooldown);
+        builder.append(", warmPoolTtl=");
+        builder.append(warmPoolTtl);
+        builder.append(", metricsFileSizeKB=");
+        builder.append(metricsFileSizeKB);
+        builder.append(", logSummarySize=");
+        builder.append(logSummarySize);
+        builder.append(", logDumpSampling=");
+        builder.append(logDumpSampling);
+        builder.append(", ec2AsyncDescribe=");
+        builder.append(ec2AsyncDescribe);
         builder.append("]");
         return builder.toString();
     }
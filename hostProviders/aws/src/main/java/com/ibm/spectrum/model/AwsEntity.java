@@ -75,6 +75,12 @@ public class AwsEntity {
     @JsonInclude(Include.NON_NULL)
     private String tagValue;
 
+    /**
+     * Version of the provider status DB, increased by each write
+     */
+    @JsonInclude(Include.NON_NULL)
+    private Long version;
+
     /**
     * <p>Title: </p>
     * <p>Description: </p>
@@ -278,6 +284,21 @@ public class AwsEntity {
         this.tagValue = tagValue;
     }
 
+    /**
+     * @return version
+     */
+    public Long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param version
+     *            the version to set
+     */
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public void setRsp(Integer code, String msg) {
         this.code = code;
         this.msg = msg;
@@ -318,6 +339,8 @@ public class AwsEntity {
         builder.append(tagValue);
         builder.append(", userData=");
         builder.append(userData);
+        builder.append(", version=");
+        builder.append(version);
         builder.append("]");
         return builder.toString();
     }
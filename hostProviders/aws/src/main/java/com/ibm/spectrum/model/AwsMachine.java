@@ -101,6 +101,13 @@ public class AwsMachine {
 
     @JsonInclude(Include.NON_NULL)
     private HostAllocationType lifeCycleType;
+
+    /**
+     * Time the machine was stopped into the warm pool of its template, in milliseconds since the epoch
+     */
+    @JsonProperty("pooledTime")
+    @JsonInclude(Include.NON_NULL)
+    private Long pooledTime;
     
 
 
@@ -108,6 +115,7 @@ public class AwsMachine {
         this.reqId = null;
         this.retId = null;
         this.template = null;
+        this.pooledTime = null;
     }
 
     /**
@@ -132,6 +140,7 @@ public class AwsMachine {
         this.ncores = m.getNcores();
         this.nthreads = m.getNthreads();
         this.lifeCycleType = m.getLifeCycleType();
+        this.pooledTime = m.getPooledTime();
     }
 
     /**
@@ -366,6 +375,20 @@ public class AwsMachine {
 		this.lifeCycleType = lifeCycleType;
 	}
 
+    /**
+     * @return pooledTime
+     */
+    public Long getPooledTime() {
+        return pooledTime;
+    }
+
+    /**
+     * @param pooledTime the pooledTime to set
+     */
+    public void setPooledTime(Long pooledTime) {
+        this.pooledTime = pooledTime;
+    }
+
 
     /** (Non Javadoc)
     * <p>Title: toString</p>
@@ -408,6 +431,8 @@ public class AwsMachine {
         builder.append(nthreads);
         builder.append(", lifeCycleType=");
         builder.append(lifeCycleType);
+        builder.append(", pooledTime=");
+        builder.append(pooledTime);
         builder.append("]");
         return builder.toString();
     }
@@ -432,6 +457,7 @@ public class AwsMachine {
         this.setNcores(machineWithNewValues.getNcores());
         this.setNthreads(machineWithNewValues.getNthreads());
         this.setLifeCycleType(machineWithNewValues.getLifeCycleType());
+        this.setPooledTime(machineWithNewValues.getPooledTime());
     }
 
     @Override
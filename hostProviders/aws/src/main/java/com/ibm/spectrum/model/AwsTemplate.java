@@ -225,6 +225,32 @@ public class AwsTemplate {
     @JsonInclude(Include.NON_NULL)
     private Double onDemandTargetCapacityRatio;
 
+    /**
+     * Optional [Internal]. The VM types and subnets of the template cooling down after a capacity
+     * failure, as <vmType>@<subnetId>:<errorCode>. Reported by getAvailableTemplates.
+     */
+    @JsonProperty("capacityCooldown")
+    @JsonInclude(Include.NON_NULL)
+    private List<String> capacityCooldown;
+
+    /**
+     * Optional. Number of returned on-demand instances of the template kept stopped, instead of
+     * terminated, to be started again by the next requests of the template. The restarted
+     * instances keep their root volume, so the user data and the LSF setup of their first boot
+     * are not run again. 0 or not set disables the warm pool.
+     */
+    @JsonProperty("warmPoolSize")
+    @JsonInclude(Include.NON_NULL)
+    private Integer warmPoolSize;
+
+    /**
+     * Optional. Hibernate the instances stopped into the warm pool. The instances not supporting
+     * hibernation are stopped. Default: false.
+     */
+    @JsonProperty("warmPoolHibernate")
+    @JsonInclude(Include.NON_NULL)
+    private Boolean warmPoolHibernate;
+
 
 	/**
      * <p>Title: </p>
@@ -262,6 +288,18 @@ public class AwsTemplate {
         this.marketSpotPrice = t.getMarketSpotPrice();
         this.ec2FleetConfig = t.getEc2FleetConfig();
         this.onDemandTargetCapacityRatio = t.getOnDemandTargetCapacityRatio();
+        this.attributes = t.getAttributes();
+        this.spotPrice = t.getSpotPrice();
+        this.durationInHours = t.getDurationInHours();
+        this.fleetRole = t.getFleetRole();
+        this.requestValidity = t.getRequestValidity();
+        this.requestValidityStartTime = t.getRequestValidityStartTime();
+        this.requestValidityEndTime = t.getRequestValidityEndTime();
+        this.allocationStrategy = t.getAllocationStrategy();
+        this.instanceTags = t.getInstanceTags();
+        this.fleetType = t.getFleetType();
+        this.warmPoolSize = t.getWarmPoolSize();
+        this.warmPoolHibernate = t.getWarmPoolHibernate();
     }
 
     public void hide() {
@@ -647,6 +685,12 @@ public class AwsTemplate {
         builder.append(this.fleetType);
         builder.append(", onDemandTargetCapacityRatio=");
         builder.append(this.onDemandTargetCapacityRatio);
+        builder.append(", capacityCooldown=");
+        builder.append(this.capacityCooldown);
+        builder.append(", warmPoolSize=");
+        builder.append(this.warmPoolSize);
+        builder.append(", warmPoolHibernate=");
+        builder.append(this.warmPoolHibernate);
         builder.append("]");
         return builder.toString();
     }
@@ -738,4 +782,28 @@ public class AwsTemplate {
 	public void setOnDemandTargetCapacityRatio(Double onDemandTargetCapacityRatio) {
 		this.onDemandTargetCapacityRatio = onDemandTargetCapacityRatio;
 	}
+
+	public List<String> getCapacityCooldown() {
+		return capacityCooldown;
+	}
+
+	public void setCapacityCooldown(List<String> capacityCooldown) {
+		this.capacityCooldown = capacityCooldown;
+	}
+
+	public Integer getWarmPoolSize() {
+		return warmPoolSize;
+	}
+
+	public void setWarmPoolSize(Integer warmPoolSize) {
+		this.warmPoolSize = warmPoolSize;
+	}
+
+	public Boolean getWarmPoolHibernate() {
+		return warmPoolHibernate;
+	}
+
+	public void setWarmPoolHibernate(Boolean warmPoolHibernate) {
+		this.warmPoolHibernate = warmPoolHibernate;
+	}
 }
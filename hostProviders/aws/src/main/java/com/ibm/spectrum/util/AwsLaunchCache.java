@@ -0,0 +1,220 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.util;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazonaws.services.ec2.model.CreateFleetRequest;
+import com.amazonaws.services.ec2.model.FleetLaunchTemplateConfigRequest;
+import com.amazonaws.services.ec2.model.FleetLaunchTemplateSpecificationRequest;
+import com.amazonaws.services.ec2.model.TargetCapacitySpecificationRequest;
+import com.ibm.spectrum.model.AwsTemplate;
+
+/**
+* @ClassName: AwsLaunchCache
+* @Description: In memory cache of the files used to launch instances, so that they are
+* read and parsed once per content instead of once per request. An entry is keyed by the
+* file path and is reused while the file keeps its modification time and size.
+*
+* The user data script is kept with its encoded forms by export command. The EC2 fleet
+* configuration is kept as a parsed CreateFleetRequest skeleton. Each request gets a copy
+* of the skeleton, with its own copies of the parts changed per request (the target
+* capacity and the launch template specifications), and the capacity placeholders
+* ($LSF_TOTAL_TARGET_CAPACITY, $LSF_ONDEMAND_TARGET_CAPACITY, $LSF_SPOT_TARGET_CAPACITY)
+* set from the template. A configuration using the placeholders anywhere else is parsed
+* for each request, as before.
+* @version 1.0
+*/
+public class AwsLaunchCache {
+    private static Logger log = LogManager.getLogger(AwsLaunchCache.class);
+
+    /**
+     * Values standing for the capacity placeholders in the parsed fleet configuration
+     */
+    private static final int TOTAL_CAPACITY_MARK = -2147480001;
+
+    private static final int ONDEMAND_CAPACITY_MARK = -2147480002;
+
+    private static final int SPOT_CAPACITY_MARK = -2147480003;
+
+    /**
+     * Encoded user data kept per user data file, by export command
+     */
+    private static final int USER_DATA_MAX_ENCODED = 64;
+
+    private static final Map<String, UserDataEntry> userDataCache = new HashMap<String, UserDataEntry>();
+
+    private static final Map<String, FleetEntry> fleetCache = new HashMap<String, FleetEntry>();
+
+    /**
+     * @Title: getEncodedUserData
+     * @Description: Base64 encoded content of the user data file, with %EXPORT_USER_DATA% replaced by the export command
+     * @param userDataFile
+     * @param exportCmd
+     * @return
+     * @throws UnsupportedEncodingException
+     */
+    public static synchronized String getEncodedUserData(File userDataFile, String exportCmd) throws UnsupportedEncodingException {
+        String stamp = getStamp(userDataFile);
+        UserDataEntry entry = userDataCache.get(userDataFile.getAbsolutePath());
+        if (null == entry || !stamp.equals(entry.stamp)) {
+            entry = new UserDataEntry(stamp, AwsUtil.readFileToString(userDataFile.getAbsolutePath()));
+            userDataCache.put(userDataFile.getAbsolutePath(), entry);
+        }
+
+        String encodedUserData = entry.encoded.get(exportCmd);
+        if (null == encodedUserData) {
+            String usrDatafileToStr = entry.content.replaceAll("%EXPORT_USER_DATA%", exportCmd);
+            encodedUserData = new String( Base64.encodeBase64( usrDatafileToStr.getBytes( "UTF-8" )), "UTF-8" );
+            entry.encoded.put(exportCmd, encodedUserData);
+        }
+        return encodedUserData;
+    }
+
+    /**
+     * @Title: getFleetRequest
+     * @Description: CreateFleetRequest of the EC2 fleet configuration of the template, for the VM number of the template
+     * @param t
+     * @return a request the caller may change, null if the configuration cannot be parsed
+     */
+    public static CreateFleetRequest getFleetRequest(AwsTemplate t) {
+        File configFile = new File(t.getEc2FleetConfig());
+        FleetEntry entry = getFleetEntry(configFile);
+        if (null == entry.skeleton) {
+            // Placeholders outside of the target capacity, replace them in the text
+            return AwsUtil.toObjectCaseInsensitive(AwsUtil.replaceTargetCapacitySpecification(t), CreateFleetRequest.class);
+        }
+
+        CreateFleetRequest fleetRequest = entry.skeleton.clone();
+
+        TargetCapacitySpecificationRequest targetCapacitySpec = entry.skeleton.getTargetCapacitySpecification();
+        if (targetCapacitySpec != null) {
+            Integer onDemandTargetCapacity = 0;
+            Integer spotTargetCapacity = 0;
+            if (t.getOnDemandTargetCapacityRatio() != null) {
+                onDemandTargetCapacity = (int) Math.ceil(t.getVmNumber() * t.getOnDemandTargetCapacityRatio());
+                spotTargetCapacity = t.getVmNumber() - onDemandTargetCapacity;
+            }
+            fleetRequest.setTargetCapacitySpecification(new TargetCapacitySpecificationRequest()
+                    .withTotalTargetCapacity(patch(targetCapacitySpec.getTotalTargetCapacity(), t.getVmNumber()))
+                    .withOnDemandTargetCapacity(patch(targetCapacitySpec.getOnDemandTargetCapacity(), onDemandTargetCapacity))
+                    .withSpotTargetCapacity(patch(targetCapacitySpec.getSpotTargetCapacity(), spotTargetCapacity))
+                    .withDefaultTargetCapacityType(targetCapacitySpec.getDefaultTargetCapacityType())
+                    .withTargetCapacityUnitType(targetCapacitySpec.getTargetCapacityUnitType()));
+        }
+
+        if (entry.skeleton.getLaunchTemplateConfigs() != null) {
+            List<FleetLaunchTemplateConfigRequest> configs = new ArrayList<FleetLaunchTemplateConfigRequest>();
+            for (FleetLaunchTemplateConfigRequest config : entry.skeleton.getLaunchTemplateConfigs()) {
+                FleetLaunchTemplateConfigRequest copy = new FleetLaunchTemplateConfigRequest().withOverrides(config.getOverrides());
+                FleetLaunchTemplateSpecificationRequest spec = config.getLaunchTemplateSpecification();
+                if (spec != null) {
+                    copy.setLaunchTemplateSpecification(new FleetLaunchTemplateSpecificationRequest()
+                                                        .withLaunchTemplateId(spec.getLaunchTemplateId())
+                                                        .withLaunchTemplateName(spec.getLaunchTemplateName())
+                                                        .withVersion(spec.getVersion()));
+                }
+                configs.add(copy);
+            }
+            fleetRequest.setLaunchTemplateConfigs(configs);
+        }
+
+        return fleetRequest;
+    }
+
+    private static Integer patch(Integer value, Integer requested) {
+        if (null != value && (value == TOTAL_CAPACITY_MARK || value == ONDEMAND_CAPACITY_MARK || value == SPOT_CAPACITY_MARK)) {
+            return requested;
+        }
+        return value;
+    }
+
+    private static synchronized FleetEntry getFleetEntry(File configFile) {
+        String stamp = getStamp(configFile);
+        FleetEntry entry = fleetCache.get(configFile.getAbsolutePath());
+        if (null != entry && stamp.equals(entry.stamp)) {
+            return entry;
+        }
+
+        String content = AwsUtil.readFileToString(configFile.getAbsolutePath());
+        CreateFleetRequest skeleton = AwsUtil.toObjectCaseInsensitive(
+                                          content.replaceAll("\\$LSF_TOTAL_TARGET_CAPACITY", Integer.toString(TOTAL_CAPACITY_MARK))
+                                          .replaceAll("\\$LSF_ONDEMAND_TARGET_CAPACITY", Integer.toString(ONDEMAND_CAPACITY_MARK))
+                                          .replaceAll("\\$LSF_SPOT_TARGET_CAPACITY", Integer.toString(SPOT_CAPACITY_MARK)),
+                                          CreateFleetRequest.class);
+        if (null != skeleton) {
+            CreateFleetRequest probe = skeleton.clone();
+            probe.setTargetCapacitySpecification(null);
+            String text = probe.toString();
+            if (text.contains(Integer.toString(TOTAL_CAPACITY_MARK)) || text.contains(Integer.toString(ONDEMAND_CAPACITY_MARK))
+                    || text.contains(Integer.toString(SPOT_CAPACITY_MARK))) {
+                log.debug("Capacity placeholders are used out of TargetCapacitySpecification in <" + configFile + ">, it is parsed for each request.");
+                skeleton = null;
+            }
+        }
+
+        entry = new FleetEntry(stamp, skeleton);
+        if (null != skeleton) {
+            fleetCache.put(configFile.getAbsolutePath(), entry);
+        }
+        return entry;
+    }
+
+    private static String getStamp(File file) {
+        return file.lastModified() + ":" + file.length();
+    }
+
+    private static class UserDataEntry {
+        final String stamp;
+
+        final String content;
+
+        @SuppressWarnings("serial")
+        final Map<String, String> encoded = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > USER_DATA_MAX_ENCODED;
+            }
+        };
+
+        UserDataEntry(String stamp, String content) {
+            this.stamp = stamp;
+            this.content = content;
+        }
+    }
+
+    private static class FleetEntry {
+        final String stamp;
+
+        final CreateFleetRequest skeleton;
+
+        FleetEntry(String stamp, CreateFleetRequest skeleton) {
+            this.stamp = stamp;
+            this.skeleton = skeleton;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.util;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.logging.log4j.Logger;
+
+import com.ibm.spectrum.constant.AwsConst;
+import com.ibm.spectrum.model.AwsConfig;
+import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.model.AwsMachine;
+import com.ibm.spectrum.model.AwsRequest;
+import com.ibm.spectrum.model.AwsTemplate;
+
+/**
+* @ClassName: AwsLog
+* @Description: Log arguments of bounded cost for the objects which grow with the DB, like
+* the requests, the responses and the machine lists. The methods return an object whose
+* toString() makes the text, so that nothing is built when the level is disabled:
+*
+*    log.info("Call method: [{}] begin, request: {}", mName, AwsLog.sampled(log, req));
+*
+* summary() lists the size of a collection and its first AWS_LOG_SUMMARY_SIZE elements, an
+* entity is summarized by the sizes of its lists. sampled() writes the summary, and the full
+* toString() of the object once out of AWS_LOG_DUMP_SAMPLING messages or when the logger is
+* at TRACE level.
+* @version 1.0
+*/
+public class AwsLog {
+    private AwsLog() {
+    }
+
+    /**
+     * @Title: summary
+     * @Description: Size and first elements of the collection
+     * @param c
+     * @return the log argument
+     */
+    public static Object summary(final Collection<?> c) {
+        return new Object() {
+            @Override
+            public String toString() {
+                StringBuilder b = new StringBuilder();
+                appendSummary(b, c);
+                return b.toString();
+            }
+        };
+    }
+
+    /**
+     * @Title: summary
+     * @Description: Size and first keys of the map
+     * @param m
+     * @return the log argument
+     */
+    public static Object summary(final Map<?, ?> m) {
+        return summary(null == m ? null : m.keySet());
+    }
+
+    /**
+     * @Title: summary
+     * @Description: Fields of the entity, with the sizes and the first elements of its lists
+     * @param ae
+     * @return the log argument
+     */
+    public static Object summary(final AwsEntity ae) {
+        return new Object() {
+            @Override
+            public String toString() {
+                StringBuilder b = new StringBuilder();
+                appendSummary(b, ae);
+                return b.toString();
+            }
+        };
+    }
+
+    /**
+     * @Title: sampled
+     * @Description: Summary of the object, or its full text when the logger is at TRACE level
+     *               or the message is sampled
+     * @param log the logger of the message
+     * @param obj an entity, a collection or any object
+     * @return the log argument
+     */
+    public static Object sampled(final Logger log, final Object obj) {
+        return new Object() {
+            @Override
+            public String toString() {
+                if (log.isTraceEnabled() || isSampled()) {
+                    return String.valueOf(obj);
+                }
+                StringBuilder b = new StringBuilder();
+                appendElement(b, obj);
+                return b.toString();
+            }
+        };
+    }
+
+    private static boolean isSampled() {
+        int sampling = getDumpSampling();
+        return sampling > 0 && ThreadLocalRandom.current().nextInt(sampling) == 0;
+    }
+
+    private static void appendSummary(StringBuilder b, Collection<?> c) {
+        if (null == c) {
+            b.append("null");
+            return;
+        }
+        int limit = getSummarySize();
+        b.append(c.size()).append(" [");
+        int i = 0;
+        for (Iterator<?> it = c.iterator(); it.hasNext() && i < limit; i++) {
+            if (i > 0) {
+                b.append(", ");
+            }
+            appendElement(b, it.next());
+        }
+        if (c.size() > limit) {
+            b.append(i > 0 ? ", " : "").append("...");
+        }
+        b.append("]");
+    }
+
+    private static void appendSummary(StringBuilder b, AwsEntity ae) {
+        if (null == ae) {
+            b.append("null");
+            return;
+        }
+        b.append("AwsEntity [code=").append(ae.getCode());
+        b.append(", msg=").append(ae.getMsg());
+        b.append(", reqId=").append(ae.getReqId());
+        b.append(", retId=").append(ae.getRetId());
+        b.append(", status=").append(ae.getStatus());
+        if (null != ae.getTemplate()) {
+            b.append(", template=");
+            appendElement(b, ae.getTemplate());
+        }
+        if (null != ae.getTemplates()) {
+            b.append(", templates=");
+            appendSummary(b, ae.getTemplates());
+        }
+        if (null != ae.getMachines()) {
+            b.append(", machines=");
+            appendSummary(b, ae.getMachines());
+        }
+        if (null != ae.getReqs()) {
+            b.append(", reqs=");
+            appendSummary(b, ae.getReqs());
+        }
+        b.append(", rc_account=").append(ae.getTagValue());
+        b.append("]");
+    }
+
+    /**
+     * The identity of the models, the size of the collections and the text of the other objects
+     */
+    private static void appendElement(StringBuilder b, Object obj) {
+        if (obj instanceof AwsMachine) {
+            AwsMachine m = (AwsMachine) obj;
+            b.append(m.getMachineId()).append('(').append(m.getName())
+            .append(", ").append(m.getStatus()).append(", ").append(m.getResult()).append(')');
+        } else if (obj instanceof AwsRequest) {
+            AwsRequest req = (AwsRequest) obj;
+            b.append(req.getReqId()).append('(').append(req.getStatus()).append(", ")
+            .append(null == req.getMachines() ? 0 : req.getMachines().size()).append(" machines)");
+        } else if (obj instanceof AwsTemplate) {
+            AwsTemplate t = (AwsTemplate) obj;
+            b.append(t.getTemplateId()).append('(').append(t.getVmType()).append(", ").append(t.getVmNumber()).append(')');
+        } else if (obj instanceof AwsEntity) {
+            appendSummary(b, (AwsEntity) obj);
+        } else if (obj instanceof Collection) {
+            appendSummary(b, (Collection<?>) obj);
+        } else if (obj instanceof Map) {
+            appendSummary(b, ((Map<?, ?>) obj).keySet());
+        } else {
+            b.append(obj);
+        }
+    }
+
+    private static int getSummarySize() {
+        AwsConfig config = AwsUtil.getConfig();
+        if (null == config || null == config.getLogSummarySize() || config.getLogSummarySize().intValue() < 0) {
+            return AwsConst.LOG_SUMMARY_SIZE;
+        }
+        return config.getLogSummarySize().intValue();
+    }
+
+    private static int getDumpSampling() {
+        AwsConfig config = AwsUtil.getConfig();
+        if (null == config || null == config.getLogDumpSampling() || config.getLogDumpSampling().intValue() < 0) {
+            return AwsConst.LOG_DUMP_SAMPLING;
+        }
+        return config.getLogDumpSampling().intValue();
+    }
+}
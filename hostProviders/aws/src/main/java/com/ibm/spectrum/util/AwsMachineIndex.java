@@ -0,0 +1,243 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.spectrum.model.AwsMachine;
+
+/**
+* @ClassName: AwsMachineIndex
+* @Description: Hash index of a list of machines, matching the machines the way
+* AwsMachine.equals does, in constant time instead of a scan of the list:
+*
+*    - a machine with a machine ID and a name matches a machine with the same ID and name
+*    - a machine with a machine ID only matches a machine with the same ID
+*    - a machine with a name only matches a machine with the same name
+*
+* AwsMachine.equals is not symmetric, a machine with an ID only equals a machine with
+* the same ID and any name, but not the other way around. get() finds the machine of the
+* index equal to the given machine, like AwsUtil.getMatchingMachineInList. contains() and
+* remove() find the machine of the index the given machine equals, like List.contains and
+* List.remove. When several machines match, the first one of the list is used.
+* @version 1.0
+*/
+public class AwsMachineIndex {
+    private final Map<String, List<Entry>> byIdAndName = new HashMap<String, List<Entry>>();
+
+    private final Map<String, List<Entry>> byId = new HashMap<String, List<Entry>>();
+
+    private final Map<String, List<Entry>> byName = new HashMap<String, List<Entry>>();
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    private int size = 0;
+
+    /**
+     * @param machines the machines to index, in the order of the list
+     */
+    public AwsMachineIndex(Collection<AwsMachine> machines) {
+        if (null == machines) {
+            return;
+        }
+        for (AwsMachine m : machines) {
+            add(m);
+        }
+    }
+
+    /**
+     * @Title: add
+     * @Description: Add a machine at the end of the index
+     * @param m
+     */
+    public void add(AwsMachine m) {
+        if (null == m) {
+            return;
+        }
+        Entry entry = new Entry(m, entries.size());
+        entries.add(entry);
+        size++;
+        if (entry.hasId && entry.hasName) {
+            addTo(byIdAndName, getKey(m), entry);
+        }
+        if (entry.hasId) {
+            addTo(byId, m.getMachineId(), entry);
+        }
+        if (entry.hasName) {
+            addTo(byName, m.getName(), entry);
+        }
+    }
+
+    /**
+     * @Title: get
+     * @Description: First machine of the index equal to the machine, machineInIndex.equals(m)
+     * @param m
+     * @return null if no machine matches
+     */
+    public AwsMachine get(AwsMachine m) {
+        if (null == m) {
+            return null;
+        }
+        boolean hasId = hasId(m);
+        boolean hasName = hasName(m);
+        Entry found = null;
+        if (hasId && hasName) {
+            found = first(found, byIdAndName.get(getKey(m)), true, true);
+            found = first(found, byId.get(m.getMachineId()), true, false);
+            found = first(found, byName.get(m.getName()), false, true);
+        } else if (hasId) {
+            found = first(found, byId.get(m.getMachineId()), true, false);
+        } else if (hasName) {
+            found = first(found, byName.get(m.getName()), false, true);
+        }
+        return (null == found) ? null : found.machine;
+    }
+
+    /**
+     * @Title: contains
+     * @Description: Whether the machine is equal to a machine of the index, m.equals(machineInIndex)
+     * @param m
+     * @return
+     */
+    public boolean contains(AwsMachine m) {
+        return null != find(m);
+    }
+
+    /**
+     * @Title: remove
+     * @Description: Remove the first machine of the index the machine is equal to, m.equals(machineInIndex)
+     * @param m
+     * @return the removed machine, null if no machine matches
+     */
+    public AwsMachine remove(AwsMachine m) {
+        Entry found = find(m);
+        if (null == found) {
+            return null;
+        }
+        found.removed = true;
+        size--;
+        return found.machine;
+    }
+
+    /**
+     * @return whether all the machines are removed
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the machines not removed, in the order of the list
+     */
+    public List<AwsMachine> values() {
+        List<AwsMachine> machines = new ArrayList<AwsMachine>(size);
+        for (Entry entry : entries) {
+            if (!entry.removed) {
+                machines.add(entry.machine);
+            }
+        }
+        return machines;
+    }
+
+    private Entry find(AwsMachine m) {
+        if (null == m) {
+            return null;
+        }
+        boolean hasId = hasId(m);
+        boolean hasName = hasName(m);
+        if (hasId && hasName) {
+            return first(null, byIdAndName.get(getKey(m)), null, null);
+        } else if (hasId) {
+            return first(null, byId.get(m.getMachineId()), null, null);
+        } else if (hasName) {
+            return first(null, byName.get(m.getName()), null, null);
+        }
+        return null;
+    }
+
+    /**
+     * @param found the best entry so far
+     * @param candidates
+     * @param hasId null to accept the entries with or without ID
+     * @param hasName null to accept the entries with or without name
+     * @return the first entry of found and of the matching candidates not removed
+     */
+    private static Entry first(Entry found, List<Entry> candidates, Boolean hasId, Boolean hasName) {
+        if (null == candidates) {
+            return found;
+        }
+        for (Iterator<Entry> it = candidates.iterator(); it.hasNext();) {
+            Entry entry = it.next();
+            if (entry.removed) {
+                it.remove();
+                continue;
+            }
+            if (null != found && found.position < entry.position) {
+                break;
+            }
+            if ((null == hasId || hasId.booleanValue() == entry.hasId) && (null == hasName || hasName.booleanValue() == entry.hasName)) {
+                return entry;
+            }
+        }
+        return found;
+    }
+
+    private static void addTo(Map<String, List<Entry>> index, String key, Entry entry) {
+        List<Entry> lst = index.get(key);
+        if (null == lst) {
+            lst = new ArrayList<Entry>(1);
+            index.put(key, lst);
+        }
+        lst.add(entry);
+    }
+
+    private static String getKey(AwsMachine m) {
+        return m.getMachineId() + "\n" + m.getName();
+    }
+
+    private static boolean hasId(AwsMachine m) {
+        return m.getMachineId() != null && !m.getMachineId().trim().equals("");
+    }
+
+    private static boolean hasName(AwsMachine m) {
+        return m.getName() != null && !m.getName().trim().equals("");
+    }
+
+    private static class Entry {
+        final AwsMachine machine;
+
+        final int position;
+
+        final boolean hasId;
+
+        final boolean hasName;
+
+        boolean removed = false;
+
+        Entry(AwsMachine machine, int position) {
+            this.machine = machine;
+            this.position = position;
+            this.hasId = AwsMachineIndex.hasId(machine);
+            this.hasName = AwsMachineIndex.hasName(machine);
+        }
+    }
+}
@@ -0,0 +1,691 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazonaws.util.StringUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.ibm.spectrum.constant.AwsConst;
+import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.model.AwsMachine;
+import com.ibm.spectrum.model.AwsRequest;
+
+/**
+* @ClassName: AwsStateJournal
+* @Description: Journal of the provider status DB changes. Each change is a JSON
+* record on its own line in <providerName>-db.json.journal:
+*
+*    {"op":"putRequest","request":{...request without machines...}}
+*    {"op":"removeRequest","requestId":"..."}
+*    {"op":"putMachine","requestId":"...","machine":{...}}
+*    {"op":"removeMachine","requestId":"...","key":"..."}
+*    {"op":"version","version":N}
+*
+* The records of one write are followed by a version record, which commits them
+* and sets the DB version to N. On replay the writes with a version already part
+* of the snapshot are skipped, records without their version record (a crash
+* during an append) are ignored, and a missing version means the snapshot and
+* the journal were read during a compaction and must be read again.
+* @version 1.0
+*/
+public class AwsStateJournal {
+    private static Logger log = LogManager.getLogger(AwsStateJournal.class);
+
+    public static final String OP_PUT_REQUEST = "putRequest";
+
+    public static final String OP_REMOVE_REQUEST = "removeRequest";
+
+    public static final String OP_PUT_MACHINE = "putMachine";
+
+    public static final String OP_REMOVE_MACHINE = "removeMachine";
+
+    public static final String OP_VERSION = "version";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+
+    /**
+    *
+    * @Title: getJournalFile
+    * @Description: The journal file of the DB file
+    * @param @param dbFile
+    * @param @return
+    * @return File
+    * @throws
+     */
+    public static File getJournalFile(File dbFile) {
+        return new File(dbFile.getAbsolutePath() + AwsConst.DB_JOURNAL_FILE_SUFFIX);
+    }
+
+    /**
+    *
+    * @Title: machineKey
+    * @Description: The key of a machine in the journal records, the machine ID or the host name
+    * @param @param m
+    * @param @return
+    * @return String null if the machine cannot be identified
+    * @throws
+     */
+    public static String machineKey(AwsMachine m) {
+        if (!StringUtils.isNullOrEmpty(m.getMachineId())) {
+            return m.getMachineId();
+        }
+        if (!StringUtils.isNullOrEmpty(m.getName())) {
+            return "name:" + m.getName();
+        }
+        return null;
+    }
+
+    /**
+    *
+    * @Title: requestHeader
+    * @Description: The request fields without its machines
+    * @param @param req
+    * @param @return
+    * @return ObjectNode
+    * @throws
+     */
+    public static ObjectNode requestHeader(AwsRequest req) {
+        ObjectNode header = mapper.valueToTree(req);
+        header.remove("machines");
+        return header;
+    }
+
+    public static ObjectNode putRequest(AwsRequest req) {
+        ObjectNode record = mapper.createObjectNode();
+        record.put("op", OP_PUT_REQUEST);
+        record.set("request", requestHeader(req));
+        return record;
+    }
+
+    public static ObjectNode removeRequest(String reqId) {
+        ObjectNode record = mapper.createObjectNode();
+        record.put("op", OP_REMOVE_REQUEST);
+        record.put("requestId", reqId);
+        return record;
+    }
+
+    public static ObjectNode putMachine(String reqId, AwsMachine m) {
+        ObjectNode record = mapper.createObjectNode();
+        record.put("op", OP_PUT_MACHINE);
+        record.put("requestId", reqId);
+        record.set("machine", mapper.valueToTree(m));
+        return record;
+    }
+
+    public static ObjectNode removeMachine(String reqId, String key) {
+        ObjectNode record = mapper.createObjectNode();
+        record.put("op", OP_REMOVE_MACHINE);
+        record.put("requestId", reqId);
+        record.put("key", key);
+        return record;
+    }
+
+    public static ObjectNode version(long version) {
+        ObjectNode record = mapper.createObjectNode();
+        record.put("op", OP_VERSION);
+        record.put("version", version);
+        return record;
+    }
+
+    /**
+    *
+    * @Title: append
+    * @Description: Append the records of a write and its version record to the journal and force them to the disk
+    * @param @param journal
+    * @param @param records
+    * @param @param version the DB version after the write
+    * @return void
+    * @throws IOException
+     */
+    public static void append(File journal, List<ObjectNode> records, long version) throws IOException {
+        StringBuilder b = new StringBuilder();
+        for (ObjectNode record : records) {
+            b.append(mapper.writeValueAsString(record)).append("\n");
+        }
+        b.append(mapper.writeValueAsString(version(version))).append("\n");
+
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > 0) {
+                // Start on a new line if the last append was interrupted
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, size - 1);
+                if (last.get(0) != '\n') {
+                    b.insert(0, "\n");
+                }
+            }
+            ByteBuffer buf = ByteBuffer.wrap(b.toString().getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) {
+                size += channel.write(buf, size);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+    *
+    * @Title: replay
+    * @Description: Apply the committed journal records read from the stream to the DB loaded from the snapshot
+    * @param @param in
+    * @param @param name
+    * @param @param ae
+    * @return int number of records applied, -1 if the journal does not continue the version of the DB
+    * @throws IOException
+     */
+    public static int replay(InputStream in, String name, AwsEntity ae) throws IOException {
+        int count = 0;
+        long version = (null == ae.getVersion()) ? 0 : ae.getVersion().longValue();
+        List<JsonNode> pending = new ArrayList<JsonNode>();
+        Map<String, AwsRequest> reqIndex = indexRequests(ae);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            JsonNode record;
+            try {
+                record = mapper.readTree(line);
+            } catch(IOException e) {
+                // A record partially written before a crash
+                log.warn("Ignore the incomplete record in the journal <" + name + ">: " + e.getMessage());
+                continue;
+            }
+
+            if (!OP_VERSION.equals(record.path("op").asText())) {
+                pending.add(record);
+                continue;
+            }
+
+            long recordVersion = record.path("version").asLong();
+            if (recordVersion > version + 1) {
+                log.debug("The journal <" + name + "> continues version " + recordVersion + ", the DB is at version " + version);
+                return -1;
+            }
+            if (recordVersion == version + 1) {
+                for (JsonNode r : pending) {
+                    apply(ae, r, reqIndex);
+                }
+                count += pending.size();
+                version = recordVersion;
+                ae.setVersion(Long.valueOf(version));
+            }
+            pending.clear();
+        }
+
+        if (!pending.isEmpty()) {
+            log.warn("Ignore " + pending.size() + " uncommitted records in the journal <" + name + ">");
+        }
+        log.debug("Replayed " + count + " records of the journal <" + name + ">");
+        return count;
+    }
+
+    /**
+    *
+    * @Title: apply
+    * @Description: Apply the records to the DB
+    * @param @param ae
+    * @param @param records
+    * @return void
+    * @throws IOException
+     */
+    public static void apply(AwsEntity ae, List<ObjectNode> records) throws IOException {
+        Map<String, AwsRequest> reqIndex = indexRequests(ae);
+        for (ObjectNode record : records) {
+            apply(ae, record, reqIndex);
+        }
+    }
+
+    private static void apply(AwsEntity ae, JsonNode record, Map<String, AwsRequest> reqIndex) throws IOException {
+        List<AwsRequest> reqs = ae.getReqs();
+        String op = record.path("op").asText();
+
+        if (OP_PUT_REQUEST.equals(op)) {
+            AwsRequest header = mapper.treeToValue(record.get("request"), AwsRequest.class);
+            AwsRequest req = reqIndex.get(header.getReqId());
+            if (null == req) {
+                header.setMachines(new ArrayList<AwsMachine>());
+                reqs.add(header);
+            } else {
+                header.setMachines(req.getMachines());
+                reqs.set(reqs.indexOf(req), header);
+            }
+            reqIndex.put(header.getReqId(), header);
+        } else if (OP_REMOVE_REQUEST.equals(op)) {
+            AwsRequest req = reqIndex.remove(record.path("requestId").asText());
+            if (null != req) {
+                reqs.remove(req);
+            }
+        } else if (OP_PUT_MACHINE.equals(op)) {
+            AwsRequest req = reqIndex.get(record.path("requestId").asText());
+            if (null == req) {
+                log.warn("Ignore the journal record of a machine in an unknown request: " + record);
+                return;
+            }
+            if (null == req.getMachines()) {
+                req.setMachines(new ArrayList<AwsMachine>());
+            }
+            AwsMachine m = mapper.treeToValue(record.get("machine"), AwsMachine.class);
+            String key = machineKey(m);
+            List<AwsMachine> mLst = req.getMachines();
+            for (int i = 0; i < mLst.size(); i++) {
+                if (key != null && key.equals(machineKey(mLst.get(i)))) {
+                    mLst.set(i, m);
+                    return;
+                }
+            }
+            mLst.add(m);
+        } else if (OP_REMOVE_MACHINE.equals(op)) {
+            AwsRequest req = reqIndex.get(record.path("requestId").asText());
+            if (null == req || null == req.getMachines()) {
+                return;
+            }
+            String key = record.path("key").asText();
+            for (Iterator<AwsMachine> it = req.getMachines().iterator(); it.hasNext();) {
+                if (key.equals(machineKey(it.next()))) {
+                    it.remove();
+                    return;
+                }
+            }
+        } else {
+            log.warn("Ignore the unknown journal record: " + record);
+        }
+    }
+
+    /**
+    *
+    * @Title: fingerprints
+    * @Description: Serialized form of the requests and machines of the DB, used to find the changes to journal
+    * @param @param ae
+    * @param @param reqPrints request ID to request header
+    * @param @param machinePrints request ID to machine key to machine
+    * @return boolean false if some machines cannot be identified and the DB must be written as a snapshot
+    * @throws
+     */
+    public static boolean fingerprints(AwsEntity ae, Map<String, String> reqPrints, Map<String, Map<String, String>> machinePrints) {
+        boolean complete = true;
+        if (null == ae || null == ae.getReqs()) {
+            return complete;
+        }
+
+        try {
+            for (AwsRequest req : ae.getReqs()) {
+                reqPrints.put(req.getReqId(), requestHeader(req).toString());
+                Map<String, String> mPrints = new HashMap<String, String>();
+                if (null != req.getMachines()) {
+                    for (AwsMachine m : req.getMachines()) {
+                        String key = machineKey(m);
+                        if (null == key) {
+                            complete = false;
+                            continue;
+                        }
+                        mPrints.put(key, mapper.writeValueAsString(m));
+                    }
+                }
+                machinePrints.put(req.getReqId(), mPrints);
+            }
+        } catch(IOException e) {
+            log.error("Serialize the provider status DB error.", e);
+            complete = false;
+        }
+
+        return complete;
+    }
+
+    /**
+    *
+    * @Title: diff
+    * @Description: Journal records that turn the base fingerprints into the current DB
+    * @param @param baseReqs
+    * @param @param baseMachines
+    * @param @param ae
+    * @param @param curReqs filled with the request fingerprints of the current DB
+    * @param @param curMachines filled with the machine fingerprints of the current DB
+    * @return List<ObjectNode> null if the changes cannot be expressed as records
+    * @throws
+     */
+    public static List<ObjectNode> diff(Map<String, String> baseReqs, Map<String, Map<String, String>> baseMachines, AwsEntity ae,
+                                        Map<String, String> curReqs, Map<String, Map<String, String>> curMachines) {
+        List<AwsRequest> reqs = (null == ae.getReqs()) ? new ArrayList<AwsRequest>() : ae.getReqs();
+        if (!fingerprints(ae, curReqs, curMachines) || curReqs.size() != reqs.size()) {
+            // unidentified machines or duplicated request IDs
+            return null;
+        }
+
+        List<ObjectNode> records = new ArrayList<ObjectNode>();
+        for (String reqId : baseReqs.keySet()) {
+            if (!curReqs.containsKey(reqId)) {
+                records.add(removeRequest(reqId));
+            }
+        }
+
+        for (AwsRequest req : reqs) {
+            String reqId = req.getReqId();
+            String baseHeader = baseReqs.get(reqId);
+            if (null == baseHeader || !baseHeader.equals(curReqs.get(reqId))) {
+                records.add(putRequest(req));
+            }
+
+            Map<String, String> baseM = baseMachines.get(reqId);
+            Map<String, String> curM = curMachines.get(reqId);
+            if (null != baseM) {
+                for (String key : baseM.keySet()) {
+                    if (!curM.containsKey(key)) {
+                        records.add(removeMachine(reqId, key));
+                    }
+                }
+            }
+            if (null != req.getMachines()) {
+                for (AwsMachine m : req.getMachines()) {
+                    String key = machineKey(m);
+                    String basePrint = (null == baseM) ? null : baseM.get(key);
+                    if (null == basePrint || !basePrint.equals(curM.get(key))) {
+                        records.add(putMachine(reqId, m));
+                    }
+                }
+            }
+        }
+
+        return records;
+    }
+
+    /**
+    *
+    * @Title: merge
+    * @Description: Three-way merge of the changes made to the DB since it was loaded into the DB written by
+    * another process, for the changes which cannot be expressed as records. The requests are matched by
+    * request ID, the machines by machine key, and the machines without a key by their content.
+    * @param @param base the DB as loaded
+    * @param @param ours the DB with the changes of this operation
+    * @param @param theirs the DB written by the other process, changed in place
+    * @return boolean false if the request IDs of the loaded or the changed DB are missing or duplicated
+    * @throws IOException
+     */
+    public static boolean merge(AwsEntity base, AwsEntity ours, AwsEntity theirs) throws IOException {
+        Map<String, AwsRequest> baseReqs = uniqueRequests(base);
+        Map<String, AwsRequest> ourReqs = uniqueRequests(ours);
+        if (null == baseReqs || null == ourReqs) {
+            return false;
+        }
+        Map<String, AwsRequest> theirReqs = indexRequests(theirs);
+
+        for (String reqId : baseReqs.keySet()) {
+            if (!ourReqs.containsKey(reqId)) {
+                AwsRequest req = theirReqs.remove(reqId);
+                if (null != req) {
+                    theirs.getReqs().remove(req);
+                }
+            }
+        }
+
+        for (AwsRequest ourReq : ourReqs.values()) {
+            String reqId = ourReq.getReqId();
+            AwsRequest baseReq = baseReqs.get(reqId);
+            String header = requestHeader(ourReq).toString();
+            if (null == baseReq || !header.equals(requestHeader(baseReq).toString())) {
+                apply(theirs, putRequest(ourReq), theirReqs);
+            }
+
+            AwsRequest theirReq = theirReqs.get(reqId);
+            if (null == theirReq) {
+                // Removed by the other process and not changed by this operation
+                continue;
+            }
+            if (null == theirReq.getMachines()) {
+                theirReq.setMachines(new ArrayList<AwsMachine>());
+            }
+            mergeMachines(null == baseReq ? null : baseReq.getMachines(), ourReq.getMachines(), theirReq.getMachines());
+        }
+
+        return true;
+    }
+
+    private static void mergeMachines(List<AwsMachine> baseLst, List<AwsMachine> ourLst, List<AwsMachine> theirLst) throws IOException {
+        Map<String, String> baseKeyed = new HashMap<String, String>();
+        Map<String, Integer> baseUnkeyed = new HashMap<String, Integer>();
+        if (null != baseLst) {
+            for (AwsMachine m : baseLst) {
+                String key = machineKey(m);
+                String print = mapper.writeValueAsString(m);
+                if (null != key) {
+                    baseKeyed.put(key, print);
+                } else {
+                    Integer count = baseUnkeyed.get(print);
+                    baseUnkeyed.put(print, null == count ? 1 : count + 1);
+                }
+            }
+        }
+
+        Map<String, AwsMachine> ourKeyed = new LinkedHashMap<String, AwsMachine>();
+        List<AwsMachine> ourAdded = new ArrayList<AwsMachine>();
+        if (null != ourLst) {
+            for (AwsMachine m : ourLst) {
+                String key = machineKey(m);
+                if (null != key) {
+                    ourKeyed.put(key, m);
+                    continue;
+                }
+                String print = mapper.writeValueAsString(m);
+                Integer count = baseUnkeyed.get(print);
+                if (null != count && count > 0) {
+                    // Loaded and not changed by this operation
+                    baseUnkeyed.put(print, count - 1);
+                } else {
+                    ourAdded.add(m);
+                }
+            }
+        }
+
+        for (String key : baseKeyed.keySet()) {
+            if (!ourKeyed.containsKey(key)) {
+                removeMachine(theirLst, key);
+            }
+        }
+        for (Map.Entry<String, AwsMachine> entry : ourKeyed.entrySet()) {
+            String basePrint = baseKeyed.get(entry.getKey());
+            if (null == basePrint || !basePrint.equals(mapper.writeValueAsString(entry.getValue()))) {
+                putMachine(theirLst, entry.getKey(), entry.getValue());
+            }
+        }
+
+        // The machines without a key removed by this operation, one of the same content each
+        for (Map.Entry<String, Integer> entry : baseUnkeyed.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                for (Iterator<AwsMachine> it = theirLst.iterator(); it.hasNext();) {
+                    AwsMachine m = it.next();
+                    if (null == machineKey(m) && entry.getKey().equals(mapper.writeValueAsString(m))) {
+                        it.remove();
+                        break;
+                    }
+                }
+            }
+        }
+        theirLst.addAll(ourAdded);
+    }
+
+    private static void putMachine(List<AwsMachine> mLst, String key, AwsMachine m) {
+        for (int i = 0; i < mLst.size(); i++) {
+            if (key.equals(machineKey(mLst.get(i)))) {
+                mLst.set(i, m);
+                return;
+            }
+        }
+        mLst.add(m);
+    }
+
+    private static void removeMachine(List<AwsMachine> mLst, String key) {
+        for (Iterator<AwsMachine> it = mLst.iterator(); it.hasNext();) {
+            if (key.equals(machineKey(it.next()))) {
+                it.remove();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return request ID to request in the DB order, null if a request ID is missing or duplicated
+     */
+    private static Map<String, AwsRequest> uniqueRequests(AwsEntity ae) {
+        Map<String, AwsRequest> reqs = new LinkedHashMap<String, AwsRequest>();
+        if (null == ae || null == ae.getReqs()) {
+            return reqs;
+        }
+        for (AwsRequest req : ae.getReqs()) {
+            if (null == req.getReqId() || null != reqs.put(req.getReqId(), req)) {
+                return null;
+            }
+        }
+        return reqs;
+    }
+
+    /**
+    *
+    * @Title: readSnapshot
+    * @Description: Parse the content of the DB file, json or cbor depending on the file extension
+    * @param @param content
+    * @param @param dbFile
+    * @return AwsEntity null if the content cannot be parsed
+    * @throws
+     */
+    public static AwsEntity readSnapshot(byte[] content, File dbFile) {
+        try {
+            if (isBinary(dbFile)) {
+                return cborMapper.readValue(content, AwsEntity.class);
+            }
+            return mapper.readValue(content, AwsEntity.class);
+        } catch(IOException e) {
+            log.error("Change the file <" + dbFile.getAbsolutePath() + "> to object error.", e);
+        }
+        return null;
+    }
+
+    /**
+    *
+    * @Title: toSnapshot
+    * @Description: Serialize the DB for the DB file, json or cbor depending on the file extension
+    * @param @param ae
+    * @param @param dbFile
+    * @return byte[]
+    * @throws IOException
+     */
+    public static byte[] toSnapshot(AwsEntity ae, File dbFile) throws IOException {
+        if (isBinary(dbFile)) {
+            return cborMapper.writeValueAsBytes(ae);
+        }
+        return mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(ae);
+    }
+
+    /**
+    *
+    * @Title: isBinary
+    * @Description: Whether the DB file is cbor encoded
+    * @param @param dbFile
+    * @return boolean
+    * @throws
+     */
+    public static boolean isBinary(File dbFile) {
+        return dbFile.getName().endsWith(AwsConst.DB_CBOR_FILE_EXTENSION);
+    }
+
+    /**
+    *
+    * @Title: writeSnapshot
+    * @Description: Write the serialized DB to a temporary file and move it over the DB file
+    * @param @param content
+    * @param @param dbFile
+    * @return void
+    * @throws IOException
+     */
+    public static void writeSnapshot(byte[] content, File dbFile) throws IOException {
+        File tmpFile = new File(dbFile.getAbsolutePath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile, false)) {
+            out.write(content);
+            out.getChannel().force(true);
+        }
+        Files.move(tmpFile.toPath(), dbFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+    *
+    * @Title: truncate
+    * @Description: Drop the first bytes of the journal which are part of the snapshot now, keep the records appended after them
+    * @param @param journal
+    * @param @param foldedLength
+    * @return void
+    * @throws IOException
+     */
+    public static void truncate(File journal, long foldedLength) throws IOException {
+        if (!journal.exists()) {
+            return;
+        }
+
+        long length = journal.length();
+        if (length <= foldedLength) {
+            Files.delete(journal.toPath());
+            return;
+        }
+
+        byte[] all = Files.readAllBytes(journal.toPath());
+        File tmpFile = new File(journal.getAbsolutePath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile, false)) {
+            out.write(all, (int) foldedLength, all.length - (int) foldedLength);
+            out.getChannel().force(true);
+        }
+        Files.move(tmpFile.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Map<String, AwsRequest> indexRequests(AwsEntity ae) {
+        if (null == ae.getReqs()) {
+            ae.setReqs(new ArrayList<AwsRequest>());
+        }
+        // reqs.indexOf and reqs.remove rely on AwsRequest identity
+        Map<String, AwsRequest> reqIndex = new HashMap<String, AwsRequest>();
+        for (AwsRequest req : ae.getReqs()) {
+            if (null != req.getReqId() && !reqIndex.containsKey(req.getReqId())) {
+                reqIndex.put(req.getReqId(), req);
+            }
+        }
+        return reqIndex;
+    }
+}
@@ -0,0 +1,1169 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazonaws.util.CollectionUtils;
+import com.amazonaws.util.StringUtils;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ibm.spectrum.constant.AwsConst;
+import com.ibm.spectrum.model.AwsConfig;
+import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.model.AwsMachine;
+import com.ibm.spectrum.model.AwsRequest;
+
+/**
+* @ClassName: AwsStateStore
+* @Description: In-memory view of the provider status DB (AwsUtil.provStatusFile).
+* The DB is loaded once per operation and kept in memory with hash indexes by
+* request ID, machine ID, return ID and machine name. The AwsUtil DB helpers read
+* and update the objects of the store in place and mark it dirty, the store is
+* written back once by flush() at the end of the operation.
+*
+* The indexes are kept up to date by the store mutators, which re-index only the
+* request or machine they change. Callers changing the DB in place through other
+* references call invalidateIndexes(), the indexes are then rebuilt on the next lookup.
+*
+* The DB file is written with an atomic replace. With AWS_DB_JOURNAL enabled, flush()
+* appends the requests and machines changed since the load to the journal file
+* instead (see AwsStateJournal), and the journal is folded into the DB file in the
+* background once it passes AWS_DB_JOURNAL_COMPACT_SIZE. AWS_DB_FORMAT selects a json
+* or a cbor encoded DB file, a DB file found in the other format is converted by
+* the next flush.
+*
+* Several processes may run operations on the same DB. The DB is read without lock,
+* the writes are serialized by a FileChannel lock on <providerName>-db.json.lock which
+* also holds the DB version. A writer finding a newer version than the one it loaded
+* applies the changes of its operation to the new DB content instead of overwriting it,
+* and fails the write if they cannot be applied.
+* @version 1.0
+*/
+public class AwsStateStore {
+    private static Logger log = LogManager.getLogger(AwsStateStore.class);
+
+    /**
+     * The loaded DB, null if the DB file does not exist
+     */
+    private static AwsEntity db = null;
+
+    private static boolean loaded = false;
+
+    private static boolean dirty = false;
+
+    private static boolean indexStale = true;
+
+    private static Map<String, AwsRequest> reqIndex = new HashMap<String, AwsRequest>();
+
+    private static Map<String, AwsMachine> machineIdIndex = new HashMap<String, AwsMachine>();
+
+    private static Map<String, AwsRequest> machineOwnerIndex = new HashMap<String, AwsRequest>();
+
+    private static Map<String, List<AwsMachine>> retIdIndex = new HashMap<String, List<AwsMachine>>();
+
+    private static Map<String, List<AwsMachine>> nameIndex = new HashMap<String, List<AwsMachine>>();
+
+    /**
+     * The keys each request and machine is indexed under, by identity, so that they can be re-indexed alone
+     */
+    private static Map<AwsRequest, RequestEntry> requestEntries = new IdentityHashMap<AwsRequest, RequestEntry>();
+
+    private static Map<AwsMachine, MachineEntry> machineEntries = new IdentityHashMap<AwsMachine, MachineEntry>();
+
+    /**
+     * The DB file and its content as loaded, the changes of the operation are the difference to them
+     */
+    private static File baseFile = null;
+
+    private static byte[] baseSnapshot = null;
+
+    private static byte[] baseJournal = null;
+
+    private static long baseVersion = 0;
+
+    /**
+     * Fingerprints of the loaded DB, computed from the loaded content when they are needed
+     */
+    private static Map<String, String> baseReqs = null;
+
+    private static Map<String, Map<String, String>> baseMachines = null;
+
+    private static boolean baseComplete = false;
+
+    /**
+     * The file lock is held per process, the threads of the process take this monitor first
+     */
+    private static final Object fileLock = new Object();
+
+    private static ExecutorService compactor = null;
+
+    private static Future<?> compaction = null;
+
+    /**
+    *
+    * @Title: getDbFile
+    * @Description: The provider status DB file, in the configured AWS_DB_FORMAT or in the other
+    * format if only that one exists and is not converted yet
+    * @param @return
+    * @return File
+    * @throws
+     */
+    public static File getDbFile() {
+        String format = getDbFormat();
+        File jf = getDbFile(format);
+        if (!jf.exists()) {
+            File other = getDbFile(AwsConst.DB_FORMAT_CBOR.equals(format) ? AwsConst.DB_FORMAT_JSON : AwsConst.DB_FORMAT_CBOR);
+            if (other.exists()) {
+                return other;
+            }
+        }
+        return jf;
+    }
+
+    /**
+    *
+    * @Title: getDbFile
+    * @Description: The provider status DB file in the given format
+    * @param @param format json or cbor
+    * @param @return
+    * @return File
+    * @throws
+     */
+    public static File getDbFile(String format) {
+        String fileName = AwsUtil.getProvStatusFile();
+        if (AwsConst.DB_FORMAT_CBOR.equals(format)) {
+            if (fileName.endsWith(AwsConst.DB_JSON_FILE_EXTENSION)) {
+                fileName = fileName.substring(0, fileName.length() - AwsConst.DB_JSON_FILE_EXTENSION.length());
+            }
+            fileName = fileName + AwsConst.DB_CBOR_FILE_EXTENSION;
+        }
+        return new File(AwsUtil.getWorkDir() + "/" + fileName);
+    }
+
+    /**
+    *
+    * @Title: getDbFormat
+    * @Description: The configured format of the provider status DB file
+    * @param @return
+    * @return String json or cbor
+    * @throws
+     */
+    public static String getDbFormat() {
+        AwsConfig config = AwsUtil.getConfig();
+        if (null != config && AwsConst.DB_FORMAT_CBOR.equalsIgnoreCase(StringUtils.trim(config.getDbFormat()))) {
+            return AwsConst.DB_FORMAT_CBOR;
+        }
+        return AwsConst.DB_FORMAT_JSON;
+    }
+
+    /**
+    *
+    * @Title: reset
+    * @Description: Drop the loaded DB so that the next operation reads it again from the file
+    * @param
+    * @return void
+    * @throws
+     */
+    public static synchronized void reset() {
+        if (dirty) {
+            log.warn("The provider status DB is reset with changes not written to the file.");
+        }
+        db = null;
+        loaded = false;
+        dirty = false;
+        clearIndexes();
+    }
+
+    /**
+    *
+    * @Title: getEntity
+    * @Description: Get the DB, load it from the file on the first call of the operation
+    * @param @return
+    * @return AwsEntity null if the DB file does not exist or cannot be parsed
+    * @throws
+     */
+    public static synchronized AwsEntity getEntity() {
+        if (!loaded) {
+            load();
+        }
+        return db;
+    }
+
+    /**
+    *
+    * @Title: getOrCreateEntity
+    * @Description: Get the DB, create an empty one if the DB file does not exist
+    * @param @return
+    * @return AwsEntity
+    * @throws
+     */
+    public static synchronized AwsEntity getOrCreateEntity() {
+        if (null == getEntity()) {
+            db = new AwsEntity();
+            db.setReqs(new ArrayList<AwsRequest>());
+            indexStale = true;
+            markDirty();
+        } else if (null == db.getReqs()) {
+            db.setReqs(new ArrayList<AwsRequest>());
+        }
+        return db;
+    }
+
+    /**
+    *
+    * @Title: setEntity
+    * @Description: Replace the DB content with the given entity
+    * @param @param ae
+    * @return void
+    * @throws
+     */
+    public static synchronized void setEntity(AwsEntity ae) {
+        if (!loaded) {
+            load();
+        }
+        db = ae;
+        indexStale = true;
+        markDirty();
+    }
+
+    /**
+    *
+    * @Title: getRequest
+    * @Description: Get the request by request ID
+    * @param @param reqId
+    * @param @return
+    * @return AwsRequest null if not found
+    * @throws
+     */
+    public static synchronized AwsRequest getRequest(String reqId) {
+        refreshIndexes();
+        return reqIndex.get(reqId);
+    }
+
+    /**
+    *
+    * @Title: getMachine
+    * @Description: Get the machine by machine ID
+    * @param @param machineId
+    * @param @return
+    * @return AwsMachine null if not found
+    * @throws
+     */
+    public static synchronized AwsMachine getMachine(String machineId) {
+        refreshIndexes();
+        return machineIdIndex.get(machineId);
+    }
+
+    /**
+    *
+    * @Title: getRequestOfMachine
+    * @Description: Get the request the machine belongs to
+    * @param @param machineId
+    * @param @return
+    * @return AwsRequest null if not found
+    * @throws
+     */
+    public static synchronized AwsRequest getRequestOfMachine(String machineId) {
+        refreshIndexes();
+        return machineOwnerIndex.get(machineId);
+    }
+
+    /**
+    *
+    * @Title: getMachinesByRetId
+    * @Description: Get the machines with the return ID
+    * @param @param retId
+    * @param @return
+    * @return List<AwsMachine> empty list if not found
+    * @throws
+     */
+    public static synchronized List<AwsMachine> getMachinesByRetId(String retId) {
+        refreshIndexes();
+        List<AwsMachine> mLst = retIdIndex.get(retId);
+        if (null == mLst) {
+            return Collections.emptyList();
+        }
+        return mLst;
+    }
+
+    /**
+    *
+    * @Title: getMachinesByName
+    * @Description: Get the machines with the host name
+    * @param @param name
+    * @param @return
+    * @return List<AwsMachine> empty list if not found
+    * @throws
+     */
+    public static synchronized List<AwsMachine> getMachinesByName(String name) {
+        refreshIndexes();
+        List<AwsMachine> mLst = nameIndex.get(name);
+        if (null == mLst) {
+            return Collections.emptyList();
+        }
+        return mLst;
+    }
+
+    /**
+    *
+    * @Title: putRequest
+    * @Description: Add the request to the DB, or update the request with the same ID, and re-index it
+    * @param @param req
+    * @param @return
+    * @return AwsRequest the request in the DB
+    * @throws
+     */
+    public static synchronized AwsRequest putRequest(AwsRequest req) {
+        AwsEntity ae = getOrCreateEntity();
+        refreshIndexes();
+        AwsRequest rq = reqIndex.get(req.getReqId());
+        if (null == rq) {
+            ae.getReqs().add(req);
+            rq = req;
+        } else if (rq != req) {
+            rq.update(req);
+        }
+        unindexRequest(rq);
+        indexRequest(rq);
+        dirty = true;
+        return rq;
+    }
+
+    /**
+    *
+    * @Title: updateMachine
+    * @Description: Re-index a machine of the DB changed in place
+    * @param @param m
+    * @return void
+    * @throws
+     */
+    public static synchronized void updateMachine(AwsMachine m) {
+        refreshIndexes();
+        MachineEntry e = machineEntries.get(m);
+        if (null == e) {
+            return;
+        }
+        unindexMachine(m);
+        indexMachine(e.owner, m);
+        dirty = true;
+    }
+
+    /**
+    *
+    * @Title: removeMachines
+    * @Description: Remove the machines from the request of the DB, the machines are the objects of the request
+    * @param @param req
+    * @param @param machines
+    * @return void
+    * @throws
+     */
+    public static synchronized void removeMachines(AwsRequest req, Collection<AwsMachine> machines) {
+        refreshIndexes();
+        Set<AwsMachine> removed = Collections.newSetFromMap(new IdentityHashMap<AwsMachine, Boolean>());
+        for (AwsMachine m : machines) {
+            MachineEntry e = machineEntries.get(m);
+            if (null != e && e.owner == req) {
+                unindexMachine(m);
+            }
+            removed.add(m);
+        }
+        if (null != req.getMachines()) {
+            for (Iterator<AwsMachine> it = req.getMachines().iterator(); it.hasNext();) {
+                if (removed.contains(it.next())) {
+                    it.remove();
+                }
+            }
+        }
+        dirty = true;
+    }
+
+    /**
+    *
+    * @Title: removeRequests
+    * @Description: Remove the requests from the DB
+    * @param @param reqs
+    * @return void
+    * @throws
+     */
+    public static synchronized void removeRequests(Collection<AwsRequest> reqs) {
+        if (null == getEntity() || null == db.getReqs() || reqs.isEmpty()) {
+            return;
+        }
+        refreshIndexes();
+        Set<AwsRequest> removed = Collections.newSetFromMap(new IdentityHashMap<AwsRequest, Boolean>());
+        for (AwsRequest req : reqs) {
+            unindexRequest(req);
+            removed.add(req);
+        }
+        for (Iterator<AwsRequest> it = db.getReqs().iterator(); it.hasNext();) {
+            if (removed.contains(it.next())) {
+                it.remove();
+            }
+        }
+        dirty = true;
+    }
+
+    /**
+    *
+    * @Title: invalidateIndexes
+    * @Description: The requests and machines of the DB were changed in place, rebuild the indexes on the next lookup
+    * @param
+    * @return void
+    * @throws
+     */
+    public static synchronized void invalidateIndexes() {
+        indexStale = true;
+    }
+
+    /**
+    *
+    * @Title: markDirty
+    * @Description: The DB content is changed, it will be written by the next flush
+    * @param
+    * @return void
+    * @throws
+     */
+    public static synchronized void markDirty() {
+        dirty = true;
+    }
+
+    /**
+    *
+    * @Title: isDirty
+    * @Description: Whether the DB has changes not written to the file yet
+    * @param @return
+    * @return boolean
+    * @throws
+     */
+    public static synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+    *
+    * @Title: flush
+    * @Description: Write the DB to the file if it was changed during the operation.
+    *               The changes stay pending if the write fails, a later flush writes them again.
+    * @param
+    * @return boolean false if the changes could not be written
+    * @throws
+     */
+    public static synchronized boolean flush() {
+        if (!dirty) {
+            return true;
+        }
+
+        if (null == db) {
+            dirty = false;
+            return true;
+        }
+
+        File target = getDbFile(getDbFormat());
+        try {
+            write(target);
+        } catch(IOException e) {
+            log.error("Write the provider status DB <" + target.getAbsolutePath() + "> error.", e);
+            return false;
+        }
+        dirty = false;
+        return true;
+    }
+
+    /**
+    *
+    * @Title: awaitCompaction
+    * @Description: Wait for the running journal compaction before the process exits
+    * @param
+    * @return void
+    * @throws
+     */
+    public static void awaitCompaction() {
+        Future<?> pending = null;
+        synchronized (AwsStateStore.class) {
+            pending = compaction;
+        }
+        if (null == pending) {
+            return;
+        }
+
+        try {
+            pending.get(AwsConst.DB_JOURNAL_COMPACT_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch(TimeoutException e) {
+            log.warn("The provider status DB journal compaction did not complete in " + AwsConst.DB_JOURNAL_COMPACT_WAIT_SECONDS
+                     + " seconds, it will be done by a later call.");
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(ExecutionException e) {
+            log.error("Compact the provider status DB journal error.", e.getCause());
+        }
+    }
+
+    /**
+    *
+    * @Title: write
+    * @Description: Write the DB under the DB file lock. The write is prepared before the lock is
+    * taken. If another process wrote the DB since it was loaded, the changes of this operation
+    * are applied to the new content of the DB file instead.
+    * @param @param target the DB file in the configured format
+    * @return void
+    * @throws IOException
+     */
+    private static void write(File target) throws IOException {
+        Map<String, String> curReqs = new HashMap<String, String>();
+        Map<String, Map<String, String>> curMachines = new HashMap<String, Map<String, String>>();
+        List<ObjectNode> records = null;
+        if (isJournalEnabled()) {
+            records = changesSinceLoad(curReqs, curMachines);
+        }
+
+        long version = baseVersion + 1;
+        byte[] content = null;
+        if (null == records) {
+            db.setVersion(Long.valueOf(version));
+            content = AwsStateJournal.toSnapshot(db, target);
+        }
+
+        File jf = null;
+        File journal = null;
+        boolean merged = false;
+        boolean appended = false;
+        synchronized (fileLock) {
+            RandomAccessFile lock = lockDb();
+            try {
+                jf = getDbFile();
+                long diskVersion = readVersion(lock, jf);
+                if (diskVersion != baseVersion) {
+                    log.info("The provider status DB was written by another operation since it was loaded (version " + baseVersion
+                             + " -> " + diskVersion + "), apply the changes of this operation to the new version.");
+                    records = merge(jf, records);
+                    merged = true;
+                    content = null;
+                    version = Math.max(diskVersion, getVersion(db)) + 1;
+                }
+
+                journal = AwsStateJournal.getJournalFile(jf);
+                if (null != records && isJournalEnabled() && jf.equals(target) && jf.exists()) {
+                    AwsStateJournal.append(journal, records, version);
+                    db.setVersion(Long.valueOf(version));
+                    appended = true;
+                    log.debug("Appended " + records.size() + " records to the journal <" + journal.getAbsolutePath() + ">");
+                } else {
+                    if (null == content) {
+                        db.setVersion(Long.valueOf(version));
+                        content = AwsStateJournal.toSnapshot(db, target);
+                    }
+                    if (log.isTraceEnabled()) {
+                        log.trace("Saving to file: " + db);
+                    }
+                    AwsStateJournal.writeSnapshot(content, target);
+                    Files.deleteIfExists(journal.toPath());
+                    if (!jf.equals(target)) {
+                        // Converted to the configured format
+                        Files.deleteIfExists(jf.toPath());
+                        log.info("The provider status DB <" + jf.getAbsolutePath() + "> is converted to <" + target.getAbsolutePath() + ">");
+                    }
+                }
+                writeVersion(lock, version);
+            } finally {
+                unlock(lock);
+            }
+        }
+
+        // The written DB is the base of the next flush
+        baseFile = target;
+        baseVersion = version;
+        if (!appended) {
+            baseSnapshot = content;
+            baseJournal = new byte[0];
+            baseReqs = null;
+            baseMachines = null;
+        } else if (merged) {
+            baseReqs = new HashMap<String, String>();
+            baseMachines = new HashMap<String, Map<String, String>>();
+            baseComplete = AwsStateJournal.fingerprints(db, baseReqs, baseMachines);
+        } else {
+            baseReqs = curReqs;
+            baseMachines = curMachines;
+            baseComplete = true;
+        }
+
+        if (appended && journal.length() > getCompactSize() * 1024L) {
+            scheduleCompaction(target);
+        }
+    }
+
+    /**
+    *
+    * @Title: merge
+    * @Description: Apply the changes of this operation to the DB written by another process, under the DB file lock.
+    * The changes are applied as records when they can be expressed so, and merged request by request with the
+    * loaded DB as the common base otherwise. The DB written by the other process is never overwritten with the
+    * DB of this operation.
+    * @param @param jf
+    * @param @param records the changes since the load, null if not computed yet
+    * @return List<ObjectNode> the applied changes, null if they were merged and the DB must be written as a snapshot
+    * @throws IOException if the changes cannot be applied, they are not written then
+     */
+    private static List<ObjectNode> merge(File jf, List<ObjectNode> records) throws IOException {
+        DbContent c = readContent(jf);
+        if (!c.consistent) {
+            throw new IOException("The journal of the file <" + jf.getAbsolutePath() + "> does not continue its version "
+                                  + getVersion(c.entity) + ", the changes of this operation are not written.");
+        }
+        if (null == c.entity) {
+            if (null != c.snapshot && c.snapshot.length > 0) {
+                if (!Arrays.equals(c.snapshot, baseSnapshot)) {
+                    throw new IOException("The file <" + jf.getAbsolutePath()
+                                          + "> written by another operation cannot be parsed, the changes of this operation are not written.");
+                }
+                // Nothing newer than the loaded content can be read from it
+                log.warn("The file <" + jf.getAbsolutePath() + "> cannot be parsed, overwrite it.");
+                return null;
+            }
+            c.entity = new AwsEntity();
+            c.entity.setReqs(new ArrayList<AwsRequest>());
+        }
+
+        if (null == records) {
+            records = changesSinceLoad(new HashMap<String, String>(), new HashMap<String, Map<String, String>>());
+        }
+        if (null != records) {
+            AwsStateJournal.apply(c.entity, records);
+        } else {
+            log.info("The changes of this operation cannot be expressed as records, merge them request by request.");
+            if (!AwsStateJournal.merge(loadBase(), db, c.entity)) {
+                throw new IOException("The changes of this operation cannot be merged into the new version of the file <"
+                                      + jf.getAbsolutePath() + ">, the request IDs are missing or duplicated. They are not written.");
+            }
+        }
+
+        db = c.entity;
+        indexStale = true;
+        return records;
+    }
+
+    /**
+    *
+    * @Title: loadBase
+    * @Description: The DB as loaded by this operation, parsed again from the loaded content
+    * @param @return
+    * @return AwsEntity empty if the DB file did not exist or cannot be parsed
+    * @throws IOException
+     */
+    private static AwsEntity loadBase() throws IOException {
+        DbContent c = new DbContent(baseFile, baseSnapshot, baseJournal);
+        parse(c);
+        if (null == c.entity) {
+            c.entity = new AwsEntity();
+            c.entity.setReqs(new ArrayList<AwsRequest>());
+        }
+        return c.entity;
+    }
+
+    /**
+    *
+    * @Title: changesSinceLoad
+    * @Description: Journal records of the changes made to the DB since it was loaded
+    * @param @param curReqs filled with the request fingerprints of the current DB
+    * @param @param curMachines filled with the machine fingerprints of the current DB
+    * @return List<ObjectNode> null if the changes cannot be expressed as records
+    * @throws
+     */
+    private static List<ObjectNode> changesSinceLoad(Map<String, String> curReqs, Map<String, Map<String, String>> curMachines) {
+        if (null == baseReqs) {
+            baseReqs = new HashMap<String, String>();
+            baseMachines = new HashMap<String, Map<String, String>>();
+            baseComplete = false;
+            try {
+                DbContent c = new DbContent(baseFile, baseSnapshot, baseJournal);
+                parse(c);
+                if (null != c.entity || null == baseSnapshot) {
+                    baseComplete = AwsStateJournal.fingerprints(c.entity, baseReqs, baseMachines);
+                }
+            } catch(IOException e) {
+                log.error("Parse the loaded provider status DB error.", e);
+            }
+        }
+
+        if (!baseComplete) {
+            log.debug("The provider status DB changes cannot be expressed as journal records.");
+            return null;
+        }
+        return AwsStateJournal.diff(baseReqs, baseMachines, db, curReqs, curMachines);
+    }
+
+    private static void scheduleCompaction(final File jf) {
+        if (null != compaction && !compaction.isDone()) {
+            return;
+        }
+
+        if (null == compactor) {
+            compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "aws-db-compaction");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        compaction = compactor.submit(new Runnable() {
+            @Override
+            public void run() {
+                compact(jf);
+            }
+        });
+    }
+
+    /**
+    *
+    * @Title: compact
+    * @Description: Fold the journal into a new DB file. The DB is rebuilt from the files,
+    * independent of the in-memory DB of the running operation, and the lock is only held
+    * to read the files and to replace them.
+    * @param @param jf
+    * @return void
+    * @throws
+     */
+    private static void compact(File jf) {
+        File journal = AwsStateJournal.getJournalFile(jf);
+        try {
+            DbContent c = null;
+            String stamp = null;
+            synchronized (fileLock) {
+                RandomAccessFile lock = lockDb();
+                try {
+                    c = readContent(jf);
+                    if (null == c.snapshot) {
+                        return;
+                    }
+                    stamp = stamp(jf);
+                } finally {
+                    unlock(lock);
+                }
+            }
+
+            if (null == c.entity || !c.consistent) {
+                log.error("Cannot compact the journal <" + journal.getAbsolutePath() + ">, the DB cannot be rebuilt.");
+                return;
+            }
+            byte[] content = AwsStateJournal.toSnapshot(c.entity, jf);
+
+            synchronized (fileLock) {
+                RandomAccessFile lock = lockDb();
+                try {
+                    if (!jf.exists() || !stamp.equals(stamp(jf))) {
+                        log.debug("The file <" + jf.getAbsolutePath() + "> was replaced during the compaction, drop it.");
+                        return;
+                    }
+                    AwsStateJournal.writeSnapshot(content, jf);
+                    AwsStateJournal.truncate(journal, c.journal.length);
+                } finally {
+                    unlock(lock);
+                }
+            }
+            log.info("Compacted the journal into <" + jf.getAbsolutePath() + ">, version " + c.entity.getVersion());
+        } catch(IOException e) {
+            log.error("Compact the journal <" + journal.getAbsolutePath() + "> error.", e);
+        }
+    }
+
+    /**
+    *
+    * @Title: getLockFile
+    * @Description: The lock file serializing the writes of the provider status DB between the processes.
+    * It holds the current DB version.
+    * @param @return
+    * @return File
+    * @throws
+     */
+    private static File getLockFile() {
+        return new File(AwsUtil.getWorkDir() + "/" + AwsUtil.getProvStatusFile() + AwsConst.DB_LOCK_FILE_SUFFIX);
+    }
+
+    private static RandomAccessFile lockDb() throws IOException {
+        RandomAccessFile lock = new RandomAccessFile(getLockFile(), "rw");
+        try {
+            lock.getChannel().lock();
+        } catch(IOException e) {
+            lock.close();
+            throw e;
+        }
+        return lock;
+    }
+
+    private static void unlock(RandomAccessFile lock) {
+        try {
+            // Closing the file releases the lock
+            lock.close();
+        } catch(IOException e) {
+            log.debug("Release the provider status DB lock error: " + e.getMessage());
+        }
+    }
+
+    /**
+    *
+    * @Title: readVersion
+    * @Description: The current DB version, from the lock file or from the DB if the lock file does not hold it
+    * @param @param lock
+    * @param @param jf
+    * @return long
+    * @throws IOException
+     */
+    private static long readVersion(RandomAccessFile lock, File jf) throws IOException {
+        if (lock.length() > 0) {
+            byte[] b = new byte[(int) Math.min(lock.length(), 64)];
+            lock.seek(0);
+            lock.readFully(b);
+            String txt = new String(b, StandardCharsets.UTF_8).trim();
+            try {
+                return Long.parseLong(txt);
+            } catch(NumberFormatException e) {
+                log.debug("Invalid provider status DB version in the lock file: " + txt);
+            }
+        }
+
+        return getVersion(readContent(jf).entity);
+    }
+
+    private static void writeVersion(RandomAccessFile lock, long version) throws IOException {
+        lock.setLength(0);
+        lock.seek(0);
+        lock.write((version + "\n").getBytes(StandardCharsets.UTF_8));
+        lock.getChannel().force(false);
+    }
+
+    private static long getVersion(AwsEntity ae) {
+        if (null == ae || null == ae.getVersion()) {
+            return 0;
+        }
+        return ae.getVersion().longValue();
+    }
+
+    private static String stamp(File f) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+        return attrs.fileKey() + "/" + attrs.lastModifiedTime().toMillis() + "/" + attrs.size();
+    }
+
+    private static boolean isJournalEnabled() {
+        AwsConfig config = AwsUtil.getConfig();
+        return null != config && null != config.isDbJournal() && config.isDbJournal().booleanValue();
+    }
+
+    private static int getCompactSize() {
+        AwsConfig config = AwsUtil.getConfig();
+        if (null == config || null == config.getDbJournalCompactSize() || config.getDbJournalCompactSize().intValue() <= 0) {
+            return AwsConst.DB_JOURNAL_COMPACT_SIZE_KB;
+        }
+        return config.getDbJournalCompactSize().intValue();
+    }
+
+    /**
+    *
+    * @Title: readContent
+    * @Description: Read the DB file and its journal without lock. Both files are only replaced,
+    * never rewritten in place, and the journal versions tell when they were read during a compaction.
+    * @param @param jf
+    * @return DbContent
+    * @throws IOException
+     */
+    private static DbContent readContent(File jf) throws IOException {
+        byte[] snapshot = null;
+        byte[] journal = new byte[0];
+        try {
+            snapshot = Files.readAllBytes(jf.toPath());
+        } catch(NoSuchFileException e) {
+            return new DbContent(jf, null, journal);
+        }
+        try {
+            journal = Files.readAllBytes(AwsStateJournal.getJournalFile(jf).toPath());
+        } catch(NoSuchFileException e) {
+            log.trace("No journal of the file <" + jf.getAbsolutePath() + ">");
+        }
+
+        DbContent c = new DbContent(jf, snapshot, journal);
+        parse(c);
+        return c;
+    }
+
+    private static void parse(DbContent c) throws IOException {
+        c.entity = null;
+        c.consistent = true;
+        if (null == c.snapshot || c.snapshot.length == 0) {
+            return;
+        }
+
+        c.entity = AwsStateJournal.readSnapshot(c.snapshot, c.dbFile);
+        if (null != c.entity && c.journal.length > 0) {
+            String name = AwsStateJournal.getJournalFile(c.dbFile).getAbsolutePath();
+            c.consistent = AwsStateJournal.replay(new ByteArrayInputStream(c.journal), name, c.entity) >= 0;
+        }
+    }
+
+    private static void load() {
+        File jf = getDbFile();
+        db = null;
+        baseFile = jf;
+        baseSnapshot = null;
+        baseJournal = new byte[0];
+        baseVersion = 0;
+        baseReqs = null;
+        baseMachines = null;
+
+        try {
+            DbContent c = readContent(jf);
+            for (int i = 1; i < AwsConst.DB_READ_ATTEMPTS && !c.consistent; i++) {
+                log.debug("The file <" + jf.getAbsolutePath() + "> was compacted while it was read, read it again.");
+                c = readContent(jf);
+            }
+            if (!c.consistent) {
+                synchronized (fileLock) {
+                    RandomAccessFile lock = lockDb();
+                    try {
+                        c = readContent(jf);
+                    } finally {
+                        unlock(lock);
+                    }
+                }
+                if (!c.consistent) {
+                    log.warn("The journal of the file <" + jf.getAbsolutePath() + "> does not continue its version "
+                             + getVersion(c.entity) + ", the later journal records are ignored.");
+                }
+            }
+
+            if (null == c.snapshot) {
+                log.debug("The file <" + jf.getAbsolutePath() + "> does not exist");
+            } else if (c.snapshot.length == 0) {
+                log.error("The file <" + jf.getAbsolutePath() + "> is empty which cannot be parsed to json object, remove it.");
+                jf.delete();
+                c.snapshot = null;
+            }
+
+            db = c.entity;
+            baseSnapshot = c.snapshot;
+            baseJournal = c.journal;
+            baseVersion = getVersion(db);
+        } catch(IOException e) {
+            log.error("Read the provider status DB <" + jf.getAbsolutePath() + "> error.", e);
+        }
+
+        loaded = true;
+        dirty = false;
+        indexStale = true;
+
+        if (null != db && !jf.equals(getDbFile(getDbFormat()))) {
+            // The next flush writes the DB in the configured format
+            dirty = true;
+        }
+    }
+
+    private static void clearIndexes() {
+        reqIndex.clear();
+        machineIdIndex.clear();
+        machineOwnerIndex.clear();
+        retIdIndex.clear();
+        nameIndex.clear();
+        requestEntries.clear();
+        machineEntries.clear();
+        indexStale = true;
+    }
+
+    private static void refreshIndexes() {
+        if (!loaded) {
+            load();
+        }
+        if (!indexStale) {
+            return;
+        }
+
+        clearIndexes();
+        if (null != db && !CollectionUtils.isNullOrEmpty(db.getReqs())) {
+            for (AwsRequest req : db.getReqs()) {
+                indexRequest(req);
+            }
+        }
+        indexStale = false;
+    }
+
+    private static void indexRequest(AwsRequest req) {
+        RequestEntry e = new RequestEntry(req.getReqId());
+        if (!StringUtils.isNullOrEmpty(req.getReqId()) && !reqIndex.containsKey(req.getReqId())) {
+            reqIndex.put(req.getReqId(), req);
+        }
+        if (!CollectionUtils.isNullOrEmpty(req.getMachines())) {
+            for (AwsMachine m : req.getMachines()) {
+                indexMachine(req, m);
+                e.machines.add(m);
+            }
+        }
+        requestEntries.put(req, e);
+    }
+
+    private static void unindexRequest(AwsRequest req) {
+        RequestEntry e = requestEntries.remove(req);
+        if (null == e) {
+            return;
+        }
+        if (null != e.reqId && reqIndex.get(e.reqId) == req) {
+            reqIndex.remove(e.reqId);
+        }
+        for (AwsMachine m : e.machines) {
+            MachineEntry me = machineEntries.get(m);
+            // The machine may have been moved to another request since
+            if (null != me && me.owner == req) {
+                unindexMachine(m);
+            }
+        }
+    }
+
+    private static void indexMachine(AwsRequest owner, AwsMachine m) {
+        MachineEntry e = new MachineEntry(owner, m);
+        if (!StringUtils.isNullOrEmpty(e.machineId) && !machineIdIndex.containsKey(e.machineId)) {
+            machineIdIndex.put(e.machineId, m);
+            machineOwnerIndex.put(e.machineId, owner);
+        }
+        addToIndex(retIdIndex, e.retId, m);
+        addToIndex(nameIndex, e.name, m);
+        machineEntries.put(m, e);
+    }
+
+    private static void unindexMachine(AwsMachine m) {
+        MachineEntry e = machineEntries.remove(m);
+        if (null == e) {
+            return;
+        }
+        if (!StringUtils.isNullOrEmpty(e.machineId) && machineIdIndex.get(e.machineId) == m) {
+            machineIdIndex.remove(e.machineId);
+            machineOwnerIndex.remove(e.machineId);
+        }
+        removeFromIndex(retIdIndex, e.retId, m);
+        removeFromIndex(nameIndex, e.name, m);
+    }
+
+    private static void addToIndex(Map<String, List<AwsMachine>> index, String key, AwsMachine m) {
+        if (StringUtils.isNullOrEmpty(key)) {
+            return;
+        }
+        List<AwsMachine> mLst = index.get(key);
+        if (null == mLst) {
+            mLst = new ArrayList<AwsMachine>(1);
+            index.put(key, mLst);
+        }
+        mLst.add(m);
+    }
+
+    private static void removeFromIndex(Map<String, List<AwsMachine>> index, String key, AwsMachine m) {
+        if (StringUtils.isNullOrEmpty(key)) {
+            return;
+        }
+        List<AwsMachine> mLst = index.get(key);
+        if (null == mLst) {
+            return;
+        }
+        for (Iterator<AwsMachine> it = mLst.iterator(); it.hasNext();) {
+            if (it.next() == m) {
+                it.remove();
+                break;
+            }
+        }
+        if (mLst.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * The keys a request was indexed under and its machines at that time
+     */
+    private static class RequestEntry {
+        private final String reqId;
+
+        private final List<AwsMachine> machines = new ArrayList<AwsMachine>();
+
+        private RequestEntry(String reqId) {
+            this.reqId = reqId;
+        }
+    }
+
+    /**
+     * The keys a machine was indexed under and the request it belonged to then
+     */
+    private static class MachineEntry {
+        private final AwsRequest owner;
+
+        private final String machineId;
+
+        private final String retId;
+
+        private final String name;
+
+        private MachineEntry(AwsRequest owner, AwsMachine m) {
+            this.owner = owner;
+            this.machineId = m.getMachineId();
+            this.retId = m.getRetId();
+            this.name = m.getName();
+        }
+    }
+
+    /**
+     * Content of the DB file and of its journal, read together
+     */
+    private static class DbContent {
+        private File dbFile;
+
+        private byte[] snapshot;
+
+        private byte[] journal;
+
+        private AwsEntity entity;
+
+        private boolean consistent = true;
+
+        private DbContent(File dbFile, byte[] snapshot, byte[] journal) {
+            this.dbFile = dbFile;
+            this.snapshot = snapshot;
+            this.journal = journal;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibm.spectrum.constant.AwsConst;
+
+/**
+* @ClassName: AwsTtlCache
+* @Description: Small key/value cache of slowly changing EC2 data, with an expiry time
+* per entry. The cache is kept in the work directory, in
+* <providerName>-<name>-cache.json, so that it outlives the provider process:
+*
+*    {"<key>":{"value":"...","expires":<epoch milliseconds>}, ...}
+*
+* Each process loads the file on first use and writes it back, without the expired
+* entries, when save() is called after a change. Concurrent processes may overwrite
+* each other's entries, which only costs a new lookup.
+* @version 1.0
+*/
+public class AwsTtlCache {
+    private static Logger log = LogManager.getLogger(AwsTtlCache.class);
+
+    private final String name;
+
+    private final long ttlSeconds;
+
+    private Map<String, Entry> entries = null;
+
+    private boolean dirty = false;
+
+    /**
+     * @param name name of the cache, part of its file name
+     * @param ttlSeconds default time to live of the entries, 0 disables the cache
+     */
+    public AwsTtlCache(String name, long ttlSeconds) {
+        this.name = name;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    /**
+     * @return whether the cache keeps entries
+     */
+    public boolean isEnabled() {
+        return ttlSeconds > 0;
+    }
+
+    /**
+     * @Title: get
+     * @Description: Get an entry of the cache
+     * @param key
+     * @return the value, null if the key is not in the cache or expired
+     */
+    public synchronized String get(String key) {
+        Entry entry = getEntries().get(key);
+        if (null == entry) {
+            return null;
+        }
+        if (entry.getExpires() <= System.currentTimeMillis()) {
+            return null;
+        }
+        return entry.getValue();
+    }
+
+    /**
+     * @Title: containsKey
+     * @Description: Whether the key is in the cache and not expired. A key may be cached with a null value.
+     * @param key
+     * @return
+     */
+    public synchronized boolean containsKey(String key) {
+        Entry entry = getEntries().get(key);
+        return null != entry && entry.getExpires() > System.currentTimeMillis();
+    }
+
+    /**
+     * @Title: put
+     * @Description: Add an entry to the cache with the default time to live
+     * @param key
+     * @param value
+     */
+    public void put(String key, String value) {
+        put(key, value, ttlSeconds);
+    }
+
+    /**
+     * @Title: put
+     * @Description: Add an entry to the cache
+     * @param key
+     * @param value
+     * @param ttl time to live of the entry in seconds
+     */
+    public synchronized void put(String key, String value, long ttl) {
+        if (!isEnabled() || ttl <= 0) {
+            return;
+        }
+        Entry entry = new Entry();
+        entry.setValue(value);
+        entry.setExpires(System.currentTimeMillis() + ttl * 1000);
+        getEntries().put(key, entry);
+        dirty = true;
+    }
+
+    /**
+     * @Title: remove
+     * @Description: Remove an entry from the cache
+     * @param key
+     */
+    public synchronized void remove(String key) {
+        if (null != getEntries().remove(key)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * @Title: save
+     * @Description: Write the cache file if entries were added or removed since it was loaded
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            if (it.next().getExpires() <= now) {
+                it.remove();
+            }
+        }
+
+        File cacheFile = getFile();
+        try {
+            AwsStateJournal.writeSnapshot(new ObjectMapper().writeValueAsBytes(entries), cacheFile);
+            dirty = false;
+        } catch (IOException e) {
+            log.warn("Failed to save the " + name + " cache to " + cacheFile + ": " + e.getMessage());
+        }
+    }
+
+    private Map<String, Entry> getEntries() {
+        if (null != entries) {
+            return entries;
+        }
+
+        entries = new HashMap<String, Entry>();
+        File cacheFile = getFile();
+        if (isEnabled() && cacheFile.exists()) {
+            try {
+                Map<String, Entry> loaded = new ObjectMapper().readValue(cacheFile, new TypeReference<Map<String, Entry>>() {});
+                if (null != loaded) {
+                    entries.putAll(loaded);
+                }
+            } catch (IOException e) {
+                log.warn("Ignoring the " + name + " cache file " + cacheFile + ": " + e.getMessage());
+            }
+        }
+        return entries;
+    }
+
+    private File getFile() {
+        return new File(AwsUtil.getWorkDir(), AwsUtil.getProviderName() + "-" + name + AwsConst.CACHE_FILE_SUFFIX);
+    }
+
+    /**
+     * Cache entry, as written in the cache file
+     */
+    public static class Entry {
+        @JsonProperty("value")
+        private String value;
+
+        @JsonProperty("expires")
+        private long expires;
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+
+        public long getExpires() {
+            return expires;
+        }
+
+        public void setExpires(long expires) {
+            this.expires = expires;
+        }
+    }
+}
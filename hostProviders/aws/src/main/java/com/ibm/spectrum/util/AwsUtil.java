@@ -36,7 +36,6 @@ import java.util.Map;
 import java.util.TimeZone;
 import java.util.UUID;
 
-import org.apache.commons.codec.binary.Base64;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -119,6 +118,15 @@ public class AwsUtil {
      */
     private static String provStatusFile;
 
+    /**
+     * Templates parsed from awsprov_templates.json, kept while the file is not changed
+     */
+    private static Map<String, AwsTemplate> cachedTemplates = null;
+
+    private static long cachedTemplatesModified = 0;
+
+    private static long cachedTemplatesLength = 0;
+
 
     /**
      * @return homeDir
@@ -523,12 +531,11 @@ public class AwsUtil {
             log.trace("Start in class AwsUtil in method updateToFile with parameters: vmMap: "
                       + vmMap );
         }
-        File jf = new File(workDir + "/" + provStatusFile);
-        if (!jf.exists() || null == vmMap || vmMap.isEmpty()) {
+        if (null == vmMap || vmMap.isEmpty()) {
             return;
         }
 
-        AwsEntity ae = AwsUtil.toObject(jf, AwsEntity.class);
+        AwsEntity ae = AwsStateStore.getEntity();
         if (ae == null) {
             return;
         }
@@ -537,20 +544,18 @@ public class AwsUtil {
             return;
         }
 
-        for (AwsRequest req : ae.getReqs()) {
-            List<AwsMachine> mLst = req.getMachines();
-            if (CollectionUtils.isNullOrEmpty(mLst)) {
+        for (Map.Entry<String, AwsMachine> entry : vmMap.entrySet()) {
+            AwsMachine m = AwsStateStore.getMachine(entry.getKey());
+            if (m == null) {
                 continue;
             }
-
-            for (AwsMachine m : mLst) {
-                if (vmMap.containsKey(m.getMachineId())) {
-                    m.copyValues(vmMap.get(m.getMachineId()));
-                }
+            if (m != entry.getValue()) {
+                m.copyValues(entry.getValue());
             }
+            AwsStateStore.updateMachine(m);
         }
 
-        AwsUtil.toJsonFile(ae, jf);
+        AwsStateStore.markDirty();
     }
 
     /**
@@ -565,42 +570,16 @@ public class AwsUtil {
         if (log.isTraceEnabled()) {
             log.trace("Start in class AwsUtil in method saveToFile with parameters: req: " + req);
         }
-        File jf = new File(workDir + "/" + provStatusFile);
 
-        File lsfWorkDir = new File(workDir);
         try {
-            // Add new VM record
-            if (!jf.exists()) {
-                List<AwsRequest> reqLst = new ArrayList<AwsRequest>();
-                reqLst.add(req);
-
-                AwsEntity ae = new AwsEntity();
-                ae.setReqs(reqLst);
-
-                AwsUtil.toJsonFile(ae, jf);
-
-                return;
-            } else {
-                log.info("aws-db.json file exists ");
-            }
-
-            // Append VM record
-            AwsEntity ae = AwsUtil.toObject(jf, AwsEntity.class);
-            if (ae == null) {
+            if (null == AwsStateStore.getEntity() && AwsStateStore.getDbFile().exists()) {
+                log.error("The file <" + AwsStateStore.getDbFile().getAbsolutePath() + "> cannot be parsed, request <"
+                          + req.getReqId() + "> is not saved.");
                 return;
             }
 
-            for (AwsRequest rq : ae.getReqs()) {
-                // Update exist record
-                if (rq.getReqId().equals(req.getReqId())) {
-                    rq.update(req);
-                    AwsUtil.toJsonFile(ae, jf);
-                    return;
-                }
-            }
-
-            ae.getReqs().add(req);
-            AwsUtil.toJsonFile(ae, jf);
+            // Add new VM record or update exist record
+            AwsStateStore.putRequest(req);
         } catch (Exception e) {
             log.error("Error: ", e);
         }
@@ -616,47 +595,34 @@ public class AwsUtil {
      * @throws
      */
     public static AwsRequest getFromFile(String reqId) {
-        File f = new File(workDir + "/" + provStatusFile);
-        if (!f.exists()) {
-            return null;
-        }
-
-        AwsEntity ae = AwsUtil.toObject(f, AwsEntity.class);
+        AwsEntity ae = AwsStateStore.getEntity();
 
         if (ae == null) {
             return null;
         }
 
         List<AwsRequest> reqLst = ae.getReqs();
-        log.debug("Returning the requests: " + reqLst);
         if (CollectionUtils.isNullOrEmpty(reqLst)) {
             return null;
         }
 
-        List<AwsMachine> retMLst = new ArrayList<AwsMachine>();
-        for (AwsRequest req : reqLst) {
-            // request request object by request ID case
-            if (req.getReqId().equals(reqId)) {
-                if (log.isTraceEnabled()) {
-                    log.trace("End in class AwsUtil in method getFromFile with return: AwsRequest: "
-                              + req);
-                }
-                return req;
-            }
-
-            List<AwsMachine> mLst = req.getMachines();
-            // return request object by machine return ID case
-            for (AwsMachine m : mLst) {
-                if (reqId.equals(m.getRetId())) {
-                    retMLst.add(m);
-                }
+        // request request object by request ID case
+        AwsRequest req = AwsStateStore.getRequest(reqId);
+        if (null != req) {
+            if (log.isTraceEnabled()) {
+                log.trace("End in class AwsUtil in method getFromFile with return: AwsRequest: "
+                          + req);
             }
+            return req;
         }
+
+        // return request object by machine return ID case
+        List<AwsMachine> retMLst = AwsStateStore.getMachinesByRetId(reqId);
         AwsRequest returnAwsRequest = null;
         if(!CollectionUtils.isNullOrEmpty(retMLst)) {
             returnAwsRequest = new AwsRequest();
             returnAwsRequest.setReqId(reqId);
-            returnAwsRequest.setMachines(retMLst);
+            returnAwsRequest.setMachines(new ArrayList<AwsMachine>(retMLst));
         }
 
         if (log.isTraceEnabled()) {
@@ -674,15 +640,7 @@ public class AwsUtil {
     * @throws
      */
     public static AwsEntity getFromFile() {
-        File f = new File(workDir + "/" + provStatusFile);
-        if (!f.exists()) {
-            log.debug("The file <"+f.getAbsolutePath()+"> does not exist");
-            return null;
-        }
-
-        AwsEntity ae = AwsUtil.toObject(f, AwsEntity.class);
-
-        return ae;
+        return AwsStateStore.getEntity();
     }
 
     /**
@@ -695,16 +653,22 @@ public class AwsUtil {
     * @throws
      */
     public static void saveToFile(AwsEntity ae) {
-        File jf = new File(workDir + "/" + provStatusFile);
-        if (!jf.exists()) {
+        if (null == ae) {
             return;
         }
 
-        if (null == ae) {
+        if (ae == AwsStateStore.getEntity()) {
+            // The requests and machines were changed in place
+            AwsStateStore.invalidateIndexes();
+            AwsStateStore.markDirty();
             return;
         }
 
-        AwsUtil.toJsonFile(ae, jf);
+        if (!AwsStateStore.getDbFile().exists()) {
+            return;
+        }
+
+        AwsStateStore.setEntity(ae);
     }
 
     /**
@@ -719,33 +683,16 @@ public class AwsUtil {
      */
     public static Map<String, AwsMachine> getVMFromFile(List<String> vmNames) {
         Map<String, AwsMachine> vmMap = new HashMap<String, AwsMachine>();
-        File jf = new File(workDir + "/" +  provStatusFile);
-        if (!jf.exists()) {
+        AwsEntity ae = AwsStateStore.getEntity();
+        if (ae == null || CollectionUtils.isNullOrEmpty(vmNames)) {
             return vmMap;
         }
 
-        AwsEntity ae = AwsUtil.toObject(jf, AwsEntity.class);
-        if (ae == null) {
-            return vmMap;
-        }
-
-        List<AwsRequest> reqLst = ae.getReqs();
-        if (CollectionUtils.isNullOrEmpty(reqLst)) {
-            return vmMap;
-        }
-
-        for (AwsRequest req : reqLst) {
-            List<AwsMachine> mLst = req.getMachines();
-            if (CollectionUtils.isNullOrEmpty(mLst)) {
-                continue;
-            }
-
-            for (AwsMachine m : mLst) {
-                if (vmNames.contains(m.getName())) {
-                    if (!("Terminated".equalsIgnoreCase(m.getStatus())) &&
-                            StringUtils.isNullOrEmpty(m.getRetId())) {
-                        vmMap.put(m.getMachineId(), m);
-                    }
+        for (String vmName : vmNames) {
+            for (AwsMachine m : AwsStateStore.getMachinesByName(vmName)) {
+                if (!("Terminated".equalsIgnoreCase(m.getStatus())) &&
+                        StringUtils.isNullOrEmpty(m.getRetId())) {
+                    vmMap.put(m.getMachineId(), m);
                 }
             }
         }
@@ -763,12 +710,7 @@ public class AwsUtil {
      */
     public static int deleteFromFile() {
         int onlineNum = 0;
-        File jf = new File(workDir + "/" + provStatusFile);
-        if (!jf.exists()) {
-            return onlineNum;
-        }
-
-        AwsEntity ae = AwsUtil.toObject(jf, AwsEntity.class);
+        AwsEntity ae = AwsStateStore.getEntity();
         if (ae == null) {
             return onlineNum;
         }
@@ -800,7 +742,7 @@ public class AwsUtil {
             }
 
             if (!CollectionUtils.isNullOrEmpty(delMLst)) {
-                mLst.removeAll(delMLst);
+                AwsStateStore.removeMachines(req, delMLst);
                 isUpdated = true;
             }
 
@@ -811,8 +753,8 @@ public class AwsUtil {
         }
 
         if (isUpdated) {
-            reqLst.removeAll(delRLst);
-            AwsUtil.toJsonFile(ae, jf);
+            AwsStateStore.removeRequests(delRLst);
+            AwsStateStore.markDirty();
         }
 
         return onlineNum;
@@ -828,27 +770,70 @@ public class AwsUtil {
     * @throws
      */
     public static AwsTemplate getTemplateFromFile(String templateId) {
+        AwsTemplate at = getTemplatesFromFile().get(templateId);
+        if (null != at && log.isTraceEnabled()) {
+            log.trace("End in class AwsUtil in method getTemplateFromFile with return: AwsTemplate: " + at);
+        }
+        return at;
+    }
+
+    /**
+    *
+    * @Title: getTemplatesFromFile
+    * @Description: get all the templates from file in one pass
+    * @param @return
+    * @return Map<String, AwsTemplate> template ID to template, empty if the file does not exist or cannot be parsed
+    * @throws
+     */
+    public static Map<String, AwsTemplate> getTemplatesFromFile() {
+        Map<String, AwsTemplate> templates = new HashMap<String, AwsTemplate>();
         File jf = new File(confDir + "/conf/awsprov_templates.json");
         if (!jf.exists()) {
             log.error("Template file does not exist: " + jf.getPath());
-            return null;
+            return templates;
+        }
+
+        // The callers change the templates they get, hand out copies of the cached ones
+        for (AwsTemplate at : getCachedTemplates(jf).values()) {
+            templates.put(at.getTemplateId(), new AwsTemplate(at));
+        }
+
+        return templates;
+    }
+
+    /**
+    *
+    * @Title: getCachedTemplates
+    * @Description: Parse the template file once for the process, again only when it is modified,
+    *               so that the operations of a daemon or a batch share the parsed templates
+    * @param @param jf
+    * @param @return
+    * @return Map<String, AwsTemplate> template ID to template, empty if the file cannot be parsed
+    * @throws
+     */
+    private static synchronized Map<String, AwsTemplate> getCachedTemplates(File jf) {
+        long modified = jf.lastModified();
+        long length = jf.length();
+        if (null != cachedTemplates && modified == cachedTemplatesModified && length == cachedTemplatesLength) {
+            return cachedTemplates;
         }
 
+        Map<String, AwsTemplate> templates = new HashMap<String, AwsTemplate>();
         AwsEntity ae = AwsUtil.toObject(jf, AwsEntity.class);
-        if (ae == null) {
-            return null;
+        if (ae == null || ae.getTemplates() == null) {
+            // Not cached, the file may be in the middle of an update
+            return templates;
         }
-        List<AwsTemplate> tLst = ae.getTemplates();
-        for (AwsTemplate at : tLst) {
-            if (at.getTemplateId().equals(templateId)) {
-                if (log.isTraceEnabled()) {
-                    log.trace("End in class AwsUtil in method getTemplateFromFile with return: AwsTemplate: " + at);
-                }
-                return at;
+        for (AwsTemplate at : ae.getTemplates()) {
+            if (null != at.getTemplateId() && !templates.containsKey(at.getTemplateId())) {
+                templates.put(at.getTemplateId(), at);
             }
         }
 
-        return null;
+        cachedTemplates = templates;
+        cachedTemplatesModified = modified;
+        cachedTemplatesLength = length;
+        return cachedTemplates;
     }
 
 
@@ -1101,8 +1086,7 @@ public class AwsUtil {
     		
     		awsTemplate.setEc2FleetConfig(configFilePath);
     		
-    		String fileContent = replaceTargetCapacitySpecification(awsTemplate);
-    		CreateFleetRequest request = AwsUtil.toObjectCaseInsensitive(fileContent, CreateFleetRequest.class);
+    		CreateFleetRequest request = AwsLaunchCache.getFleetRequest(awsTemplate);
     		if (request == null) {
     			rsp.setMsg("Error parsing fleet configuration file <" + configFilePath + ">");
     			return false;
@@ -1328,7 +1312,6 @@ public class AwsUtil {
         try {
             File userDataFile = new File(homeDir + AwsConst.AWS_USER_DATA_FILE);
             if(userDataFile.exists()) {
-                String usrDatafileToStr = readFileToString(userDataFile.getAbsolutePath());
                 /*TODO Export only zone and templateName values from the userDataObj
                  * Volume should be used for attaching EBS Volume to AMI instance
                  * packages should be used for software installation on the new VM
@@ -1350,8 +1333,7 @@ public class AwsUtil {
                 if (!StringUtils.isNullOrEmpty(providerName)) {
                     exportCmd = exportCmd + "export providerName=" + providerName + ";";
                 }
-                usrDatafileToStr = usrDatafileToStr.replaceAll("%EXPORT_USER_DATA%", exportCmd);
-                encodedUserData = new String( Base64.encodeBase64( usrDatafileToStr.getBytes( "UTF-8" )), "UTF-8" );
+                encodedUserData = AwsLaunchCache.getEncodedUserData(userDataFile, exportCmd);
             }
         } catch (UnsupportedEncodingException e) {
             log.error("Error occured during encoding the user data", e);
@@ -0,0 +1,202 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.ibm.spectrum.constant.AwsConst;
+import com.ibm.spectrum.model.AwsConfig;
+
+/**
+* @ClassName: AwsWorkerPool
+* @Description: Shared pool of worker threads running the independent EC2 API calls
+* of an operation concurrently, with a bounded parallelism per operation.
+*
+* The calling thread works on the tasks too and only waits for the tasks themselves,
+* not for the pool threads, so an operation always makes progress even when the pool
+* is busy with other operations or when a task calls invokeAll itself.
+* @version 1.0
+*/
+public class AwsWorkerPool {
+    private static Logger log = LogManager.getLogger(AwsWorkerPool.class);
+
+    private static ThreadPoolExecutor pool = null;
+
+    /**
+     * @Title: getParallelism
+     * @Description: Number of EC2 API calls of one operation sent concurrently, see AWS_EC2_API_PARALLELISM
+     * @return
+     */
+    public static int getParallelism() {
+        AwsConfig config = AwsUtil.getConfig();
+        if (null == config || null == config.getEc2ApiParallelism() || config.getEc2ApiParallelism().intValue() <= 0) {
+            return AwsConst.EC2_API_PARALLELISM;
+        }
+        return config.getEc2ApiParallelism().intValue();
+    }
+
+    /**
+     * @Title: invokeAll
+     * @Description: Run the tasks with at most getParallelism() of them at a time
+     * @param tasks
+     * @return the results of the tasks, in the order of the tasks
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        return invokeAll(tasks, getParallelism());
+    }
+
+    /**
+     * @Title: invokeAll
+     * @Description: Run the tasks with at most parallelism of them at a time, and wait for all of them.
+     *               If tasks failed, the exception of the first one is thrown once all tasks are done.
+     * @param tasks
+     * @param parallelism
+     * @return the results of the tasks, in the order of the tasks
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> invokeAll(final List<? extends Callable<T>> tasks, int parallelism) {
+        final int size = tasks.size();
+        final Object[] results = new Object[size];
+        final Throwable[] errors = new Throwable[size];
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(size);
+
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = next.getAndIncrement(); i < size; i = next.getAndIncrement()) {
+                    try {
+                        results[i] = tasks.get(i).call();
+                    } catch (Throwable e) {
+                        errors[i] = e;
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+
+        int workers = Math.min(parallelism, size);
+        for (int i = 1; i < workers; i++) {
+            getPool().execute(worker);
+        }
+        worker.run();
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + size + " tasks", e);
+        }
+
+        for (Throwable e : errors) {
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            } else if (e instanceof Error) {
+                throw (Error) e;
+            } else if (e != null) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+
+        List<T> resultList = new ArrayList<T>(size);
+        for (Object result : results) {
+            resultList.add((T) result);
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Ran " + size + " tasks with " + Math.max(1, workers) + " workers");
+        }
+        return resultList;
+    }
+
+    /**
+     * @Title: supplyAsync
+     * @Description: Run the task on a pool thread. The task may call invokeAll itself.
+     * @param task
+     * @return the future result of the task, completed exceptionally if the task failed
+     */
+    public static <T> CompletableFuture<T> supplyAsync(final Callable<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        getPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @Title: join
+     * @Description: Wait for the result of a task started by supplyAsync, and run the fallback
+     *               task in the calling thread instead if the task failed
+     * @param future
+     * @param fallback
+     * @return
+     */
+    public static <T> T join(CompletableFuture<T> future, Callable<T> fallback) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            log.warn("Asynchronous task failed, running it again synchronously: " + e.getCause(), e.getCause());
+        } catch (RuntimeException e) {
+            log.warn("Asynchronous task failed, running it again synchronously: " + e, e);
+        }
+        try {
+            return fallback.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getPool() {
+        if (null == pool) {
+            final AtomicInteger count = new AtomicInteger();
+            pool = new ThreadPoolExecutor(AwsConst.WORKER_POOL_MAX_THREADS, AwsConst.WORKER_POOL_MAX_THREADS,
+                                          60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "aws-worker-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            pool.allowCoreThreadTimeOut(true);
+        }
+        return pool;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.util;
+
+import static com.ibm.spectrum.util.AwsStateStoreTest.machine;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.ibm.spectrum.model.AwsMachine;
+
+/**
+* @ClassName: AwsMachineIndexTest
+* @Description: Lookups of AwsMachineIndex, checked against the scans of the list it
+* replaces: List.contains and List.remove, and AwsUtil.getMatchingMachineInList for get().
+* @version 1.0
+*/
+public class AwsMachineIndexTest {
+    @Test
+    public void matchIdAndName() {
+        List<AwsMachine> machines = list(machine("i-1", "host-1"), machine("i-2", "host-2"));
+        AwsMachineIndex index = new AwsMachineIndex(machines);
+
+        assertSame(machines.get(1), index.get(machine("i-2", "host-2")));
+        assertNull(index.get(machine("i-2", "host-1")));
+        assertFalse(index.contains(machine("i-1", "host-2")));
+
+        assertSameAsList(machines, machine("i-1", "host-1"), machine("i-2", "host-2"), machine("i-1", "host-2"),
+                         machine("i-3", "host-3"));
+    }
+
+    @Test
+    public void matchIdOnly() {
+        List<AwsMachine> machines = list(machine("i-1", null), machine("i-2", "host-2"));
+        AwsMachineIndex index = new AwsMachineIndex(machines);
+
+        // A machine with an ID only equals the machines with the same ID, whatever their name
+        assertTrue(index.contains(machine("i-2", null)));
+        assertSame(machines.get(0), index.get(machine("i-1", null)));
+        // but a machine with an ID and a name does not equal a machine with an ID only
+        assertFalse(index.contains(machine("i-1", "host-1")));
+        assertSame(machines.get(0), index.get(machine("i-1", "host-1")));
+
+        assertSameAsList(machines, machine("i-1", null), machine("i-2", null), machine("i-1", "host-1"),
+                         machine("i-2", "host-2"), machine("i-3", null));
+    }
+
+    @Test
+    public void matchNameOnly() {
+        List<AwsMachine> machines = list(machine(null, "host-1"), machine("i-2", "host-2"));
+        AwsMachineIndex index = new AwsMachineIndex(machines);
+
+        assertTrue(index.contains(machine(null, "host-2")));
+        assertSame(machines.get(0), index.get(machine(null, "host-1")));
+        assertFalse(index.contains(machine("i-1", "host-1")));
+        assertSame(machines.get(0), index.get(machine("i-1", "host-1")));
+
+        assertSameAsList(machines, machine(null, "host-1"), machine(null, "host-2"), machine("i-1", "host-1"),
+                         machine("i-2", "host-2"), machine(null, "host-3"), machine(null, null));
+    }
+
+    @Test
+    public void matchBlankIdOrName() {
+        // A blank ID or name is not matched, but the others are matched without trimming them
+        List<AwsMachine> machines = list(machine(" ", "host-1"), machine("i-2", ""), machine("i-3 ", "host-3"),
+                                         machine("i-4", " host-4"));
+        AwsMachineIndex index = new AwsMachineIndex(machines);
+
+        assertTrue(index.contains(machine(null, "host-1")));
+        assertTrue(index.contains(machine("i-2", " ")));
+        assertFalse(index.contains(machine("i-3", "host-3")));
+        assertFalse(index.contains(machine("i-4", "host-4")));
+
+        assertSameAsList(machines, machine(null, "host-1"), machine(" ", "host-1"), machine("", "host-1"),
+                         machine("i-2", null), machine("i-2", " "), machine("i-2", "host-2"), machine("i-3", "host-3"),
+                         machine("i-3 ", "host-3"), machine("i-3 ", null), machine("i-4", "host-4"),
+                         machine("i-4", " host-4"), machine(" ", " "));
+    }
+
+    @Test
+    public void lookupAfterRemove() {
+        List<AwsMachine> machines = list(machine("i-1", "host-1"), machine("i-1", null), machine(null, "host-1"),
+                                         machine("i-1", "host-1"), machine("i-2", "host-2"));
+        AwsMachineIndex index = new AwsMachineIndex(machines);
+        List<AwsMachine> expected = new ArrayList<AwsMachine>(machines);
+
+        // The same machine is matched again once its first match is removed
+        AwsMachine[] removed = { machine("i-1", "host-1"), machine("i-1", null), machine("i-1", "host-1"),
+                                 machine("i-1", null), machine(null, "host-1"), machine("i-2", "host-2"),
+                                 machine("i-2", "host-2") };
+        for (AwsMachine m : removed) {
+            int i = expected.indexOf(m);
+            AwsMachine found = index.remove(m);
+            if (i < 0) {
+                assertNull(found);
+            } else {
+                assertSame(expected.remove(i), found);
+            }
+            List<AwsMachine> values = index.values();
+            assertEquals(expected.size(), values.size());
+            for (int j = 0; j < values.size(); j++) {
+                assertSame(expected.get(j), values.get(j));
+            }
+            assertSameAsList(expected, index, machine("i-1", "host-1"), machine("i-1", null), machine(null, "host-1"),
+                             machine("i-2", "host-2"));
+        }
+        assertTrue(index.isEmpty());
+    }
+
+    private static List<AwsMachine> list(AwsMachine... machines) {
+        return new ArrayList<AwsMachine>(Arrays.asList(machines));
+    }
+
+    private static void assertSameAsList(List<AwsMachine> machines, AwsMachine... queries) {
+        assertSameAsList(machines, new AwsMachineIndex(machines), queries);
+    }
+
+    private static void assertSameAsList(List<AwsMachine> machines, AwsMachineIndex index, AwsMachine... queries) {
+        for (AwsMachine q : queries) {
+            String msg = q.getMachineId() + "/" + q.getName();
+            assertEquals(msg, machines.contains(q), index.contains(q));
+            assertSame(msg, AwsUtil.getMatchingMachineInList(q, machines), index.get(q));
+        }
+    }
+}
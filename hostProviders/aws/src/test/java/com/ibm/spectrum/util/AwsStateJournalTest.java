@@ -0,0 +1,159 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.util;
+
+import static com.ibm.spectrum.util.AwsStateStoreTest.WORK_DIR;
+import static com.ibm.spectrum.util.AwsStateStoreTest.machine;
+import static com.ibm.spectrum.util.AwsStateStoreTest.request;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.model.AwsMachine;
+import com.ibm.spectrum.model.AwsRequest;
+
+/**
+* @ClassName: AwsStateJournalTest
+* @Description: Replay of the provider status DB journal after a crash or a compaction,
+* and the merge of the changes of two writers.
+* @version 1.0
+*/
+public class AwsStateJournalTest {
+    @Before
+    public void setUp() throws Exception {
+        AwsStateStoreTest.clearWorkDir();
+    }
+
+    @Test
+    public void replayIgnoresTruncatedJournal() throws Exception {
+        AwsEntity ae = entity(1, request("req-1", machine("i-1", "host-1")));
+
+        StringBuilder journal = new StringBuilder();
+        journal.append(AwsStateJournal.putMachine("req-1", machine("i-2", "host-2"))).append("\n");
+        journal.append(AwsStateJournal.version(2)).append("\n");
+        // The process crashed while it appended the records of version 3
+        journal.append(AwsStateJournal.putMachine("req-1", machine("i-3", "host-3"))).append("\n");
+        String torn = AwsStateJournal.version(3).toString();
+        journal.append(torn.substring(0, torn.length() / 2));
+
+        assertEquals(1, replay(journal.toString(), ae));
+        assertEquals(Long.valueOf(2), ae.getVersion());
+        assertEquals(2, ae.getReqs().get(0).getMachines().size());
+    }
+
+    @Test
+    public void appendAfterTruncatedJournal() throws Exception {
+        File journal = new File(WORK_DIR, "aws-db.json.journal");
+        String torn = AwsStateJournal.putMachine("req-1", machine("i-2", "host-2")).toString();
+        Files.write(journal.toPath(), torn.substring(0, torn.length() / 2).getBytes(StandardCharsets.UTF_8));
+
+        List<ObjectNode> records = new ArrayList<ObjectNode>();
+        records.add(AwsStateJournal.putMachine("req-1", machine("i-3", "host-3")));
+        AwsStateJournal.append(journal, records, 2);
+
+        AwsEntity ae = entity(1, request("req-1", machine("i-1", "host-1")));
+        try (InputStream in = new FileInputStream(journal)) {
+            assertEquals(1, AwsStateJournal.replay(in, journal.getName(), ae));
+        }
+        List<AwsMachine> machines = ae.getReqs().get(0).getMachines();
+        assertEquals(2, machines.size());
+        assertEquals("i-3", machines.get(1).getMachineId());
+    }
+
+    @Test
+    public void replaySkipsVersionsOfTheSnapshot() throws Exception {
+        // The snapshot was compacted up to version 2 while the journal was read
+        AwsEntity ae = entity(2, request("req-1", machine("i-1", "host-1")));
+
+        StringBuilder journal = new StringBuilder();
+        journal.append(AwsStateJournal.putMachine("req-1", machine("i-2", "host-2"))).append("\n");
+        journal.append(AwsStateJournal.version(2)).append("\n");
+        journal.append(AwsStateJournal.putMachine("req-1", machine("i-3", "host-3"))).append("\n");
+        journal.append(AwsStateJournal.version(3)).append("\n");
+
+        assertEquals(1, replay(journal.toString(), ae));
+        assertEquals(Long.valueOf(3), ae.getVersion());
+        assertEquals("i-3", ae.getReqs().get(0).getMachines().get(1).getMachineId());
+    }
+
+    @Test
+    public void replayReportsVersionGap() throws Exception {
+        // The journal was truncated by a compaction whose snapshot was not read
+        AwsEntity ae = entity(1, request("req-1", machine("i-1", "host-1")));
+
+        StringBuilder journal = new StringBuilder();
+        journal.append(AwsStateJournal.putMachine("req-1", machine("i-3", "host-3"))).append("\n");
+        journal.append(AwsStateJournal.version(3)).append("\n");
+
+        assertEquals(-1, replay(journal.toString(), ae));
+        assertEquals(Long.valueOf(1), ae.getVersion());
+        assertEquals(1, ae.getReqs().get(0).getMachines().size());
+    }
+
+    @Test
+    public void mergeKeepsTheChangesOfBothWriters() throws Exception {
+        AwsRequest baseReq = request("req-1", machine("i-1", "host-1"));
+        baseReq.getMachines().add(machine("i-2", "host-2"));
+        AwsEntity base = entity(1, baseReq);
+
+        // This writer returns i-1 and drops i-2
+        AwsRequest ourReq = request("req-1", machine("i-1", "host-1"));
+        ourReq.getMachines().get(0).setRetId("ret-1");
+        AwsEntity ours = entity(1, ourReq);
+
+        // The other writer adds a machine and a request
+        AwsRequest theirReq = request("req-1", machine("i-1", "host-1"));
+        theirReq.getMachines().add(machine("i-2", "host-2"));
+        theirReq.getMachines().add(machine("i-4", "host-4"));
+        AwsEntity theirs = entity(2, theirReq);
+        theirs.getReqs().add(request("req-2", machine("i-5", "host-5")));
+
+        assertTrue(AwsStateJournal.merge(base, ours, theirs));
+
+        assertEquals(2, theirs.getReqs().size());
+        List<AwsMachine> machines = theirs.getReqs().get(0).getMachines();
+        assertEquals(2, machines.size());
+        assertEquals("ret-1", machines.get(0).getRetId());
+        assertEquals("i-4", machines.get(1).getMachineId());
+    }
+
+    private static int replay(String journal, AwsEntity ae) throws Exception {
+        InputStream in = new ByteArrayInputStream(journal.getBytes(StandardCharsets.UTF_8));
+        return AwsStateJournal.replay(in, "test", ae);
+    }
+
+    private static AwsEntity entity(long version, AwsRequest req) {
+        AwsEntity ae = new AwsEntity();
+        ae.setVersion(Long.valueOf(version));
+        ae.setReqs(new ArrayList<AwsRequest>(Collections.singletonList(req)));
+        return ae;
+    }
+}
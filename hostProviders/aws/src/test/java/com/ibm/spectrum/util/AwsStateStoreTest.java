@@ -0,0 +1,335 @@
+/*
+ * Copyright International Business Machines Corp, 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.spectrum.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ibm.spectrum.model.AwsConfig;
+import com.ibm.spectrum.model.AwsEntity;
+import com.ibm.spectrum.model.AwsMachine;
+import com.ibm.spectrum.model.AwsRequest;
+
+/**
+* @ClassName: AwsStateStoreTest
+* @Description: Writes of the provider status DB by this process while another process
+* writes it too. The other process is played by writing the DB file and the version
+* in the lock file directly, the way AwsStateStore of another process does.
+* @version 1.0
+*/
+public class AwsStateStoreTest {
+    static final String DB_FILE = "aws-db.json";
+
+    /**
+     * AwsUtil keeps the first work directory set in the JVM, the test classes share this one
+     */
+    static final File WORK_DIR = new File("target/aws-state-test").getAbsoluteFile();
+
+    @Before
+    public void setUp() throws Exception {
+        clearWorkDir();
+        AwsUtil.setConfig(new AwsConfig());
+        AwsStateStore.reset();
+    }
+
+    static void clearWorkDir() throws IOException {
+        if (WORK_DIR.isDirectory()) {
+            for (File f : WORK_DIR.listFiles()) {
+                Files.delete(f.toPath());
+            }
+        } else {
+            Files.createDirectories(WORK_DIR.toPath());
+        }
+        AwsUtil.setWorkDir(WORK_DIR.getAbsolutePath());
+        AwsUtil.setProvStatusFile(DB_FILE);
+    }
+
+    @After
+    public void tearDown() {
+        AwsStateStore.awaitCompaction();
+        AwsStateStore.reset();
+    }
+
+    @Test
+    public void mergeUnidentifiedMachineWithOtherWriter() throws Exception {
+        writeInitialDb(request("req-1", machine("i-1", "host-1")));
+
+        // This operation adds a request with a machine which has neither an ID nor a name yet
+        AwsStateStore.getEntity();
+        AwsUtil.saveToFile(request("req-2", machine(null, null)));
+
+        // Another process adds a request and changes a machine meanwhile
+        AwsEntity other = readDb();
+        other.getReqs().get(0).getMachines().get(0).setStatus("stopped");
+        other.getReqs().add(request("req-3", machine("i-3", "host-3")));
+        writeAsOtherProcess(other, 2);
+
+        AwsStateStore.flush();
+
+        AwsEntity merged = readDb();
+        assertEquals(3, merged.getReqs().size());
+        assertEquals("stopped", find(merged, "req-1").getMachines().get(0).getStatus());
+        assertNotNull(find(merged, "req-3"));
+        AwsRequest added = find(merged, "req-2");
+        assertNotNull(added);
+        assertEquals(1, added.getMachines().size());
+        assertNull(added.getMachines().get(0).getMachineId());
+        assertEquals(Long.valueOf(3), merged.getVersion());
+    }
+
+    @Test
+    public void mergeUnidentifiedMachineRemovedByThisOperation() throws Exception {
+        AwsRequest req = request("req-1", machine("i-1", "host-1"));
+        req.getMachines().add(machine(null, null));
+        writeInitialDb(req);
+
+        // This operation drops the machine without an ID
+        AwsRequest loaded = AwsUtil.getFromFile("req-1");
+        loaded.getMachines().remove(1);
+        AwsUtil.saveToFile(loaded);
+
+        // Another process adds a machine to the same request
+        AwsEntity other = readDb();
+        other.getReqs().get(0).getMachines().add(machine("i-2", "host-2"));
+        writeAsOtherProcess(other, 2);
+
+        AwsStateStore.flush();
+
+        List<AwsMachine> machines = find(readDb(), "req-1").getMachines();
+        assertEquals(2, machines.size());
+        assertEquals("i-1", machines.get(0).getMachineId());
+        assertEquals("i-2", machines.get(1).getMachineId());
+    }
+
+    @Test
+    public void otherWriterDbNotParsedIsNotOverwritten() throws Exception {
+        writeInitialDb(request("req-1", machine("i-1", "host-1")));
+
+        AwsUtil.saveToFile(request("req-2", machine("i-2", "host-2")));
+
+        File dbFile = new File(WORK_DIR, DB_FILE);
+        byte[] written = "{\"reqs\":[ not json".getBytes(StandardCharsets.UTF_8);
+        Files.write(dbFile.toPath(), written);
+        writeVersion(2);
+
+        assertFalse(AwsStateStore.flush());
+
+        assertArrayEquals(written, Files.readAllBytes(dbFile.toPath()));
+        assertTrue(AwsStateStore.isDirty());
+    }
+
+    @Test
+    public void failedFlushKeepsTheChanges() throws Exception {
+        writeInitialDb(request("req-1", machine("i-1", "host-1")));
+
+        AwsUtil.saveToFile(request("req-2", machine("i-2", "host-2")));
+
+        File dbFile = new File(WORK_DIR, DB_FILE);
+        Files.write(dbFile.toPath(), "{\"reqs\":[ not json".getBytes(StandardCharsets.UTF_8));
+        writeVersion(2);
+        assertFalse(AwsStateStore.flush());
+
+        // The other process repairs the DB, the next flush writes the pending changes
+        AwsEntity other = new AwsEntity();
+        other.setReqs(new ArrayList<AwsRequest>());
+        other.getReqs().add(request("req-1", machine("i-1", "host-1")));
+        writeAsOtherProcess(other, 3);
+        assertTrue(AwsStateStore.flush());
+        assertFalse(AwsStateStore.isDirty());
+
+        AwsEntity merged = readDb();
+        assertNotNull(find(merged, "req-1"));
+        assertNotNull(find(merged, "req-2"));
+    }
+
+    @Test
+    public void indexesFollowSavesAndDeletes() throws Exception {
+        writeInitialDb(request("req-1", machine("i-1", "host-1")));
+
+        AwsMachine m = AwsStateStore.getMachine("i-1");
+        assertNotNull(m);
+
+        // Return the machine, updated in place
+        m.setRetId("ret-1");
+        m.setStatus("Terminated");
+        Map<String, AwsMachine> vmMap = new HashMap<String, AwsMachine>();
+        vmMap.put("i-1", m);
+        AwsUtil.updateToFile(vmMap);
+        assertEquals(1, AwsStateStore.getMachinesByRetId("ret-1").size());
+        assertNotNull(AwsUtil.getFromFile("ret-1"));
+
+        // Replace the machines of a request
+        AwsUtil.saveToFile(request("req-2", machine("i-2", "host-2")));
+        AwsUtil.saveToFile(request("req-2", machine("i-3", "host-3")));
+        assertNull(AwsStateStore.getMachine("i-2"));
+        assertTrue(AwsStateStore.getMachinesByName("host-2").isEmpty());
+        assertEquals("req-2", AwsStateStore.getRequestOfMachine("i-3").getReqId());
+
+        // Drop the returned machine and its request
+        assertEquals(1, AwsUtil.deleteFromFile());
+        assertNull(AwsStateStore.getRequest("req-1"));
+        assertNull(AwsStateStore.getMachine("i-1"));
+        assertTrue(AwsStateStore.getMachinesByRetId("ret-1").isEmpty());
+        assertTrue(AwsStateStore.getMachinesByName("host-1").isEmpty());
+        assertNotNull(AwsStateStore.getRequest("req-2"));
+        assertEquals(1, AwsStateStore.getEntity().getReqs().size());
+    }
+
+    @Test
+    public void removeMachinesKeepsEqualMachines() throws Exception {
+        // A machine with an ID only equals the machines with the same ID, whatever their name
+        AwsRequest req = request("req-1", machine("i-1", "host-1"));
+        req.getMachines().add(machine("i-1", null));
+        writeInitialDb(req);
+
+        AwsRequest loaded = AwsUtil.getFromFile("req-1");
+        AwsMachine removed = loaded.getMachines().get(0);
+        AwsMachine kept = loaded.getMachines().get(1);
+        AwsStateStore.removeMachines(loaded, Collections.singletonList(removed));
+
+        assertEquals(1, loaded.getMachines().size());
+        assertSame(kept, loaded.getMachines().get(0));
+    }
+
+    @Test
+    public void mergeJournalOfOtherWriter() throws Exception {
+        enableJournal(1024);
+        writeInitialDb(request("req-1", machine("i-1", "host-1")));
+
+        AwsUtil.saveToFile(request("req-2", machine("i-2", "host-2")));
+
+        // Another process appends its changes to the journal meanwhile
+        List<ObjectNode> records = new ArrayList<ObjectNode>();
+        records.add(AwsStateJournal.putRequest(request("req-3", machine("i-3", "host-3"))));
+        records.add(AwsStateJournal.putMachine("req-3", machine("i-3", "host-3")));
+        records.add(AwsStateJournal.putMachine("req-1", machine("i-4", "host-4")));
+        AwsStateJournal.append(AwsStateJournal.getJournalFile(new File(WORK_DIR, DB_FILE)), records, 2);
+        writeVersion(2);
+
+        assertTrue(AwsStateStore.flush());
+
+        AwsStateStore.reset();
+        AwsEntity merged = AwsStateStore.getEntity();
+        assertEquals(Long.valueOf(3), merged.getVersion());
+        assertEquals(3, merged.getReqs().size());
+        assertEquals(2, find(merged, "req-1").getMachines().size());
+        assertEquals("i-2", find(merged, "req-2").getMachines().get(0).getMachineId());
+        assertEquals("i-3", find(merged, "req-3").getMachines().get(0).getMachineId());
+    }
+
+    @Test
+    public void compactionRacingAppends() throws Exception {
+        // Compact whenever the journal is over 1 KB, while the next writes keep appending to it
+        enableJournal(1);
+        writeInitialDb(request("req-0", machine("i-0", "host-0")));
+
+        int writes = 100;
+        for (int i = 1; i <= writes; i++) {
+            AwsUtil.saveToFile(request("req-" + i, machine("i-" + i, "host-" + i)));
+            assertTrue(AwsStateStore.flush());
+        }
+        AwsStateStore.awaitCompaction();
+
+        // The snapshot alone is behind, with the rest of the journal it has every write
+        assertTrue(readDb().getVersion().longValue() > 1);
+        AwsStateStore.reset();
+        AwsEntity ae = AwsStateStore.getEntity();
+        assertEquals(Long.valueOf(writes + 1), ae.getVersion());
+        assertEquals(writes + 1, ae.getReqs().size());
+        for (int i = 0; i <= writes; i++) {
+            assertEquals("i-" + i, find(ae, "req-" + i).getMachines().get(0).getMachineId());
+        }
+    }
+
+    private static void enableJournal(int compactSizeKb) {
+        AwsConfig config = new AwsConfig();
+        config.setDbJournal(Boolean.TRUE);
+        config.setDbJournalCompactSize(Integer.valueOf(compactSizeKb));
+        AwsUtil.setConfig(config);
+    }
+
+    private void writeInitialDb(AwsRequest req) {
+        AwsEntity ae = new AwsEntity();
+        ae.setReqs(new ArrayList<AwsRequest>());
+        ae.getReqs().add(req);
+        AwsStateStore.setEntity(ae);
+        assertTrue(AwsStateStore.flush());
+        AwsStateStore.reset();
+    }
+
+    private AwsEntity readDb() throws Exception {
+        File dbFile = new File(WORK_DIR, DB_FILE);
+        return AwsStateJournal.readSnapshot(Files.readAllBytes(dbFile.toPath()), dbFile);
+    }
+
+    private void writeAsOtherProcess(AwsEntity ae, long version) throws Exception {
+        File dbFile = new File(WORK_DIR, DB_FILE);
+        ae.setVersion(Long.valueOf(version));
+        AwsStateJournal.writeSnapshot(AwsStateJournal.toSnapshot(ae, dbFile), dbFile);
+        writeVersion(version);
+    }
+
+    private void writeVersion(long version) throws Exception {
+        File lockFile = new File(WORK_DIR, DB_FILE + ".lock");
+        Files.write(lockFile.toPath(), (version + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static AwsRequest find(AwsEntity ae, String reqId) {
+        for (AwsRequest req : ae.getReqs()) {
+            if (reqId.equals(req.getReqId())) {
+                return req;
+            }
+        }
+        return null;
+    }
+
+    static AwsRequest request(String reqId, AwsMachine m) {
+        AwsRequest req = new AwsRequest();
+        req.setReqId(reqId);
+        req.setMachines(new ArrayList<AwsMachine>());
+        req.getMachines().add(m);
+        return req;
+    }
+
+    static AwsMachine machine(String machineId, String name) {
+        AwsMachine m = new AwsMachine();
+        m.setMachineId(machineId);
+        m.setName(name);
+        m.setStatus("running");
+        return m;
+    }
+}